@@ -0,0 +1,287 @@
+package com.simple.loadbalancer.admission;
+
+import com.simple.loadbalancer.admission.AdmissionRejectedException.Reason;
+import com.simple.loadbalancer.service.AffinityKey;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+
+/**
+ * Decides whether a request is forwarded before any backend is picked for it, so that a burst from
+ * one client or an overload of the whole load balancer is answered at once with 429 or 503 instead
+ * of piling up until requests time out.
+ *
+ * <p>A request goes through
+ * <ol>
+ *     <li>the {@link RateLimiter} of its client, keyed by a request header or, without one, by the
+ *     client address; refused with 429 and a {@code Retry-After} once the client is over its
+ *     rate,</li>
+ *     <li>the {@link AdmissionQueue}, which caps the requests forwarded at once and queues the
+ *     others by the priority read from a request header, refusing with 503 those that would not
+ *     get through before their deadline.</li>
+ * </ol>
+ * The deadline is the queue timeout, shortened by the time budget a client may send in a request
+ * header. Either stage can be left out; {@link #DISABLED} admits everything at no cost.
+ */
+public class AdmissionControl
+{
+    /* Admits every request */
+    public static final AdmissionControl DISABLED = new AdmissionControl(null, null, "ip", null,
+        null, Duration.ZERO);
+
+    /* Priority of requests without a valid priority header */
+    public static final int DEFAULT_PRIORITY = 5;
+
+    private static final CompletableFuture<Void> ADMITTED = CompletableFuture.completedFuture(null);
+
+    private final RateLimiter rateLimiter;
+    private final AdmissionQueue queue;
+    /* Header holding the client key, null to key clients by address */
+    private final String keyHeader;
+    private final String priorityHeader;
+    private final String deadlineHeader;
+    private final long queueTimeout;
+    private final LongAdder[] rejections = new LongAdder[Reason.values().length];
+
+    /**
+     * @param rateLimiter    the per-client rate limits, or {@code null} for none
+     * @param queue          the concurrency cap and its queue, or {@code null} for none
+     * @param key            what identifies a client: {@code ip} for its address, or
+     *                       {@code header:<name>} for a request header, the address being used
+     *                       when the header is missing
+     * @param priorityHeader the request header giving the priority, 0 to 9 and highest first, or
+     *                       {@code null} to treat all requests alike
+     * @param deadlineHeader the request header giving the milliseconds the client waits for an
+     *                       answer, or {@code null}
+     * @param queueTimeout   longest time a request waits for a slot
+     * @throws IllegalArgumentException if the key is neither of the above
+     */
+    public AdmissionControl (RateLimiter rateLimiter, AdmissionQueue queue, String key,
+                             String priorityHeader, String deadlineHeader, Duration queueTimeout)
+    {
+        String spec = key.trim();
+        if (spec.equalsIgnoreCase("ip")) {
+            this.keyHeader = null;
+        }
+        else if (spec.regionMatches(true, 0, "header:", 0, 7) && spec.length() > 7) {
+            this.keyHeader = spec.substring(7).trim();
+        }
+        else {
+            throw new IllegalArgumentException("Invalid admission key: " + key);
+        }
+        this.rateLimiter = rateLimiter;
+        this.queue = queue;
+        this.priorityHeader = blankToNull(priorityHeader);
+        this.deadlineHeader = blankToNull(deadlineHeader);
+        this.queueTimeout = queueTimeout.toNanos();
+        for (int i = 0; i < rejections.length; i++) {
+            rejections[i] = new LongAdder();
+        }
+    }
+
+    public boolean isEnabled ()
+    {
+        return rateLimiter != null || queue != null;
+    }
+
+    /**
+     * Admits a servlet request, waiting for a slot if needed.
+     *
+     * @return the nanosecond time of admission, to pass to {@link #exit(long)} once the request
+     * has been forwarded
+     * @throws AdmissionRejectedException if the request is refused
+     */
+    public long enter (HttpServletRequest request)
+    {
+        if (!isEnabled()) {
+            return 0;
+        }
+        CompletableFuture<Void> admission = admit(header(request, keyHeader),
+            request.getRemoteAddr(), header(request, priorityHeader),
+            header(request, deadlineHeader));
+        try {
+            admission.get();
+        }
+        catch (ExecutionException e) {
+            throw (AdmissionRejectedException) e.getCause();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abandon(admission);
+            throw new AdmissionRejectedException(Reason.DEADLINE, 0);
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Admits a request of the reactive data plane.
+     *
+     * @return completes once the request is admitted, after which {@link #exit(long)} must be
+     * called once it has been forwarded, or exceptionally with an
+     * {@link AdmissionRejectedException}. If the caller stops waiting, it must call
+     * {@link #abandon(CompletableFuture)}.
+     */
+    public CompletableFuture<Void> admit (ServerHttpRequest request)
+    {
+        if (!isEnabled()) {
+            return ADMITTED;
+        }
+        InetSocketAddress remote = request.getRemoteAddress();
+        String address = remote == null ? null : remote.getAddress() != null
+            ? remote.getAddress().getHostAddress() : remote.getHostString();
+        HttpHeaders headers = request.getHeaders();
+        return admit(header(headers, keyHeader), address, header(headers, priorityHeader),
+            header(headers, deadlineHeader));
+    }
+
+    /**
+     * Admits a request.
+     *
+     * @param key           the value of the key header, may be null
+     * @param clientAddress the address of the client, may be null
+     * @param priority      the value of the priority header, may be null
+     * @param deadline      the value of the deadline header, may be null
+     * @return completes once the request is admitted, or exceptionally with an
+     * {@link AdmissionRejectedException}
+     */
+    public CompletableFuture<Void> admit (String key, String clientAddress, String priority,
+                                          String deadline)
+    {
+        if (rateLimiter != null) {
+            String client = key != null && !key.isEmpty() ? key : clientAddress;
+            long wait = client == null ? 0
+                : rateLimiter.tryAcquire(AffinityKey.hash(client, 0, client.length()));
+            if (wait > 0) {
+                return rejected(new AdmissionRejectedException(Reason.RATE_LIMITED, wait));
+            }
+        }
+        if (queue == null || queue.tryAcquire()) {
+            return ADMITTED;
+        }
+        long timeout = queueTimeout;
+        long budget = parseMillis(deadline);
+        if (budget >= 0) {
+            timeout = Math.min(timeout, TimeUnit.MILLISECONDS.toNanos(budget));
+        }
+        CompletableFuture<Void> admission = queue.acquire(parsePriority(priority),
+            System.nanoTime() + timeout);
+        admission.whenComplete((result, error) -> {
+            if (error instanceof AdmissionRejectedException rejection) {
+                rejections[rejection.getReason().ordinal()].increment();
+            }
+        });
+        return admission;
+    }
+
+    /**
+     * Gives back the slot of an admitted request.
+     *
+     * @param admittedAt the time returned by {@link #enter(HttpServletRequest)}, or read when the
+     *                   admission completed
+     */
+    public void exit (long admittedAt)
+    {
+        if (queue != null) {
+            queue.release(System.nanoTime() - admittedAt);
+        }
+    }
+
+    /**
+     * Stops waiting for an admission, giving the slot back if it was granted in the meantime.
+     */
+    public void abandon (CompletableFuture<Void> admission)
+    {
+        if (queue != null && !admission.cancel(false) && !admission.isCompletedExceptionally()) {
+            queue.release(-1);
+        }
+    }
+
+    /**
+     * @return the requests refused for a reason so far
+     */
+    public long getRejections (Reason reason)
+    {
+        return rejections[reason.ordinal()].sum();
+    }
+
+    /**
+     * @return the requests holding a slot
+     */
+    public int getInFlight ()
+    {
+        return queue == null ? 0 : queue.getInFlight();
+    }
+
+    /**
+     * @return the requests waiting for a slot
+     */
+    public int getQueued ()
+    {
+        return queue == null ? 0 : queue.getQueued();
+    }
+
+    /**
+     * @return the clients whose rate is tracked
+     */
+    public long getTrackedClients ()
+    {
+        return rateLimiter == null ? 0 : rateLimiter.getTrackedClients();
+    }
+
+    private CompletableFuture<Void> rejected (AdmissionRejectedException rejection)
+    {
+        rejections[rejection.getReason().ordinal()].increment();
+        return CompletableFuture.failedFuture(rejection);
+    }
+
+    private static int parsePriority (String value)
+    {
+        if (value == null || value.length() != 1) {
+            return DEFAULT_PRIORITY;
+        }
+        int priority = value.charAt(0) - '0';
+        return priority >= 0 && priority < AdmissionQueue.PRIORITIES ? priority : DEFAULT_PRIORITY;
+    }
+
+    /**
+     * @return the milliseconds of a header made of digits only, or -1
+     */
+    private static long parseMillis (String value)
+    {
+        if (value == null || value.isEmpty() || value.length() > 12) {
+            return -1;
+        }
+        long millis = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char digit = value.charAt(i);
+            if (digit < '0' || digit > '9') {
+                return -1;
+            }
+            millis = millis * 10 + digit - '0';
+        }
+        return millis;
+    }
+
+    private static String header (HttpServletRequest request, String name)
+    {
+        return name == null ? null : request.getHeader(name);
+    }
+
+    private static String header (HttpHeaders headers, String name)
+    {
+        return name == null ? null : headers.getFirst(name);
+    }
+
+    private static String blankToNull (String value)
+    {
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+}
@@ -0,0 +1,61 @@
+package com.simple.loadbalancer.admission;
+
+import java.io.IOException;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Lets the servlet requests it is mapped to through {@link AdmissionControl} before anything reads
+ * their bodies, so that a refused request costs no more than its headers and an admitted one holds
+ * its slot until the response is complete. Refused requests are answered with the status of the
+ * rejection and a {@code Retry-After} header.
+ */
+public class AdmissionFilter extends OncePerRequestFilter
+{
+    /* After the filters observing requests, so that rejections are measured, and before any
+       filter that may read a body */
+    public static final int ORDER = Ordered.HIGHEST_PRECEDENCE + 2;
+
+    private final AdmissionControl admissionControl;
+
+    public AdmissionFilter (AdmissionControl admissionControl)
+    {
+        this.admissionControl = admissionControl;
+    }
+
+    @Override
+    protected boolean shouldNotFilter (HttpServletRequest request)
+    {
+        return !admissionControl.isEnabled();
+    }
+
+    @Override
+    protected void doFilterInternal (HttpServletRequest request, HttpServletResponse response,
+                                     FilterChain chain) throws ServletException, IOException
+    {
+        long admitted;
+        try {
+            admitted = admissionControl.enter(request);
+        }
+        catch (AdmissionRejectedException e) {
+            response.setStatus(e.getStatus());
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()));
+            response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+            response.getWriter().write(e.getMessage());
+            return;
+        }
+        try {
+            chain.doFilter(request, response);
+        }
+        finally {
+            admissionControl.exit(admitted);
+        }
+    }
+}
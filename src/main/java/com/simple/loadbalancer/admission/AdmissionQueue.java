@@ -0,0 +1,296 @@
+package com.simple.loadbalancer.admission;
+
+import com.simple.loadbalancer.admission.AdmissionRejectedException.Reason;
+
+import java.util.Comparator;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Global cap on the requests being forwarded at once, with a bounded priority queue in front of
+ * it.
+ *
+ * <p>While a slot is free and nobody waits, a request takes it with a compare-and-set and no lock.
+ * Otherwise it queues, higher priorities first and oldest first within a priority, and is handed
+ * the slot of the next request to finish. The lock of the queue is only taken while requests
+ * wait, that is under overload.
+ *
+ * <p>The queue sheds requests rather than letting them time out downstream:
+ * <ul>
+ *     <li>a request whose deadline would pass before its turn comes, estimated from the requests
+ *     ahead of it and the mean time a request holds a slot, is refused at once;</li>
+ *     <li>when the queue is full, a request pushes out the newest request of the lowest priority
+ *     below its own, or is refused if there is none;</li>
+ *     <li>a request still waiting at its deadline is refused then.</li>
+ * </ul>
+ */
+public class AdmissionQueue
+{
+    /* Priorities run from 0 to PRIORITIES - 1, the highest served first */
+    public static final int PRIORITIES = 10;
+
+    /* Highest priority first, then first come first served */
+    private static final Comparator<Waiter> ORDER = Comparator
+        .comparingInt((Waiter waiter) -> -waiter.priority)
+        .thenComparingLong(waiter -> waiter.sequence);
+
+    /* Refuses the requests still waiting at their deadline. A timer is cancelled as soon as its
+       request leaves the queue and then dropped from the scheduler at once, so that admitted
+       requests do not leave their timers behind until their deadlines */
+    private static final ScheduledThreadPoolExecutor DEADLINES = deadlineScheduler();
+
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final LongSupplier clock; // Source of nanosecond timestamps
+    private final AtomicInteger inFlight = new AtomicInteger();
+    /* Mean nanoseconds a request holds its slot, a moving average updated without locking */
+    private volatile long meanHold;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final TreeSet<Waiter> waiting = new TreeSet<>(ORDER);
+    private final int[] waitingByPriority = new int[PRIORITIES];
+    private long nextSequence;
+    /* Size of the queue, read without the lock */
+    private volatile int queued;
+
+    /**
+     * @param maxConcurrent requests forwarded at once
+     * @param maxQueued     requests waiting for a slot at most
+     */
+    public AdmissionQueue (int maxConcurrent, int maxQueued)
+    {
+        this(maxConcurrent, maxQueued, System::nanoTime);
+    }
+
+    /**
+     * @param clock source of nanosecond timestamps
+     * @throws IllegalArgumentException if there are no slots or the queue size is negative
+     */
+    public AdmissionQueue (int maxConcurrent, int maxQueued, LongSupplier clock)
+    {
+        if (maxConcurrent < 1 || maxQueued < 0) {
+            throw new IllegalArgumentException("Invalid admission limits: " + maxConcurrent
+                + " concurrent, " + maxQueued + " queued");
+        }
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+        this.clock = clock;
+    }
+
+    /**
+     * Takes a slot if one is free and no request is waiting for one.
+     *
+     * @return whether the slot was taken; if so, it must be given back with {@link #release(long)}
+     */
+    public boolean tryAcquire ()
+    {
+        // Requests already waiting come first, whatever their priority
+        return queued == 0 && takeSlot();
+    }
+
+    /**
+     * Waits for a slot.
+     *
+     * @param priority the priority of the request, from 0 to {@link #PRIORITIES} - 1
+     * @param deadline the nanosecond time after which the request is not worth forwarding
+     * @return completes once the request holds a slot, which must then be given back with
+     * {@link #release(long)}, or exceptionally with an {@link AdmissionRejectedException}.
+     * Cancelling it gives up the wait; if it completed in the meantime, the slot must still be
+     * released.
+     * @throws IllegalArgumentException if the priority is out of range
+     */
+    public CompletableFuture<Void> acquire (int priority, long deadline)
+    {
+        if (priority < 0 || priority >= PRIORITIES) {
+            throw new IllegalArgumentException("Invalid priority: " + priority);
+        }
+        long now = clock.getAsLong();
+        Waiter waiter;
+        Waiter pushedOut = null;
+        lock.lock();
+        try {
+            if (deadline - now <= 0 || deadline - now < expectedWait(priority)) {
+                return rejected(Reason.DEADLINE);
+            }
+            if (waiting.size() >= maxQueued) {
+                Waiter last = waiting.isEmpty() ? null : waiting.last();
+                if (last == null || last.priority >= priority) {
+                    return rejected(Reason.QUEUE_FULL);
+                }
+                remove(last);
+                pushedOut = last;
+            }
+            waiter = new Waiter(priority, nextSequence++);
+            waiting.add(waiter);
+            waitingByPriority[priority]++;
+            queued = waiting.size();
+        }
+        finally {
+            lock.unlock();
+        }
+        if (pushedOut != null) {
+            pushedOut.future.completeExceptionally(new AdmissionRejectedException(Reason.SHED, 0));
+        }
+        AdmissionRejectedException expired = new AdmissionRejectedException(Reason.DEADLINE, 0);
+        ScheduledFuture<?> expiry = DEADLINES.schedule(
+            () -> waiter.future.completeExceptionally(expired), deadline - now,
+            TimeUnit.NANOSECONDS);
+        waiter.future.whenComplete((result, error) -> {
+            expiry.cancel(false);
+            if (error != null) {
+                withdraw(waiter);
+            }
+        });
+        // A slot may have been released while the request was not queued yet
+        dispatch();
+        return waiter.future;
+    }
+
+    /**
+     * Gives a slot back, handing it to the first waiting request if any.
+     *
+     * @param heldNanos the time the request held the slot, negative if it was not forwarded
+     */
+    public void release (long heldNanos)
+    {
+        if (heldNanos >= 0) {
+            long mean = meanHold;
+            meanHold = mean == 0 ? heldNanos : mean + (heldNanos - mean) / 8;
+        }
+        inFlight.decrementAndGet();
+        if (queued > 0) {
+            dispatch();
+        }
+    }
+
+    /**
+     * @return the requests holding a slot
+     */
+    public int getInFlight ()
+    {
+        return inFlight.get();
+    }
+
+    /**
+     * @return the requests waiting for a slot
+     */
+    public int getQueued ()
+    {
+        return queued;
+    }
+
+    private boolean takeSlot ()
+    {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= maxConcurrent) {
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    /**
+     * Hands free slots to the waiting requests, in order.
+     */
+    private void dispatch ()
+    {
+        while (true) {
+            Waiter next;
+            lock.lock();
+            try {
+                if (waiting.isEmpty() || !takeSlot()) {
+                    return;
+                }
+                next = waiting.first();
+                remove(next);
+            }
+            finally {
+                lock.unlock();
+            }
+            if (!next.future.complete(null)) {
+                // Timed out or cancelled just now
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    private void withdraw (Waiter waiter)
+    {
+        lock.lock();
+        try {
+            if (waiting.contains(waiter)) {
+                remove(waiter);
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /* Called with the lock held */
+    private void remove (Waiter waiter)
+    {
+        waiting.remove(waiter);
+        waitingByPriority[waiter.priority]--;
+        queued = waiting.size();
+    }
+
+    /**
+     * Estimates the time a new request of a priority would wait for its turn: on average a slot
+     * frees up every {@code meanHold / maxConcurrent}, and every request of the same or a higher
+     * priority already waiting goes first. Called with the lock held.
+     */
+    private long expectedWait (int priority)
+    {
+        if (inFlight.get() < maxConcurrent && waiting.isEmpty()) {
+            return 0;
+        }
+        int ahead = 0;
+        for (int i = priority; i < PRIORITIES; i++) {
+            ahead += waitingByPriority[i];
+        }
+        return (ahead + 1) * meanHold / maxConcurrent;
+    }
+
+    /**
+     * @return the deadline timers of waiting requests, across all queues
+     */
+    static int getPendingDeadlines ()
+    {
+        return DEADLINES.getQueue().size();
+    }
+
+    private static ScheduledThreadPoolExecutor deadlineScheduler ()
+    {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1,
+            Thread.ofPlatform().name("admission-deadlines").daemon().factory());
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+
+    private static CompletableFuture<Void> rejected (Reason reason)
+    {
+        return CompletableFuture.failedFuture(new AdmissionRejectedException(reason, 0));
+    }
+
+    private static final class Waiter
+    {
+        final int priority;
+        final long sequence;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Waiter (int priority, long sequence)
+        {
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+    }
+}
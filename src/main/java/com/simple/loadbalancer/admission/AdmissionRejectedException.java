@@ -0,0 +1,69 @@
+package com.simple.loadbalancer.admission;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thrown when a request is refused before being forwarded, so that the client gets an immediate
+ * 429 or 503 rather than a timeout.
+ */
+public class AdmissionRejectedException extends RuntimeException
+{
+    public enum Reason
+    {
+        /* The client sent more than its rate allows: 429 */
+        RATE_LIMITED(429),
+        /* Every slot was taken and the queue full of requests of at least the same priority */
+        QUEUE_FULL(503),
+        /* Pushed out of the full queue by a request of higher priority */
+        SHED(503),
+        /* The request could not be admitted before its deadline */
+        DEADLINE(503);
+
+        private final int status;
+
+        Reason (int status)
+        {
+            this.status = status;
+        }
+
+        public int getStatus ()
+        {
+            return status;
+        }
+    }
+
+    private final Reason reason;
+    private final long retryAfterNanos;
+
+    /**
+     * @param reason          why the request was refused
+     * @param retryAfterNanos time after which the client may try again, 0 if unknown
+     */
+    public AdmissionRejectedException (Reason reason, long retryAfterNanos)
+    {
+        // Thrown at the rate of the overload, so without the cost of a stack trace
+        super(reason == Reason.RATE_LIMITED ? "Too many requests" : "Server busy", null, false,
+            false);
+        this.reason = reason;
+        this.retryAfterNanos = retryAfterNanos;
+    }
+
+    public Reason getReason ()
+    {
+        return reason;
+    }
+
+    public int getStatus ()
+    {
+        return reason.getStatus();
+    }
+
+    /**
+     * @return the value of the {@code Retry-After} header, whole seconds rounded up, at least 1
+     */
+    public long getRetryAfterSeconds ()
+    {
+        return Math.max(1, (retryAfterNanos + TimeUnit.SECONDS.toNanos(1) - 1)
+            / TimeUnit.SECONDS.toNanos(1));
+    }
+}
@@ -0,0 +1,169 @@
+package com.simple.loadbalancer.admission;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-client token bucket, implemented as the generic cell rate algorithm (GCRA): instead of a
+ * token count refilled over time, every client has a single timestamp, the theoretical arrival
+ * time of its next request at the sustained rate. A request is admitted if that time is less than
+ * {@code burst} intervals ahead of now, and moves it one interval further. This behaves exactly
+ * like a bucket of {@code burst} tokens refilled at {@code rate} per second, but the state is one
+ * long updated with a compare-and-set, so admission never locks.
+ *
+ * <p>Clients are keyed by a 64 bit hash and kept in a fixed table of {@code maxClients} slots,
+ * rounded up to a power of two and allocated once, 16 bytes each: a million clients take 16 MB
+ * whatever the traffic, and checking one allocates nothing. The table is set associative: a client
+ * can only be in one of the {@value #WAYS} slots of its bucket, so a lookup reads one cache line.
+ * A new client takes a free slot, or the slot of a client whose arrival time has passed: such a
+ * client has a full bucket, exactly as if it had never been seen, so forgetting it loses nothing.
+ * Only when all clients of a bucket are active is the one closest to a full bucket forgotten, to
+ * start over with a full bucket when it comes back.
+ */
+public class RateLimiter
+{
+    /* Slots per bucket, one 64 byte cache line of key and arrival pairs */
+    static final int WAYS = 4;
+
+    /* Largest table, 1 GB */
+    private static final int MAX_CLIENTS = 1 << 26;
+
+    private static final long EMPTY = 0; // Key of a free slot
+    private static final long IDLE = Long.MIN_VALUE; // Arrival time of a client with a full bucket
+
+    private final long interval; // Nanoseconds between two requests at the sustained rate
+    private final long tolerance; // How far ahead of now the next arrival time may be
+    private final LongSupplier clock; // Source of nanosecond timestamps
+    private final AtomicLongArray table; // Key and arrival time of every slot
+    private final int bucketMask;
+
+    /**
+     * @param rate       requests per second a client may send in the long run
+     * @param burst      requests a client may send at once after being idle
+     * @param maxClients clients tracked at once
+     */
+    public RateLimiter (double rate, int burst, int maxClients)
+    {
+        this(rate, burst, maxClients, System::nanoTime);
+    }
+
+    /**
+     * @param clock source of nanosecond timestamps
+     * @throws IllegalArgumentException if a value is not positive, or too many clients
+     */
+    public RateLimiter (double rate, int burst, int maxClients, LongSupplier clock)
+    {
+        if (rate <= 0 || burst < 1 || maxClients < 1 || maxClients > MAX_CLIENTS) {
+            throw new IllegalArgumentException("Rate, burst and client count must be positive, "
+                + "and at most " + MAX_CLIENTS + " clients");
+        }
+        this.interval = Math.max(1, Math.round(TimeUnit.SECONDS.toNanos(1) / rate));
+        this.tolerance = Math.min(interval, Long.MAX_VALUE / 4 / burst) * burst;
+        this.clock = clock;
+        int buckets = (maxClients + WAYS - 1) / WAYS;
+        buckets = buckets == 1 ? 1 : Integer.highestOneBit(buckets - 1) << 1;
+        this.table = new AtomicLongArray(buckets * WAYS * 2);
+        this.bucketMask = buckets - 1;
+        for (int i = 1; i < table.length(); i += 2) {
+            table.set(i, IDLE);
+        }
+    }
+
+    /**
+     * Takes a token from the bucket of a client.
+     *
+     * @param key the hash of the client
+     * @return 0 if the request is admitted, otherwise the nanoseconds until the client may send
+     * its next request
+     */
+    public long tryAcquire (long key)
+    {
+        if (key == EMPTY) {
+            key = 1;
+        }
+        long now = clock.getAsLong();
+        int arrival = slot(key, now) + 1;
+        while (true) {
+            long current = table.get(arrival);
+            long next = (current == IDLE || current - now < 0 ? now : current) + interval;
+            long excess = next - now - tolerance;
+            if (excess > 0) {
+                return excess;
+            }
+            if (table.compareAndSet(arrival, current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * @return the number of clients that sent requests recently enough not to have a full bucket
+     */
+    public long getTrackedClients ()
+    {
+        long now = clock.getAsLong();
+        long active = 0;
+        for (int i = 1; i < table.length(); i += 2) {
+            long arrival = table.get(i);
+            if (arrival != IDLE && arrival - now > 0) {
+                active++;
+            }
+        }
+        return active;
+    }
+
+    /**
+     * @return the number of clients the table has room for
+     */
+    public int getCapacity ()
+    {
+        return table.length() / 2;
+    }
+
+    /**
+     * Finds the slot of a client, taking one for it if it has none.
+     *
+     * @return the index of the key of the slot
+     */
+    private int slot (long key, long now)
+    {
+        // Fibonacci hashing spreads keys that only differ in their high bits
+        int base = (int) ((key * 0x9e3779b97f4a7c15L) >>> 32 & bucketMask) * WAYS * 2;
+        while (true) {
+            int victim = -1;
+            long victimKey = EMPTY;
+            long victimArrival = 0;
+            boolean victimIdle = false;
+            for (int i = base; i < base + WAYS * 2; i += 2) {
+                long slotKey = table.get(i);
+                if (slotKey == key) {
+                    return i;
+                }
+                if (victimIdle) {
+                    continue; // Still looking for the client itself
+                }
+                long arrival = table.get(i + 1);
+                if (slotKey == EMPTY || arrival == IDLE || arrival - now <= 0) {
+                    victim = i;
+                    victimKey = slotKey;
+                    victimArrival = arrival;
+                    victimIdle = true;
+                }
+                else if (victim < 0 || arrival - victimArrival < 0) {
+                    victim = i;
+                    victimKey = slotKey;
+                    victimArrival = arrival;
+                }
+            }
+            if (table.compareAndSet(victim, victimKey, key)) {
+                if (!victimIdle) {
+                    // Forgetting an active client: the new one starts with a full bucket
+                    table.compareAndSet(victim + 1, victimArrival, IDLE);
+                }
+                return victim;
+            }
+            // The bucket changed meanwhile, possibly because another thread added the same client
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.simple.loadbalancer.admission;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/**
+ * Lets the requests of the reactive data plane below a path through {@link AdmissionControl}
+ * before they reach a handler, waiting for their turn without holding the event loop. Refused
+ * requests are answered with the status of the rejection and a {@code Retry-After} header.
+ */
+public class ReactiveAdmissionFilter implements WebFilter, Ordered
+{
+    private final AdmissionControl admissionControl;
+    private final String mount;
+
+    /**
+     * @param mount the path below which requests are admitted, others pass through
+     */
+    public ReactiveAdmissionFilter (AdmissionControl admissionControl, String mount)
+    {
+        this.admissionControl = admissionControl;
+        this.mount = mount;
+    }
+
+    @Override
+    public int getOrder ()
+    {
+        return AdmissionFilter.ORDER;
+    }
+
+    @Override
+    public Mono<Void> filter (ServerWebExchange exchange, WebFilterChain chain)
+    {
+        if (!admissionControl.isEnabled() || !isBelowMount(exchange)) {
+            return chain.filter(exchange);
+        }
+        CompletableFuture<Void> admission = admissionControl.admit(exchange.getRequest());
+        return Mono.fromFuture(admission, true)
+            .doOnCancel(() -> admissionControl.abandon(admission))
+            .then(Mono.defer(() -> {
+                long admitted = System.nanoTime();
+                return chain.filter(exchange)
+                    .doFinally(signal -> admissionControl.exit(admitted));
+            }))
+            .onErrorResume(AdmissionRejectedException.class,
+                e -> reject(exchange.getResponse(), e));
+    }
+
+    private boolean isBelowMount (ServerWebExchange exchange)
+    {
+        String path = exchange.getRequest().getPath().pathWithinApplication().value();
+        return path.startsWith(mount)
+            && (path.length() == mount.length() || path.charAt(mount.length()) == '/');
+    }
+
+    private static Mono<Void> reject (ServerHttpResponse response, AdmissionRejectedException e)
+    {
+        byte[] message = e.getMessage().getBytes(StandardCharsets.UTF_8);
+        response.setStatusCode(HttpStatusCode.valueOf(e.getStatus()));
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER,
+            String.valueOf(e.getRetryAfterSeconds()));
+        response.getHeaders().setContentType(MediaType.TEXT_PLAIN);
+        response.getHeaders().setContentLength(message.length);
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(message)));
+    }
+}
@@ -0,0 +1,64 @@
+package com.simple.loadbalancer.client;
+
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResponseExtractor;
+
+/**
+ * Transport used by the load balancer to talk to the backend servers. Implementations own the
+ * connections to every backend, so they decide how connections are pooled, reused and limited.
+ *
+ * <p>Every call names the backend {@code server} separately from the full request URL, which lets
+ * implementations keep per-server state (pools, limits, statistics) without parsing URLs.
+ */
+public interface BackendClient
+{
+    /**
+     * Sends a request and reads the whole response body as a String. Error statuses returned by
+     * the backend are reported by throwing an exception.
+     *
+     * @param server  the base URL of the backend server
+     * @param url     the full URL of the request, starting with {@code server}, already encoded
+     * @param method  the HTTP method
+     * @param request the headers and body of the request
+     * @return the backend response
+     * @throws BackendSaturatedException if the server cannot accept another request right now
+     */
+    ResponseEntity<String> exchange (String server, String url, HttpMethod method,
+                                     HttpEntity<?> request);
+
+    /**
+     * Sends a request whose body is written by {@code requestCallback} and hands the raw response
+     * to {@code responseExtractor}, without buffering either of them. Every backend status,
+     * including errors, is passed to the extractor.
+     *
+     * @param server            the base URL of the backend server
+     * @param url               the full URL of the request, starting with {@code server}, already
+     *                          encoded
+     * @param method            the HTTP method
+     * @param requestCallback   writes headers and body of the request
+     * @param responseExtractor consumes the backend response
+     * @return the value returned by the extractor
+     * @throws BackendSaturatedException if the server cannot accept another request right now
+     */
+    <T> T execute (String server, String url, HttpMethod method,
+                   RequestCallback requestCallback, ResponseExtractor<T> responseExtractor);
+
+    /**
+     * Returns the current connection usage for a server.
+     *
+     * @param server the base URL of the backend server
+     * @return the pool statistics of that server
+     */
+    BackendPoolStats getPoolStats (String server);
+
+    /**
+     * Drops what is kept for a server that left the fleet. Requests still in flight to it end
+     * normally; a later request to the same server starts from a fresh state.
+     *
+     * @param server the base URL of the backend server
+     */
+    void release (String server);
+}
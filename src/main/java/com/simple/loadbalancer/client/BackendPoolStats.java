@@ -0,0 +1,51 @@
+package com.simple.loadbalancer.client;
+
+/**
+ * Point in time view of the connections a {@link BackendClient} holds for one backend server.
+ */
+public class BackendPoolStats
+{
+    /* Connections currently carrying a request */
+    private final int leased;
+    /* Requests waiting for a connection to become free */
+    private final int pending;
+    /* Idle keep-alive connections ready for reuse */
+    private final int available;
+    /* Maximum number of connections allowed to the server */
+    private final int max;
+
+    public BackendPoolStats (int leased, int pending, int available, int max)
+    {
+        this.leased = leased;
+        this.pending = pending;
+        this.available = available;
+        this.max = max;
+    }
+
+    public int getLeased ()
+    {
+        return leased;
+    }
+
+    public int getPending ()
+    {
+        return pending;
+    }
+
+    public int getAvailable ()
+    {
+        return available;
+    }
+
+    public int getMax ()
+    {
+        return max;
+    }
+
+    @Override
+    public String toString ()
+    {
+        return "leased=" + leased + ", pending=" + pending + ", available=" + available
+            + ", max=" + max;
+    }
+}
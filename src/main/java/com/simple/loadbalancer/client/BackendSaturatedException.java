@@ -0,0 +1,13 @@
+package com.simple.loadbalancer.client;
+
+/**
+ * Thrown when a request is refused before being sent because too many requests are already
+ * waiting for a connection to the backend server.
+ */
+public class BackendSaturatedException extends RuntimeException
+{
+    public BackendSaturatedException (String message)
+    {
+        super(message);
+    }
+}
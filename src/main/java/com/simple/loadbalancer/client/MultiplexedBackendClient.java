@@ -0,0 +1,243 @@
+package com.simple.loadbalancer.client;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ObjIntConsumer;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
+import io.netty.handler.codec.http2.Http2FrameCodec;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.ResponseErrorHandler;
+import org.springframework.web.client.ResponseExtractor;
+import org.springframework.web.client.RestTemplate;
+import reactor.netty.Connection;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.Http2AllocationStrategy;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * {@link BackendClient} that talks HTTP/2 to the backend servers, in clear text with prior
+ * knowledge (h2c), over a few connections per server that each carry many requests at once.
+ *
+ * <p>An HTTP/1.1 connection carries one request at a time, so a server with {@code n} requests in
+ * flight costs {@code n} sockets on both sides. Here every request is a stream of one of at most
+ * {@code connectionsPerServer} connections, a second connection only being opened once the first
+ * carries as many streams as allowed. The streams of a connection are bounded by
+ * {@code maxConcurrentStreams} and by the {@code SETTINGS_MAX_CONCURRENT_STREAMS} the server
+ * advertises, whichever is lower.
+ *
+ * <p>Requests wait for a stream the same way {@link PooledBackendClient} requests wait for a
+ * connection: on a per-server {@link Semaphore} of {@code connectionsPerServer *
+ * maxConcurrentStreams} permits, for at most {@code acquireTimeout}, and with at most
+ * {@code maxPendingAcquires} of them waiting before the next is refused with a
+ * {@link BackendSaturatedException}. The first response of a server, and every later one whose
+ * server advertises another stream limit, reports the requests the server accepts at once to
+ * {@code streamLimitListener}, so that the strategies see a server advertising fewer streams as
+ * saturated sooner rather than having requests queue in the client.
+ *
+ * <p>Bodies are streamed both ways by the calling thread, one HTTP/2 frame at a time, so a blocked
+ * virtual thread never holds a Netty event loop. Like {@link PooledBackendClient}, the client never
+ * follows redirects and never decompresses bodies.
+ */
+public class MultiplexedBackendClient implements BackendClient, DisposableBean
+{
+    /* Bytes per request body chunk, the default maximum HTTP/2 frame size */
+    private static final int CHUNK_SIZE = 16384;
+    /* Response bytes a stream, and a connection, may receive ahead of their reader. The default
+       64 KiB window of a connection, shared by all its streams, would throttle them */
+    private static final int WINDOW_SIZE = 1024 * 1024;
+
+    private final ConnectionProvider connectionProvider;
+    private final HttpClient httpClient;
+    /* Converters of the request and response entities, and the error handler of exchanges */
+    private final RestTemplate restTemplate = new RestTemplate();
+    private final int connectionsPerServer;
+    private final int maxConcurrentStreams;
+    private final int maxPendingAcquires;
+    private final long acquireTimeoutNanos;
+    private final ObjIntConsumer<String> streamLimitListener;
+    /* One permit per stream a server may have, taken for the duration of a request */
+    private final Map<String, Semaphore> permits = new ConcurrentHashMap<>();
+    /* Streams per connection every server accepts, as of its last response */
+    private final Map<String, Integer> streamsPerConnection = new ConcurrentHashMap<>();
+
+    /**
+     * @param connectionsPerServer maximum number of connections kept to a single server
+     * @param maxConcurrentStreams maximum number of requests in flight on one connection
+     * @param maxPendingAcquires   maximum number of requests waiting for a stream to a single
+     *                             server, a negative value means no limit
+     * @param connectTimeout       timeout for establishing a connection
+     * @param readTimeout          timeout for waiting on data from the backend
+     * @param acquireTimeout       timeout for obtaining a stream
+     * @param idleEviction         time after which idle connections are closed
+     * @param streamLimitListener  called with a server and the requests it accepts at once over
+     *                             all its connections, whenever they change
+     */
+    public MultiplexedBackendClient (int connectionsPerServer,
+                                     int maxConcurrentStreams,
+                                     int maxPendingAcquires,
+                                     Duration connectTimeout,
+                                     Duration readTimeout,
+                                     Duration acquireTimeout,
+                                     Duration idleEviction,
+                                     ObjIntConsumer<String> streamLimitListener)
+    {
+        this.connectionsPerServer = connectionsPerServer;
+        this.maxConcurrentStreams = maxConcurrentStreams;
+        this.maxPendingAcquires = maxPendingAcquires;
+        this.acquireTimeoutNanos = acquireTimeout.toNanos();
+        this.streamLimitListener = streamLimitListener;
+        this.restTemplate.setUriTemplateHandler(PooledBackendClient.encodedUrls());
+        int maxStreams = connectionsPerServer * maxConcurrentStreams;
+        this.connectionProvider = ConnectionProvider.builder("h2c-backends")
+            .maxConnections(connectionsPerServer)
+            .allocationStrategy(Http2AllocationStrategy.builder()
+                .maxConnections(connectionsPerServer)
+                .maxConcurrentStreams(maxConcurrentStreams)
+                .build())
+            // Requests are already bounded by the permits, this only queues those beyond the
+            // streams the server advertises
+            .pendingAcquireMaxCount(maxStreams)
+            .pendingAcquireTimeout(acquireTimeout)
+            .maxIdleTime(idleEviction)
+            .evictInBackground(idleEviction)
+            .build();
+        this.httpClient = HttpClient.create(connectionProvider)
+            .protocol(HttpProtocol.H2C)
+            .http2Settings(settings -> settings.initialWindowSize(WINDOW_SIZE))
+            .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis())
+            .responseTimeout(readTimeout);
+    }
+
+    @Override
+    public ResponseEntity<String> exchange (String server, String url, HttpMethod method,
+                                            HttpEntity<?> request)
+    {
+        return execute(server, url, method, restTemplate.httpEntityCallback(request, String.class),
+            restTemplate.responseEntityExtractor(String.class), restTemplate.getErrorHandler());
+    }
+
+    @Override
+    public <T> T execute (String server, String url, HttpMethod method,
+                          RequestCallback requestCallback, ResponseExtractor<T> responseExtractor)
+    {
+        // Backend error statuses are relayed to the extractor as they are
+        return execute(server, url, method, requestCallback, responseExtractor, null);
+    }
+
+    @Override
+    public BackendPoolStats getPoolStats (String server)
+    {
+        // Streams rather than connections, as they are what a request waits for
+        Semaphore streamPermits = permits(server);
+        int available = streamPermits.availablePermits();
+        int max = connectionsPerServer * maxConcurrentStreams;
+        return new BackendPoolStats(max - available, streamPermits.getQueueLength(), available,
+            max);
+    }
+
+    @Override
+    public void release (String server)
+    {
+        permits.remove(server);
+        streamsPerConnection.remove(server);
+    }
+
+    /**
+     * Sends a request the way {@link RestTemplate} would, on a stream to {@code server}.
+     *
+     * @param errorHandler handles the backend error statuses, {@code null} to relay them
+     */
+    private <T> T execute (String server, String url, HttpMethod method,
+                           RequestCallback requestCallback, ResponseExtractor<T> responseExtractor,
+                           ResponseErrorHandler errorHandler)
+    {
+        URI uri = restTemplate.getUriTemplateHandler().expand(url);
+        Semaphore streamPermits = acquire(server);
+        try {
+            MultiplexedRequest request = new MultiplexedRequest(httpClient, uri, method,
+                CHUNK_SIZE, connection -> updateStreamLimit(server, connection));
+            if (requestCallback != null) {
+                requestCallback.doWithRequest(request);
+            }
+            try (ClientHttpResponse response = request.execute()) {
+                if (errorHandler != null && errorHandler.hasError(response)) {
+                    errorHandler.handleError(uri, method, response);
+                }
+                return responseExtractor != null ? responseExtractor.extractData(response) : null;
+            }
+        }
+        catch (IOException e) {
+            throw new ResourceAccessException("I/O error on " + method.name() + " request for \""
+                + url + "\": " + e.getMessage(), e);
+        }
+        finally {
+            streamPermits.release();
+        }
+    }
+
+    /**
+     * Reports the requests a server accepts at once if the connection of a response advertises
+     * another stream limit than the last one.
+     */
+    private void updateStreamLimit (String server, Connection connection)
+    {
+        Channel parent = connection.channel().parent();
+        Http2FrameCodec codec =
+            parent != null ? parent.pipeline().get(Http2FrameCodec.class) : null;
+        if (codec == null) {
+            return; // Not a stream of an HTTP/2 connection
+        }
+        // The streams this end may open, as set by the SETTINGS of the server
+        int streams = Math.min(maxConcurrentStreams, codec.connection().local().maxActiveStreams());
+        Integer previous = streamsPerConnection.put(server, streams);
+        if (previous == null || previous != streams) {
+            streamLimitListener.accept(server, streams * connectionsPerServer);
+        }
+    }
+
+    private Semaphore acquire (String server)
+    {
+        Semaphore streamPermits = permits(server);
+        if (maxPendingAcquires >= 0 && streamPermits.availablePermits() == 0
+            && streamPermits.getQueueLength() >= maxPendingAcquires) {
+            throw new BackendSaturatedException("Streams to " + server + " are saturated: "
+                + streamPermits.getQueueLength() + " requests already waiting");
+        }
+        try {
+            if (!streamPermits.tryAcquire(acquireTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                throw new BackendSaturatedException("Timed out waiting for a stream to " + server);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BackendSaturatedException("Interrupted waiting for a stream to " + server);
+        }
+        return streamPermits;
+    }
+
+    private Semaphore permits (String server)
+    {
+        return permits.computeIfAbsent(server,
+            key -> new Semaphore(connectionsPerServer * maxConcurrentStreams));
+    }
+
+    @Override
+    public void destroy ()
+    {
+        connectionProvider.dispose();
+    }
+}
@@ -0,0 +1,192 @@
+package com.simple.loadbalancer.client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.StreamingHttpOutputMessage;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
+import reactor.core.publisher.Mono;
+import reactor.netty.Connection;
+import reactor.netty.http.client.HttpClient;
+
+/**
+ * Request of a {@link MultiplexedBackendClient} exchange, sent on a stream of one of the pooled
+ * connections to the server.
+ *
+ * <p>A body set with {@link #setBody(Body)} is written by the calling thread while the exchange is
+ * in flight, without being buffered. A body written to {@link #getBody()} before
+ * {@link #execute()} is buffered and sent as a whole.
+ */
+final class MultiplexedRequest implements ClientHttpRequest, StreamingHttpOutputMessage
+{
+    private final HttpClient httpClient;
+    private final URI uri;
+    private final HttpMethod method;
+    private final int chunkSize;
+    /* Called with the connection of every response, before the response is returned */
+    private final Consumer<Connection> onResponse;
+    private final HttpHeaders headers = new HttpHeaders();
+    private Body streamingBody;
+    private ByteArrayOutputStream bufferedBody;
+    private boolean executed;
+
+    MultiplexedRequest (HttpClient httpClient, URI uri, HttpMethod method, int chunkSize,
+                        Consumer<Connection> onResponse)
+    {
+        this.httpClient = httpClient;
+        this.uri = uri;
+        this.method = method;
+        this.chunkSize = chunkSize;
+        this.onResponse = onResponse;
+    }
+
+    @Override
+    public HttpMethod getMethod ()
+    {
+        return method;
+    }
+
+    @Override
+    public URI getURI ()
+    {
+        return uri;
+    }
+
+    @Override
+    public HttpHeaders getHeaders ()
+    {
+        return headers;
+    }
+
+    @Override
+    public void setBody (Body body)
+    {
+        assertNotExecuted();
+        streamingBody = body;
+    }
+
+    @Override
+    public OutputStream getBody ()
+    {
+        assertNotExecuted();
+        if (bufferedBody == null) {
+            bufferedBody = new ByteArrayOutputStream(1024);
+        }
+        return bufferedBody;
+    }
+
+    @Override
+    public ClientHttpResponse execute () throws IOException
+    {
+        assertNotExecuted();
+        executed = true;
+        RequestBodyPublisher publisher = streamingBody != null
+            ? new RequestBodyPublisher(ByteBufAllocator.DEFAULT, chunkSize) : null;
+        CompletableFuture<ClientHttpResponse> response = httpClient
+            .request(io.netty.handler.codec.http.HttpMethod.valueOf(method.name()))
+            .uri(uri)
+            .send((request, outbound) -> {
+                for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                    request.requestHeaders().add(header.getKey(), header.getValue());
+                }
+                if (publisher != null) {
+                    return outbound.withConnection(
+                            connection -> publisher.signalOn(signalExecutor(connection)))
+                        .send(publisher);
+                }
+                if (bufferedBody != null) {
+                    return outbound.send(
+                        Mono.just(Unpooled.wrappedBuffer(bufferedBody.toByteArray())));
+                }
+                return outbound;
+            })
+            .responseConnection((clientResponse, connection) -> {
+                onResponse.accept(connection);
+                return Mono.<ClientHttpResponse>just(
+                    new MultiplexedResponse(clientResponse, connection));
+            })
+            .single()
+            .toFuture();
+
+        if (publisher != null) {
+            response.whenComplete((ignored, error) -> {
+                if (error != null) {
+                    publisher.abort(error);
+                }
+            });
+            try {
+                streamingBody.writeTo(publisher);
+                publisher.close();
+            }
+            catch (IOException | RuntimeException e) {
+                publisher.fail(e);
+                if (!(e instanceof IOException) || !publisher.isCancelled()) {
+                    discard(response);
+                    throw e;
+                }
+                // The server responded without reading the whole body, as HTTP/2 allows, or the
+                // connection closed, which the response reports
+            }
+        }
+        try {
+            return response.get();
+        }
+        catch (InterruptedException e) {
+            discard(response);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for the backend response");
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException io ? io
+                : new IOException("Backend request failed: " + cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Runs the signals of a request body on the event loop of its stream, and flushes the
+     * connection after each of them. Writing the frames of a stream outside of a read of its
+     * connection does not flush them, which could leave the end of a body waiting for the next
+     * frame the server sends.
+     */
+    private static Executor signalExecutor (Connection connection)
+    {
+        Channel stream = connection.channel();
+        Channel parent = stream.parent() != null ? stream.parent() : stream;
+        return signal -> stream.eventLoop().execute(() -> {
+            signal.run();
+            parent.flush();
+        });
+    }
+
+    /**
+     * Gives up on an exchange, and closes its response should it have arrived already.
+     */
+    private static void discard (CompletableFuture<ClientHttpResponse> response)
+    {
+        response.cancel(true);
+        response.thenAccept(ClientHttpResponse::close);
+    }
+
+    private void assertNotExecuted ()
+    {
+        if (executed) {
+            throw new IllegalStateException("Request already executed");
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.simple.loadbalancer.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import org.reactivestreams.Subscription;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpResponse;
+import reactor.core.CoreSubscriber;
+import reactor.netty.Connection;
+import reactor.netty.http.client.HttpClientResponse;
+
+/**
+ * Response of a {@link MultiplexedBackendClient} exchange, whose body is read by a blocking
+ * thread from the stream it arrived on.
+ *
+ * <p>The body is asked for one chunk ahead of the reader, and the stream flow control window keeps
+ * the server from sending more than the window ahead of it, however slowly it is read. Closing
+ * the response before the end of the body resets the stream, which leaves the connection and its
+ * other streams untouched.
+ */
+final class MultiplexedResponse implements ClientHttpResponse
+{
+    private final HttpClientResponse response;
+    private final Connection connection;
+    private HttpHeaders headers;
+    private Body body;
+
+    MultiplexedResponse (HttpClientResponse response, Connection connection)
+    {
+        this.response = response;
+        this.connection = connection;
+    }
+
+    @Override
+    public HttpStatusCode getStatusCode ()
+    {
+        return HttpStatusCode.valueOf(response.status().code());
+    }
+
+    @Override
+    @Deprecated
+    public int getRawStatusCode ()
+    {
+        return response.status().code();
+    }
+
+    @Override
+    public String getStatusText ()
+    {
+        return response.status().reasonPhrase();
+    }
+
+    @Override
+    public HttpHeaders getHeaders ()
+    {
+        if (headers == null) {
+            headers = new HttpHeaders();
+            for (Map.Entry<String, String> header : response.responseHeaders()) {
+                headers.add(header.getKey(), header.getValue());
+            }
+        }
+        return headers;
+    }
+
+    @Override
+    public InputStream getBody ()
+    {
+        if (body == null) {
+            Channel parent = connection.channel().parent();
+            body = new Body(parent != null ? parent : connection.channel());
+            connection.inbound().receive().retain().subscribe(body);
+        }
+        return body;
+    }
+
+    @Override
+    public void close ()
+    {
+        if (body == null || !body.isComplete()) {
+            // Resets the stream, or closes the connection of an HTTP/1.1 exchange
+            connection.dispose();
+        }
+        if (body != null) {
+            body.close();
+        }
+    }
+
+    /**
+     * The chunks of the body handed over from the event loop to the reader.
+     */
+    private static final class Body extends InputStream implements CoreSubscriber<ByteBuf>
+    {
+        private static final Object COMPLETE = new Object();
+
+        /* Chunks, then COMPLETE or the error that ended the body */
+        private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+        private final Channel connection;
+        private volatile Subscription subscription;
+        private volatile boolean closed;
+        private ByteBuf current;
+        private Object end; // COMPLETE or the error once taken from the queue
+
+        Body (Channel connection)
+        {
+            this.connection = connection;
+        }
+
+        @Override
+        public void onSubscribe (Subscription subscription)
+        {
+            this.subscription = subscription;
+            request(2);
+        }
+
+        @Override
+        public void onNext (ByteBuf chunk)
+        {
+            queue.add(chunk);
+            if (closed) {
+                drain();
+            }
+        }
+
+        @Override
+        public void onError (Throwable error)
+        {
+            queue.add(error);
+        }
+
+        @Override
+        public void onComplete ()
+        {
+            queue.add(COMPLETE);
+        }
+
+        private void request (int chunks)
+        {
+            // Reading the next frames of a stream outside of a read of its connection writes
+            // their WINDOW_UPDATE without flushing it, which would leave the server waiting once
+            // it used up the window, so they are read and flushed on the event loop at once
+            connection.eventLoop().execute(() -> {
+                subscription.request(chunks);
+                connection.flush();
+            });
+        }
+
+        boolean isComplete ()
+        {
+            return end == COMPLETE;
+        }
+
+        @Override
+        public int read () throws IOException
+        {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read (byte[] bytes, int offset, int length) throws IOException
+        {
+            if (length == 0) {
+                return 0;
+            }
+            while (current == null || !current.isReadable()) {
+                if (current != null) {
+                    current.release();
+                    current = null;
+                    request(1);
+                }
+                if (end == null) {
+                    Object next = take();
+                    if (next instanceof ByteBuf chunk) {
+                        current = chunk;
+                        continue;
+                    }
+                    end = next;
+                }
+                if (end == COMPLETE) {
+                    return -1;
+                }
+                Throwable error = (Throwable) end;
+                throw error instanceof IOException e ? e
+                    : new IOException("Backend response body failed: " + error.getMessage(), error);
+            }
+            int count = Math.min(length, current.readableBytes());
+            current.readBytes(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available ()
+        {
+            return current != null ? current.readableBytes() : 0;
+        }
+
+        @Override
+        public void close ()
+        {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (current != null) {
+                current.release();
+                current = null;
+            }
+            if (end == null && subscription != null) {
+                subscription.cancel();
+            }
+            drain();
+        }
+
+        private Object take () throws IOException
+        {
+            if (closed) {
+                throw new IOException("Response body already closed");
+            }
+            try {
+                return queue.take();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted reading the response body");
+            }
+        }
+
+        private void drain ()
+        {
+            Object next;
+            while ((next = queue.poll()) != null) {
+                if (next instanceof ByteBuf chunk) {
+                    chunk.release();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.simple.loadbalancer.client;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResponseErrorHandler;
+import org.springframework.web.client.ResponseExtractor;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.DefaultUriBuilderFactory;
+
+/**
+ * {@link BackendClient} backed by Apache HttpClient with a keep-alive connection pool per backend
+ * server.
+ *
+ * <p>Each server gets at most {@code maxConnectionsPerServer} connections. A request that finds
+ * all of them busy waits up to {@code acquireTimeout} for one to be released; once
+ * {@code maxPendingAcquires} requests are already waiting for the same server, further requests
+ * are refused straight away with a {@link BackendSaturatedException}. Idle connections are closed
+ * after {@code idleEviction}.
+ *
+ * <p>Waiting happens on a per-server {@link Semaphore} holding one permit per connection rather
+ * than inside the connection pool, whose lease holds a monitor while it waits. A request only
+ * leases a connection once it holds a permit, so the lease never blocks and a virtual thread
+ * waiting for a connection does not pin its carrier thread.
+ *
+ * <p>The client never follows redirects, never decompresses bodies and keeps no cookies, so that
+ * backend responses reach the caller exactly as they were sent.
+ */
+public class PooledBackendClient implements BackendClient, DisposableBean
+{
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    /* Throws on backend error statuses, used for buffered exchanges */
+    private final RestTemplate restTemplate;
+    /* Relays every backend status to the response extractor, used for streaming */
+    private final RestTemplate streamingRestTemplate;
+    private final int maxConnectionsPerServer;
+    private final int maxPendingAcquires;
+    private final long acquireTimeoutNanos;
+    /* Pool key of every server seen so far, so that URLs are only parsed once */
+    private final Map<String, HttpRoute> routes = new ConcurrentHashMap<>();
+    /* One permit per connection a server may have, taken for the duration of a request */
+    private final Map<String, Semaphore> permits = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxConnectionsPerServer maximum number of connections kept to a single server
+     * @param maxConnectionsTotal     maximum number of connections across all servers
+     * @param maxPendingAcquires      maximum number of requests waiting for a connection to a
+     *                                single server, a negative value means no limit
+     * @param connectTimeout          timeout for establishing a connection
+     * @param readTimeout             timeout for waiting on data from the backend
+     * @param acquireTimeout          timeout for obtaining a connection from the pool
+     * @param idleEviction            time after which idle connections are closed
+     */
+    public PooledBackendClient (int maxConnectionsPerServer,
+                                int maxConnectionsTotal,
+                                int maxPendingAcquires,
+                                Duration connectTimeout,
+                                Duration readTimeout,
+                                Duration acquireTimeout,
+                                Duration idleEviction)
+    {
+        this.maxConnectionsPerServer = maxConnectionsPerServer;
+        this.maxPendingAcquires = maxPendingAcquires;
+        this.acquireTimeoutNanos = acquireTimeout.toNanos();
+        this.connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+            .setMaxConnPerRoute(maxConnectionsPerServer)
+            .setMaxConnTotal(maxConnectionsTotal)
+            .setDefaultConnectionConfig(ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.of(connectTimeout))
+                .setSocketTimeout(Timeout.of(readTimeout))
+                .build())
+            .build();
+        this.httpClient = HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            .setDefaultRequestConfig(RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.of(acquireTimeout))
+                .setResponseTimeout(Timeout.of(readTimeout))
+                .build())
+            .evictIdleConnections(TimeValue.of(idleEviction))
+            .evictExpiredConnections()
+            .disableRedirectHandling()
+            .disableContentCompression()
+            .disableCookieManagement()
+            .disableAutomaticRetries()
+            .build();
+
+        HttpComponentsClientHttpRequestFactory requestFactory =
+            new HttpComponentsClientHttpRequestFactory(httpClient);
+        requestFactory.setBufferRequestBody(false);
+        this.restTemplate = new RestTemplate(requestFactory);
+        this.restTemplate.setUriTemplateHandler(encodedUrls());
+        this.streamingRestTemplate = new RestTemplate(requestFactory);
+        this.streamingRestTemplate.setUriTemplateHandler(encodedUrls());
+        this.streamingRestTemplate.setErrorHandler(new ResponseErrorHandler()
+        {
+            @Override
+            public boolean hasError (ClientHttpResponse response)
+            {
+                return false; // Backend error statuses are relayed to the client as they are
+            }
+
+            @Override
+            public void handleError (ClientHttpResponse response)
+            {
+            }
+        });
+    }
+
+    @Override
+    public ResponseEntity<String> exchange (String server, String url, HttpMethod method,
+                                            HttpEntity<?> request)
+    {
+        Semaphore connectionPermits = acquire(server);
+        try {
+            return restTemplate.exchange(url, method, request, String.class);
+        }
+        finally {
+            connectionPermits.release();
+        }
+    }
+
+    @Override
+    public <T> T execute (String server, String url, HttpMethod method,
+                          RequestCallback requestCallback, ResponseExtractor<T> responseExtractor)
+    {
+        Semaphore connectionPermits = acquire(server);
+        try {
+            return streamingRestTemplate.execute(url, method, requestCallback, responseExtractor);
+        }
+        finally {
+            connectionPermits.release();
+        }
+    }
+
+    @Override
+    public BackendPoolStats getPoolStats (String server)
+    {
+        PoolStats stats = connectionManager.getStats(route(server));
+        return new BackendPoolStats(stats.getLeased(), permits(server).getQueueLength(),
+            stats.getAvailable(), stats.getMax());
+    }
+
+    @Override
+    public void release (String server)
+    {
+        permits.remove(server);
+        routes.remove(server);
+    }
+
+    /**
+     * Sends URLs as they are given, already encoded as the client sent them, rather than
+     * encoding them again as URI templates would be.
+     */
+    static DefaultUriBuilderFactory encodedUrls ()
+    {
+        DefaultUriBuilderFactory uriFactory = new DefaultUriBuilderFactory();
+        uriFactory.setEncodingMode(DefaultUriBuilderFactory.EncodingMode.NONE);
+        return uriFactory;
+    }
+
+    private Semaphore acquire (String server)
+    {
+        Semaphore connectionPermits = permits(server);
+        if (maxPendingAcquires >= 0 && connectionPermits.availablePermits() == 0
+            && connectionPermits.getQueueLength() >= maxPendingAcquires) {
+            throw new BackendSaturatedException("Connection pool of " + server + " is saturated: "
+                + connectionPermits.getQueueLength() + " requests already waiting");
+        }
+        try {
+            if (!connectionPermits.tryAcquire(acquireTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                throw new BackendSaturatedException("Timed out waiting for a connection to " + server);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BackendSaturatedException("Interrupted waiting for a connection to " + server);
+        }
+        return connectionPermits;
+    }
+
+    private Semaphore permits (String server)
+    {
+        return permits.computeIfAbsent(server, key -> new Semaphore(maxConnectionsPerServer));
+    }
+
+    private HttpRoute route (String server)
+    {
+        return routes.computeIfAbsent(server, PooledBackendClient::createRoute);
+    }
+
+    private static HttpRoute createRoute (String server)
+    {
+        URI uri = URI.create(server);
+        boolean secure = "https".equalsIgnoreCase(uri.getScheme());
+        int port = uri.getPort() != -1 ? uri.getPort() : (secure ? 443 : 80);
+        // Same key as the one the client's route planner builds for a direct connection
+        return new HttpRoute(new HttpHost(uri.getScheme(), uri.getHost(), port), null, secure);
+    }
+
+    @Override
+    public void destroy () throws IOException
+    {
+        httpClient.close();
+    }
+}
@@ -0,0 +1,283 @@
+package com.simple.loadbalancer.client;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * Request body written by a blocking thread through an {@link OutputStream} and sent by Netty as
+ * it subscribes to it.
+ *
+ * <p>Bytes are gathered into chunks of {@code chunkSize} bytes, and a chunk is only handed to
+ * Netty once it asked for one, so the writer blocks rather than buffers while the connection or
+ * the stream flow control window is full. Closing the stream ends the body. The writer fails with
+ * an {@link IOException} once Netty cancels the body or the exchange is {@link #abort aborted},
+ * e.g. because the connection was refused, so it never waits for a subscriber that never comes.
+ */
+final class RequestBodyPublisher extends OutputStream implements Publisher<ByteBuf>, Subscription
+{
+    private final ByteBufAllocator allocator;
+    private final int chunkSize;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private Subscriber<? super ByteBuf> subscriber;
+    private boolean subscribed; // Whether the subscriber has its subscription and may be signalled
+    private long demand;
+    private Throwable aborted; // Why the body cannot be sent, null while it can
+    private boolean cancelled; // Whether the subscriber cancelled the body
+    private ByteBuf chunk; // Bytes written and not handed over yet, only used by the writer
+    private boolean closed;
+    private boolean terminated; // Whether the subscriber got onComplete or onError
+    private Executor signalExecutor = Runnable::run;
+
+    RequestBodyPublisher (ByteBufAllocator allocator, int chunkSize)
+    {
+        this.allocator = allocator;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Signals the subscriber on an executor rather than on the writer thread, e.g. on the event
+     * loop of the connection. Call it before the subscription.
+     */
+    void signalOn (Executor executor)
+    {
+        signalExecutor = executor;
+    }
+
+    @Override
+    public void subscribe (Subscriber<? super ByteBuf> subscriber)
+    {
+        lock.lock();
+        try {
+            if (this.subscriber != null) {
+                subscriber.onSubscribe(this);
+                subscriber.onError(new IllegalStateException("Request body already sent"));
+                return;
+            }
+            this.subscriber = subscriber;
+        }
+        finally {
+            lock.unlock();
+        }
+        subscriber.onSubscribe(this);
+        lock.lock();
+        try {
+            subscribed = true;
+            changed.signalAll();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void request (long n)
+    {
+        lock.lock();
+        try {
+            demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+            changed.signalAll();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void cancel ()
+    {
+        lock.lock();
+        try {
+            cancelled = true;
+        }
+        finally {
+            lock.unlock();
+        }
+        abort(new IOException("Request body cancelled by the backend connection"));
+    }
+
+    /**
+     * Whether Netty cancelled the body, e.g. because the server responded before reading it all.
+     */
+    boolean isCancelled ()
+    {
+        lock.lock();
+        try {
+            return cancelled;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Makes the writer fail, e.g. because the exchange failed before the body was sent.
+     */
+    void abort (Throwable cause)
+    {
+        lock.lock();
+        try {
+            if (aborted == null) {
+                aborted = cause;
+            }
+            changed.signalAll();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void write (int b) throws IOException
+    {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write (byte[] bytes, int offset, int length) throws IOException
+    {
+        if (closed) {
+            throw new IOException("Request body already closed");
+        }
+        while (length > 0) {
+            if (chunk == null) {
+                chunk = allocator.buffer(chunkSize, chunkSize);
+            }
+            int count = Math.min(length, chunk.writableBytes());
+            chunk.writeBytes(bytes, offset, count);
+            offset += count;
+            length -= count;
+            if (!chunk.isWritable()) {
+                emit();
+            }
+        }
+    }
+
+    @Override
+    public void flush () throws IOException
+    {
+        if (chunk != null && chunk.isReadable()) {
+            emit();
+        }
+    }
+
+    /**
+     * Sends what is left and ends the body.
+     */
+    @Override
+    public void close () throws IOException
+    {
+        if (closed) {
+            return;
+        }
+        flush();
+        closed = true;
+        if (chunk != null) {
+            chunk.release();
+            chunk = null;
+        }
+        awaitDemand(0);
+        terminated = true;
+        signal(subscriber::onComplete);
+    }
+
+    /**
+     * Ends the body with an error, for a writer that cannot finish it, so that the partial body
+     * is reset rather than sent as if it were complete.
+     */
+    void fail (Throwable cause)
+    {
+        abort(cause);
+        closed = true;
+        if (chunk != null) {
+            chunk.release();
+            chunk = null;
+        }
+        boolean signal;
+        lock.lock();
+        try {
+            signal = subscribed && !terminated && !cancelled;
+        }
+        finally {
+            lock.unlock();
+        }
+        if (signal) {
+            terminated = true;
+            try {
+                signal(() -> subscriber.onError(cause));
+            }
+            catch (IOException e) {
+                // The connection is gone along with the subscriber
+            }
+        }
+    }
+
+    private void emit () throws IOException
+    {
+        ByteBuf next = chunk;
+        chunk = null;
+        try {
+            awaitDemand(1);
+        }
+        catch (IOException e) {
+            next.release();
+            throw e;
+        }
+        try {
+            signal(() -> subscriber.onNext(next));
+        }
+        catch (IOException e) {
+            next.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Signals the subscriber in the order of the calls, as only the writer thread calls it.
+     */
+    private void signal (Runnable signal) throws IOException
+    {
+        try {
+            signalExecutor.execute(signal);
+        }
+        catch (RejectedExecutionException e) {
+            throw new IOException("Backend connection closed", e);
+        }
+    }
+
+    /**
+     * Waits for a subscriber asking for at least {@code count} more chunks, and takes them.
+     */
+    private void awaitDemand (int count) throws IOException
+    {
+        lock.lock();
+        try {
+            while (aborted == null && (!subscribed || demand < count)) {
+                changed.await();
+            }
+            if (aborted != null) {
+                throw aborted instanceof IOException e ? e
+                    : new IOException("Request body not sent: " + aborted.getMessage(), aborted);
+            }
+            demand -= count;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted sending the request body");
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+}
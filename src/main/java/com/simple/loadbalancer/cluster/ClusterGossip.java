@@ -0,0 +1,228 @@
+package com.simple.loadbalancer.cluster;
+
+import com.simple.loadbalancer.observability.LogSampler;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+
+/**
+ * Exchanges {@link LoadDigest load digests} with the other load balancers of a cluster over UDP.
+ *
+ * <p>Every {@code loadbalancer.cluster.interval} the {@link ClusterState} merges what the peers
+ * reported, then the state of the next servers of this instance is sent to every peer in at most
+ * {@code maxPackets} datagrams of at most {@link LoadDigest#MAX_SIZE} bytes. The traffic to a
+ * peer is therefore bounded by {@code maxPackets * MAX_SIZE} per round whatever the number of
+ * servers: with more servers than fit, successive rounds go round them, and every server is
+ * reported once every {@code servers / (maxPackets * MAX_ENTRIES)} rounds. Digests are received
+ * on a thread of their own.
+ *
+ * <p>Peers are named as {@code host:port} and resolved every round, so a name may follow the
+ * instances behind it. Datagrams are only taken from the addresses the peers resolved to in the
+ * last round, and the others dropped, so that a host outside the cluster cannot pose as many
+ * instances and outvote the local health checks. The list may include this instance itself:
+ * every instance sends a random id with its digests and ignores its own. Lost datagrams need no
+ * handling, as the next round sends newer state anyway.
+ */
+public class ClusterGossip implements AutoCloseable
+{
+    private static final Logger log = LoggerFactory.getLogger(ClusterGossip.class);
+
+    private final ClusterState clusterState;
+    private final DatagramChannel channel;
+    private final List<String> peers;
+    private final int maxPackets; // Datagrams sent to every peer per round
+    private final long instanceId = ThreadLocalRandom.current().nextLong();
+    private final ByteBuffer sendBuffer = ByteBuffer.allocate(LoadDigest.MAX_SIZE);
+    private final LogSampler errorLog = new LogSampler(Duration.ofSeconds(10));
+    /* Addresses the peers resolved to in the last round, the only ones digests are taken from */
+    private volatile Set<SocketAddress> peerAddresses;
+    private final Thread receiver;
+
+    /**
+     * @param clusterState the state gossiped and merged
+     * @param bind         the address digests are received on
+     * @param peers        the other instances, as {@code host:port}
+     * @param maxPackets   datagrams sent to every peer per round
+     * @throws UncheckedIOException if the address cannot be bound
+     */
+    public ClusterGossip (ClusterState clusterState, InetSocketAddress bind, List<String> peers,
+                          int maxPackets)
+    {
+        this(clusterState, open(bind), peers, maxPackets);
+    }
+
+    /**
+     * @param channel a channel bound to the address digests are received on
+     * @throws IllegalArgumentException if a peer is not {@code host:port} or the datagram count
+     *                                  is not positive
+     */
+    public ClusterGossip (ClusterState clusterState, DatagramChannel channel, List<String> peers,
+                          int maxPackets)
+    {
+        if (maxPackets < 1) {
+            throw new IllegalArgumentException("Datagrams per round must be positive");
+        }
+        for (String peer : peers) {
+            parse(peer);
+        }
+        this.clusterState = clusterState;
+        this.channel = channel;
+        this.peers = List.copyOf(peers);
+        this.maxPackets = maxPackets;
+        this.peerAddresses = Set.copyOf(resolvePeers());
+        this.receiver = Thread.ofPlatform().name("cluster-gossip").daemon().start(this::receive);
+    }
+
+    /**
+     * Merges what the peers reported, then sends them the next state of this instance. Also sends
+     * an empty digest without servers, so that peers know the instance is alive.
+     */
+    @Scheduled(fixedDelayString = "${loadbalancer.cluster.interval:200}")
+    public synchronized void gossip ()
+    {
+        clusterState.merge();
+        List<SocketAddress> targets = resolvePeers();
+        peerAddresses = Set.copyOf(targets);
+        if (targets.isEmpty()) {
+            return;
+        }
+        List<LoadDigest.Entry> entries =
+            clusterState.nextEntries(maxPackets * LoadDigest.MAX_ENTRIES);
+        int from = 0;
+        do {
+            int to = Math.min(entries.size(), from + LoadDigest.MAX_ENTRIES);
+            sendBuffer.clear();
+            new LoadDigest(instanceId, entries.subList(from, to)).encode(sendBuffer);
+            sendBuffer.flip();
+            for (SocketAddress target : targets) {
+                try {
+                    channel.send(sendBuffer.rewind(), target);
+                }
+                catch (IOException e) {
+                    logError("Cannot send load digest to " + target + ": " + e.getMessage());
+                }
+            }
+            from = to;
+        }
+        while (from < entries.size());
+    }
+
+    /**
+     * @return the port digests are received on
+     */
+    public int getPort ()
+    {
+        try {
+            return ((InetSocketAddress) channel.getLocalAddress()).getPort();
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Stops gossiping: the peers forget this instance after their expiry.
+     */
+    @Override
+    public void close () throws IOException
+    {
+        channel.close();
+        try {
+            receiver.join(Duration.ofSeconds(1));
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void receive ()
+    {
+        // One byte more than a digest, so that a larger datagram is not cut down to a valid one
+        ByteBuffer buffer = ByteBuffer.allocate(LoadDigest.MAX_SIZE + 1);
+        while (channel.isOpen()) {
+            try {
+                buffer.clear();
+                SocketAddress sender = channel.receive(buffer);
+                if (!peerAddresses.contains(sender)) {
+                    logError("Datagram from " + sender + " dropped, not a cluster peer");
+                    continue;
+                }
+                try {
+                    LoadDigest digest = LoadDigest.decode(buffer.flip());
+                    if (digest.sender() != instanceId && !clusterState.receive(digest)) {
+                        logError("Load digest from " + sender + " ignored, more than "
+                            + ClusterState.MAX_PEERS + " peers");
+                    }
+                }
+                catch (IllegalArgumentException e) {
+                    logError("Invalid datagram from " + sender + ": " + e.getMessage());
+                }
+            }
+            catch (ClosedChannelException e) {
+                return;
+            }
+            catch (IOException e) {
+                logError("Cannot receive load digests: " + e.getMessage());
+            }
+        }
+    }
+
+    private List<SocketAddress> resolvePeers ()
+    {
+        List<SocketAddress> addresses = new ArrayList<>(peers.size());
+        for (String peer : peers) {
+            InetSocketAddress address = parse(peer);
+            if (address.isUnresolved()) {
+                logError("Cluster peer " + peer + " cannot be resolved");
+            }
+            else {
+                addresses.add(address);
+            }
+        }
+        return addresses;
+    }
+
+    private void logError (String message)
+    {
+        long suppressed = errorLog.sample();
+        if (suppressed >= 0) {
+            log.warn("{} ({} similar messages suppressed).", message, suppressed);
+        }
+    }
+
+    private static InetSocketAddress parse (String peer)
+    {
+        int colon = peer.lastIndexOf(':');
+        try {
+            return new InetSocketAddress(peer.substring(0, colon).trim(),
+                Integer.parseInt(peer.substring(colon + 1).trim()));
+        }
+        catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cluster peer, expected host:port: " + peer);
+        }
+    }
+
+    private static DatagramChannel open (InetSocketAddress bind)
+    {
+        try {
+            return DatagramChannel.open().bind(bind);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Cannot bind the cluster port " + bind, e);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.simple.loadbalancer.cluster;
+
+import com.simple.loadbalancer.service.AffinityKey;
+import com.simple.loadbalancer.status.Backend;
+import com.simple.loadbalancer.status.HealthChecker;
+import com.simple.loadbalancer.status.LatencyTracker;
+import com.simple.loadbalancer.status.ServerLoadChecker;
+import com.simple.loadbalancer.status.ServerRegistry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * The view of the backend servers shared by the load balancers of a cluster: what this instance
+ * tells the others, and the merge of what they tell it.
+ *
+ * <p>Every instance reports, for each of its servers, the requests it has in flight, the moving
+ * average latency it measures and whether its own health checks find the server down. The
+ * reports of the other instances are {@link #receive(LoadDigest) received} as they arrive and
+ * {@link #merge() merged} once per gossip round into the structures the strategies read:
+ * <ul>
+ *     <li>the sum of their requests in flight becomes the
+ *     {@link ServerLoadChecker#getPeerLoad(int) peer load} of the server,</li>
+ *     <li>the highest of their latencies becomes its
+ *     {@link LatencyTracker#setPeerLatency(int, double) peer latency},</li>
+ *     <li>a server is {@link #isDownInCluster(Backend) down in the cluster} when most instances,
+ *     this one counted as finding it up, find it down.</li>
+ * </ul>
+ * Selection therefore reads the merged view at no extra cost. A report older than
+ * {@code expiry}, and an instance silent for as long, is forgotten, so a stopped instance stops
+ * counting. At most {@link #MAX_PEERS} other instances and {@code capacity} servers per instance
+ * are tracked, whatever they send.
+ *
+ * <p>{@link #DISABLED} is the state of a load balancer without peers.
+ */
+public class ClusterState
+{
+    /* The state of a load balancer on its own */
+    public static final ClusterState DISABLED = new ClusterState(null, null, null, null, 0,
+        Duration.ZERO);
+
+    /* Most other instances tracked */
+    public static final int MAX_PEERS = 64;
+
+    private final ServerRegistry serverRegistry;
+    private final ServerLoadChecker serverLoadChecker;
+    private final LatencyTracker latencyTracker;
+    private final HealthChecker healthChecker;
+    private final int capacity; // Highest server id plus one, and most servers per instance
+    private final long expiry;
+    private final LongSupplier clock; // Source of nanosecond timestamps
+    /* Last reports of every other instance, by instance id */
+    private final Map<Long, Peer> peers = new ConcurrentHashMap<>();
+    /* Whether most instances find a server down, by server id, replaced by every merge */
+    private volatile boolean[] downInCluster = new boolean[0];
+    /* Position in the server list of the next server to report */
+    private int cursor;
+
+    /**
+     * @param serverRegistry    the servers to report and merge the reports of
+     * @param serverLoadChecker the local requests in flight, and where the peer loads go
+     * @param latencyTracker    the local latencies, and where the peer latencies go
+     * @param healthChecker     the local health of the servers
+     * @param capacity          highest server id plus one
+     * @param expiry            time after which a report is forgotten
+     */
+    public ClusterState (ServerRegistry serverRegistry, ServerLoadChecker serverLoadChecker,
+                         LatencyTracker latencyTracker, HealthChecker healthChecker, int capacity,
+                         Duration expiry)
+    {
+        this(serverRegistry, serverLoadChecker, latencyTracker, healthChecker, capacity, expiry,
+            System::nanoTime);
+    }
+
+    public ClusterState (ServerRegistry serverRegistry, ServerLoadChecker serverLoadChecker,
+                         LatencyTracker latencyTracker, HealthChecker healthChecker, int capacity,
+                         Duration expiry, LongSupplier clock)
+    {
+        this.serverRegistry = serverRegistry;
+        this.serverLoadChecker = serverLoadChecker;
+        this.latencyTracker = latencyTracker;
+        this.healthChecker = healthChecker;
+        this.capacity = capacity;
+        this.expiry = expiry.toNanos();
+        this.clock = clock;
+    }
+
+    public boolean isEnabled ()
+    {
+        return serverRegistry != null;
+    }
+
+    /**
+     * @return the 64 bit hash a server is named by in digests
+     */
+    public static long hash (Backend server)
+    {
+        String url = server.getUrl();
+        return AffinityKey.hash(url, 0, url.length());
+    }
+
+    /**
+     * Reports the state of the next servers, going round all servers over successive calls so
+     * that every server is reported even when there are more than fit in one round.
+     *
+     * @param max the most servers to report
+     * @return the state of at most {@code max} servers, none of them twice
+     */
+    public synchronized List<LoadDigest.Entry> nextEntries (int max)
+    {
+        List<Backend> servers = serverRegistry.getAll();
+        int count = Math.min(max, servers.size());
+        List<LoadDigest.Entry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Backend server = servers.get((cursor + i) % servers.size());
+            int id = server.getId();
+            entries.add(new LoadDigest.Entry(hash(server), serverLoadChecker.getCurrentLoad(id),
+                TimeUnit.NANOSECONDS.toMicros((long) latencyTracker.getLocalLatency(id)),
+                !healthChecker.isUp(server)));
+        }
+        cursor = servers.isEmpty() ? 0 : (cursor + count) % servers.size();
+        return entries;
+    }
+
+    /**
+     * Records the reports of another instance.
+     *
+     * @return whether the digest was kept, which it is not from an instance beyond the
+     * {@link #MAX_PEERS} tracked
+     */
+    public boolean receive (LoadDigest digest)
+    {
+        long now = clock.getAsLong();
+        Peer peer = peers.get(digest.sender());
+        if (peer == null) {
+            if (peers.size() >= MAX_PEERS) {
+                return false;
+            }
+            peer = peers.computeIfAbsent(digest.sender(), sender -> new Peer());
+        }
+        peer.lastSeen = now;
+        for (LoadDigest.Entry entry : digest.entries()) {
+            if (peer.reports.size() < capacity || peer.reports.containsKey(entry.server())) {
+                peer.reports.put(entry.server(), new Report(entry, now));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Forgets the expired reports and applies the others to the peer loads, the peer latencies
+     * and the cluster health of the servers.
+     */
+    public void merge ()
+    {
+        long now = clock.getAsLong();
+        peers.values().removeIf(peer -> now - peer.lastSeen > expiry);
+        for (Peer peer : peers.values()) {
+            peer.reports.values().removeIf(report -> now - report.receivedAt() > expiry);
+        }
+
+        boolean[] down = new boolean[capacity];
+        for (Backend server : serverRegistry.getAll()) {
+            long hash = hash(server);
+            long load = 0;
+            long latencyMicros = 0;
+            int reports = 0;
+            int downReports = 0;
+            for (Peer peer : peers.values()) {
+                Report report = peer.reports.get(hash);
+                if (report != null) {
+                    LoadDigest.Entry entry = report.entry();
+                    load += entry.load();
+                    latencyMicros = Math.max(latencyMicros, entry.latencyMicros());
+                    reports++;
+                    downReports += entry.down() ? 1 : 0;
+                }
+            }
+            int id = server.getId();
+            serverLoadChecker.setPeerLoad(id, (int) Math.min(load, Integer.MAX_VALUE));
+            latencyTracker.setPeerLatency(id, TimeUnit.MICROSECONDS.toNanos(latencyMicros));
+            // This instance counts as finding it up: a tie keeps the server
+            down[id] = downReports * 2 > reports + 1;
+        }
+        downInCluster = down;
+    }
+
+    /**
+     * @return whether most instances of the cluster find a server down, as of the last merge
+     */
+    public boolean isDownInCluster (Backend server)
+    {
+        boolean[] down = downInCluster;
+        return server.getId() < down.length && down[server.getId()];
+    }
+
+    /**
+     * @return the other instances heard from within the expiry
+     */
+    public int getPeerCount ()
+    {
+        return peers.size();
+    }
+
+    private static final class Peer
+    {
+        private volatile long lastSeen;
+        /* Last report on every server, by server hash */
+        private final Map<Long, Report> reports = new ConcurrentHashMap<>();
+    }
+
+    private record Report(LoadDigest.Entry entry, long receivedAt)
+    {
+    }
+}
@@ -0,0 +1,101 @@
+package com.simple.loadbalancer.cluster;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The state of some backend servers as seen by one load balancer, in the binary form it is
+ * gossiped in. One digest is one UDP datagram:
+ * <pre>
+ *     magic    2 bytes  'L' 'B'
+ *     version  1 byte   1
+ *     sender   8 bytes  random id of the sending instance
+ *     count    2 bytes  number of entries
+ *     entries  15 bytes each:
+ *         server   8 bytes  64 bit hash of the server URL
+ *         load     2 bytes  requests in flight, unsigned, saturated at 65535
+ *         latency  4 bytes  moving average latency in microseconds, unsigned, saturated
+ *         flags    1 byte   bit 0 set if the sender finds the server down
+ * </pre>
+ * Servers are named by the hash of their URL rather than by their id, as every instance numbers
+ * its servers in the order it learned about them. A datagram of {@link #MAX_SIZE} bytes, below
+ * the usual Ethernet MTU so that it is never fragmented, holds {@link #MAX_ENTRIES} servers.
+ *
+ * @param sender  the random id of the sending instance
+ * @param entries the state of the servers
+ */
+public record LoadDigest(long sender, List<Entry> entries)
+{
+    /* Largest datagram */
+    public static final int MAX_SIZE = 1400;
+
+    private static final short MAGIC = 0x4c42;
+    private static final byte VERSION = 1;
+    private static final int HEADER_SIZE = 13;
+    private static final int ENTRY_SIZE = 15;
+    private static final int DOWN = 1;
+
+    /* Entries that fit in one datagram */
+    public static final int MAX_ENTRIES = (MAX_SIZE - HEADER_SIZE) / ENTRY_SIZE;
+
+    /**
+     * The state of one server.
+     *
+     * @param server        the 64 bit hash of the server URL
+     * @param load          the requests the sender has in flight on the server
+     * @param latencyMicros the moving average latency the sender measures, 0 if unknown
+     * @param down          whether the health checks of the sender find the server down
+     */
+    public record Entry(long server, int load, long latencyMicros, boolean down)
+    {
+    }
+
+    /**
+     * Writes the digest at the position of a buffer.
+     *
+     * @throws IllegalArgumentException if there are more than {@link #MAX_ENTRIES} entries
+     */
+    public void encode (ByteBuffer buffer)
+    {
+        if (entries.size() > MAX_ENTRIES) {
+            throw new IllegalArgumentException("At most " + MAX_ENTRIES + " servers per digest");
+        }
+        buffer.putShort(MAGIC).put(VERSION).putLong(sender).putShort((short) entries.size());
+        for (Entry entry : entries) {
+            buffer.putLong(entry.server())
+                .putShort((short) Math.min(entry.load(), 0xffff))
+                .putInt((int) Math.min(entry.latencyMicros(), 0xffffffffL))
+                .put((byte) (entry.down() ? DOWN : 0));
+        }
+    }
+
+    /**
+     * Reads a digest from the remaining bytes of a buffer.
+     *
+     * @throws IllegalArgumentException if the bytes are not a digest of this version
+     */
+    public static LoadDigest decode (ByteBuffer buffer)
+    {
+        try {
+            if (buffer.getShort() != MAGIC || buffer.get() != VERSION) {
+                throw new IllegalArgumentException("Not a load digest");
+            }
+            long sender = buffer.getLong();
+            int count = Short.toUnsignedInt(buffer.getShort());
+            if (buffer.remaining() != count * ENTRY_SIZE) {
+                throw new IllegalArgumentException("Truncated load digest");
+            }
+            List<Entry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                entries.add(new Entry(buffer.getLong(), Short.toUnsignedInt(buffer.getShort()),
+                    Integer.toUnsignedLong(buffer.getInt()), (buffer.get() & DOWN) != 0));
+            }
+            return new LoadDigest(sender, entries);
+        }
+        catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated load digest");
+        }
+    }
+}
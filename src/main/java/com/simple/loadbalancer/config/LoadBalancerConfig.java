@@ -1,42 +1,599 @@
 package com.simple.loadbalancer.config;
 
+import com.simple.loadbalancer.admission.AdmissionControl;
+import com.simple.loadbalancer.admission.AdmissionFilter;
+import com.simple.loadbalancer.admission.AdmissionQueue;
+import com.simple.loadbalancer.admission.RateLimiter;
+import com.simple.loadbalancer.admission.ReactiveAdmissionFilter;
+import com.simple.loadbalancer.client.BackendClient;
+import com.simple.loadbalancer.client.MultiplexedBackendClient;
+import com.simple.loadbalancer.client.PooledBackendClient;
+import com.simple.loadbalancer.cluster.ClusterGossip;
+import com.simple.loadbalancer.cluster.ClusterState;
+import com.simple.loadbalancer.controller.LoadBalancerController;
+import com.simple.loadbalancer.discovery.DiscoverySource;
+import com.simple.loadbalancer.discovery.DnsDiscoverySource;
+import com.simple.loadbalancer.discovery.FileDiscoverySource;
+import com.simple.loadbalancer.discovery.ServiceDiscovery;
+import com.simple.loadbalancer.observability.LoadBalancerMetrics;
+import com.simple.loadbalancer.rewrite.RequestRewriter;
+import com.simple.loadbalancer.service.AffinityKey;
+import com.simple.loadbalancer.service.BufferPool;
+import com.simple.loadbalancer.service.ConsistentHashStrategy;
 import com.simple.loadbalancer.service.LeastConnectionsStrategy;
 import com.simple.loadbalancer.service.LoadBalancingStrategy;
 import com.simple.loadbalancer.service.NetflixChoiceOfTwoStrategy;
+import com.simple.loadbalancer.service.PeakEwmaStrategy;
 import com.simple.loadbalancer.service.RandomStrategy;
+import com.simple.loadbalancer.service.Resilience;
+import com.simple.loadbalancer.service.ResponseCache;
+import com.simple.loadbalancer.service.RetryPolicy;
 import com.simple.loadbalancer.service.RoundRobinStrategy;
+import com.simple.loadbalancer.service.SmoothWeightedRoundRobinStrategy;
+import com.simple.loadbalancer.service.ZoneAwareStrategy;
+import com.simple.loadbalancer.status.CircuitBreaker;
+import com.simple.loadbalancer.status.ConcurrencyLimiter;
+import com.simple.loadbalancer.status.HealthChecker;
+import com.simple.loadbalancer.status.LatencyTracker;
+import com.simple.loadbalancer.status.OutlierDetector;
 import com.simple.loadbalancer.status.ServerLoadChecker;
+import com.simple.loadbalancer.status.ServerRegistry;
 
-import java.util.HashMap;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.ChannelOption;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.ConcurrentTaskScheduler;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.WebFilter;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.Http2AllocationStrategy;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
 @Configuration
 public class LoadBalancerConfig
 {
+    /* Values of loadbalancer.strategy, aliases aside */
+    public static final List<String> STRATEGIES = List.of("round-robin", "weighted-round-robin",
+        "least-connections", "random", "choiceoftwostrategy", "peak-ewma", "consistent-hash");
 
     @Value("${loadbalancer.strategy}")
     private String strategy;
 
+    @Value("${loadbalancer.healthcheck.timeout:2s}")
+    private Duration healthCheckTimeout;
+
+    @Value("${loadbalancer.healthcheck.jitter:1s}")
+    private Duration healthCheckJitter;
+
+    @Value("${loadbalancer.healthcheck.rise:2}")
+    private int healthCheckRise;
+
+    @Value("${loadbalancer.healthcheck.fall:3}")
+    private int healthCheckFall;
+
+    @Value("${loadbalancer.outlier.consecutive-errors:5}")
+    private int outlierConsecutiveErrors;
+
+    @Value("${loadbalancer.outlier.error-rate:0.5}")
+    private double outlierErrorRate;
+
+    @Value("${loadbalancer.outlier.min-requests:20}")
+    private int outlierMinRequests;
+
+    @Value("${loadbalancer.outlier.window:10s}")
+    private Duration outlierWindow;
+
+    @Value("${loadbalancer.outlier.latency-factor:3}")
+    private double outlierLatencyFactor;
+
+    @Value("${loadbalancer.outlier.base-ejection:30s}")
+    private Duration outlierBaseEjection;
+
+    @Value("${loadbalancer.outlier.max-ejection:300s}")
+    private Duration outlierMaxEjection;
+
+    @Value("${loadbalancer.outlier.max-ejection-percent:10}")
+    private int outlierMaxEjectionPercent;
+
+    @Value("${loadbalancer.slow-call-threshold:5s}")
+    private Duration slowCallThreshold;
+
+    @Value("${loadbalancer.circuit.failure-threshold:5}")
+    private int circuitFailureThreshold;
+
+    @Value("${loadbalancer.circuit.open-duration:10s}")
+    private Duration circuitOpenDuration;
+
+    @Value("${loadbalancer.circuit.half-open-requests:3}")
+    private int circuitHalfOpenRequests;
+
+    @Value("${loadbalancer.limiter.min-limit:1}")
+    private int limiterMinLimit;
+
+    @Value("${loadbalancer.limiter.backoff-ratio:0.9}")
+    private double limiterBackoffRatio;
+
+    @Value("${loadbalancer.retry.max-retries:1}")
+    private int retryMaxRetries;
+
+    @Value("${loadbalancer.retry.budget-ratio:0.2}")
+    private double retryBudgetRatio;
+
+    @Value("${loadbalancer.retry.max-tokens:100}")
+    private int retryMaxTokens;
+
+    @Value("${loadbalancer.hedge.percentile:0}")
+    private double hedgePercentile;
+
+    @Value("${loadbalancer.hedge.min-samples:100}")
+    private long hedgeMinSamples;
+
+    @Value("${loadbalancer.cache.max-size:0}")
+    private DataSize cacheMaxSize;
+
+    @Value("${loadbalancer.cache.off-heap-threshold:64KB}")
+    private DataSize cacheOffHeapThreshold;
+
+    @Value("${loadbalancer.cache.stale-retention:5m}")
+    private Duration cacheStaleRetention;
+
+    @Value("${loadbalancer.admission.rate:0}")
+    private double admissionRate;
+
+    @Value("${loadbalancer.admission.burst:20}")
+    private int admissionBurst;
+
+    @Value("${loadbalancer.admission.key:ip}")
+    private String admissionKey;
+
+    @Value("${loadbalancer.admission.max-clients:1000000}")
+    private int admissionMaxClients;
+
+    @Value("${loadbalancer.admission.max-concurrent:0}")
+    private int admissionMaxConcurrent;
+
+    @Value("${loadbalancer.admission.max-queued:200}")
+    private int admissionMaxQueued;
+
+    @Value("${loadbalancer.admission.queue-timeout:500ms}")
+    private Duration admissionQueueTimeout;
+
+    @Value("${loadbalancer.admission.priority-header:}")
+    private String admissionPriorityHeader;
+
+    @Value("${loadbalancer.admission.deadline-header:}")
+    private String admissionDeadlineHeader;
+
+    @Value("${loadbalancer.peak-ewma.decay:10s}")
+    private Duration peakEwmaDecay;
+
+    @Value("${loadbalancer.hash.key:}")
+    private String hashKey;
+
+    @Value("${loadbalancer.hash.virtual-nodes:100}")
+    private int hashVirtualNodes;
+
+    @Value("${loadbalancer.hash.load-factor:1.25}")
+    private double hashLoadFactor;
+
+    @Value("${loadbalancer.proxy.buffer-size:16384}")
+    private int proxyBufferSize;
+
+    @Value("${loadbalancer.proxy.buffer-pool-size:256}")
+    private int proxyBufferPoolSize;
+
+    @Value("${loadbalancer.rewrite.rules:}")
+    private String rewriteRules;
+
+    @Value("${loadbalancer.rewrite.forwarded-headers:true}")
+    private boolean rewriteForwardedHeaders;
+
+    @Value("${loadbalancer.zone.local:}")
+    private String localZone;
+
+    @Value("${loadbalancer.zone.min-healthy:0.7}")
+    private double zoneMinHealthy;
+
+    @Value("${loadbalancer.zone.max-utilization:0.8}")
+    private double zoneMaxUtilization;
+
+    @Value("${loadbalancer.max-servers:1024}")
+    private int maxServers;
+
+    @Value("${loadbalancer.discovery.file:}")
+    private String discoveryFile;
+
+    @Value("${loadbalancer.discovery.dns:}")
+    private String discoveryDns;
+
+    @Value("${loadbalancer.discovery.drain-timeout:30s}")
+    private Duration drainTimeout;
+
+    @Value("${loadbalancer.cluster.port:0}")
+    private int clusterPort;
+
+    @Value("${loadbalancer.cluster.bind-address:127.0.0.1}")
+    private String clusterBindAddress;
+
+    @Value("${loadbalancer.cluster.peers:}")
+    private String clusterPeers;
+
+    @Value("${loadbalancer.cluster.max-packets:2}")
+    private int clusterMaxPackets;
+
+    @Value("${loadbalancer.cluster.expiry:3s}")
+    private Duration clusterExpiry;
+
+    @Value("${loadbalancer.metrics.enabled:true}")
+    private boolean metricsEnabled;
+
+    @Value("${loadbalancer.client.max-connections-per-server:50}")
+    private int maxConnectionsPerServer;
+
+    @Value("${loadbalancer.client.max-connections-total:1000}")
+    private int maxConnectionsTotal;
+
+    @Value("${loadbalancer.client.max-pending-acquires:100}")
+    private int maxPendingAcquires;
+
+    @Value("${loadbalancer.client.connect-timeout:2s}")
+    private Duration connectTimeout;
+
+    @Value("${loadbalancer.client.read-timeout:30s}")
+    private Duration readTimeout;
+
+    @Value("${loadbalancer.client.acquire-timeout:1s}")
+    private Duration acquireTimeout;
+
+    @Value("${loadbalancer.client.idle-eviction:30s}")
+    private Duration idleEviction;
+
+    @Value("${loadbalancer.client.protocol:http1}")
+    private String clientProtocol;
+
+    @Value("${loadbalancer.client.h2c.connections-per-server:2}")
+    private int h2cConnectionsPerServer;
+
+    @Value("${loadbalancer.client.h2c.max-concurrent-streams:100}")
+    private int h2cMaxConcurrentStreams;
+
     @Bean
     public LoadBalancingStrategy loadBalancingStrategy ()
+    {
+        if (localZone.isBlank()) {
+            return createStrategy();
+        }
+        // Separate instances, so that each keeps the lookup tables of its own servers
+        return new ZoneAwareStrategy(localZone.trim(), createStrategy(), createStrategy(),
+            serverLoadChecker(), zoneMinHealthy, zoneMaxUtilization);
+    }
+
+    private LoadBalancingStrategy createStrategy ()
     {
         return switch (strategy.toLowerCase()) {
-            case "round-robin" -> new RoundRobinStrategy();
-            case "least-connections" -> new LeastConnectionsStrategy();
-            case "random" -> new RandomStrategy();
+            case "round-robin" -> new RoundRobinStrategy(serverLoadChecker());
+            case "weighted-round-robin" -> new SmoothWeightedRoundRobinStrategy(serverLoadChecker());
+            case "least-connections", "least-outstanding-requests" ->
+                new LeastConnectionsStrategy(serverLoadChecker());
+            case "random" -> new RandomStrategy(serverLoadChecker());
             case "choiceoftwostrategy" -> new NetflixChoiceOfTwoStrategy(serverLoadChecker());
-            default ->
-                throw new IllegalArgumentException("Invalid load balancing strategy: " + strategy);
+            case "peak-ewma" -> new PeakEwmaStrategy(serverLoadChecker(), latencyTracker());
+            case "consistent-hash" ->
+                new ConsistentHashStrategy(serverLoadChecker(), hashVirtualNodes, hashLoadFactor);
+            default -> throw new IllegalArgumentException("Invalid load balancing strategy: "
+                + strategy + ", expected one of " + STRATEGIES);
         };
     }
 
     @Bean
     public ServerLoadChecker serverLoadChecker ()
     {
-        return new ServerLoadChecker(new HashMap<>());
+        // Every in-flight request holds one pooled connection, or one stream of a pooled h2c
+        // connection, so a server is saturated once its load reaches the per-server limit
+        return new ServerLoadChecker(maxServers, maxRequestsPerServer());
     }
-}
 
+    @Bean
+    public LatencyTracker latencyTracker ()
+    {
+        return new LatencyTracker(maxServers, peakEwmaDecay.toNanos());
+    }
+
+    @Bean
+    public ServerRegistry serverRegistry ()
+    {
+        // Lookup tables of the strategy are built before every snapshot is published
+        return new ServerRegistry(serverLoadChecker(), loadBalancingStrategy()::prepare);
+    }
+
+    @Bean
+    public ServiceDiscovery serviceDiscovery ()
+    {
+        List<DiscoverySource> sources = new ArrayList<>();
+        if (!discoveryFile.isBlank()) {
+            sources.add(new FileDiscoverySource(Path.of(discoveryFile.trim())));
+        }
+        for (String name : discoveryDns.split(",")) {
+            String[] parts = name.split(";zone=", 2);
+            if (!parts[0].isBlank()) {
+                sources.add(new DnsDiscoverySource(parts[0].trim(),
+                    parts.length > 1 && !parts[1].isBlank() ? parts[1].trim() : null));
+            }
+        }
+        return new ServiceDiscovery(sources, serverRegistry(), serverLoadChecker(), drainTimeout);
+    }
+
+    @Bean
+    public HealthChecker healthChecker ()
+    {
+        return new HealthChecker(maxServers, healthCheckTimeout, healthCheckJitter, healthCheckRise,
+            healthCheckFall);
+    }
+
+    @Bean
+    public OutlierDetector outlierDetector ()
+    {
+        return new OutlierDetector(maxServers, serverRegistry(), latencyTracker(),
+            new OutlierDetector.Thresholds(outlierConsecutiveErrors, outlierErrorRate,
+                outlierMinRequests, outlierWindow, outlierLatencyFactor, outlierBaseEjection,
+                outlierMaxEjection, outlierMaxEjectionPercent));
+    }
+
+    @Bean
+    public CircuitBreaker circuitBreaker ()
+    {
+        return new CircuitBreaker(maxServers, serverRegistry(), serverLoadChecker(),
+            circuitFailureThreshold, circuitOpenDuration.toNanos(), circuitHalfOpenRequests,
+            slowCallThreshold.toNanos());
+    }
+
+    @Bean
+    public ConcurrencyLimiter concurrencyLimiter ()
+    {
+        // Starts at, and never goes above, the size of the connection pool of a server
+        return new ConcurrencyLimiter(maxServers, serverLoadChecker(), limiterMinLimit,
+            maxRequestsPerServer(), slowCallThreshold.toNanos(), limiterBackoffRatio);
+    }
+
+    @Bean
+    public RetryPolicy retryPolicy ()
+    {
+        return new RetryPolicy(retryMaxRetries, retryBudgetRatio, retryMaxTokens, hedgePercentile,
+            hedgeMinSamples);
+    }
+
+    @Bean
+    public Resilience resilience ()
+    {
+        return new Resilience(outlierDetector(), circuitBreaker(), concurrencyLimiter(),
+            retryPolicy());
+    }
+
+    @Bean
+    public ResponseCache responseCache ()
+    {
+        return new ResponseCache(cacheMaxSize.toBytes(),
+            (int) Math.min(Integer.MAX_VALUE, cacheOffHeapThreshold.toBytes()), cacheStaleRetention);
+    }
+
+    @Bean
+    public AdmissionControl admissionControl ()
+    {
+        if (admissionRate <= 0 && admissionMaxConcurrent <= 0) {
+            return AdmissionControl.DISABLED;
+        }
+        return new AdmissionControl(
+            admissionRate > 0
+                ? new RateLimiter(admissionRate, admissionBurst, admissionMaxClients) : null,
+            admissionMaxConcurrent > 0
+                ? new AdmissionQueue(admissionMaxConcurrent, admissionMaxQueued) : null,
+            admissionKey, admissionPriorityHeader, admissionDeadlineHeader, admissionQueueTimeout);
+    }
+
+    /**
+     * Admits the forwarded servlet requests before their bodies are read.
+     */
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    public FilterRegistrationBean<AdmissionFilter> admissionFilter ()
+    {
+        FilterRegistrationBean<AdmissionFilter> registration =
+            new FilterRegistrationBean<>(new AdmissionFilter(admissionControl()));
+        registration.addUrlPatterns(LoadBalancerController.MOUNT + "/*");
+        registration.setOrder(AdmissionFilter.ORDER);
+        return registration;
+    }
+
+    /**
+     * Admits the forwarded requests of the reactive data plane before they reach the handler.
+     */
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+    public WebFilter reactiveAdmissionFilter ()
+    {
+        return new ReactiveAdmissionFilter(admissionControl(), LoadBalancerController.MOUNT);
+    }
+
+    @Bean
+    public ClusterState clusterState ()
+    {
+        if (clusterPort <= 0) {
+            return ClusterState.DISABLED;
+        }
+        return new ClusterState(serverRegistry(), serverLoadChecker(), latencyTracker(),
+            healthChecker(), maxServers, clusterExpiry);
+    }
+
+    /**
+     * Shares the state of the servers with the other load balancers listed in
+     * {@code loadbalancer.cluster.peers}, when a cluster port is set.
+     */
+    @Bean
+    @ConditionalOnExpression("${loadbalancer.cluster.port:0} > 0")
+    public ClusterGossip clusterGossip ()
+    {
+        List<String> peers = Arrays.stream(clusterPeers.split(","))
+            .map(String::trim)
+            .filter(peer -> !peer.isEmpty())
+            .toList();
+        InetSocketAddress bind = new InetSocketAddress(clusterBindAddress.trim(), clusterPort);
+        return new ClusterGossip(clusterState(), bind, peers, clusterMaxPackets);
+    }
+
+    @Bean
+    public LoadBalancerMetrics loadBalancerMetrics (MeterRegistry meterRegistry)
+    {
+        if (!metricsEnabled) {
+            return LoadBalancerMetrics.DISABLED;
+        }
+        LoadBalancerMetrics metrics = new LoadBalancerMetrics(meterRegistry, maxServers,
+            strategy.toLowerCase(), serverLoadChecker(), outlierDetector(), circuitBreaker());
+        metrics.bindCache(responseCache());
+        metrics.bindAdmission(admissionControl());
+        metrics.bindCluster(clusterState());
+        return metrics;
+    }
+
+    @Bean
+    public AffinityKey affinityKey ()
+    {
+        return AffinityKey.parse(hashKey);
+    }
+
+    @Bean
+    public RequestRewriter requestRewriter ()
+    {
+        return RequestRewriter.compile(rewriteRules, rewriteForwardedHeaders);
+    }
+
+    @Bean
+    public BufferPool bufferPool ()
+    {
+        return new BufferPool(proxyBufferSize, proxyBufferPoolSize);
+    }
+
+    @Bean
+    public BackendClient backendClient ()
+    {
+        if (isH2c()) {
+            // The streams a server advertises cap its load, so strategies route around a server
+            // before requests queue for its streams
+            return new MultiplexedBackendClient(h2cConnectionsPerServer, h2cMaxConcurrentStreams,
+                maxPendingAcquires, connectTimeout, readTimeout, acquireTimeout, idleEviction,
+                (server, limit) -> {
+                    int slot = serverLoadChecker().indexOf(server);
+                    if (slot >= 0) {
+                        serverLoadChecker().setConnectionLimit(slot, limit);
+                    }
+                });
+        }
+        return new PooledBackendClient(maxConnectionsPerServer, maxConnectionsTotal,
+            maxPendingAcquires, connectTimeout, readTimeout, acquireTimeout, idleEviction);
+    }
+
+    private boolean isH2c ()
+    {
+        return switch (clientProtocol.toLowerCase()) {
+            case "http1" -> false;
+            case "h2c" -> true;
+            default -> throw new IllegalArgumentException("Invalid backend client protocol: "
+                + clientProtocol + ", expected http1 or h2c");
+        };
+    }
+
+    /**
+     * @return the requests the backend client can have in flight on one server at once
+     */
+    private int maxRequestsPerServer ()
+    {
+        return isH2c() ? h2cConnectionsPerServer * h2cMaxConcurrentStreams
+            : maxConnectionsPerServer;
+    }
+
+    /**
+     * Serves every servlet request on its own virtual thread instead of Tomcat's platform thread
+     * pool, so requests blocked on a slow backend no longer cap concurrency at the pool size.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "loadbalancer.virtual-threads.enabled", havingValue = "true")
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer ()
+    {
+        return protocolHandler -> protocolHandler.setExecutor(
+            Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    /**
+     * Runs the scheduled health checks on a virtual thread, so that probes waiting on a backend do
+     * not hold a platform thread either.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "loadbalancer.virtual-threads.enabled", havingValue = "true")
+    public TaskScheduler virtualThreadTaskScheduler ()
+    {
+        return new ConcurrentTaskScheduler(Executors.newSingleThreadScheduledExecutor(
+            Thread.ofVirtual().name("health-check-", 0).factory()));
+    }
+
+    /**
+     * Runs the reactive data plane on Netty's event loop rather than on the Tomcat adapter that
+     * Spring Boot would otherwise prefer while the servlet stack is on the classpath.
+     */
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+    public NettyReactiveWebServerFactory reactiveWebServerFactory ()
+    {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    /**
+     * Non-blocking client used by the reactive data plane, pooling connections with the same
+     * per-server limits, timeouts and protocol as {@link #backendClient()}.
+     */
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+    public WebClient backendWebClient ()
+    {
+        ConnectionProvider.Builder connectionProvider = ConnectionProvider.builder("backends")
+            .pendingAcquireMaxCount(maxPendingAcquires)
+            .pendingAcquireTimeout(acquireTimeout)
+            .maxIdleTime(idleEviction)
+            .evictInBackground(idleEviction);
+        if (isH2c()) {
+            connectionProvider.maxConnections(h2cConnectionsPerServer)
+                .allocationStrategy(Http2AllocationStrategy.builder()
+                    .maxConnections(h2cConnectionsPerServer)
+                    .maxConcurrentStreams(h2cMaxConcurrentStreams)
+                    .build());
+        }
+        else {
+            connectionProvider.maxConnections(maxConnectionsPerServer);
+        }
+        HttpClient httpClient = HttpClient.create(connectionProvider.build())
+            .protocol(isH2c() ? HttpProtocol.H2C : HttpProtocol.HTTP11)
+            .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis())
+            .responseTimeout(readTimeout);
+        return WebClient.builder()
+            .clientConnector(new ReactorClientHttpConnector(httpClient))
+            .build();
+    }
+}
@@ -0,0 +1,30 @@
+package com.simple.loadbalancer.controller;
+
+import com.simple.loadbalancer.service.LoadBalancerService;
+import com.simple.loadbalancer.service.ResponseCache;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * The state of the response cache, served by the actuator on the management port as
+ * {@code GET /actuator/cache}.
+ */
+@Component
+@Endpoint(id = "cache")
+public class CacheEndpoint
+{
+    @Autowired
+    private LoadBalancerService loadBalancerService;
+
+    /**
+     * @return the hit, miss and eviction counts and the size of the response cache
+     */
+    @ReadOperation
+    public ResponseCache.Stats cache ()
+    {
+        return loadBalancerService.getCacheStats();
+    }
+}
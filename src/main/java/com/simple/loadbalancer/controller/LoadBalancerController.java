@@ -1,82 +1,86 @@
 package com.simple.loadbalancer.controller;
 
+import com.simple.loadbalancer.admission.AdmissionFilter;
+import com.simple.loadbalancer.rewrite.RequestRewriter;
 import com.simple.loadbalancer.service.LoadBalancerService;
 
 import java.io.IOException;
-import java.util.Collections;
-import java.util.Enumeration;
-import java.util.List;
 
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.multipart.MultipartFile;
 
+/**
+ * Forwards requests with their bodies read into memory, except for multipart uploads which are
+ * streamed. Active unless {@code loadbalancer.proxy.mode=streaming} selects the
+ * {@link StreamingLoadBalancerController}. Every request has been let through the
+ * {@link AdmissionFilter} before its body is read.
+ *
+ * <p>Everything below {@value #MOUNT} is forwarded, whatever the number of path segments, with its
+ * query string. The {@link RequestRewriter} decides the path and headers the backend gets.
+ */
 @RestController
-@RequestMapping("/forwardRequest")
+@RequestMapping(LoadBalancerController.MOUNT)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(name = "loadbalancer.proxy.mode", havingValue = "buffered", matchIfMissing = true)
 public class LoadBalancerController
 {
+    /* Path of the forwarding endpoint of every data plane */
+    public static final String MOUNT = "/forwardRequest";
+
     @Autowired
     private LoadBalancerService loadBalancerService;
 
-    @GetMapping("/{path}")
+    @Autowired
+    private RequestRewriter requestRewriter;
+
+    @GetMapping("/**")
     public ResponseEntity<?> handleGetRequest (
         HttpServletRequest request,
-        @RequestBody(required = false) String body,
-        @PathVariable("path") String targetURL) throws IOException
+        @RequestBody(required = false) String body) throws IOException
     {
         // Extract HTTP method
         HttpMethod method = HttpMethod.valueOf(request.getMethod());
-        // Extract relative path
+        // Extract relative path and query string
+        String targetURL = requestRewriter.rewriteTarget(request, MOUNT);
         // Extract headers
         HttpHeaders headers = new HttpHeaders();
-        Enumeration<String> headerNames = request.getHeaderNames();
-        while (headerNames.hasMoreElements()) {
-            String headerName = headerNames.nextElement();
-            List<String> headerValues = Collections.list(request.getHeaders(headerName));
-            headers.put(headerName, headerValues);
-        }
-        return loadBalancerService.forwardRequest(method, headers, body, targetURL, "null");
+        requestRewriter.copyHeaders(request, headers);
+        return loadBalancerService.forwardRequest(method, headers, body, targetURL);
+    }
+
+    /**
+     * Streams multipart uploads to the backend as they arrive, parts unparsed, so that memory use
+     * does not grow with the size of the files.
+     */
+    @PostMapping(value = "/**", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public void handleMultipartRequest (
+        HttpServletRequest request,
+        HttpServletResponse response) throws IOException
+    {
+        loadBalancerService.streamRequest(request, response,
+            requestRewriter.rewriteTarget(request, MOUNT));
     }
 
-    @PostMapping("/{path}")
+    @PostMapping("/**")
     public ResponseEntity<?> handlePostRequest (
         HttpServletRequest request,
-        @RequestPart(value = "file", required = false) MultipartFile file,
-        @RequestBody(required = false) String body,
-        @PathVariable("path") String targetURL) throws IOException
+        @RequestBody(required = false) String body) throws IOException
     {
         // Extract HTTP method
         HttpMethod method = HttpMethod.valueOf(request.getMethod());
+        // Extract relative path and query string
+        String targetURL = requestRewriter.rewriteTarget(request, MOUNT);
         // Extract headers
         HttpHeaders headers = new HttpHeaders();
-        Enumeration<String> headerNames = request.getHeaderNames();
-        while (headerNames.hasMoreElements()) {
-            String headerName = headerNames.nextElement();
-            List<String> headerValues = Collections.list(request.getHeaders(headerName));
-            headers.put(headerName, headerValues);
-        }
-        String contentType = request.getContentType();
-
-        if (contentType != null && contentType.contains("multipart/form-data")) {
-            // Handle file upload request
-            return loadBalancerService.forwardRequest(method, headers, file, targetURL,
-                "file");
-        }
-        else {
-            // Handle regular POST request
-            return loadBalancerService.forwardRequest(method, headers, body, targetURL, "null");
-        }
-    }
-
-    @PostMapping("/addServer")
-    public String addServer (@RequestParam String serverUrl)
-    {
-        loadBalancerService.addServer(serverUrl);
-        return "Server " + serverUrl + " added successfully.";
+        requestRewriter.copyHeaders(request, headers);
+        return loadBalancerService.forwardRequest(method, headers, body, targetURL);
     }
 }
-
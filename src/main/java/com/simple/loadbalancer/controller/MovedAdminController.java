@@ -0,0 +1,28 @@
+package com.simple.loadbalancer.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Answers the admin route the forwarding endpoint used to serve,
+ * {@code POST /forwardRequest/addServer}, with {@code 410 Gone} and the path of the
+ * {@link ServersEndpoint} action that replaced it on the management port, instead of forwarding
+ * it to a backend. Serves every data plane.
+ */
+@RestController
+@RequestMapping(LoadBalancerController.MOUNT)
+public class MovedAdminController
+{
+    @PostMapping("/addServer")
+    public ResponseEntity<String> addServer ()
+    {
+        return ResponseEntity.status(HttpStatus.GONE)
+            .contentType(MediaType.TEXT_PLAIN)
+            .body("Moved to POST /actuator/servers/addServer on the management port "
+                + "(management.server.port)\n");
+    }
+}
@@ -0,0 +1,39 @@
+package com.simple.loadbalancer.controller;
+
+import com.simple.loadbalancer.admission.ReactiveAdmissionFilter;
+import com.simple.loadbalancer.rewrite.RequestRewriter;
+import com.simple.loadbalancer.service.ReactiveForwardingService;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+/**
+ * Forwards requests on the non-blocking event loop. Active when the application is started with
+ * {@code loadbalancer.data-plane=reactive}. Every request has been let through the
+ * {@link ReactiveAdmissionFilter} before it gets here.
+ */
+@RestController
+@RequestMapping(LoadBalancerController.MOUNT)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveLoadBalancerController
+{
+    @Autowired
+    private ReactiveForwardingService reactiveForwardingService;
+
+    @Autowired
+    private RequestRewriter requestRewriter;
+
+    @RequestMapping("/**")
+    public Mono<Void> handleRequest (
+        ServerHttpRequest request,
+        ServerHttpResponse response)
+    {
+        return reactiveForwardingService.forwardRequest(request, response,
+            requestRewriter.rewriteTarget(request, LoadBalancerController.MOUNT));
+    }
+}
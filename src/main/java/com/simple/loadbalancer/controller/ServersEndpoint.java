@@ -0,0 +1,103 @@
+package com.simple.loadbalancer.controller;
+
+import com.simple.loadbalancer.service.LoadBalancerService;
+import com.simple.loadbalancer.status.ServerStatus;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+/**
+ * Management of the backend servers, available whatever data plane is configured. Served by the
+ * actuator on the management port ({@code management.server.port}), apart from the forwarded
+ * traffic, so that clients of the load balancer can neither see nor change its servers.
+ *
+ * <p>Usage example, the parameters of the POST requests being taken from the query or from a JSON
+ * body, and the requests sent with {@code Content-Type: application/json} either way:
+ * <pre>
+ *     GET  /actuator/servers
+ *     POST /actuator/servers/addServer?serverUrl=http://host-c:9091&amp;weight=8&amp;zone=b
+ *     POST /actuator/servers/setWeight?serverUrl=http://host-c:9091&amp;weight=2
+ *     POST /actuator/servers/drainServer?serverUrl=http://host-c:9091
+ *     POST /actuator/servers/removeServer?serverUrl=http://host-c:9091
+ * </pre>
+ */
+@Component
+@Endpoint(id = "servers")
+public class ServersEndpoint
+{
+    @Autowired
+    private LoadBalancerService loadBalancerService;
+
+    /**
+     * @return the failure count and ejection state of every configured server
+     */
+    @ReadOperation
+    public List<ServerStatus> servers ()
+    {
+        return loadBalancerService.getServerStatuses();
+    }
+
+    /**
+     * Changes a server.
+     *
+     * @param action    {@code addServer}, which also updates the weight and zone of a known
+     *                  server, {@code setWeight}, {@code drainServer} to stop sending requests to
+     *                  a server and remove it once its in-flight requests are done, or
+     *                  {@code removeServer} to remove it at once
+     * @param serverUrl the url of the server
+     * @param weight    the weight of the server, 1 by default when adding it
+     * @param zone      the zone of a server being added, none by default
+     */
+    @WriteOperation
+    public WebEndpointResponse<String> change (@Selector String action, String serverUrl,
+                                               @Nullable Integer weight, @Nullable String zone)
+    {
+        try {
+            return switch (action) {
+                case "addServer" -> {
+                    loadBalancerService.addServer(serverUrl, weight == null ? 1 : weight,
+                        zone == null || zone.isBlank() ? null : zone.trim());
+                    yield ok("Server " + serverUrl + " added successfully.");
+                }
+                case "setWeight" -> {
+                    if (weight == null) {
+                        yield new WebEndpointResponse<>("Missing weight",
+                            WebEndpointResponse.STATUS_BAD_REQUEST);
+                    }
+                    yield loadBalancerService.setServerWeight(serverUrl, weight)
+                        ? ok("Server " + serverUrl + " weight set to " + weight + ".")
+                        : unknown(serverUrl);
+                }
+                case "removeServer" -> loadBalancerService.removeServer(serverUrl)
+                    ? ok("Server " + serverUrl + " removed.") : unknown(serverUrl);
+                case "drainServer" -> loadBalancerService.drainServer(serverUrl)
+                    ? ok("Server " + serverUrl + " draining.") : unknown(serverUrl);
+                default -> new WebEndpointResponse<>("Unknown action " + action,
+                    WebEndpointResponse.STATUS_NOT_FOUND);
+            };
+        }
+        catch (IllegalArgumentException e) {
+            return new WebEndpointResponse<>(e.getMessage(),
+                WebEndpointResponse.STATUS_BAD_REQUEST);
+        }
+    }
+
+    private static WebEndpointResponse<String> ok (String message)
+    {
+        return new WebEndpointResponse<>(message, WebEndpointResponse.STATUS_OK);
+    }
+
+    private static WebEndpointResponse<String> unknown (String serverUrl)
+    {
+        return new WebEndpointResponse<>("Unknown server " + serverUrl,
+            WebEndpointResponse.STATUS_NOT_FOUND);
+    }
+}
@@ -0,0 +1,43 @@
+package com.simple.loadbalancer.controller;
+
+import com.simple.loadbalancer.admission.AdmissionFilter;
+import com.simple.loadbalancer.rewrite.RequestRewriter;
+import com.simple.loadbalancer.service.LoadBalancerService;
+
+import java.io.IOException;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Forwards requests without reading their bodies: the servlet input stream is copied to the
+ * backend and the backend response is copied back through pooled buffers. Enabled with
+ * {@code loadbalancer.proxy.mode=streaming}. Every request has been let through the
+ * {@link AdmissionFilter} before it gets here.
+ */
+@RestController
+@RequestMapping(LoadBalancerController.MOUNT)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(name = "loadbalancer.proxy.mode", havingValue = "streaming")
+public class StreamingLoadBalancerController
+{
+    @Autowired
+    private LoadBalancerService loadBalancerService;
+
+    @Autowired
+    private RequestRewriter requestRewriter;
+
+    @RequestMapping("/**")
+    public void handleRequest (
+        HttpServletRequest request,
+        HttpServletResponse response) throws IOException
+    {
+        loadBalancerService.streamRequest(request, response,
+            requestRewriter.rewriteTarget(request, LoadBalancerController.MOUNT));
+    }
+}
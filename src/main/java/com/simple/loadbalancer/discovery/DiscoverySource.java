@@ -0,0 +1,24 @@
+package com.simple.loadbalancer.discovery;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Somewhere the backend servers are looked up at runtime, polled by {@link ServiceDiscovery}.
+ */
+public interface DiscoverySource
+{
+    /**
+     * @return what the source reads from, for log messages
+     */
+    String getName ();
+
+    /**
+     * Looks up the servers the source currently lists. Called on the discovery thread only.
+     *
+     * @return the URLs of the servers with their weights and zones, in a stable order
+     * @throws IOException if the lookup failed, in which case the servers of the previous lookup
+     *                     are kept
+     */
+    Map<String, ServerSpec> discover () throws IOException;
+}
@@ -0,0 +1,161 @@
+package com.simple.loadbalancer.discovery;
+
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.InitialDirContext;
+
+/**
+ * Servers behind a DNS name, resolved again on every poll.
+ *
+ * <p>A name of the form {@code host:port} is resolved to its A and AAAA records, every address
+ * becoming a server on the given port with a weight of 1. The JVM caches these lookups for
+ * {@code networkaddress.cache.ttl} seconds, 30 by default, which bounds how quickly a change is
+ * seen.
+ *
+ * <p>Any other name, e.g. {@code _http._tcp.backend.example}, is looked up as SRV records through
+ * the resolvers of the system, uncached. Every record becomes a server at its target and port,
+ * with the record's weight (at least 1, at most 1000). Only the records of the lowest priority are
+ * used, the others being meant as fallbacks.
+ *
+ * <p>All servers behind one name are placed in the same zone, if any: a name per zone is the
+ * usual way to publish them.
+ */
+public class DnsDiscoverySource implements DiscoverySource
+{
+    private final String name;
+    private final String host;
+    private final int port; // -1 for an SRV name
+    private final String zone;
+
+    /**
+     * @param name {@code host:port} for address records, or an SRV name
+     * @throws IllegalArgumentException if the port is not a number
+     */
+    public DnsDiscoverySource (String name)
+    {
+        this(name, null);
+    }
+
+    /**
+     * @param name {@code host:port} for address records, or an SRV name
+     * @param zone the zone of the servers behind the name, or {@code null}
+     * @throws IllegalArgumentException if the port is not a number
+     */
+    public DnsDiscoverySource (String name, String zone)
+    {
+        this.name = name;
+        this.zone = zone;
+        int colon = name.lastIndexOf(':');
+        if (colon > 0) {
+            this.host = name.substring(0, colon);
+            this.port = Integer.parseInt(name.substring(colon + 1));
+        }
+        else {
+            this.host = name;
+            this.port = -1;
+        }
+    }
+
+    @Override
+    public String getName ()
+    {
+        return "dns:" + name;
+    }
+
+    @Override
+    public Map<String, ServerSpec> discover () throws IOException
+    {
+        Map<String, ServerSpec> servers = new LinkedHashMap<>();
+        if (port >= 0) {
+            for (InetAddress address : InetAddress.getAllByName(host)) {
+                servers.put(url(address, port), new ServerSpec(1, zone));
+            }
+        }
+        else {
+            int lowestPriority = Integer.MAX_VALUE;
+            for (String record : lookupSrv()) {
+                String[] fields = record.trim().split("\\s+");
+                if (fields.length != 4) {
+                    throw new IOException("Malformed SRV record of " + host + ": " + record);
+                }
+                int priority = parse(fields[0], record);
+                if (priority > lowestPriority) {
+                    continue;
+                }
+                if (priority < lowestPriority) {
+                    lowestPriority = priority;
+                    servers.clear();
+                }
+                int weight = Math.min(Math.max(parse(fields[1], record), 1), 1000);
+                String target = fields[3].endsWith(".")
+                    ? fields[3].substring(0, fields[3].length() - 1) : fields[3];
+                servers.put("http://" + target + ":" + parse(fields[2], record),
+                    new ServerSpec(weight, zone));
+            }
+        }
+        return Collections.unmodifiableMap(servers);
+    }
+
+    private List<String> lookupSrv () throws IOException
+    {
+        Hashtable<String, String> environment = new Hashtable<>();
+        environment.put("java.naming.factory.initial", "com.sun.jndi.dns.DnsContextFactory");
+        environment.put("com.sun.jndi.dns.timeout.initial", "1000");
+        environment.put("com.sun.jndi.dns.timeout.retries", "2");
+        DirContext context = null;
+        try {
+            context = new InitialDirContext(environment);
+            Attribute records = context.getAttributes(host, new String[]{"SRV"}).get("SRV");
+            List<String> values = new ArrayList<>();
+            if (records != null) {
+                NamingEnumeration<?> all = records.getAll();
+                while (all.hasMore()) {
+                    values.add(all.next().toString());
+                }
+            }
+            return values;
+        }
+        catch (NamingException e) {
+            throw new IOException("SRV lookup of " + host + " failed: " + e.getMessage(), e);
+        }
+        finally {
+            if (context != null) {
+                try {
+                    context.close();
+                }
+                catch (NamingException ignored) {
+                    // Nothing held that needs releasing
+                }
+            }
+        }
+    }
+
+    private int parse (String field, String record) throws IOException
+    {
+        try {
+            return Integer.parseInt(field);
+        }
+        catch (NumberFormatException e) {
+            throw new IOException("Malformed SRV record of " + host + ": " + record, e);
+        }
+    }
+
+    private static String url (InetAddress address, int port)
+    {
+        // Without the scope of a link-local IPv6 address, which URLs cannot carry
+        String host = address.getHostAddress().split("%", 2)[0];
+        return "http://" + (address instanceof Inet6Address ? "[" + host + "]" : host) + ":" + port;
+    }
+}
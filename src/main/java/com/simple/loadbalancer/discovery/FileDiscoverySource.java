@@ -0,0 +1,95 @@
+package com.simple.loadbalancer.discovery;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Servers listed in a local properties file in the format of
+ * {@code config/loadbalancer.properties}: a {@code servers} property with comma-separated URLs,
+ * each optionally followed by {@code ;weight=<n>} and {@code ;zone=<name>}.
+ *
+ * <p>The file is watched by polling its modification time, and only read again when it changed.
+ * Polling, unlike a file system watch, also sees files that are replaced by renaming a new one over
+ * them or by swapping a symbolic link, as configuration management and mounted config maps do.
+ */
+public class FileDiscoverySource implements DiscoverySource
+{
+    private final Path file;
+    private FileTime lastModified;
+    private Map<String, ServerSpec> servers = Map.of();
+
+    public FileDiscoverySource (Path file)
+    {
+        this.file = file;
+    }
+
+    @Override
+    public String getName ()
+    {
+        return "file:" + file;
+    }
+
+    @Override
+    public Map<String, ServerSpec> discover () throws IOException
+    {
+        FileTime modified = Files.getLastModifiedTime(file);
+        if (!modified.equals(lastModified)) {
+            Properties properties = new Properties();
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            }
+            try {
+                servers = parseServers(properties.getProperty("servers", ""));
+            }
+            catch (IllegalArgumentException e) {
+                throw new IOException("Invalid server list in " + file + ": " + e.getMessage(), e);
+            }
+            lastModified = modified;
+        }
+        return servers;
+    }
+
+    /**
+     * Parses a comma-separated list of server URLs, each optionally followed by
+     * {@code ;weight=<n>} and {@code ;zone=<name>}, e.g. {@code http://host-a:9091;weight=2;zone=a}.
+     *
+     * @return the URLs with their weights, 1 where none is given, and zones, in the order of the
+     * list
+     * @throws IllegalArgumentException if a weight is not a number or an option is unknown
+     */
+    public static Map<String, ServerSpec> parseServers (String servers)
+    {
+        Map<String, ServerSpec> parsed = new LinkedHashMap<>();
+        for (String server : servers.split(",")) {
+            String[] parts = server.trim().split(";");
+            if (parts[0].isBlank()) {
+                continue;
+            }
+            int weight = 1;
+            String zone = null;
+            for (int i = 1; i < parts.length; i++) {
+                String option = parts[i].trim();
+                if (option.startsWith("weight=")) {
+                    weight = Integer.parseInt(option.substring("weight=".length()).trim());
+                }
+                else if (option.startsWith("zone=") && option.length() > "zone=".length()) {
+                    zone = option.substring("zone=".length()).trim();
+                }
+                else {
+                    throw new IllegalArgumentException("Unknown option " + option + " of "
+                        + parts[0].trim());
+                }
+            }
+            parsed.put(parts[0].trim(), new ServerSpec(weight, zone));
+        }
+        return Collections.unmodifiableMap(parsed);
+    }
+}
@@ -0,0 +1,13 @@
+package com.simple.loadbalancer.discovery;
+
+/**
+ * How a listed server is to be registered.
+ *
+ * @param weight the share of traffic the server receives from weighted strategies
+ * @param zone   the zone of the server, e.g. its rack or availability zone, or {@code null}
+ */
+public record ServerSpec(int weight, String zone)
+{
+    /* A server of weight 1 without zone */
+    public static final ServerSpec DEFAULT = new ServerSpec(1, null);
+}
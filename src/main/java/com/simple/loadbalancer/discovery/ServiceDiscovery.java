@@ -0,0 +1,175 @@
+package com.simple.loadbalancer.discovery;
+
+import com.simple.loadbalancer.status.Backend;
+import com.simple.loadbalancer.status.ServerLoadChecker;
+import com.simple.loadbalancer.status.ServerRegistry;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+
+/**
+ * Keeps the backend servers in the {@link ServerRegistry} in line with the {@link DiscoverySource
+ * discovery sources}, and removes drained servers once their in-flight requests are done.
+ *
+ * <p>Every {@code loadbalancer.discovery.interval} all sources are polled. A server listed by any
+ * of them is added, or has its weight updated; a server no longer listed by any of them is
+ * drained. A listed zone is applied the same way. Servers configured in
+ * {@code config/loadbalancer.properties} or added through the admin API are left alone unless a
+ * source lists them too. A source whose lookup fails keeps the servers of its last successful
+ * lookup, so a DNS outage does not empty the load balancer.
+ *
+ * <p>Every change is published by the registry as a new snapshot, so requests being routed never
+ * wait for discovery. A drained server is removed once it has no request in flight, or after
+ * {@code drainTimeout} whatever it still has in flight. It is kept for at least
+ * {@link #DRAIN_GRACE} even when idle, as a request that picked it from the snapshot before the
+ * drain may not have counted itself in its load yet.
+ */
+public class ServiceDiscovery
+{
+    private static final Logger log = LoggerFactory.getLogger(ServiceDiscovery.class);
+
+    /* Shortest time a drained server stays registered */
+    static final Duration DRAIN_GRACE = Duration.ofSeconds(1);
+
+    private final List<DiscoverySource> sources;
+    private final ServerRegistry serverRegistry;
+    private final ServerLoadChecker serverLoadChecker;
+    private final long drainTimeout;
+    private final LongSupplier clock; // Source of nanosecond timestamps
+    /* Servers of the last successful lookup of every source */
+    private final Map<DiscoverySource, Map<String, ServerSpec>> discovered = new HashMap<>();
+    /* Servers added by discovery, with their weights and zones */
+    private Map<String, ServerSpec> managed = Map.of();
+    /* Clock time every draining server was first seen draining */
+    private final Map<Backend, Long> drainStarts = new ConcurrentHashMap<>();
+
+    /**
+     * @param sources           the sources to poll, possibly none
+     * @param serverRegistry    the registry the discovered servers are added to
+     * @param serverLoadChecker the source of the in-flight requests of draining servers
+     * @param drainTimeout      longest time a drained server is waited for
+     */
+    public ServiceDiscovery (List<DiscoverySource> sources, ServerRegistry serverRegistry,
+                             ServerLoadChecker serverLoadChecker, Duration drainTimeout)
+    {
+        this(sources, serverRegistry, serverLoadChecker, drainTimeout, System::nanoTime);
+    }
+
+    public ServiceDiscovery (List<DiscoverySource> sources, ServerRegistry serverRegistry,
+                             ServerLoadChecker serverLoadChecker, Duration drainTimeout,
+                             LongSupplier clock)
+    {
+        this.sources = List.copyOf(sources);
+        this.serverRegistry = serverRegistry;
+        this.serverLoadChecker = serverLoadChecker;
+        this.drainTimeout = drainTimeout.toNanos();
+        this.clock = clock;
+    }
+
+    /**
+     * Polls every source and applies the difference to the registry.
+     */
+    @Scheduled(fixedDelayString = "${loadbalancer.discovery.interval:5000}")
+    public synchronized void refresh ()
+    {
+        if (sources.isEmpty()) {
+            return;
+        }
+        for (DiscoverySource source : sources) {
+            try {
+                discovered.put(source, source.discover());
+            }
+            catch (IOException | RuntimeException e) {
+                log.warn("Discovery from {} failed, keeping its last {} servers: {}",
+                    source.getName(), discovered.getOrDefault(source, Map.of()).size(),
+                    e.getMessage());
+            }
+        }
+        Map<String, ServerSpec> next = new LinkedHashMap<>();
+        for (DiscoverySource source : sources) {
+            discovered.getOrDefault(source, Map.of()).forEach(next::putIfAbsent);
+        }
+
+        Map<String, ServerSpec> applied = new LinkedHashMap<>();
+        for (Map.Entry<String, ServerSpec> server : next.entrySet()) {
+            String url = server.getKey();
+            ServerSpec spec = server.getValue();
+            ServerSpec previous = managed.get(url);
+            try {
+                if (!spec.equals(previous)) {
+                    // Zone before traffic, so that its load counts the first requests
+                    Backend backend = serverRegistry.register(url);
+                    serverRegistry.setWeight(backend, spec.weight());
+                    serverRegistry.setZone(backend, spec.zone());
+                    if (previous == null) {
+                        serverRegistry.add(backend);
+                        log.info("Server {} discovered with weight {}{}.", url, spec.weight(),
+                            inZone(spec.zone()));
+                    }
+                    else {
+                        log.info("Server {} changed to weight {}{} by discovery.", url,
+                            spec.weight(), inZone(spec.zone()));
+                    }
+                }
+                applied.put(url, spec);
+            }
+            catch (IllegalArgumentException | IllegalStateException e) {
+                log.warn("Discovered server {} not added: {}", url, e.getMessage());
+                if (previous != null) {
+                    applied.put(url, previous);
+                }
+            }
+        }
+        for (String url : managed.keySet()) {
+            Backend backend = serverRegistry.get(url);
+            if (!next.containsKey(url) && backend != null && serverRegistry.drain(backend)) {
+                log.info("Server {} no longer discovered, draining it.", url);
+            }
+        }
+        managed = applied;
+    }
+
+    /**
+     * Removes the draining servers that have no request in flight left, or that have been
+     * draining for longer than the drain timeout.
+     */
+    @Scheduled(fixedDelayString = "${loadbalancer.discovery.drain-interval:1000}")
+    public void completeDrains ()
+    {
+        long now = clock.getAsLong();
+        Set<Backend> draining = serverRegistry.getDraining();
+        drainStarts.keySet().retainAll(draining);
+        for (Backend server : draining) {
+            long elapsed = now - drainStarts.computeIfAbsent(server, key -> now);
+            int inFlight = serverLoadChecker.getCurrentLoad(server.getId());
+            boolean idle = inFlight == 0 && elapsed >= DRAIN_GRACE.toNanos();
+            if ((idle || elapsed >= drainTimeout) && serverRegistry.remove(server)) {
+                drainStarts.remove(server);
+                if (idle) {
+                    log.info("Server {} drained and removed.", server);
+                }
+                else {
+                    log.warn("Server {} removed after {} ms of draining with {} requests still in "
+                        + "flight.", server, TimeUnit.NANOSECONDS.toMillis(elapsed), inFlight);
+                }
+            }
+        }
+    }
+
+    private static String inZone (String zone)
+    {
+        return zone == null ? "" : " in zone " + zone;
+    }
+}
@@ -0,0 +1,391 @@
+package com.simple.loadbalancer.observability;
+
+import com.simple.loadbalancer.admission.AdmissionControl;
+import com.simple.loadbalancer.admission.AdmissionRejectedException.Reason;
+import com.simple.loadbalancer.cluster.ClusterState;
+import com.simple.loadbalancer.service.ResponseCache;
+import com.simple.loadbalancer.status.Backend;
+import com.simple.loadbalancer.status.CircuitBreaker;
+import com.simple.loadbalancer.status.OutlierDetector;
+import com.simple.loadbalancer.status.ServerLoadChecker;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Micrometer meters of the forwarding path, exposed by the actuator {@code metrics} and
+ * {@code prometheus} endpoints.
+ *
+ * <p>Every backend server gets
+ * <ul>
+ *     <li>{@code loadbalancer.backend.requests}, a timer of the requests it answered or failed,
+ *     tagged {@code outcome=success} or {@code failure}, with a percentile histogram from 1 ms to
+ *     30 s so that latency percentiles can be aggregated across load balancers,</li>
+ *     <li>{@code loadbalancer.backend.rejected}, the requests refused before reaching it because
+ *     it was at its concurrency limit or its connection pool was exhausted,</li>
+ *     <li>{@code loadbalancer.strategy.decisions}, the times the strategy picked it, tagged with
+ *     the strategy name,</li>
+ *     <li>{@code loadbalancer.backend.in.flight}, {@code loadbalancer.backend.up} and
+ *     {@code loadbalancer.backend.circuit.state} gauges, and</li>
+ *     <li>{@code loadbalancer.backend.ejections}, {@code loadbalancer.backend.circuit.openings}
+ *     and {@code loadbalancer.backend.health.changes} counters.</li>
+ * </ul>
+ * Requests no server was available for, retries, hedges and retries refused by the budget are
+ * counted globally.
+ *
+ * <p>The meters of a server are registered the first time it is seen and then looked up by
+ * {@link Backend#getId()} in an array, so recording on the request path takes no map lookup, no
+ * tag allocation and no lock. Gauges and ejection and circuit counters read the existing atomic
+ * state of the {@link ServerLoadChecker}, {@link OutlierDetector} and {@link CircuitBreaker} when
+ * scraped, and cost nothing per request. {@link #DISABLED} records nothing at all.
+ */
+public class LoadBalancerMetrics
+{
+    public static final LoadBalancerMetrics DISABLED = new LoadBalancerMetrics();
+
+    private static final String NO_SERVER = "none";
+
+    private final MeterRegistry registry; // null when disabled
+    private final String strategy;
+    private final ServerLoadChecker serverLoadChecker;
+    private final OutlierDetector outlierDetector;
+    private final CircuitBreaker circuitBreaker;
+    private final AtomicReferenceArray<ServerMeters> servers;
+    private final Counter noServer;
+    private final Counter retries;
+    private final Counter hedges;
+    private final Counter budgetExhausted;
+
+    /**
+     * @param registry          the registry the meters are registered in
+     * @param capacity          highest server id plus one
+     * @param strategy          name of the load balancing strategy, used as tag
+     * @param serverLoadChecker the source of the in-flight gauges
+     * @param outlierDetector   the source of the ejection counters
+     * @param circuitBreaker    the source of the circuit state gauges and opening counters
+     */
+    public LoadBalancerMetrics (MeterRegistry registry, int capacity, String strategy,
+                                ServerLoadChecker serverLoadChecker,
+                                OutlierDetector outlierDetector, CircuitBreaker circuitBreaker)
+    {
+        this.registry = registry;
+        this.strategy = strategy;
+        this.serverLoadChecker = serverLoadChecker;
+        this.outlierDetector = outlierDetector;
+        this.circuitBreaker = circuitBreaker;
+        this.servers = new AtomicReferenceArray<>(capacity);
+        this.noServer = Counter.builder("loadbalancer.strategy.decisions")
+            .description("Servers picked by the load balancing strategy")
+            .tag("strategy", strategy)
+            .tag("server", NO_SERVER)
+            .register(registry);
+        this.retries = Counter.builder("loadbalancer.retries")
+            .description("Requests retried on another server")
+            .register(registry);
+        this.hedges = Counter.builder("loadbalancer.hedges")
+            .description("Slow requests also sent to a second server")
+            .register(registry);
+        this.budgetExhausted = Counter.builder("loadbalancer.retries.budget.exhausted")
+            .description("Retries and hedges refused by the retry budget")
+            .register(registry);
+    }
+
+    private LoadBalancerMetrics ()
+    {
+        this.registry = null;
+        this.strategy = null;
+        this.serverLoadChecker = null;
+        this.outlierDetector = null;
+        this.circuitBreaker = null;
+        this.servers = null;
+        this.noServer = null;
+        this.retries = null;
+        this.hedges = null;
+        this.budgetExhausted = null;
+    }
+
+    /**
+     * Registers the hit, miss and eviction counters and the size gauges of the response cache.
+     */
+    public void bindCache (ResponseCache cache)
+    {
+        if (registry == null || !cache.isEnabled()) {
+            return;
+        }
+        FunctionCounter.builder("loadbalancer.cache.requests", cache, c -> c.getStats().hits())
+            .description("GET requests answered by the response cache")
+            .tag("result", "hit")
+            .register(registry);
+        FunctionCounter.builder("loadbalancer.cache.requests", cache, c -> c.getStats().misses())
+            .description("GET requests answered by the response cache")
+            .tag("result", "miss")
+            .register(registry);
+        FunctionCounter.builder("loadbalancer.cache.revalidations", cache,
+                c -> c.getStats().revalidations())
+            .description("Stale responses refreshed by a conditional request")
+            .register(registry);
+        FunctionCounter.builder("loadbalancer.cache.evictions", cache,
+                c -> c.getStats().evictions())
+            .description("Responses evicted to stay within the cache size")
+            .register(registry);
+        Gauge.builder("loadbalancer.cache.entries", cache, c -> c.getStats().entries())
+            .description("Responses in the cache")
+            .register(registry);
+        Gauge.builder("loadbalancer.cache.size", cache, c -> c.getStats().bytes())
+            .description("Weight of the responses in the cache")
+            .baseUnit("bytes")
+            .register(registry);
+    }
+
+    /**
+     * Registers the rejection counters and the slot, queue and client gauges of admission control.
+     */
+    public void bindAdmission (AdmissionControl admissionControl)
+    {
+        if (registry == null || !admissionControl.isEnabled()) {
+            return;
+        }
+        for (Reason reason : Reason.values()) {
+            FunctionCounter.builder("loadbalancer.admission.rejections", admissionControl,
+                    a -> a.getRejections(reason))
+                .description("Requests refused before being forwarded")
+                .tag("reason", reason.name().toLowerCase())
+                .register(registry);
+        }
+        Gauge.builder("loadbalancer.admission.in.flight", admissionControl,
+                AdmissionControl::getInFlight)
+            .description("Requests holding an admission slot")
+            .register(registry);
+        Gauge.builder("loadbalancer.admission.queued", admissionControl,
+                AdmissionControl::getQueued)
+            .description("Requests waiting for an admission slot")
+            .register(registry);
+        Gauge.builder("loadbalancer.admission.clients", admissionControl,
+                AdmissionControl::getTrackedClients)
+            .description("Clients whose request rate is tracked")
+            .register(registry);
+    }
+
+    /**
+     * Registers the gauge of the other load balancers the cluster state is shared with.
+     */
+    public void bindCluster (ClusterState clusterState)
+    {
+        if (registry == null || !clusterState.isEnabled()) {
+            return;
+        }
+        Gauge.builder("loadbalancer.cluster.peers", clusterState, ClusterState::getPeerCount)
+            .description("Other load balancers heard from recently")
+            .register(registry);
+    }
+
+    public boolean isEnabled ()
+    {
+        return registry != null;
+    }
+
+    /**
+     * Counts a decision of the strategy.
+     *
+     * @param server the server picked, or {@code null} if none was available
+     */
+    public void recordSelection (Backend server)
+    {
+        if (registry == null) {
+            return;
+        }
+        if (server == null) {
+            noServer.increment();
+        }
+        else {
+            meters(server).selected.increment();
+        }
+    }
+
+    /**
+     * Records a response of the server that is not a server error.
+     */
+    public void recordSuccess (Backend server, long latencyNanos)
+    {
+        if (registry != null) {
+            meters(server).success.record(latencyNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Records a request the server failed, a 5xx response or no response at all.
+     */
+    public void recordFailure (Backend server, long latencyNanos)
+    {
+        if (registry != null) {
+            meters(server).failure.record(latencyNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Counts a request refused before it was sent to the server.
+     */
+    public void recordRejected (Backend server)
+    {
+        if (registry != null) {
+            meters(server).rejected.increment();
+        }
+    }
+
+    /**
+     * Records the outcome of the health check of a server.
+     *
+     * @param up      whether the server is up after the check
+     * @param changed whether the check took the server in or out
+     */
+    public void recordHealth (Backend server, boolean up, boolean changed)
+    {
+        if (registry == null) {
+            return;
+        }
+        ServerMeters meters = meters(server);
+        meters.up = up ? 1 : 0;
+        if (changed) {
+            meters.healthChanges.increment();
+        }
+    }
+
+    public void recordRetry ()
+    {
+        if (registry != null) {
+            retries.increment();
+        }
+    }
+
+    public void recordHedge ()
+    {
+        if (registry != null) {
+            hedges.increment();
+        }
+    }
+
+    public void recordBudgetExhausted ()
+    {
+        if (registry != null) {
+            budgetExhausted.increment();
+        }
+    }
+
+    /**
+     * Removes the meters of a server id, for a new server taking the slot of a removed one, whose
+     * meters are registered under its own URL on first use.
+     */
+    public synchronized void reset (Backend server)
+    {
+        if (registry == null) {
+            return;
+        }
+        ServerMeters meters = servers.getAndSet(server.getId(), null);
+        if (meters != null) {
+            meters.all.forEach(registry::remove);
+        }
+    }
+
+    private ServerMeters meters (Backend server)
+    {
+        ServerMeters meters = servers.get(server.getId());
+        return meters != null ? meters : register(server);
+    }
+
+    private synchronized ServerMeters register (Backend server)
+    {
+        ServerMeters meters = servers.get(server.getId());
+        if (meters == null) {
+            meters = new ServerMeters(server);
+            servers.set(server.getId(), meters);
+        }
+        return meters;
+    }
+
+    /**
+     * The meters of one server.
+     */
+    private final class ServerMeters
+    {
+        final Counter selected;
+        final Timer success;
+        final Timer failure;
+        final Counter rejected;
+        final Counter healthChanges;
+        volatile int up = 1; // Servers are assumed healthy until checked
+        final List<Meter> all = new ArrayList<>(); // Every meter above, removed together
+
+        ServerMeters (Backend server)
+        {
+            String url = server.getUrl();
+            int id = server.getId();
+            selected = add(Counter.builder("loadbalancer.strategy.decisions")
+                .description("Servers picked by the load balancing strategy")
+                .tag("strategy", strategy)
+                .tag("server", url)
+                .register(registry));
+            success = requestTimer(url, "success");
+            failure = requestTimer(url, "failure");
+            rejected = add(Counter.builder("loadbalancer.backend.rejected")
+                .description("Requests refused before reaching the server")
+                .tag("server", url)
+                .register(registry));
+            healthChanges = add(Counter.builder("loadbalancer.backend.health.changes")
+                .description("Times the health checks took the server in or out")
+                .tag("server", url)
+                .register(registry));
+            add(Gauge.builder("loadbalancer.backend.in.flight", serverLoadChecker,
+                    checker -> checker.getCurrentLoad(id))
+                .description("Requests in flight on the server")
+                .tag("server", url)
+                .register(registry));
+            add(Gauge.builder("loadbalancer.backend.up", this, meters -> meters.up)
+                .description("1 if the health checks consider the server up, 0 otherwise")
+                .tag("server", url)
+                .register(registry));
+            add(Gauge.builder("loadbalancer.backend.circuit.state", circuitBreaker,
+                    breaker -> breaker.getState(server))
+                .description("0 closed, 1 open, 2 half-open")
+                .tag("server", url)
+                .register(registry));
+            add(FunctionCounter.builder("loadbalancer.backend.circuit.openings", circuitBreaker,
+                    breaker -> breaker.getOpenCount(server))
+                .description("Times the circuit of the server opened")
+                .tag("server", url)
+                .register(registry));
+            add(FunctionCounter.builder("loadbalancer.backend.ejections", outlierDetector,
+                    detector -> detector.getEjectionCount(server))
+                .description("Times the server was ejected by outlier detection")
+                .tag("server", url)
+                .register(registry));
+        }
+
+        private <M extends Meter> M add (M meter)
+        {
+            all.add(meter);
+            return meter;
+        }
+
+        private Timer requestTimer (String url, String outcome)
+        {
+            return add(Timer.builder("loadbalancer.backend.requests")
+                .description("Requests forwarded to the server")
+                .tag("server", url)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(30))
+                .register(registry));
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.simple.loadbalancer.observability;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Rate limit of one log statement, so that a message that can occur on every request is written
+ * at most once per interval however many requests hit it. The messages left out are counted and
+ * reported with the next one written.
+ *
+ * <pre>
+ *     long suppressed = failureLog.sample();
+ *     if (suppressed &gt;= 0) {
+ *         log.warn("Failed to forward request ({} similar messages suppressed)", suppressed);
+ *     }
+ * </pre>
+ *
+ * <p>A suppressed message costs a volatile read and a striped counter increment, so sampling
+ * stays cheap when many threads hit the same statement; only one message per interval pays for a
+ * compare-and-set.
+ */
+public class LogSampler
+{
+    private final long intervalNanos;
+    private final LongSupplier clock; // Source of nanosecond timestamps
+    private final AtomicLong nextAllowed;
+    private final LongAdder suppressed = new LongAdder();
+
+    public LogSampler (Duration interval)
+    {
+        this(interval, System::nanoTime);
+    }
+
+    /**
+     * @param interval shortest time between two messages written
+     * @param clock    source of nanosecond timestamps
+     */
+    public LogSampler (Duration interval, LongSupplier clock)
+    {
+        this.intervalNanos = interval.toNanos();
+        this.clock = clock;
+        this.nextAllowed = new AtomicLong(clock.getAsLong());
+    }
+
+    /**
+     * Decides whether the message at hand is written.
+     *
+     * @return the number of messages suppressed since the last one written if this one is to be
+     * written, -1 if it is suppressed
+     */
+    public long sample ()
+    {
+        long now = clock.getAsLong();
+        long next = nextAllowed.get();
+        if (now - next < 0 || !nextAllowed.compareAndSet(next, now + intervalNanos)) {
+            suppressed.increment();
+            return -1;
+        }
+        return suppressed.sumThenReset();
+    }
+}
@@ -0,0 +1,376 @@
+package com.simple.loadbalancer.rewrite;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.RequestPath;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+
+/**
+ * Turns an incoming request into the path and headers sent to the backend: the path below the
+ * forwarding endpoint with its query string, rewritten by the configured rules, and the
+ * end-to-end headers of the request along with the {@code X-Forwarded-*} headers.
+ *
+ * <p>Rules are configured with {@code loadbalancer.rewrite.rules} as a comma-separated list of
+ * <ul>
+ *     <li>{@code prefix:<from>=<to>}: replaces the leading path segments {@code from} with
+ *     {@code to}, e.g. {@code prefix:/api/v1=/v1}; the first prefix that matches whole segments
+ *     applies,</li>
+ *     <li>{@code set-header:<name>=<value>}: sends the header with this value only,</li>
+ *     <li>{@code add-header:<name>=<value>}: sends this value on top of those of the request,</li>
+ *     <li>{@code remove-header:<name>}: never sends the header.</li>
+ * </ul>
+ *
+ * <p>Hop-by-hop headers, which describe the connection of the client rather than the request,
+ * the headers the {@code Connection} header names and {@code Host} are never forwarded. With
+ * forwarded headers enabled, the client address is appended to {@code X-Forwarded-For}, and
+ * {@code X-Forwarded-Proto} and {@code X-Forwarded-Host} are set unless a proxy in front already
+ * set them.
+ *
+ * <p>Rules are compiled once into arrays of prefixes and header names that requests are matched
+ * against in place, ignoring case where it does not matter, so rewriting allocates no regular
+ * expression matcher, lower-cased copy or intermediate string: only the target, built in one go,
+ * and the headers of the backend request.
+ */
+public final class RequestRewriter
+{
+    public static final String X_FORWARDED_FOR = "X-Forwarded-For";
+    public static final String X_FORWARDED_PROTO = "X-Forwarded-Proto";
+    public static final String X_FORWARDED_HOST = "X-Forwarded-Host";
+
+    /* Headers of a single connection, RFC 9110 section 7.6.1, along with Proxy-Connection */
+    private static final String[] HOP_BY_HOP = {HttpHeaders.CONNECTION, "Keep-Alive",
+        HttpHeaders.PROXY_AUTHENTICATE, HttpHeaders.PROXY_AUTHORIZATION, "Proxy-Connection",
+        HttpHeaders.TE, HttpHeaders.TRAILER, HttpHeaders.TRANSFER_ENCODING, HttpHeaders.UPGRADE};
+
+    /* Forwards paths and end-to-end headers as they are, without forwarded headers */
+    public static final RequestRewriter DEFAULT =
+        new RequestRewriter(new String[0], new String[0], List.of(), List.of(), false);
+
+    /* Leading path segments and their replacements, both without leading or trailing slash */
+    private final String[] prefixes;
+    private final String[] replacements;
+    /* Request headers never copied as they are */
+    private final String[] dropped;
+    /* Headers added to every request, names and values of the same index */
+    private final String[] addedNames;
+    private final String[] addedValues;
+    private final boolean forwardedHeaders;
+
+    private RequestRewriter (String[] prefixes, String[] replacements, List<String> removed,
+                             List<String[]> added, boolean forwardedHeaders)
+    {
+        this.prefixes = prefixes;
+        this.replacements = replacements;
+        List<String> dropped = new ArrayList<>(List.of(HOP_BY_HOP));
+        dropped.add(HttpHeaders.HOST);
+        if (forwardedHeaders) {
+            dropped.add(X_FORWARDED_FOR); // Sent with the client address appended
+        }
+        dropped.addAll(removed);
+        this.dropped = dropped.toArray(new String[0]);
+        this.addedNames = added.stream().map(header -> header[0]).toArray(String[]::new);
+        this.addedValues = added.stream().map(header -> header[1]).toArray(String[]::new);
+        this.forwardedHeaders = forwardedHeaders;
+    }
+
+    /**
+     * @param rules            the rewrite rules, comma-separated, blank for none
+     * @param forwardedHeaders whether to send the {@code X-Forwarded-*} headers
+     * @return the compiled rules
+     * @throws IllegalArgumentException if a rule is not one of the above
+     */
+    public static RequestRewriter compile (String rules, boolean forwardedHeaders)
+    {
+        List<String> prefixes = new ArrayList<>();
+        List<String> replacements = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        List<String[]> added = new ArrayList<>();
+        for (String rule : rules == null ? new String[0] : rules.split(",")) {
+            rule = rule.trim();
+            if (rule.isEmpty()) {
+                continue;
+            }
+            int colon = rule.indexOf(':');
+            String kind = colon > 0 ? rule.substring(0, colon).trim().toLowerCase() : "";
+            String argument = rule.substring(colon + 1).trim();
+            int equals = argument.indexOf('=');
+            // The path of a prefix rule, the header name of the others
+            String name = (equals >= 0 ? argument.substring(0, equals) : argument).trim();
+            String value = equals >= 0 ? argument.substring(equals + 1).trim() : null;
+            boolean valid = switch (kind) {
+                case "prefix" -> value != null;
+                case "set-header", "add-header" -> value != null && !name.isEmpty();
+                case "remove-header" -> value == null && !name.isEmpty();
+                default -> false;
+            };
+            if (!valid) {
+                throw new IllegalArgumentException("Invalid rewrite rule: " + rule);
+            }
+            if (kind.equals("prefix")) {
+                prefixes.add(trimSlashes(name));
+                replacements.add(trimSlashes(value));
+            }
+            if (kind.equals("set-header") || kind.equals("remove-header")) {
+                removed.add(name);
+            }
+            if (kind.equals("set-header") || kind.equals("add-header")) {
+                added.add(new String[] {name, value});
+            }
+        }
+        return new RequestRewriter(prefixes.toArray(new String[0]),
+            replacements.toArray(new String[0]), removed, added, forwardedHeaders);
+    }
+
+    private static String trimSlashes (String path)
+    {
+        int start = 0;
+        int end = path.length();
+        while (start < end && path.charAt(start) == '/') {
+            start++;
+        }
+        while (end > start && path.charAt(end - 1) == '/') {
+            end--;
+        }
+        return path.substring(start, end);
+    }
+
+    /**
+     * Returns the target of a servlet request forwarded below {@code mount}.
+     *
+     * @param request the incoming request
+     * @param mount   the path of the forwarding endpoint, e.g. {@code /forwardRequest}
+     * @return the rewritten path below the backend URL, without leading slash and with the query
+     * string of the request, still encoded as the client sent them
+     */
+    public String rewriteTarget (HttpServletRequest request, String mount)
+    {
+        return rewriteTarget(request.getRequestURI(),
+            request.getContextPath().length() + mount.length() + 1, request.getQueryString());
+    }
+
+    /**
+     * Returns the target of a reactive request forwarded below {@code mount}.
+     *
+     * @see #rewriteTarget(HttpServletRequest, String)
+     */
+    public String rewriteTarget (ServerHttpRequest request, String mount)
+    {
+        RequestPath path = request.getPath();
+        return rewriteTarget(path.value(), path.contextPath().value().length() + mount.length() + 1,
+            request.getURI().getRawQuery());
+    }
+
+    /**
+     * @param uri   the encoded path of the request
+     * @param start the index in {@code uri} of the path forwarded, after the slash that ends the
+     *              path of the forwarding endpoint
+     * @param query the encoded query string, {@code null} for none
+     * @return the rewritten path, without leading slash, and query string
+     */
+    public String rewriteTarget (String uri, int start, String query)
+    {
+        int length = uri.length();
+        start = Math.min(start, length);
+        for (int i = 0; i < prefixes.length; i++) {
+            String prefix = prefixes[i];
+            int end = start + prefix.length();
+            if (prefix.isEmpty()) {
+                return target(replacements[i], uri, start, length, query);
+            }
+            if (uri.regionMatches(start, prefix, 0, prefix.length())
+                && (end == length || uri.charAt(end) == '/')) {
+                // The rest keeps its leading slash, which joins it to the replacement
+                return target(replacements[i], uri, replacements[i].isEmpty() ? end + 1 : end,
+                    length, query);
+            }
+        }
+        if (query == null || query.isEmpty()) {
+            return uri.substring(start);
+        }
+        return target("", uri, start, length, query);
+    }
+
+    private static String target (String replacement, String uri, int restStart, int restEnd,
+                                  String query)
+    {
+        restStart = Math.min(restStart, restEnd);
+        boolean slash = !replacement.isEmpty() && restStart < restEnd
+            && uri.charAt(restStart) != '/';
+        boolean hasQuery = query != null && !query.isEmpty();
+        StringBuilder target = new StringBuilder(replacement.length() + (slash ? 1 : 0)
+            + restEnd - restStart + (hasQuery ? query.length() + 1 : 0));
+        target.append(replacement);
+        if (slash) {
+            target.append('/');
+        }
+        target.append(uri, restStart, restEnd);
+        if (hasQuery) {
+            target.append('?').append(query);
+        }
+        return target.toString();
+    }
+
+    /**
+     * Copies the headers of a servlet request to the backend request.
+     *
+     * @param request the incoming request
+     * @param target  the headers of the backend request
+     */
+    public void copyHeaders (HttpServletRequest request, HttpHeaders target)
+    {
+        String connection = join(request.getHeaders(HttpHeaders.CONNECTION));
+        Enumeration<String> names = request.getHeaderNames();
+        while (names.hasMoreElements()) {
+            String name = names.nextElement();
+            if (isForwarded(name, connection)) {
+                Enumeration<String> values = request.getHeaders(name);
+                while (values.hasMoreElements()) {
+                    target.add(name, values.nextElement());
+                }
+            }
+        }
+        if (forwardedHeaders) {
+            addForwardedHeaders(target, join(request.getHeaders(X_FORWARDED_FOR)),
+                request.getRemoteAddr(), request.getScheme(), request.getHeader(HttpHeaders.HOST));
+        }
+        addHeaders(target);
+    }
+
+    /**
+     * Copies the headers of a reactive request to the backend request.
+     *
+     * @param request the incoming request
+     * @param target  the headers of the backend request
+     */
+    public void copyHeaders (ServerHttpRequest request, HttpHeaders target)
+    {
+        HttpHeaders source = request.getHeaders();
+        String connection = join(source.get(HttpHeaders.CONNECTION));
+        for (Map.Entry<String, List<String>> header : source.entrySet()) {
+            if (isForwarded(header.getKey(), connection)) {
+                target.addAll(header.getKey(), header.getValue());
+            }
+        }
+        if (forwardedHeaders) {
+            InetSocketAddress remote = request.getRemoteAddress();
+            addForwardedHeaders(target, join(source.get(X_FORWARDED_FOR)),
+                remote != null && remote.getAddress() != null
+                    ? remote.getAddress().getHostAddress() : null,
+                request.getURI().getScheme(), source.getFirst(HttpHeaders.HOST));
+        }
+        addHeaders(target);
+    }
+
+    /**
+     * @return whether a header of a backend response describes the backend connection only, so
+     * that it must not be relayed to the client
+     */
+    public static boolean isHopByHop (String name)
+    {
+        for (String hopByHop : HOP_BY_HOP) {
+            if (hopByHop.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isForwarded (String name, String connection)
+    {
+        for (String drop : dropped) {
+            if (drop.equalsIgnoreCase(name)) {
+                return false;
+            }
+        }
+        return connection == null || !containsToken(connection, name);
+    }
+
+    private void addForwardedHeaders (HttpHeaders target, String forwardedFor, String clientAddress,
+                                      String scheme, String host)
+    {
+        if (clientAddress != null) {
+            target.set(X_FORWARDED_FOR,
+                forwardedFor != null ? forwardedFor + ", " + clientAddress : clientAddress);
+        }
+        else if (forwardedFor != null) {
+            target.set(X_FORWARDED_FOR, forwardedFor);
+        }
+        if (scheme != null && !target.containsKey(X_FORWARDED_PROTO)) {
+            target.set(X_FORWARDED_PROTO, scheme);
+        }
+        if (host != null && !target.containsKey(X_FORWARDED_HOST)) {
+            target.set(X_FORWARDED_HOST, host);
+        }
+    }
+
+    private void addHeaders (HttpHeaders target)
+    {
+        for (int i = 0; i < addedNames.length; i++) {
+            target.add(addedNames[i], addedValues[i]);
+        }
+    }
+
+    /**
+     * @return whether {@code name} is one of the comma-separated tokens of {@code list}, ignoring
+     * case and surrounding spaces
+     */
+    static boolean containsToken (String list, String name)
+    {
+        int length = list.length();
+        int start = 0;
+        while (start < length) {
+            int end = list.indexOf(',', start);
+            if (end < 0) {
+                end = length;
+            }
+            int tokenStart = start;
+            int tokenEnd = end;
+            while (tokenStart < tokenEnd && list.charAt(tokenStart) == ' ') {
+                tokenStart++;
+            }
+            while (tokenEnd > tokenStart && list.charAt(tokenEnd - 1) == ' ') {
+                tokenEnd--;
+            }
+            if (tokenEnd - tokenStart == name.length()
+                && list.regionMatches(true, tokenStart, name, 0, name.length())) {
+                return true;
+            }
+            start = end + 1;
+        }
+        return false;
+    }
+
+    /**
+     * @return the values of a header joined with commas, the only value without copying it, or
+     * {@code null} if there is none
+     */
+    private static String join (Enumeration<String> values)
+    {
+        if (values == null || !values.hasMoreElements()) {
+            return null;
+        }
+        String first = values.nextElement();
+        if (!values.hasMoreElements()) {
+            return first;
+        }
+        StringBuilder joined = new StringBuilder(first);
+        while (values.hasMoreElements()) {
+            joined.append(", ").append(values.nextElement());
+        }
+        return joined.toString();
+    }
+
+    private static String join (List<String> values)
+    {
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+        return values.size() == 1 ? values.get(0) : String.join(", ", values);
+    }
+}
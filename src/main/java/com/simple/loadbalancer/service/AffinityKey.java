@@ -0,0 +1,186 @@
+package com.simple.loadbalancer.service;
+
+import org.springframework.http.HttpHeaders;
+
+/**
+ * The part of a request that hash based strategies route on, so that all requests of a tenant or
+ * user reach the same backend and find its caches warm.
+ *
+ * <p>The source is configured with {@code loadbalancer.hash.key} as one of
+ * <ul>
+ *     <li>{@code header:<name>}: the value of a request header,</li>
+ *     <li>{@code cookie:<name>}: the value of a cookie,</li>
+ *     <li>{@code path:<n>}: the n-th segment, counting from 0, of the path forwarded to the
+ *     backend.</li>
+ * </ul>
+ *
+ * <p>Keys are hashed in place with 64 bit FNV-1a followed by a finalising mix, without copying
+ * the header or path into a new string.
+ */
+public final class AffinityKey
+{
+    /* Hash of a request that has no key */
+    public static final long NONE = 0;
+
+    /* Key source of a load balancer that does not route by key */
+    public static final AffinityKey DISABLED = new AffinityKey(Source.NONE, null, 0);
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private enum Source
+    {
+        NONE, HEADER, COOKIE, PATH
+    }
+
+    private final Source source;
+    /* Header, or cookie name for cookies */
+    private final String name;
+    private final int segment;
+
+    private AffinityKey (Source source, String name, int segment)
+    {
+        this.source = source;
+        this.name = name;
+        this.segment = segment;
+    }
+
+    /**
+     * @param spec the key source, {@code header:<name>}, {@code cookie:<name>} or
+     *             {@code path:<n>}; blank for no key
+     * @return the key source
+     * @throws IllegalArgumentException if the spec is not one of the above
+     */
+    public static AffinityKey parse (String spec)
+    {
+        if (spec == null || spec.isBlank()) {
+            return DISABLED;
+        }
+        int colon = spec.indexOf(':');
+        String argument = colon > 0 ? spec.substring(colon + 1).trim() : "";
+        if (argument.isEmpty()) {
+            throw new IllegalArgumentException("Invalid hash key: " + spec);
+        }
+        switch (spec.substring(0, colon).trim().toLowerCase()) {
+            case "header":
+                return new AffinityKey(Source.HEADER, argument, 0);
+            case "cookie":
+                return new AffinityKey(Source.COOKIE, argument, 0);
+            case "path":
+                int segment = Integer.parseInt(argument);
+                if (segment < 0) {
+                    throw new IllegalArgumentException("Invalid hash key: " + spec);
+                }
+                return new AffinityKey(Source.PATH, null, segment);
+            default:
+                throw new IllegalArgumentException("Invalid hash key: " + spec);
+        }
+    }
+
+    /**
+     * @return the request header the key is read from, or {@code null} if the key does not come
+     * from a header
+     */
+    public String getHeaderName ()
+    {
+        return switch (source) {
+            case HEADER -> name;
+            case COOKIE -> HttpHeaders.COOKIE;
+            default -> null;
+        };
+    }
+
+    /**
+     * Hashes the key of a request.
+     *
+     * @param headerValue the value of the {@link #getHeaderName()} header, may be null
+     * @param path        the path forwarded to the backend, may be null
+     * @return the hash of the key, or {@link #NONE} if the request has no key
+     */
+    public long hash (String headerValue, String path)
+    {
+        switch (source) {
+            case HEADER:
+                return headerValue != null ? hash(headerValue, 0, headerValue.length()) : NONE;
+            case COOKIE:
+                return headerValue != null ? hashCookie(headerValue) : NONE;
+            case PATH:
+                return path != null ? hashSegment(path) : NONE;
+            default:
+                return NONE;
+        }
+    }
+
+    private long hashCookie (String cookies)
+    {
+        // Cookie: a=1; name=value; b=2
+        int length = cookies.length();
+        int start = 0;
+        while (start < length) {
+            while (start < length && cookies.charAt(start) == ' ') {
+                start++;
+            }
+            int end = cookies.indexOf(';', start);
+            if (end < 0) {
+                end = length;
+            }
+            int nameEnd = start + name.length();
+            if (nameEnd < end && cookies.charAt(nameEnd) == '='
+                && cookies.regionMatches(start, name, 0, name.length())) {
+                return hash(cookies, nameEnd + 1, end);
+            }
+            start = end + 1;
+        }
+        return NONE;
+    }
+
+    private long hashSegment (String path)
+    {
+        // Segments end at the query, which may contain slashes of its own
+        int query = path.indexOf('?');
+        int length = query < 0 ? path.length() : query;
+        int start = path.startsWith("/") ? 1 : 0;
+        for (int i = 0; i < segment; i++) {
+            int slash = path.indexOf('/', start);
+            if (slash < 0 || slash >= length) {
+                return NONE;
+            }
+            start = slash + 1;
+        }
+        int end = start;
+        while (end < length && path.charAt(end) != '/') {
+            end++;
+        }
+        return hash(path, start, end);
+    }
+
+    /**
+     * @return the 64 bit hash of {@code value[start, end)}, or {@link #NONE} if the range is empty
+     */
+    public static long hash (CharSequence value, int start, int end)
+    {
+        if (start >= end) {
+            return NONE;
+        }
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = start; i < end; i++) {
+            hash ^= value.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        hash = mix(hash);
+        return hash != NONE ? hash : 1;
+    }
+
+    /**
+     * Finalising step of MurmurHash3, which spreads every input bit over the whole result.
+     */
+    static long mix (long hash)
+    {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
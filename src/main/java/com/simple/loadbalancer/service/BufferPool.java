@@ -0,0 +1,75 @@
+package com.simple.loadbalancer.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A bounded pool of fixed-size byte buffers used to copy request and response bodies between the
+ * client connection and the backend connection without materialising them on the heap.
+ *
+ * <p>Buffers are handed out by {@link #acquire()} and must be given back with
+ * {@link #release(byte[])}. When the pool is empty a fresh buffer is allocated, and when it is
+ * full a released buffer is simply dropped, so the pool never blocks the forwarding path.
+ */
+public class BufferPool
+{
+    /* Size in bytes of every buffer handed out by this pool */
+    private final int bufferSize;
+    /* Idle buffers ready to be reused */
+    private final BlockingQueue<byte[]> buffers;
+
+    public BufferPool (int bufferSize, int maxPooledBuffers)
+    {
+        if (bufferSize <= 0 || maxPooledBuffers <= 0) {
+            throw new IllegalArgumentException("Buffer size and pool size must be positive");
+        }
+        this.bufferSize = bufferSize;
+        this.buffers = new ArrayBlockingQueue<>(maxPooledBuffers);
+    }
+
+    public int getBufferSize ()
+    {
+        return bufferSize;
+    }
+
+    public byte[] acquire ()
+    {
+        byte[] buffer = buffers.poll();
+        return buffer != null ? buffer : new byte[bufferSize];
+    }
+
+    public void release (byte[] buffer)
+    {
+        if (buffer != null && buffer.length == bufferSize) {
+            buffers.offer(buffer);
+        }
+    }
+
+    /**
+     * Copies everything from {@code in} to {@code out} through a single pooled buffer.
+     *
+     * @param in  the source stream, read until end of stream
+     * @param out the destination stream
+     * @return the number of bytes copied
+     * @throws IOException if reading or writing fails
+     */
+    public long copy (InputStream in, OutputStream out) throws IOException
+    {
+        byte[] buffer = acquire();
+        try {
+            long total = 0;
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                total += read;
+            }
+            return total;
+        }
+        finally {
+            release(buffer);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.simple.loadbalancer.service;
+
+import com.simple.loadbalancer.status.Backend;
+import com.simple.loadbalancer.status.ServerLoadChecker;
+import com.simple.loadbalancer.status.ServerSnapshot;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Sticky strategy that sends all requests with the same {@link AffinityKey} to the same server,
+ * so that backend caches keyed by tenant or user stay warm.
+ *
+ * <p>Servers are placed on a hash ring with {@code virtualNodes} points each, scaled by their
+ * weight, and a request goes to the owner of the first point at or after the hash of its key.
+ * When a server leaves or joins the snapshot only the keys on its own points move, about 1/N of
+ * them, and they move to and from every other server evenly.
+ *
+ * <p>With a {@code loadFactor} above zero the strategy bounds the load of every server, as in
+ * consistent hashing with bounded loads: a server that already has more than
+ * {@code loadFactor} times the average number of requests in flight is passed over for the next
+ * server on the ring. Keys only leave their server while it is overloaded, and no server can get
+ * more than its bound. Saturated servers are always passed over.
+ *
+ * <p>The ring of a snapshot is built by {@link #prepare(ServerSnapshot)} before the snapshot is
+ * published. Every point is a 32 bit position packed with the snapshot position of its owner into
+ * one {@code long}, so the ring is a single sorted array and a lookup is a binary search over it
+ * that allocates nothing. Requests without a key are placed on the ring at random.
+ *
+ * <p>Selection never builds a ring. A request holding a snapshot the ring was not built for, one
+ * taken just before a newer snapshot was published, is placed on the published ring, whose
+ * servers are the most recently found healthy.
+ */
+public class ConsistentHashStrategy implements LoadBalancingStrategy
+{
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private final ServerLoadChecker serverLoadChecker;
+    private final int virtualNodes; // Points on the ring of a server of average weight
+    private final double loadFactor; // Bound on load relative to the average, 0 for no bound
+    private volatile Ring ring = new Ring(ServerSnapshot.EMPTY, new long[0]);
+
+    /**
+     * @param serverLoadChecker the requests in flight of every server
+     * @param virtualNodes      number of points every server of average weight gets on the ring
+     * @param loadFactor        maximum load of a server relative to the average load, at least 1,
+     *                          or 0 not to bound the load
+     */
+    public ConsistentHashStrategy (ServerLoadChecker serverLoadChecker, int virtualNodes,
+                                   double loadFactor)
+    {
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("A server needs at least one virtual node");
+        }
+        if (loadFactor != 0 && loadFactor < 1) {
+            throw new IllegalArgumentException("Load factor must be 0 or at least 1: " + loadFactor);
+        }
+        this.serverLoadChecker = serverLoadChecker;
+        this.virtualNodes = virtualNodes;
+        this.loadFactor = loadFactor;
+    }
+
+    @Override
+    public void prepare (ServerSnapshot healthyServers)
+    {
+        ring = buildRing(healthyServers);
+    }
+
+    @Override
+    public Backend selectServer (ServerSnapshot healthyServers)
+    {
+        return selectServer(healthyServers, AffinityKey.NONE);
+    }
+
+    @Override
+    public Backend selectServer (ServerSnapshot healthyServers, long keyHash)
+    {
+        return selectServer(healthyServers, keyHash, null);
+    }
+
+    /**
+     * Walks the ring on from the key as if {@code excluded} were saturated, so that a retried
+     * request goes to the server its key would move to if {@code excluded} left.
+     */
+    @Override
+    public Backend selectServer (ServerSnapshot healthyServers, long keyHash, Backend excluded)
+    {
+        if (healthyServers.size() == 0) {
+            return null;
+        }
+        Ring current = ring;
+        ServerSnapshot servers = current.snapshot;
+        int size = servers.size();
+        if (size == 0) {
+            // Nothing was prepared, so the snapshot does not come from the registry
+            return selectUnprepared(healthyServers, keyHash, excluded);
+        }
+
+        long[] points = current.points;
+        int start;
+        if (keyHash == AffinityKey.NONE) {
+            start = ThreadLocalRandom.current().nextInt(points.length);
+        }
+        else {
+            // The smallest packed value at the point of the key, so the search finds its successor
+            start = Arrays.binarySearch(points, (long) point(keyHash) << 32);
+            if (start < 0) {
+                start = -start - 1;
+            }
+            if (start == points.length) {
+                start = 0;
+            }
+        }
+
+        long capacity = -1; // Computed on first need, as it takes a pass over the snapshot
+        for (int i = 0; i < points.length; i++) {
+            int position = (start + i) % points.length;
+            Backend server = servers.get(owner(points[position]));
+            if (server == excluded || serverLoadChecker.isSaturated(server.getId())) {
+                continue;
+            }
+            int load = serverLoadChecker.getCurrentLoad(server.getId());
+            if (loadFactor == 0 || load == 0) {
+                return server;
+            }
+            if (capacity < 0) {
+                capacity = capacity(servers);
+            }
+            if (load < capacity) {
+                return server;
+            }
+        }
+        // Every server is saturated or at its bound
+        int owner = owner(points[start]);
+        Backend server = servers.get(owner);
+        if (server == excluded) {
+            return size > 1 ? servers.get((owner + 1) % size) : null;
+        }
+        return server;
+    }
+
+    private static Backend selectUnprepared (ServerSnapshot servers, long keyHash,
+                                             Backend excluded)
+    {
+        long hash = keyHash != AffinityKey.NONE ? keyHash : ThreadLocalRandom.current().nextLong();
+        int position = Math.floorMod(hash, servers.size());
+        if (servers.get(position) != excluded) {
+            return servers.get(position);
+        }
+        return servers.size() > 1 ? servers.get((position + 1) % servers.size()) : null;
+    }
+
+    /**
+     * @return the number of requests in flight a server may have before it is passed over
+     */
+    private long capacity (ServerSnapshot servers)
+    {
+        long total = 0;
+        for (int i = 0; i < servers.size(); i++) {
+            total += serverLoadChecker.getCurrentLoad(servers.get(i).getId());
+        }
+        // Counts the request being placed, so that an idle fleet accepts it anywhere
+        return (long) Math.ceil(loadFactor * (total + 1) / servers.size());
+    }
+
+    private Ring buildRing (ServerSnapshot servers)
+    {
+        int size = servers.size();
+        if (size == 0) {
+            return new Ring(servers, new long[0]);
+        }
+        int[] replicas = new int[size];
+        int total = 0;
+        for (int i = 0; i < size; i++) {
+            // Servers of average weight get virtualNodes points, the others proportionally more
+            replicas[i] = (int) Math.max(1, Math.round(
+                (double) virtualNodes * servers.getWeight(i) * size / servers.getTotalWeight()));
+            total += replicas[i];
+        }
+
+        long[] points = new long[total];
+        int next = 0;
+        for (int i = 0; i < size; i++) {
+            String url = servers.get(i).getUrl();
+            long base = AffinityKey.hash(url, 0, url.length());
+            for (int replica = 0; replica < replicas[i]; replica++) {
+                // Points only depend on the server, so they survive any change to the others
+                int point = point(AffinityKey.mix(base + replica * GOLDEN_GAMMA));
+                points[next++] = (long) point << 32 | i;
+            }
+        }
+        Arrays.sort(points);
+        return new Ring(servers, points);
+    }
+
+    /**
+     * @return the position on the ring of a 64 bit hash
+     */
+    private static int point (long hash)
+    {
+        return (int) (hash >>> 32);
+    }
+
+    /**
+     * @return the snapshot position of the owner of a packed point
+     */
+    private static int owner (long packed)
+    {
+        return (int) packed;
+    }
+
+    /**
+     * Points of the ring of a snapshot, each packed with the snapshot position of its owner, in
+     * ring order.
+     */
+    private record Ring(ServerSnapshot snapshot, long[] points)
+    {
+    }
+}
@@ -1,45 +1,75 @@
 package com.simple.loadbalancer.service;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import com.simple.loadbalancer.status.Backend;
+import com.simple.loadbalancer.status.ServerLoadChecker;
+import com.simple.loadbalancer.status.ServerSnapshot;
 
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Least-outstanding-requests strategy: sends every request to the server with the fewest requests
+ * in flight.
+ *
+ * <p>The counts are the ones kept by {@link ServerLoadChecker}, which the forwarding paths
+ * increment when a request is sent to a server and decrement once its response is complete, so
+ * they are exact under any concurrency and need no bookkeeping in the strategy itself. Selection
+ * is a single lock-free scan over the snapshot that reads one counter per server. When several
+ * load balancers share the servers, the requests the others report in flight are counted too.
+ *
+ * <p>Ties are broken uniformly at random. Always taking the first of several idle servers would
+ * make every request that arrives in the same instant pile onto that one server before any of
+ * them is counted.
+ */
 public class LeastConnectionsStrategy implements LoadBalancingStrategy
 {
-    private final Map<String, Integer> serverConnections = new HashMap<>(); // Active connections count
+    private final ServerLoadChecker serverLoadChecker; // Requests in flight, by server id
+
+    public LeastConnectionsStrategy (ServerLoadChecker serverLoadChecker)
+    {
+        this.serverLoadChecker = serverLoadChecker;
+    }
 
     @Override
-    public String selectServer (List<String> healthyServers)
+    public Backend selectServer (ServerSnapshot healthyServers)
     {
-        System.out.println("LeastConnectionsStrategy");
         if (healthyServers.isEmpty()) {
             return null;
         }
 
-        // Initialize connections count for new servers
-        for (String server : healthyServers) {
-            serverConnections.putIfAbsent(server, 0);
-        }
-
-        // Find the server with the least number of connections
-        String selectedServer = healthyServers.get(0);
-        int minConnections = serverConnections.get(selectedServer);
+        // A server with an open circuit or a low concurrency limit can be the least loaded one, so
+        // look among the servers below their limit first
+        Backend selectedServer = leastLoaded(healthyServers, true);
+        return selectedServer != null ? selectedServer : leastLoaded(healthyServers, false);
+    }
 
-        for (String server : healthyServers) {
-            int connections = serverConnections.get(server);
-            if (connections < minConnections) {
-                minConnections = connections;
+    /**
+     * Finds the server with the least requests in flight.
+     *
+     * @param skipSaturated whether to leave out the servers at their limit
+     * @return the least loaded server, or {@code null} if every server was left out
+     */
+    private Backend leastLoaded (ServerSnapshot healthyServers, boolean skipSaturated)
+    {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Backend selectedServer = null;
+        int minLoad = Integer.MAX_VALUE;
+        int ties = 0;
+        for (int i = 0; i < healthyServers.size(); i++) {
+            Backend server = healthyServers.get(i);
+            if (skipSaturated && serverLoadChecker.isSaturated(server.getId())) {
+                continue;
+            }
+            int load = serverLoadChecker.getClusterLoad(server.getId());
+            if (load < minLoad) {
+                minLoad = load;
+                selectedServer = server;
+                ties = 1;
+            }
+            else if (load == minLoad && random.nextInt(++ties) == 0) {
+                // Keeps each of the equally loaded servers seen so far with the same probability
                 selectedServer = server;
-                updateConnections(server, minConnections);
             }
         }
         return selectedServer;
     }
-
-    // Method to update connection count after each request handling (to be called externally)
-    public void updateConnections (String server, int delta)
-    {
-        serverConnections.put(server, serverConnections.getOrDefault(server, 0) + delta);
-    }
 }
-
@@ -1,31 +1,56 @@
 package com.simple.loadbalancer.service;
 
+import com.simple.loadbalancer.client.BackendClient;
+import com.simple.loadbalancer.client.BackendSaturatedException;
+import com.simple.loadbalancer.cluster.ClusterState;
+import com.simple.loadbalancer.discovery.FileDiscoverySource;
+import com.simple.loadbalancer.observability.LoadBalancerMetrics;
+import com.simple.loadbalancer.observability.LogSampler;
+import com.simple.loadbalancer.rewrite.RequestRewriter;
+import com.simple.loadbalancer.status.Backend;
+import com.simple.loadbalancer.status.CircuitBreaker;
+import com.simple.loadbalancer.status.ConcurrencyLimiter;
+import com.simple.loadbalancer.status.HealthChecker;
+import com.simple.loadbalancer.status.LatencyTracker;
+import com.simple.loadbalancer.status.OutlierDetector;
 import com.simple.loadbalancer.status.ServerLoadChecker;
+import com.simple.loadbalancer.status.ServerRegistry;
+import com.simple.loadbalancer.status.ServerSnapshot;
 import com.simple.loadbalancer.status.ServerStatus;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Properties;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
-import org.springframework.core.io.ByteArrayResource;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.StreamingHttpOutputMessage;
+import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.util.LinkedMultiValueMap;
-import org.springframework.util.MultiValueMap;
-import org.springframework.web.client.RestTemplate;
-import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.client.HttpStatusCodeException;
 
 
 /**
@@ -35,17 +60,27 @@ import org.springframework.web.multipart.MultipartFile;
  * checks,and load distribution.
  *
  * <p>This service utilizes a specified {@link LoadBalancingStrategy} to determine the target server
- * for each request and a {@link RestTemplate} to forward the requests to the selected server.
+ * for each request and a {@link BackendClient} to forward the requests to the selected server over
+ * pooled keep-alive connections.
  *
  * <p>The class supports handling both standard HTTP json requests and multipart file uploads. It is
+ * also able to stream request and response bodies straight through a {@link BufferPool} (see
+ * {@link #streamRequest(HttpServletRequest, HttpServletResponse, String)}), so that large or binary
+ * payloads are never decoded into a String on the heap. It is
  * designed to be stateless to ensure scalability and fault tolerance in a distributed environment.
  *
+ * <p>Every decision and outcome is recorded in {@link LoadBalancerMetrics}. Nothing is logged per
+ * successful request; failures and rejections, which can occur on every request of an overloaded
+ * balancer, are logged through a {@link LogSampler} at most once per second each.
+ *
  * <p>Usage example:
  * <pre>
  *     LoadBalancerService loadBalancerService = new LoadBalancerService(loadBalancingStrategy,
- *     restTemplate, serverLoadChecker);
+ *     serverLoadChecker, latencyTracker, serverRegistry, backendClient, healthChecker,
+ *     resilience, responseCache, metrics, bufferPool, affinityKey, clusterState,
+ *     requestRewriter);
  *     ResponseEntity<?> response = loadBalancerService.forwardRequest(HttpMethod.POST, headers,
- *     body, "<backend api>", "file");
+ *     body, "<backend api>");
  * </pre>
  *
  * @author Manojkumar M
@@ -55,39 +90,117 @@ import org.springframework.web.multipart.MultipartFile;
 @Service
 public class LoadBalancerService
 {
-    /* List of all healthy server */
-    private final List<String> healthyServers = new CopyOnWriteArrayList<>();
-    /* Get the current server index */
-    /*This is to test the health of the service */
-    private final RestTemplate restTemplate = new RestTemplate();
+    private static final Logger log = LoggerFactory.getLogger(LoadBalancerService.class);
+
+    /* All configured servers and the published snapshot of the healthy ones */
+    private final ServerRegistry serverRegistry;
+    /* Pooled keep-alive connections used to forward requests */
+    private final BackendClient backendClient;
+    /* Concurrent prober of the health endpoint of the servers */
+    private final HealthChecker healthChecker;
     // Strategy Interface to get different routing algo
     private final LoadBalancingStrategy loadBalancingStrategy;
-    /* This is filter to know the which service is having high failure */
-    private final Map<String, ServerStatus> serverStatusMap = new ConcurrentHashMap<>();
-    // Max number of failures before blacklisting
-    private final int failureThreshold = 3;
-    // Duration to keep a server blacklisted
-    private final int blacklistDurationMinutes = 5;
-    /* List of all server  that is configured */
-    private List<String> allServers = new ArrayList<>();
-
+    /* Ejects the servers whose responses to forwarded requests show them misbehaving */
+    private final OutlierDetector outlierDetector;
+    /* Stops sending requests to servers that fail or answer too slowly */
+    private final CircuitBreaker circuitBreaker;
+    /* Adapts the number of requests every server may have in flight to how fast it answers */
+    private final ConcurrencyLimiter concurrencyLimiter;
+    /* When failed or slow requests are sent to a second server */
+    private final RetryPolicy retryPolicy;
+    /* Responses to GET requests that the backends allow to be reused */
+    private final ResponseCache responseCache;
+    /* Counters, gauges and latency histograms of the forwarding path */
+    private final LoadBalancerMetrics metrics;
+    /* Rate limits of the messages that can occur on every request */
+    private final LogSampler rejectedLog = new LogSampler(Duration.ofSeconds(1));
+    private final LogSampler failedLog = new LogSampler(Duration.ofSeconds(1));
+    private final LogSampler noServerLog = new LogSampler(Duration.ofSeconds(1));
+    /* Runs the requests that may be hedged, so that the caller can wait on them with a timeout */
+    private final ExecutorService hedgeExecutor = Executors.newVirtualThreadPerTaskExecutor();
     private ServerLoadChecker serverLoadChecker;
+    /* Moving average of the response latency of every server, fed by the forwarding paths */
+    private final LatencyTracker latencyTracker;
+    /* Pooled copy buffers used by the streaming forwarding path */
+    private final BufferPool bufferPool;
+    /* Part of the request that hash based strategies route on */
+    private final AffinityKey affinityKey;
+    /* Health of the servers as found by the other load balancers of the cluster */
+    private final ClusterState clusterState;
+    /* Headers and path rewriting of the requests sent to the servers */
+    private final RequestRewriter requestRewriter;
 
     /**
      * Constructs a new {@code LoadBalancerService} with the specified load balancing strategy,
-     * RestTemplate, and server load checker.
+     * server load checker, latency tracker, server registry, backend client, health checker,
+     * resilience, response cache, metrics, buffer pool, affinity key, cluster state and request
+     * rewriter.
      *
      * @param loadBalancingStrategy the load balancing strategy to use for selecting a target server
-     * @param restTemplate          the RestTemplate instance for forwarding HTTP requests
      * @param serverLoadChecker     the server load checker for monitoring and managing server loads
+     * @param latencyTracker        the tracker the response latency of every server is recorded in
+     * @param serverRegistry        the registry of the servers and of the healthy server snapshot
+     * @param backendClient         the client used to send requests to the backend servers
+     * @param healthChecker         the prober deciding which servers are healthy
+     * @param resilience            the outlier detector, circuit breaker, concurrency limiter and
+     *                              retry policy the outcome of every forwarded request is fed to
+     * @param responseCache         the cache GET requests are answered from when it can
+     * @param metrics               the meters every decision and outcome is recorded in
+     * @param bufferPool            the pool of copy buffers used when streaming bodies
+     * @param affinityKey           the part of the request that hash based strategies route on
+     * @param clusterState          the view of the servers shared with the other load balancers
+     * @param requestRewriter       the rewriting of the headers of the streamed requests
      */
-    public LoadBalancerService (LoadBalancingStrategy loadBalancingStrategy, ServerLoadChecker serverLoadChecker)
+    public LoadBalancerService (LoadBalancingStrategy loadBalancingStrategy,
+                                ServerLoadChecker serverLoadChecker,
+                                LatencyTracker latencyTracker,
+                                ServerRegistry serverRegistry,
+                                BackendClient backendClient,
+                                HealthChecker healthChecker,
+                                Resilience resilience,
+                                ResponseCache responseCache,
+                                LoadBalancerMetrics metrics,
+                                BufferPool bufferPool,
+                                AffinityKey affinityKey,
+                                ClusterState clusterState,
+                                RequestRewriter requestRewriter)
     {
         this.loadBalancingStrategy = loadBalancingStrategy;
         this.serverLoadChecker = serverLoadChecker;
+        this.latencyTracker = latencyTracker;
+        this.serverRegistry = serverRegistry;
+        this.backendClient = backendClient;
+        this.healthChecker = healthChecker;
+        this.outlierDetector = resilience.outlierDetector();
+        this.circuitBreaker = resilience.circuitBreaker();
+        this.concurrencyLimiter = resilience.concurrencyLimiter();
+        this.retryPolicy = resilience.retryPolicy();
+        this.responseCache = responseCache;
+        this.metrics = metrics;
+        this.bufferPool = bufferPool;
+        this.affinityKey = affinityKey;
+        this.clusterState = clusterState;
+        this.requestRewriter = requestRewriter;
+        serverRegistry.addRegistrationListener(this::resetServerState);
+        serverRegistry.addRemovalListener(server -> backendClient.release(server.getUrl()));
         initializeServers();
     }
 
+    /**
+     * Clears the state kept under the id of a new server, which may be left by a removed server
+     * whose slot it took, so that the new server starts closed, unejected, up, unlimited and
+     * without latency or meters of its own.
+     */
+    private void resetServerState (Backend server)
+    {
+        latencyTracker.reset(server.getId());
+        concurrencyLimiter.reset(server.getId());
+        circuitBreaker.reset(server);
+        outlierDetector.reset(server);
+        healthChecker.reset(server);
+        metrics.reset(server);
+    }
+
     public void initializeServers ()
     {
         // Initialize with a list of servers (this can also come from loadbalancer properties)
@@ -100,14 +213,15 @@ public class LoadBalancerService
      *
      * <p>This method reads the configuration properties from the file located at
      * {@code config/loadbalancer.properties}. It loads the server information specified under
-     * the {@code servers} property, which is a comma-separated list of server URLs.
+     * the {@code servers} property, which is a comma-separated list of server URLs. A URL may be
+     * followed by {@code ;weight=<n>} to give the server a share of traffic other than 1.
      *
-     * <p>The servers listed in the properties file are added to the {@code allServers} list and
-     * are initially assumed to be healthy. Therefore, all servers are also added to the {@code
-     * healthyServers} list at the start.
+     * <p>The servers listed in the properties file are registered in the {@link ServerRegistry} and
+     * are initially assumed to be healthy. Therefore, all servers are also published in the first
+     * healthy server snapshot at the start.
      *
      * <p>If there is an error while loading the properties file (e.g., file not found or I/O error)
-     * , an error message is printed to the standard error stream.
+     * , an error message is logged.
      *
      * <p>Usage example:
      * <pre>
@@ -126,12 +240,18 @@ public class LoadBalancerService
             properties.load(input);
             String servers = properties.getProperty("servers");
             if (servers != null) {
-                allServers = new ArrayList<>(Arrays.asList(servers.split(",")));
-                healthyServers.addAll(allServers); // Initially, assume all servers are healthy
+                List<Backend> configured = new ArrayList<>();
+                FileDiscoverySource.parseServers(servers).forEach((url, spec) -> {
+                    Backend backend = serverRegistry.register(url);
+                    serverRegistry.setWeight(backend, spec.weight());
+                    serverRegistry.setZone(backend, spec.zone());
+                    configured.add(backend);
+                });
+                serverRegistry.publish(configured); // Initially, assume all servers are healthy
             }
         }
         catch (IOException e) {
-            System.err.println("Error loading properties file: " + e.getMessage());
+            log.error("Error loading properties file: {}", e.getMessage());
         }
     }
 
@@ -141,13 +261,16 @@ public class LoadBalancerService
      * availability and status.
      *
      * <p>This method is scheduled to run at a fixed interval, as specified by the configuration
-     * property {@code loadbalancer.healthcheck.interval}. It iterates through all servers in the
-     * system and checks their health status. If a server is found to be healthy but is not currently
-     * marked as healthy, it is added to the list of healthy servers. Conversely, if a server is
-     * found to be unhealthy, it is removed from the list of healthy servers.
+     * property {@code loadbalancer.healthcheck.interval}. The {@link HealthChecker} probes all
+     * servers concurrently, each probe bounded by a timeout, so a sweep takes about as long as the
+     * slowest single probe whatever the number of servers. A server is only taken out after
+     * several consecutive failed probes and only put back after several consecutive passed ones.
+     * Servers that most of the other load balancers of the cluster find down are left out as
+     * well. The outcome of the whole sweep is published as a single new {@link ServerSnapshot},
+     * and only if it differs from the current one.
      *
-     * <p>Logging messages are printed to the console to indicate changes in server status
-     * (either a server coming back online or going down).
+     * <p>Changes in server status (either a server coming back online or going down) are logged
+     * and counted in the {@link LoadBalancerMetrics}.
      *
      * <p>This method ensures that the load balancer has an up-to-date list of healthy servers
      * to forward incoming requests to, thereby enhancing fault tolerance and system resilience.
@@ -160,147 +283,515 @@ public class LoadBalancerService
      *     }
      * </pre>
      *
-     * @see #checkServerHealth(String)
+     * @see HealthChecker#sweep(List)
      */
     @Scheduled(fixedDelayString = "${loadbalancer.healthcheck.interval}")
     public void performHealthChecks ()
     {
-        for (String server : allServers) {
-            if (checkServerHealth(server)) {
-                if (!healthyServers.contains(server)) {
-                    healthyServers.add(server);
-                    System.out.println("Server " + server + " is back online.");
-                }
+        Set<Backend> published = Collections.newSetFromMap(new IdentityHashMap<>());
+        published.addAll(serverRegistry.getSnapshot().asList());
+        List<Backend> checked = List.copyOf(serverRegistry.getAll());
+        List<Backend> healthy = healthChecker.sweep(checked);
+        // A server that passes the local probes but that most of the cluster finds down is left
+        // out, unless the cluster finds down every such server: the vote never empties the pool
+        boolean overruled = healthy.stream().allMatch(clusterState::isDownInCluster);
+        if (!overruled) {
+            healthy.removeIf(clusterState::isDownInCluster);
+        }
+        for (Backend server : checked) {
+            boolean up = healthChecker.isUp(server)
+                && (overruled || !clusterState.isDownInCluster(server));
+            boolean changed = up != published.contains(server);
+            if (changed && up) {
+                log.info("Server {} is back online.", server);
             }
-            else {
-                healthyServers.remove(server);
-                System.out.println("Server " + server + " is down or unhealthy.");
+            else if (changed) {
+                log.warn("Server {} is down or unhealthy.", server);
             }
+            metrics.recordHealth(server, up, changed);
         }
+        serverRegistry.publishChecked(checked, healthy);
+    }
+
+    /**
+     * Readmits the servers whose ejection by the {@link OutlierDetector} is over and ejects the
+     * servers whose latency is far above the others.
+     *
+     * @see OutlierDetector#sweep()
+     */
+    @Scheduled(fixedDelayString = "${loadbalancer.outlier.interval:1000}")
+    public void detectOutliers ()
+    {
+        outlierDetector.sweep();
     }
 
-    // Check server health by hitting the /health endpoint
-    private boolean checkServerHealth (String server)
+    /**
+     * Half-opens the circuits that have been open long enough for their server to be tried again.
+     *
+     * @see CircuitBreaker#sweep()
+     */
+    @Scheduled(fixedDelayString = "${loadbalancer.circuit.interval:1000}")
+    public void updateCircuitBreakers ()
     {
-        try {
-            String healthUrl = server + "/health";
-            restTemplate.getForEntity(healthUrl, String.class);
-            return true; // Server is healthy if no exception is thrown
-        }
-        catch (Exception e) {
-            return false; // Server is unhealthy if an exception occurs
+        circuitBreaker.sweep();
+    }
+
+    /**
+     * Recomputes the hedge delay from the response times of the last few seconds.
+     *
+     * @see RetryPolicy#update()
+     */
+    @Scheduled(fixedDelayString = "${loadbalancer.hedge.interval:1000}")
+    public void updateHedgeDelay ()
+    {
+        retryPolicy.update();
+    }
+
+
+    /**
+     * Picks the backend server for the next request among the healthy ones.
+     *
+     * @return the selected server, or {@code null} if no server is available
+     */
+    Backend selectServer ()
+    {
+        return selectServer(AffinityKey.NONE);
+    }
+
+    /**
+     * Picks the backend server for the next request among the healthy ones.
+     *
+     * @param keyHash the hash of the {@link AffinityKey} of the request, or
+     *                {@link AffinityKey#NONE}
+     * @return the selected server, or {@code null} if no server is available
+     */
+    Backend selectServer (long keyHash)
+    {
+        Backend server = loadBalancingStrategy.selectServer(serverRegistry.getSnapshot(), keyHash);
+        metrics.recordSelection(server);
+        if (server == null) {
+            long suppressed = noServerLog.sample();
+            if (suppressed >= 0) {
+                log.warn("Request failed. No available servers ({} similar messages suppressed).",
+                    suppressed);
+            }
         }
+        return server;
     }
 
+    AffinityKey getAffinityKey ()
+    {
+        return affinityKey;
+    }
+
+    RequestRewriter getRequestRewriter ()
+    {
+        return requestRewriter;
+    }
 
     /**
      * Forwards an HTTP request to the selected backend server based on the load balancing strategy.
      *
+     * <p>A request the server did not take, or an idempotent request the server failed, is
+     * retried on another server as long as the {@link RetryPolicy} budget allows. With hedging
+     * enabled, an idempotent request that is slower than most is also sent to a second server
+     * and the first answer is used. GET requests without a body go through the
+     * {@link ResponseCache} first.
+     *
      * @param method    the HTTP method (GET, POST, PUT, DELETE, etc.)
      * @param headers   the HTTP headers to be included in the request
-     * @param body      the request body or {@link MultipartFile} in case of a file upload
-     * @param targetURL the target URL path of the backend service API
-     * @param type      the type of request, either "file" for file uploads or {@code null} for
-     *                  standard requests
+     * @param body      the request body, or {@code null} if there is none
+     * @param targetURL the path and query string sent to the backend, without leading slash
      * @return a {@link ResponseEntity} containing the response from the backend server or an
      * error message if forwarding fails
      */
     public ResponseEntity<?> forwardRequest (HttpMethod method,
                                              HttpHeaders headers,
                                              Object body,
-                                             String targetURL,
-                                             String type) throws IOException
+                                             String targetURL) throws IOException
     {
-        String server = loadBalancingStrategy.selectServer(healthyServers);
-        if (server == null) {
-            System.out.println("Request failed. No available servers.");
+        if (method == HttpMethod.GET && body == null && responseCache.isEnabled()) {
+            return responseCache.get(targetURL, headers,
+                cacheHeaders -> forwardUncached(method, cacheHeaders, null, targetURL));
+        }
+        return forwardUncached(method, headers, body, targetURL);
+    }
+
+    private ResponseEntity<?> forwardUncached (HttpMethod method,
+                                               HttpHeaders headers,
+                                               Object body,
+                                               String targetURL) throws IOException
+    {
+        String keyHeader = affinityKey.getHeaderName();
+        long keyHash =
+            affinityKey.hash(keyHeader != null ? headers.getFirst(keyHeader) : null, targetURL);
+        Backend backend = selectServer(keyHash);
+        if (backend == null) {
             return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("No available servers");
         }
 
-        String fullUrl = server + "/" + targetURL; // Construct full URL
-        System.out.println("Forwarding request to: " + fullUrl);
-        HttpEntity<?> requestEntity;
-        if ("file".equals(type)) {
-            // Ensure 'body' is of type MultipartFile
-            if (body instanceof MultipartFile) {
-                MultipartFile file = (MultipartFile) body;
-                try {
-                    // Use ByteArrayResource to handle file contents properly
-                    ByteArrayResource fileAsResource = new ByteArrayResource(file.getBytes())
-                    {
-                        @Override
-                        public String getFilename ()
-                        {
-                            return file.getOriginalFilename();
-                        }
-                    };
+        HttpEntity<?> requestEntity = new HttpEntity<>(body, headers);
+        retryPolicy.onRequest();
+        boolean idempotent = RetryPolicy.isIdempotent(method);
+        Attempt attempt = idempotent && retryPolicy.getHedgeDelayNanos() > 0
+            ? hedgedExchange(backend, keyHash, method, targetURL, requestEntity)
+            : exchange(backend, method, targetURL, requestEntity);
+        for (int retry = 0; retry < retryPolicy.getMaxRetries()
+            && (attempt.notSent() || (attempt.failed() && idempotent)); retry++) {
+            Backend next = loadBalancingStrategy.selectServer(serverRegistry.getSnapshot(), keyHash,
+                attempt.server());
+            if (next == null) {
+                break;
+            }
+            if (!retryPolicy.tryAcquireExtraRequest()) {
+                metrics.recordBudgetExhausted();
+                break;
+            }
+            metrics.recordRetry();
+            log.debug("Retrying request on {}", next);
+            attempt = exchange(next, method, targetURL, requestEntity);
+        }
+        return attempt.response();
+    }
 
-                    MultiValueMap<String, Object> mfile = new LinkedMultiValueMap<>();
-                    mfile.add("file", fileAsResource);
+    /**
+     * Sends the request to {@code primary} and, if it has not answered after the hedge delay, to
+     * a second server as well, returning the first answer that is not a failure. The slower copy
+     * runs to completion in the background; its result is only used for accounting.
+     */
+    private Attempt hedgedExchange (Backend primary, long keyHash, HttpMethod method,
+                                    String targetURL, HttpEntity<?> requestEntity)
+    {
+        CompletableFuture<Attempt> first = CompletableFuture.supplyAsync(
+            () -> exchange(primary, method, targetURL, requestEntity), hedgeExecutor);
+        try {
+            return first.get(retryPolicy.getHedgeDelayNanos(), TimeUnit.NANOSECONDS);
+        }
+        catch (TimeoutException e) {
+            // Slower than most requests: hedge below
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return first.join();
+        }
+        catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
 
-                    // Create HttpEntity for multipart request
-                    requestEntity = new HttpEntity<>(mfile, headers);
-                }
-                catch (IOException e) {
-                    System.out.println("Error reading file: " + e.getMessage());
-                    return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error reading file");
-                }
+        Backend other = loadBalancingStrategy.selectServer(serverRegistry.getSnapshot(), keyHash,
+            primary);
+        if (other == null) {
+            return first.join();
+        }
+        if (!retryPolicy.tryAcquireExtraRequest()) {
+            metrics.recordBudgetExhausted();
+            return first.join();
+        }
+        metrics.recordHedge();
+        log.debug("Hedging request on {}", other);
+        CompletableFuture<Attempt> second = CompletableFuture.supplyAsync(
+            () -> exchange(other, method, targetURL, requestEntity), hedgeExecutor);
+        CompletableFuture<Attempt> winner = new CompletableFuture<>();
+        first.thenAccept(attempt -> {
+            if (!attempt.failed() && !attempt.notSent()) {
+                winner.complete(attempt);
             }
-            else {
-                System.out.println("Invalid body type for file upload.");
-                return ResponseEntity.badRequest().body("Invalid body type for file upload.");
+        });
+        second.thenAccept(attempt -> {
+            if (!attempt.failed() && !attempt.notSent()) {
+                winner.complete(attempt);
             }
+        });
+        // Both failed: report the failure of the hedge, which is retried like any other
+        CompletableFuture.allOf(first, second).thenRun(() -> winner.complete(second.join()));
+        return winner.join();
+    }
+
+    /**
+     * Sends the request to one server and records the outcome. Never throws.
+     */
+    private Attempt exchange (Backend backend, HttpMethod method, String targetURL,
+                              HttpEntity<?> requestEntity)
+    {
+        String server = backend.getUrl();
+        String fullUrl = server + "/" + targetURL; // Construct full URL
+        log.debug("Forwarding request to: {}", fullUrl);
+        int serverSlot = backend.getId();
+        if (!serverLoadChecker.tryIncrementLoad(serverSlot)) {
+            // Strategies pass over servers at their limit, so every server is at its limit
+            recordRejected(backend, "concurrency limit reached");
+            return Attempt.notSent(backend, "Server busy");
         }
-        else {
-            // Handle regular POST request
-            requestEntity = new HttpEntity<>(body, headers);
-        }
-        // Forward the request using RestTemplate
+        long start = System.nanoTime();
         try {
-            serverLoadChecker.incrementLoad(server);
-            ResponseEntity<?> responseEntity = restTemplate.exchange(fullUrl, method,
-                requestEntity,
-                String.class);
-            resetServerFailureCount(server);
-            return responseEntity;
+            ResponseEntity<?> responseEntity = backendClient.exchange(server, fullUrl, method,
+                requestEntity);
+            long latency = System.nanoTime() - start;
+            recordServerSuccess(backend, latency);
+            retryPolicy.recordLatency(latency);
+            return new Attempt(backend, ResponseEntity.status(responseEntity.getStatusCode())
+                .headers(endToEnd(responseEntity.getHeaders()))
+                .body(responseEntity.getBody()), false, false);
+        }
+        catch (BackendSaturatedException e) {
+            recordRejected(backend, e.getMessage());
+            return Attempt.notSent(backend, "Server busy");
+        }
+        catch (HttpStatusCodeException e) {
+            // A client error is the fault of the request, not of the server
+            boolean serverError = e.getStatusCode().is5xxServerError();
+            if (serverError) {
+                recordServerFailure(backend, System.nanoTime() - start, e);
+            }
+            else {
+                recordServerSuccess(backend, System.nanoTime() - start);
+            }
+            // Relayed as the backend sent it, as the streaming data planes do
+            return new Attempt(backend, ResponseEntity.status(e.getStatusCode())
+                .headers(endToEnd(e.getResponseHeaders()))
+                .body(e.getResponseBodyAsString()), serverError, false);
         }
         catch (Exception e) {
-            System.out.println("Failed to forward request: " + e.getMessage());
-            incrementServerFailureCount(server);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error forwarding request");
+            recordServerFailure(backend, System.nanoTime() - start, e);
+            // A refused connection means the server never saw the request
+            return new Attempt(backend, ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body("Error forwarding request"), true, e.getCause() instanceof ConnectException);
         }
         finally {
             // Decrement load after request completes, regardless of success or failure
-            serverLoadChecker.decrementLoad(server);
+            serverLoadChecker.decrementLoad(serverSlot);
         }
     }
 
-    private void resetServerFailureCount (String server)
+    /**
+     * @return the headers of a backend response without those describing the backend connection,
+     * as the servlet container frames the client connection itself
+     */
+    private static HttpHeaders endToEnd (HttpHeaders headers)
+    {
+        HttpHeaders relayed = new HttpHeaders();
+        if (headers != null) {
+            headers.forEach((name, values) -> {
+                if (!RequestRewriter.isHopByHop(name)) {
+                    relayed.addAll(name, values);
+                }
+            });
+        }
+        return relayed;
+    }
+
+    /**
+     * Outcome of sending a request to one server.
+     *
+     * @param server   the server the request was sent to
+     * @param response the response to return to the client
+     * @param failed   whether the server failed the request, so that it may be retried if it is
+     *                 idempotent
+     * @param notSent  whether the request never reached the server, so that it may be retried
+     *                 whatever its method
+     */
+    private record Attempt(Backend server, ResponseEntity<?> response, boolean failed,
+                           boolean notSent)
     {
-        ServerStatus status = serverStatusMap.get(server);
-        if (status != null) {
-            status.resetFailureCount();
+        static Attempt notSent (Backend server, String message)
+        {
+            return new Attempt(server,
+                ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(message), false, true);
         }
     }
 
     /**
-     * Adds filtering logic to blacklist servers that have a high connection failure rate,
-     * to ensure reliable load balancing.
+     * Forwards the servlet request to the selected backend server, streaming the request body to
+     * the backend and the backend response straight back to {@code response}.
+     *
+     * <p>Unlike {@link #forwardRequest(HttpMethod, HttpHeaders, Object, String)}, bodies are
+     * never read into memory: they are copied in fixed-size chunks taken from the {@link BufferPool},
+     * so heap use per request stays constant whatever the payload size and non UTF-8 payloads are
+     * relayed byte for byte. Request headers go through the {@link RequestRewriter}; the backend
+     * status code and headers are passed through unchanged, hop-by-hop headers aside.
      *
-     * @param server the server name of the blacklisted.
+     * @param request   the incoming request, whose body has not been consumed yet
+     * @param response  the response to write the backend answer to
+     * @param targetURL the path and query string sent to the backend, without leading slash
+     * @throws IOException if the client connection fails while writing an error response
      */
-    private void incrementServerFailureCount (String server)
-    {
-        ServerStatus status = serverStatusMap.get(server);
-        if (status != null) {
-            status.incrementFailureCount();
-            if (status.getFailureCount() >= failureThreshold) {
-                status.setBlacklisted(true);
-                System.out.println("Server " + server + " has been blacklisted due to repeated failures.");
+    public void streamRequest (HttpServletRequest request,
+                               HttpServletResponse response,
+                               String targetURL) throws IOException
+    {
+        String keyHeader = affinityKey.getHeaderName();
+        Backend backend = selectServer(
+            affinityKey.hash(keyHeader != null ? request.getHeader(keyHeader) : null, targetURL));
+        if (backend == null) {
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), "No available servers");
+            return;
+        }
+
+        String server = backend.getUrl();
+        String fullUrl = server + "/" + targetURL;
+        HttpMethod method = HttpMethod.valueOf(request.getMethod());
+        boolean hasBody = request.getContentLengthLong() > 0
+            || request.getHeader(HttpHeaders.TRANSFER_ENCODING) != null;
+        int serverSlot = backend.getId();
+        if (!serverLoadChecker.tryIncrementLoad(serverSlot)) {
+            recordRejected(backend, "concurrency limit reached");
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), "Server busy");
+            return;
+        }
+        long start = System.nanoTime();
+        boolean[] answered = new boolean[1];
+        try {
+            backendClient.execute(server, fullUrl, method,
+                clientRequest -> {
+                    requestRewriter.copyHeaders(request, clientRequest.getHeaders());
+                    if (hasBody) {
+                        // A streaming request writes its body when it is sent, never buffered
+                        StreamingHttpOutputMessage.Body body = out -> {
+                            try (InputStream in = request.getInputStream()) {
+                                bufferPool.copy(in, out);
+                            }
+                        };
+                        if (clientRequest instanceof StreamingHttpOutputMessage streaming) {
+                            streaming.setBody(body);
+                        }
+                        else {
+                            body.writeTo(clientRequest.getBody());
+                        }
+                    }
+                },
+                clientResponse -> {
+                    // Time to the response headers, the body copy is paced by the client
+                    long latency = System.nanoTime() - start;
+                    answered[0] = true;
+                    if (clientResponse.getStatusCode().is5xxServerError()) {
+                        recordServerFailure(backend, latency, null);
+                    }
+                    else {
+                        recordServerSuccess(backend, latency);
+                    }
+                    copyResponse(clientResponse, response);
+                    return null;
+                });
+        }
+        catch (BackendSaturatedException e) {
+            recordRejected(backend, e.getMessage());
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), "Server busy");
+        }
+        catch (Exception e) {
+            if (!answered[0]) {
+                recordServerFailure(backend, System.nanoTime() - start, e);
             }
+            else {
+                logFailure(backend, e);
+            }
+            if (!response.isCommitted()) {
+                response.reset();
+                response.sendError(HttpStatus.INTERNAL_SERVER_ERROR.value(), "Error forwarding request");
+            }
+        }
+        finally {
+            serverLoadChecker.decrementLoad(serverSlot);
+        }
+    }
+
+    private void copyResponse (ClientHttpResponse source, HttpServletResponse target)
+        throws IOException
+    {
+        target.setStatus(source.getStatusCode().value());
+        source.getHeaders().forEach((name, values) -> {
+            // Framing of the client connection is left to the servlet container
+            if (RequestRewriter.isHopByHop(name)) {
+                return;
+            }
+            for (String value : values) {
+                target.addHeader(name, value);
+            }
+        });
+        try (InputStream in = source.getBody()) {
+            OutputStream out = target.getOutputStream();
+            bufferPool.copy(in, out);
+            out.flush();
+        }
+    }
+
+    /**
+     * Records a response of the server that is not a server error. Call it while the request is
+     * still counted in flight.
+     *
+     * @param server       the server that answered
+     * @param latencyNanos the time the server took to answer
+     */
+    void recordServerSuccess (Backend server, long latencyNanos)
+    {
+        latencyTracker.record(server.getId(), latencyNanos);
+        outlierDetector.recordSuccess(server);
+        circuitBreaker.onResponse(server, latencyNanos);
+        concurrencyLimiter.onResponse(server.getId(), latencyNanos);
+        metrics.recordSuccess(server, latencyNanos);
+    }
+
+    /**
+     * Records a request the server failed, a 5xx response or no response at all, so that servers
+     * failing repeatedly are ejected from traffic for a while.
+     *
+     * @param server       the server that failed the request
+     * @param latencyNanos the time until the failure
+     * @param cause        the error the request failed with, or {@code null} for a 5xx response
+     */
+    void recordServerFailure (Backend server, long latencyNanos, Throwable cause)
+    {
+        // A timeout is exactly the peak latency-aware strategies must see
+        latencyTracker.recordFailure(server.getId(), latencyNanos);
+        outlierDetector.recordFailure(server);
+        circuitBreaker.onFailure(server);
+        concurrencyLimiter.onDropped(server.getId());
+        metrics.recordFailure(server, latencyNanos);
+        if (cause != null) {
+            logFailure(server, cause);
         }
     }
 
+    /**
+     * Records a request refused before it was sent to the server.
+     *
+     * @param server the server the request was meant for
+     * @param reason why the request was refused
+     */
+    void recordRejected (Backend server, String reason)
+    {
+        metrics.recordRejected(server);
+        long suppressed = rejectedLog.sample();
+        if (suppressed >= 0) {
+            log.warn("Request rejected on {}: {} ({} similar messages suppressed).", server, reason,
+                suppressed);
+        }
+    }
+
+    private void logFailure (Backend server, Throwable cause)
+    {
+        long suppressed = failedLog.sample();
+        if (suppressed >= 0) {
+            log.warn("Failed to forward request to {} ({} similar messages suppressed): {}", server,
+                suppressed, cause.getMessage());
+        }
+    }
+
+    /**
+     * @return the failure and ejection state of every configured server
+     */
+    public List<ServerStatus> getServerStatuses ()
+    {
+        return outlierDetector.getStatuses();
+    }
+
+    /**
+     * @return the hit, miss and eviction counts of the response cache
+     */
+    public ResponseCache.Stats getCacheStats ()
+    {
+        return responseCache.getStats();
+    }
+
     /**
      * Add new server backend to the existing servers.
      *
@@ -308,9 +799,97 @@ public class LoadBalancerService
      */
     public void addServer (String serverUrl)
     {
-        allServers.add(serverUrl);
-        healthyServers.add(serverUrl);
-        System.out.println("Server " + serverUrl + " added successfully.");
+        addServer(serverUrl, 1);
+    }
+
+    /**
+     * Add new server backend with the given weight to the existing servers. The weight of a server
+     * that is already known is updated.
+     *
+     * @param serverUrl the host name url of the new servers
+     * @param weight    the share of traffic the server receives from weighted strategies
+     * @throws IllegalArgumentException if the weight is out of range
+     */
+    public void addServer (String serverUrl, int weight)
+    {
+        addServer(serverUrl, weight, null);
+    }
+
+    /**
+     * Add new server backend with the given weight and zone to the existing servers. The weight
+     * and zone of a server that is already known are updated.
+     *
+     * @param serverUrl the host name url of the new servers
+     * @param weight    the share of traffic the server receives from weighted strategies
+     * @param zone      the zone of the server for zone aware routing, or {@code null} for none
+     * @throws IllegalArgumentException if the weight is out of range
+     */
+    public void addServer (String serverUrl, int weight, String zone)
+    {
+        Backend backend = serverRegistry.register(serverUrl);
+        serverRegistry.setWeight(backend, weight);
+        serverRegistry.setZone(backend, zone);
+        serverRegistry.add(backend);
+        log.info("Server {} added successfully with weight {}{}.", serverUrl, weight,
+            inZone(zone));
+    }
+
+    private static String inZone (String zone)
+    {
+        return zone == null ? "" : " in zone " + zone;
+    }
+
+    /**
+     * Removes a server at once. Requests in flight on it are not interrupted.
+     *
+     * @param serverUrl the host name url of the server
+     * @return {@code false} if the server is not known
+     */
+    public boolean removeServer (String serverUrl)
+    {
+        Backend backend = serverRegistry.get(serverUrl);
+        if (backend == null || !serverRegistry.remove(backend)) {
+            return false;
+        }
+        log.info("Server {} removed.", serverUrl);
+        return true;
+    }
+
+    /**
+     * Stops sending new requests to a server, and removes it once the requests in flight on it
+     * are done.
+     *
+     * @param serverUrl the host name url of the server
+     * @return {@code false} if the server is not known
+     * @see com.simple.loadbalancer.discovery.ServiceDiscovery#completeDrains()
+     */
+    public boolean drainServer (String serverUrl)
+    {
+        Backend backend = serverRegistry.get(serverUrl);
+        if (backend == null || !serverRegistry.drain(backend)) {
+            return false;
+        }
+        log.info("Server {} draining.", serverUrl);
+        return true;
+    }
+
+    /**
+     * Changes the weight of a known server at runtime.
+     *
+     * @param serverUrl the host name url of the server
+     * @param weight    the share of traffic the server receives from weighted strategies
+     * @return {@code false} if the server is not known
+     * @throws IllegalArgumentException if the weight is out of range
+     */
+    public boolean setServerWeight (String serverUrl, int weight)
+    {
+        Backend backend = serverRegistry.get(serverUrl);
+        if (backend == null) {
+            return false;
+        }
+        serverRegistry.setWeight(backend, weight);
+        log.info("Server {} weight set to {}.", serverUrl, weight);
+        return true;
     }
 }
 
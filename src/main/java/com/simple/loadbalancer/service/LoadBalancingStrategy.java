@@ -1,21 +1,75 @@
 package com.simple.loadbalancer.service;
 
-import java.util.List;
+import com.simple.loadbalancer.status.Backend;
+import com.simple.loadbalancer.status.ServerSnapshot;
 
 /**
  * Interface is to provide a flexible mechanism for selecting an appropriate server from
- * a list of healthy servers based on different balancing algorithms
+ * a snapshot of healthy servers based on different balancing algorithms
  * (e.g., Round-Robin, Choice-of-2, Random, etc.).
  */
 public interface LoadBalancingStrategy
 {
     /**
-     * Selects a server from the list of healthy servers based on the implemented load
+     * Selects a server from the snapshot of healthy servers based on the implemented load
      * balancing strategy.
      *
-     * @param healthyServers a list of healthy servers that are currently available for
-     *                       handling requests. This list should not be null or empty.
-     * @return the selected server's URL as a String. Returns null if no server could be selected.
+     * <p>Implementations address servers by position in the snapshot and keep per-server state
+     * in arrays indexed by {@link Backend#getId()}, so that selection needs neither hashing nor
+     * allocation.
+     *
+     * @param healthyServers an immutable snapshot of the servers that are currently available for
+     *                       handling requests. It is never null but may be empty.
+     * @return the selected server. Returns null if no server could be selected.
+     */
+    Backend selectServer (ServerSnapshot healthyServers);
+
+    /**
+     * Selects a server for a request that carries an {@link AffinityKey}. Strategies that do not
+     * route by key ignore it.
+     *
+     * @param healthyServers an immutable snapshot of the servers that are currently available
+     * @param keyHash        the hash of the request key, or {@link AffinityKey#NONE}
+     * @return the selected server. Returns null if no server could be selected.
+     */
+    default Backend selectServer (ServerSnapshot healthyServers, long keyHash)
+    {
+        return selectServer(healthyServers);
+    }
+
+    /**
+     * Selects a server other than {@code excluded}, for a request that failed or is slow on it.
+     *
+     * <p>The default asks {@link #selectServer(ServerSnapshot, long)} once more and, if that
+     * picks {@code excluded} again, takes the server after it in the snapshot.
+     *
+     * @param healthyServers an immutable snapshot of the servers that are currently available
+     * @param keyHash        the hash of the request key, or {@link AffinityKey#NONE}
+     * @param excluded       the server not to select
+     * @return the selected server. Returns null if no other server could be selected.
+     */
+    default Backend selectServer (ServerSnapshot healthyServers, long keyHash, Backend excluded)
+    {
+        Backend server = selectServer(healthyServers, keyHash);
+        if (server != excluded) {
+            return server;
+        }
+        int size = healthyServers.size();
+        for (int i = 0; i < size; i++) {
+            if (healthyServers.get(i) == excluded) {
+                return size > 1 ? healthyServers.get((i + 1) % size) : null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Called with every new snapshot just before it is published, on the thread publishing it, so
+     * that strategies can build their lookup tables off the request path.
+     *
+     * @param healthyServers the snapshot about to be published
      */
-    String selectServer (List<String> healthyServers);
+    default void prepare (ServerSnapshot healthyServers)
+    {
+    }
 }
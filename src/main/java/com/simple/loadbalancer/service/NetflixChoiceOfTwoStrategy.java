@@ -1,13 +1,12 @@
 package com.simple.loadbalancer.service;
 
+import com.simple.loadbalancer.status.Backend;
 import com.simple.loadbalancer.status.ServerLoadChecker;
+import com.simple.loadbalancer.status.ServerSnapshot;
 
-import java.util.List;
-
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class NetflixChoiceOfTwoStrategy implements LoadBalancingStrategy {
-    private final Random random = new Random();
     private final ServerLoadChecker serverLoadChecker; // Assume a utility to get the current load
 
     public NetflixChoiceOfTwoStrategy(ServerLoadChecker serverLoadChecker) {
@@ -15,9 +14,8 @@ public class NetflixChoiceOfTwoStrategy implements LoadBalancingStrategy {
     }
 
     @Override
-    public String selectServer(List<String> servers) {
-        System.out.println("NetflixChoiceOfTwoStrategy");
-        if (servers == null || servers.size() == 0) {
+    public Backend selectServer(ServerSnapshot servers) {
+        if (servers.isEmpty()) {
             return null; // No servers available
         }
         if (servers.size() == 1) {
@@ -25,20 +23,34 @@ public class NetflixChoiceOfTwoStrategy implements LoadBalancingStrategy {
         }
 
         // Randomly select two different servers
-        int firstIndex = random.nextInt(servers.size());
-        int secondIndex;
-        do {
-            secondIndex = random.nextInt(servers.size());
-        } while (firstIndex == secondIndex);
-
-        String server1 = servers.get(firstIndex);
-        String server2 = servers.get(secondIndex);
+        int size = servers.size();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int firstIndex = random.nextInt(size);
+        int secondIndex = (firstIndex + 1 + random.nextInt(size - 1)) % size;
+
+        Backend server1 = servers.get(firstIndex);
+        Backend server2 = servers.get(secondIndex);
+
+        // Never pick a server whose connection pool is saturated while the other one has room
+        boolean saturated1 = serverLoadChecker.isSaturated(server1.getId());
+        boolean saturated2 = serverLoadChecker.isSaturated(server2.getId());
+        if (saturated1 && saturated2) {
+            for (int i = 1; i < size; i++) {
+                Backend server = servers.get((firstIndex + i) % size);
+                if (!serverLoadChecker.isSaturated(server.getId())) {
+                    return server;
+                }
+            }
+        }
+        else if (saturated1 || saturated2) {
+            return saturated1 ? server2 : server1;
+        }
 
-        // Compare their loads and select the one with the least load
-        int load1 = serverLoadChecker.getCurrentLoad(server1);
-        int load2 = serverLoadChecker.getCurrentLoad(server2);
+        // Compare their loads, including the requests of the other load balancers of the cluster,
+        // and select the one with the least load
+        int load1 = serverLoadChecker.getClusterLoad(server1.getId());
+        int load2 = serverLoadChecker.getClusterLoad(server2.getId());
 
         return (load1 <= load2) ? server1 : server2;
     }
 }
-
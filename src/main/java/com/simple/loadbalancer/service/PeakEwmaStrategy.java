@@ -0,0 +1,83 @@
+package com.simple.loadbalancer.service;
+
+import com.simple.loadbalancer.status.Backend;
+import com.simple.loadbalancer.status.LatencyTracker;
+import com.simple.loadbalancer.status.ServerLoadChecker;
+import com.simple.loadbalancer.status.ServerSnapshot;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Latency-aware strategy: picks two distinct servers at random and sends the request to the one
+ * with the lower expected cost.
+ *
+ * <p>The cost of a server is its peak-sensitive moving average latency from the
+ * {@link LatencyTracker} multiplied by the number of requests it would have in flight with this
+ * one, {@code latency * (outstanding + 1)}. A server that answers slowly, or that already has a
+ * queue, therefore receives a smaller share of the traffic, while comparing only two random
+ * servers keeps concurrent selections from all piling onto the single best one. Both the latency
+ * and the requests in flight include what the other load balancers of a cluster report.
+ *
+ * <p>A server that has never answered has no latency yet. It is preferred while idle, so that new
+ * servers are measured quickly, and avoided while it has requests in flight, so that a server
+ * that never answers does not attract traffic.
+ */
+public class PeakEwmaStrategy implements LoadBalancingStrategy
+{
+    /* Cost of a server that has requests in flight but has not answered any yet */
+    private static final double PENALTY = 1e15;
+
+    private final ServerLoadChecker serverLoadChecker;
+    private final LatencyTracker latencyTracker;
+
+    public PeakEwmaStrategy (ServerLoadChecker serverLoadChecker, LatencyTracker latencyTracker)
+    {
+        this.serverLoadChecker = serverLoadChecker;
+        this.latencyTracker = latencyTracker;
+    }
+
+    @Override
+    public Backend selectServer (ServerSnapshot healthyServers)
+    {
+        int size = healthyServers.size();
+        if (size == 0) {
+            return null;
+        }
+        if (size == 1) {
+            return healthyServers.get(0);
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int firstIndex = random.nextInt(size);
+        int secondIndex = (firstIndex + 1 + random.nextInt(size - 1)) % size;
+        Backend server1 = healthyServers.get(firstIndex);
+        Backend server2 = healthyServers.get(secondIndex);
+
+        // Never pick a server whose connection pool is saturated while the other one has room
+        boolean saturated1 = serverLoadChecker.isSaturated(server1.getId());
+        boolean saturated2 = serverLoadChecker.isSaturated(server2.getId());
+        if (saturated1 && saturated2) {
+            for (int i = 1; i < size; i++) {
+                Backend server = healthyServers.get((firstIndex + i) % size);
+                if (!serverLoadChecker.isSaturated(server.getId())) {
+                    return server;
+                }
+            }
+        }
+        else if (saturated1 || saturated2) {
+            return saturated1 ? server2 : server1;
+        }
+
+        return cost(server1) <= cost(server2) ? server1 : server2;
+    }
+
+    private double cost (Backend server)
+    {
+        int outstanding = serverLoadChecker.getClusterLoad(server.getId());
+        double latency = latencyTracker.getLatency(server.getId());
+        if (latency == 0) {
+            return outstanding == 0 ? 0 : PENALTY + outstanding;
+        }
+        return latency * (outstanding + 1);
+    }
+}
@@ -1,19 +1,32 @@
 package com.simple.loadbalancer.service;
 
-import java.util.List;
-import java.util.Random;
+import com.simple.loadbalancer.status.Backend;
+import com.simple.loadbalancer.status.ServerLoadChecker;
+import com.simple.loadbalancer.status.ServerSnapshot;
+
+import java.util.concurrent.ThreadLocalRandom;
 
 public class RandomStrategy implements LoadBalancingStrategy {
-    private final Random random = new Random();
+    private final ServerLoadChecker serverLoadChecker;
+
+    public RandomStrategy(ServerLoadChecker serverLoadChecker) {
+        this.serverLoadChecker = serverLoadChecker;
+    }
 
     @Override
-    public String selectServer(List<String> healthyServers) {
-        System.out.println("RandomStrategy");
+    public Backend selectServer(ServerSnapshot healthyServers) {
         if (healthyServers.isEmpty()) {
             return null;
         }
-        int index = random.nextInt(healthyServers.size());
+        int size = healthyServers.size();
+        int index = ThreadLocalRandom.current().nextInt(size);
+        // Probe forward from the random pick for a server whose connection pool still has room
+        for (int i = 0; i < size; i++) {
+            Backend server = healthyServers.get((index + i) % size);
+            if (!serverLoadChecker.isSaturated(server.getId())) {
+                return server;
+            }
+        }
         return healthyServers.get(index);
     }
 }
-
@@ -0,0 +1,135 @@
+package com.simple.loadbalancer.service;
+
+import com.simple.loadbalancer.rewrite.RequestRewriter;
+import com.simple.loadbalancer.status.Backend;
+import com.simple.loadbalancer.status.ServerLoadChecker;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking counterpart of {@link LoadBalancerService#streamRequest}, used when the application
+ * runs with {@code loadbalancer.data-plane=reactive}.
+ *
+ * <p>Requests are relayed to the backend by a {@link WebClient} running on the same event loop as
+ * the server: no thread waits for a backend to answer, so the number of concurrent upstream calls
+ * is bounded by the connection pool rather than by a thread pool. Bodies flow through as
+ * {@link DataBuffer}s. Request headers go through the {@link RequestRewriter}, and backend status
+ * codes and headers are passed through unchanged, hop-by-hop headers aside.
+ *
+ * <p>Server selection, load and latency accounting, concurrency limits and failure tracking are
+ * shared with {@link LoadBalancerService}, so the configured {@link LoadBalancingStrategy}, the
+ * {@link ServerLoadChecker}, the circuit breakers and the health checks behave the same in both
+ * data planes.
+ */
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveForwardingService
+{
+    private static final byte[] NO_SERVERS = "No available servers".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] FORWARD_ERROR =
+        "Error forwarding request".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SERVER_BUSY = "Server busy".getBytes(StandardCharsets.UTF_8);
+
+    private final LoadBalancerService loadBalancerService;
+    private final ServerLoadChecker serverLoadChecker;
+    private final WebClient webClient;
+
+    public ReactiveForwardingService (LoadBalancerService loadBalancerService,
+                                      ServerLoadChecker serverLoadChecker,
+                                      WebClient backendWebClient)
+    {
+        this.loadBalancerService = loadBalancerService;
+        this.serverLoadChecker = serverLoadChecker;
+        this.webClient = backendWebClient;
+    }
+
+    /**
+     * Forwards the request to the selected backend server and relays the backend response.
+     *
+     * @param request   the incoming request
+     * @param response  the response to write the backend answer to
+     * @param targetURL the path and query string sent to the backend, without leading slash
+     * @return completes once the backend response has been fully written
+     */
+    public Mono<Void> forwardRequest (ServerHttpRequest request,
+                                      ServerHttpResponse response,
+                                      String targetURL)
+    {
+        AffinityKey affinityKey = loadBalancerService.getAffinityKey();
+        String keyHeader = affinityKey.getHeaderName();
+        Backend backend = loadBalancerService.selectServer(affinityKey.hash(
+            keyHeader != null ? request.getHeaders().getFirst(keyHeader) : null, targetURL));
+        if (backend == null) {
+            return writeError(response, HttpStatus.SERVICE_UNAVAILABLE, NO_SERVERS);
+        }
+        String server = backend.getUrl();
+
+        String fullUrl = server + "/" + targetURL;
+        HttpHeaders requestHeaders = request.getHeaders();
+        boolean hasBody = requestHeaders.getContentLength() > 0
+            || requestHeaders.containsKey(HttpHeaders.TRANSFER_ENCODING);
+
+        RequestRewriter requestRewriter = loadBalancerService.getRequestRewriter();
+        WebClient.RequestBodySpec spec = webClient.method(request.getMethod())
+            // Already encoded as the client sent it, not a template
+            .uri(URI.create(fullUrl))
+            .headers(headers -> requestRewriter.copyHeaders(request, headers));
+        if (hasBody) {
+            spec.body(BodyInserters.fromDataBuffers(request.getBody()));
+        }
+
+        int serverSlot = backend.getId();
+        if (!serverLoadChecker.tryIncrementLoad(serverSlot)) {
+            loadBalancerService.recordRejected(backend, "concurrency limit reached");
+            return writeError(response, HttpStatus.SERVICE_UNAVAILABLE, SERVER_BUSY);
+        }
+        long start = System.nanoTime();
+        return spec.exchangeToMono(clientResponse -> {
+                if (clientResponse.statusCode().is5xxServerError()) {
+                    loadBalancerService.recordServerFailure(backend, System.nanoTime() - start,
+                        null);
+                }
+                else {
+                    loadBalancerService.recordServerSuccess(backend, System.nanoTime() - start);
+                }
+                response.setStatusCode(clientResponse.statusCode());
+                clientResponse.headers().asHttpHeaders().forEach((name, values) -> {
+                    if (!RequestRewriter.isHopByHop(name)) {
+                        response.getHeaders().addAll(name, values);
+                    }
+                });
+                return response.writeWith(clientResponse.bodyToFlux(DataBuffer.class));
+            })
+            .onErrorResume(e -> {
+                if (!response.isCommitted()) {
+                    // Once the response is committed the server answered and was counted already
+                    loadBalancerService.recordServerFailure(backend, System.nanoTime() - start, e);
+                }
+                if (response.isCommitted()) {
+                    return Mono.error(e);
+                }
+                return writeError(response, HttpStatus.INTERNAL_SERVER_ERROR, FORWARD_ERROR);
+            })
+            .doFinally(signal -> serverLoadChecker.decrementLoad(serverSlot));
+    }
+
+    private static Mono<Void> writeError (ServerHttpResponse response, HttpStatus status,
+                                          byte[] message)
+    {
+        response.setStatusCode(status);
+        response.getHeaders().setContentLength(message.length);
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(message)));
+    }
+}
@@ -0,0 +1,22 @@
+package com.simple.loadbalancer.service;
+
+import com.simple.loadbalancer.status.CircuitBreaker;
+import com.simple.loadbalancer.status.ConcurrencyLimiter;
+import com.simple.loadbalancer.status.OutlierDetector;
+
+/**
+ * What protects the servers from traffic they cannot take, and the clients from servers that
+ * fail: every forwarded request is fed to all of them.
+ *
+ * @param outlierDetector    ejects the servers whose responses show them misbehaving
+ * @param circuitBreaker     stops sending requests to servers that fail or answer too slowly
+ * @param concurrencyLimiter adapts the requests every server may have in flight to how fast it
+ *                           answers
+ * @param retryPolicy        when failed or slow requests are sent to a second server
+ */
+public record Resilience(OutlierDetector outlierDetector,
+                         CircuitBreaker circuitBreaker,
+                         ConcurrencyLimiter concurrencyLimiter,
+                         RetryPolicy retryPolicy)
+{
+}
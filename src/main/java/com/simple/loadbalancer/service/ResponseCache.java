@@ -0,0 +1,499 @@
+package com.simple.loadbalancer.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import org.springframework.core.io.AbstractResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Shared cache of backend responses to GET requests, so that a response the backend declared
+ * cacheable is served from memory until it goes stale instead of costing a round trip each time.
+ *
+ * <p>Only what the backend allows is cached: a 200 response with a body read as a String, a
+ * {@code Cache-Control} {@code s-maxage} or {@code max-age} (or an {@code Expires} date) in the
+ * future or an {@code ETag}, and none of {@code no-store}, {@code private}, {@code Set-Cookie} or
+ * {@code Vary}. Requests with an {@code Authorization} header or {@code Cache-Control: no-store}
+ * bypass the cache; {@code no-cache} or {@code max-age=0} make it revalidate.
+ *
+ * <ul>
+ *     <li><b>Fresh</b> entries are answered from memory, with an {@code Age} header, or with 304
+ *     when the client already holds the same {@code ETag}.</li>
+ *     <li><b>Stale</b> entries with an {@code ETag} are kept for {@code staleRetention} and
+ *     revalidated with {@code If-None-Match}: a 304 from the backend makes them fresh again
+ *     without transferring the body.</li>
+ *     <li><b>Misses</b> for the same key are coalesced: one request goes to the backend while the
+ *     others wait for its response, and share it if it turns out cacheable.</li>
+ * </ul>
+ *
+ * <p>Entries are bounded by the size of their bodies and evicted by Caffeine's W-TinyLFU
+ * policy, which keeps frequently requested responses over the ones seen once. Bodies of at least
+ * {@code offHeapThreshold} bytes are kept encoded in direct buffers, outside the heap the
+ * garbage collector has to scan and copy, and hits on them are written to the client straight
+ * from the buffer as a {@link org.springframework.core.io.Resource}.
+ */
+public class ResponseCache
+{
+    /* Cache that stores nothing, every request goes to a backend */
+    public static final ResponseCache DISABLED =
+        new ResponseCache(0, Integer.MAX_VALUE, Duration.ZERO);
+
+    /* Estimated bytes an entry takes besides its body */
+    private static final int ENTRY_OVERHEAD = 256;
+
+    private final Cache<String, Entry> cache;
+    /* Backend request of every key being fetched, completed with the entry it stored, if any */
+    private final Map<String, CompletableFuture<Entry>> inFlight = new ConcurrentHashMap<>();
+    private final int offHeapThreshold;
+    private final long staleNanos;
+    private final LongSupplier clock; // Source of nanosecond timestamps
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public ResponseCache (long maxBytes, int offHeapThreshold, Duration staleRetention)
+    {
+        this(maxBytes, offHeapThreshold, staleRetention, System::nanoTime);
+    }
+
+    /**
+     * @param maxBytes         total size of the cached bodies, 0 to disable the cache
+     * @param offHeapThreshold body size in bytes from which a body is kept off the heap
+     * @param staleRetention   time a stale entry with an {@code ETag} is kept for revalidation
+     * @param clock            source of nanosecond timestamps
+     */
+    public ResponseCache (long maxBytes, int offHeapThreshold, Duration staleRetention,
+                          LongSupplier clock)
+    {
+        if (maxBytes < 0 || offHeapThreshold < 0) {
+            throw new IllegalArgumentException(
+                "Cache size and off-heap threshold must not be negative");
+        }
+        this.offHeapThreshold = offHeapThreshold;
+        this.staleNanos = staleRetention.toNanos();
+        this.clock = clock;
+        this.cache = maxBytes == 0 ? null : Caffeine.newBuilder()
+            .maximumWeight(maxBytes)
+            .weigher((String key, Entry entry) -> entry.weight())
+            .expireAfter(new Expiry<String, Entry>()
+            {
+                @Override
+                public long expireAfterCreate (String key, Entry entry, long currentTime)
+                {
+                    return entry.retainUntil() - currentTime;
+                }
+
+                @Override
+                public long expireAfterUpdate (String key, Entry entry, long currentTime,
+                                               long currentDuration)
+                {
+                    return entry.retainUntil() - currentTime;
+                }
+
+                @Override
+                public long expireAfterRead (String key, Entry entry, long currentTime,
+                                             long currentDuration)
+                {
+                    return currentDuration;
+                }
+            })
+            .ticker(clock::getAsLong)
+            // Maintenance is cheap and done by the caller, so that counts and sizes are exact
+            .executor(Runnable::run)
+            .evictionListener((String key, Entry entry, RemovalCause cause) -> evictions.increment())
+            .build();
+    }
+
+    public boolean isEnabled ()
+    {
+        return cache != null;
+    }
+
+    /**
+     * Answers a GET request from the cache, or with {@code fetcher} and caches the response if
+     * the backend allows it.
+     *
+     * @param key            what identifies the resource, the target path
+     * @param requestHeaders the headers of the client request
+     * @param fetcher        sends the request to a backend with the given headers
+     * @return the response to return to the client
+     * @throws IOException if {@code fetcher} does
+     */
+    public ResponseEntity<?> get (String key, HttpHeaders requestHeaders, Fetcher fetcher)
+        throws IOException
+    {
+        if (cache == null || bypasses(requestHeaders)) {
+            return fetcher.fetch(requestHeaders);
+        }
+        Entry entry = cache.getIfPresent(key);
+        if (entry != null && entry.isFresh(clock.getAsLong()) && !revalidates(requestHeaders)) {
+            hits.increment();
+            return entry.toResponse(requestHeaders, clock.getAsLong());
+        }
+
+        CompletableFuture<Entry> fetch = new CompletableFuture<>();
+        CompletableFuture<Entry> leader = inFlight.putIfAbsent(key, fetch);
+        if (leader != null) {
+            coalesced.increment();
+            Entry shared = leader.join();
+            // Not shared if it was not cacheable, as it may have been meant for that client only
+            return shared != null ? shared.toResponse(requestHeaders, clock.getAsLong())
+                : fetcher.fetch(requestHeaders);
+        }
+        Entry stored = null;
+        try {
+            ResponseEntity<?> response;
+            if (entry != null && entry.etag() != null
+                && requestHeaders.getFirst(HttpHeaders.IF_NONE_MATCH) == null) {
+                HttpHeaders conditional = new HttpHeaders();
+                conditional.putAll(requestHeaders);
+                conditional.set(HttpHeaders.IF_NONE_MATCH, entry.etag());
+                response = fetcher.fetch(conditional);
+                if (response.getStatusCode().value() == HttpStatus.NOT_MODIFIED.value()) {
+                    revalidations.increment();
+                    stored = entry.revalidated(response.getHeaders(), clock.getAsLong());
+                    if (stored != null) {
+                        cache.put(key, stored);
+                    }
+                    // Still what the client asked for, without the condition it did not send
+                    return entry.toResponse(requestHeaders, clock.getAsLong());
+                }
+            }
+            else {
+                response = fetcher.fetch(requestHeaders);
+            }
+            misses.increment();
+            stored = toEntry(response, clock.getAsLong());
+            if (stored != null) {
+                cache.put(key, stored);
+            }
+            else if (entry != null && response.getStatusCode().is2xxSuccessful()) {
+                cache.invalidate(key); // No longer cacheable
+            }
+            return response;
+        }
+        finally {
+            inFlight.remove(key, fetch);
+            fetch.complete(stored);
+        }
+    }
+
+    /**
+     * @return the hits, misses and evictions so far, and the current size of the cache
+     */
+    public Stats getStats ()
+    {
+        return new Stats(hits.sum(), misses.sum(), revalidations.sum(), coalesced.sum(),
+            evictions.sum(), cache != null ? cache.estimatedSize() : 0,
+            cache != null ? cache.policy().eviction().orElseThrow().weightedSize().orElse(0) : 0);
+    }
+
+    /**
+     * Sends a request to a backend.
+     */
+    @FunctionalInterface
+    public interface Fetcher
+    {
+        ResponseEntity<?> fetch (HttpHeaders requestHeaders) throws IOException;
+    }
+
+    /**
+     * Counters of the cache.
+     *
+     * @param hits          requests answered from a fresh entry
+     * @param misses        requests that went to a backend and got a full response
+     * @param revalidations stale entries a backend confirmed with 304
+     * @param coalesced     requests that waited for the same request of another client
+     * @param evictions     entries removed to make room or because they expired
+     * @param entries       entries currently cached
+     * @param bytes         estimated size of the entries currently cached
+     */
+    public record Stats(long hits, long misses, long revalidations, long coalesced, long evictions,
+                        long entries, long bytes)
+    {
+    }
+
+    private Entry toEntry (ResponseEntity<?> response, long now)
+    {
+        HttpHeaders headers = response.getHeaders();
+        if (response.getStatusCode().value() != HttpStatus.OK.value()
+            || (response.getBody() != null && !(response.getBody() instanceof String))
+            || headers.containsKey(HttpHeaders.SET_COOKIE) || headers.containsKey(HttpHeaders.VARY)) {
+            return null;
+        }
+        long freshUntil = staleAt(headers, now);
+        String etag = headers.getETag();
+        if (freshUntil == Long.MIN_VALUE || (freshUntil <= now && etag == null)) {
+            return null;
+        }
+        HttpHeaders stored = new HttpHeaders();
+        stored.putAll(headers);
+        stored.remove(HttpHeaders.AGE);
+        String body = (String) response.getBody();
+        Object storedBody = body;
+        int size = 0;
+        if (body != null) {
+            byte[] bytes = body.getBytes(charset(headers));
+            size = bytes.length;
+            if (size >= offHeapThreshold) {
+                storedBody = ByteBuffer.allocateDirect(size).put(bytes).flip();
+            }
+        }
+        return new Entry(response.getStatusCode(), HttpHeaders.readOnlyHttpHeaders(stored),
+            storedBody, size, etag, now - ageNanos(headers), freshUntil,
+            etag != null ? freshUntil + staleNanos : freshUntil);
+    }
+
+    /**
+     * @return the charset the body is written to the client with, as the String converter of the
+     * web layer would
+     */
+    private static Charset charset (HttpHeaders headers)
+    {
+        MediaType contentType = headers.getContentType();
+        return contentType != null && contentType.getCharset() != null
+            ? contentType.getCharset() : StandardCharsets.UTF_8;
+    }
+
+    /**
+     * @return the time the response goes stale, or {@link Long#MIN_VALUE} if it may not be
+     * cached at all
+     */
+    private static long staleAt (HttpHeaders headers, long now)
+    {
+        String cacheControl = headers.getCacheControl();
+        long sharedMaxAge = -1;
+        long maxAge = -1;
+        boolean noCache = false;
+        if (cacheControl != null) {
+            for (String directive : cacheControl.toLowerCase(Locale.ROOT).split(",")) {
+                directive = directive.trim();
+                if (directive.equals("no-store") || directive.equals("private")) {
+                    return Long.MIN_VALUE;
+                }
+                if (directive.equals("no-cache")) {
+                    noCache = true;
+                }
+                else if (directive.startsWith("s-maxage=")) {
+                    sharedMaxAge = seconds(directive.substring("s-maxage=".length()));
+                }
+                else if (directive.startsWith("max-age=")) {
+                    maxAge = seconds(directive.substring("max-age=".length()));
+                }
+            }
+        }
+        long lifetimeSeconds;
+        if (noCache) {
+            lifetimeSeconds = 0; // Stored, but revalidated every time
+        }
+        else if (sharedMaxAge >= 0) {
+            lifetimeSeconds = sharedMaxAge; // A shared cache prefers s-maxage
+        }
+        else if (maxAge >= 0) {
+            lifetimeSeconds = maxAge;
+        }
+        else {
+            long expires = headers.getExpires();
+            long date = headers.getDate();
+            lifetimeSeconds = expires > 0 && date > 0 ? Math.max(0, (expires - date) / 1000) : 0;
+        }
+        return now + Math.max(0, TimeUnit.SECONDS.toNanos(lifetimeSeconds) - ageNanos(headers));
+    }
+
+    /**
+     * @return the time the response already spent in caches before the backend sent it
+     */
+    private static long ageNanos (HttpHeaders headers)
+    {
+        String age = headers.getFirst(HttpHeaders.AGE);
+        return age != null ? TimeUnit.SECONDS.toNanos(Math.max(0, seconds(age))) : 0;
+    }
+
+    private static long seconds (String value)
+    {
+        try {
+            return Long.parseLong(value.trim());
+        }
+        catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static boolean bypasses (HttpHeaders requestHeaders)
+    {
+        return requestHeaders.containsKey(HttpHeaders.AUTHORIZATION)
+            || hasDirective(requestHeaders, "no-store");
+    }
+
+    private static boolean revalidates (HttpHeaders requestHeaders)
+    {
+        return hasDirective(requestHeaders, "no-cache") || hasDirective(requestHeaders, "max-age=0")
+            || "no-cache".equalsIgnoreCase(requestHeaders.getPragma());
+    }
+
+    private static boolean hasDirective (HttpHeaders headers, String directive)
+    {
+        List<String> values = headers.get(HttpHeaders.CACHE_CONTROL);
+        if (values == null) {
+            return false;
+        }
+        for (String value : values) {
+            for (String part : value.split(",")) {
+                if (part.trim().equalsIgnoreCase(directive)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A cached response.
+     *
+     * @param body        the body as a String, a direct buffer holding it encoded, or null
+     * @param size        the size of the body in bytes
+     * @param storedAt    the time the response was received or last revalidated
+     * @param freshUntil  the time it goes stale
+     * @param retainUntil the time it is dropped from the cache
+     */
+    private record Entry(HttpStatusCode status, HttpHeaders headers, Object body, int size,
+                         String etag, long storedAt, long freshUntil, long retainUntil)
+    {
+        boolean isFresh (long now)
+        {
+            return now < freshUntil;
+        }
+
+        int weight ()
+        {
+            return (int) Math.min(Integer.MAX_VALUE, (long) size + ENTRY_OVERHEAD);
+        }
+
+        /**
+         * @return the entry made fresh again by a 304 response, or null if it may no longer be
+         * cached
+         */
+        Entry revalidated (HttpHeaders notModified, long now)
+        {
+            HttpHeaders merged = new HttpHeaders();
+            merged.putAll(headers);
+            // A 304 carries the new freshness of the stored response
+            for (String name : List.of(HttpHeaders.CACHE_CONTROL, HttpHeaders.EXPIRES,
+                HttpHeaders.DATE, HttpHeaders.AGE)) {
+                if (notModified.containsKey(name)) {
+                    merged.put(name, notModified.get(name));
+                }
+            }
+            long fresh = staleAt(merged, now);
+            if (fresh == Long.MIN_VALUE) {
+                return null;
+            }
+            long age = ageNanos(merged);
+            merged.remove(HttpHeaders.AGE);
+            return new Entry(status, HttpHeaders.readOnlyHttpHeaders(merged), body, size, etag,
+                now - age, fresh, fresh + (retainUntil - freshUntil));
+        }
+
+        ResponseEntity<?> toResponse (HttpHeaders requestHeaders, long now)
+        {
+            HttpHeaders responseHeaders = new HttpHeaders();
+            responseHeaders.putAll(headers);
+            responseHeaders.set(HttpHeaders.AGE,
+                Long.toString(TimeUnit.NANOSECONDS.toSeconds(Math.max(0, now - storedAt))));
+            if (etag != null && requestHeaders.getIfNoneMatch().contains(etag)) {
+                return new ResponseEntity<>(responseHeaders, HttpStatus.NOT_MODIFIED);
+            }
+            Object value = body instanceof ByteBuffer buffer ? new BufferResource(buffer) : body;
+            return new ResponseEntity<>(value, responseHeaders, status);
+        }
+    }
+
+    /**
+     * The bytes of a direct buffer, read without copying them to the heap first. Every stream
+     * reads from its own view of the buffer, so hits on the same entry do not interfere.
+     */
+    private static final class BufferResource extends AbstractResource
+    {
+        private final ByteBuffer buffer;
+
+        BufferResource (ByteBuffer buffer)
+        {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public boolean exists ()
+        {
+            return true;
+        }
+
+        @Override
+        public long contentLength ()
+        {
+            return buffer.remaining();
+        }
+
+        @Override
+        public InputStream getInputStream ()
+        {
+            ByteBuffer view = buffer.duplicate();
+            return new InputStream()
+            {
+                @Override
+                public int read ()
+                {
+                    return view.hasRemaining() ? view.get() & 0xff : -1;
+                }
+
+                @Override
+                public int read (byte[] bytes, int offset, int length)
+                {
+                    if (length == 0) {
+                        return 0;
+                    }
+                    if (!view.hasRemaining()) {
+                        return -1;
+                    }
+                    int count = Math.min(length, view.remaining());
+                    view.get(bytes, offset, count);
+                    return count;
+                }
+
+                @Override
+                public int available ()
+                {
+                    return view.remaining();
+                }
+            };
+        }
+
+        @Override
+        public String getDescription ()
+        {
+            return "cached response body of " + buffer.remaining() + " bytes";
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.simple.loadbalancer.service;
+
+import com.simple.loadbalancer.status.LatencyHistogram;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.http.HttpMethod;
+
+/**
+ * Decides when a forwarded request may be sent to a second server: retried after it failed, or
+ * hedged after it took longer than most requests do.
+ *
+ * <p>Every extra request, retry or hedge, is paid from a retry budget. Each request forwarded
+ * adds {@code budgetRatio} of a token to the budget, up to {@code maxTokens}, and each extra
+ * request takes a whole token, so extra requests stay below {@code budgetRatio} of the traffic
+ * plus a small burst. When every server fails, retries therefore stop at once instead of
+ * multiplying the load on a fleet that is already struggling.
+ *
+ * <p>Hedging is enabled with a {@code hedgePercentile} above zero: an idempotent request still
+ * waiting after that percentile of the recent response times is sent to a second server as
+ * well, and the first answer wins. The percentile comes from a {@link LatencyHistogram} of every
+ * successful response, recomputed and decayed by {@link #update()} at a fixed interval so that
+ * reading it on the request path is a single volatile read.
+ */
+public class RetryPolicy
+{
+    /* Budget is counted in thousandths of a token */
+    private static final long TOKEN = 1000;
+
+    private final int maxRetries;
+    private final long depositPerRequest;
+    private final long maxBalance;
+    private final AtomicLong balance;
+    private final double hedgePercentile; // 0 when hedging is disabled
+    private final long minHedgeSamples;
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private volatile long hedgeDelayNanos; // 0 until enough samples were seen
+
+    /**
+     * @param maxRetries      extra attempts on other servers after a failure, 0 to never retry
+     * @param budgetRatio     extra requests allowed per forwarded request, e.g. 0.1 for 10%
+     * @param maxTokens       largest number of extra requests that can be saved up for a burst
+     * @param hedgePercentile percentile of the response time after which an idempotent request
+     *                        is hedged, 0 to never hedge
+     * @param minHedgeSamples responses to see before hedging starts
+     */
+    public RetryPolicy (int maxRetries, double budgetRatio, int maxTokens, double hedgePercentile,
+                        long minHedgeSamples)
+    {
+        if (maxRetries < 0 || budgetRatio < 0 || maxTokens < 0) {
+            throw new IllegalArgumentException("Retry settings must not be negative");
+        }
+        if (hedgePercentile < 0 || hedgePercentile >= 100) {
+            throw new IllegalArgumentException(
+                "Hedge percentile must be between 0 and 100: " + hedgePercentile);
+        }
+        this.maxRetries = maxRetries;
+        this.depositPerRequest = Math.round(budgetRatio * TOKEN);
+        this.maxBalance = maxTokens * TOKEN;
+        this.balance = new AtomicLong(maxBalance);
+        this.hedgePercentile = hedgePercentile;
+        this.minHedgeSamples = minHedgeSamples;
+    }
+
+    /**
+     * @return whether a request with this method can be sent twice without harm
+     */
+    public static boolean isIdempotent (HttpMethod method)
+    {
+        return method == HttpMethod.GET || method == HttpMethod.HEAD
+            || method == HttpMethod.OPTIONS || method == HttpMethod.TRACE
+            || method == HttpMethod.PUT || method == HttpMethod.DELETE;
+    }
+
+    public int getMaxRetries ()
+    {
+        return maxRetries;
+    }
+
+    /**
+     * Credits the budget for a request about to be forwarded.
+     */
+    public void onRequest ()
+    {
+        if (balance.get() < maxBalance) {
+            balance.getAndUpdate(current -> Math.min(current + depositPerRequest, maxBalance));
+        }
+    }
+
+    /**
+     * Takes one extra request from the budget.
+     *
+     * @return whether the budget allowed it
+     */
+    public boolean tryAcquireExtraRequest ()
+    {
+        long current;
+        do {
+            current = balance.get();
+            if (current < TOKEN) {
+                return false;
+            }
+        }
+        while (!balance.compareAndSet(current, current - TOKEN));
+        return true;
+    }
+
+    /**
+     * Records the response time of a successful request.
+     */
+    public void recordLatency (long latencyNanos)
+    {
+        if (hedgePercentile > 0) {
+            histogram.record(latencyNanos);
+        }
+    }
+
+    /**
+     * @return the time after which an idempotent request is hedged, or 0 not to hedge
+     */
+    public long getHedgeDelayNanos ()
+    {
+        return hedgeDelayNanos;
+    }
+
+    /**
+     * Recomputes the hedge delay from the recent response times and ages them. Meant to be called
+     * at a fixed interval.
+     */
+    public void update ()
+    {
+        if (hedgePercentile == 0) {
+            return;
+        }
+        hedgeDelayNanos = histogram.getCount() >= minHedgeSamples
+            ? histogram.getValueAtPercentile(hedgePercentile) : 0;
+        histogram.decay();
+    }
+}
@@ -1,19 +1,33 @@
 package com.simple.loadbalancer.service;
 
-import java.util.List;
+import com.simple.loadbalancer.status.Backend;
+import com.simple.loadbalancer.status.ServerLoadChecker;
+import com.simple.loadbalancer.status.ServerSnapshot;
+
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class RoundRobinStrategy implements LoadBalancingStrategy {
     private final AtomicInteger currentIndex = new AtomicInteger(0);
+    private final ServerLoadChecker serverLoadChecker;
+
+    public RoundRobinStrategy(ServerLoadChecker serverLoadChecker) {
+        this.serverLoadChecker = serverLoadChecker;
+    }
 
     @Override
-    public String selectServer(List<String> healthyServers) {
-        System.out.println("RoundRobinStrategy");
+    public Backend selectServer(ServerSnapshot healthyServers) {
         if (healthyServers.isEmpty()) {
             return null;
         }
-        int index = currentIndex.getAndUpdate(i -> (i + 1) % healthyServers.size());
+        int size = healthyServers.size();
+        int index = Math.floorMod(currentIndex.getAndIncrement(), size);
+        // Move on to the next server whose connection pool still has room
+        for (int i = 0; i < size; i++) {
+            Backend server = healthyServers.get((index + i) % size);
+            if (!serverLoadChecker.isSaturated(server.getId())) {
+                return server;
+            }
+        }
         return healthyServers.get(index);
     }
 }
-
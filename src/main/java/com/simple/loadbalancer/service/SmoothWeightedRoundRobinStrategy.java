@@ -0,0 +1,149 @@
+package com.simple.loadbalancer.service;
+
+import com.simple.loadbalancer.status.Backend;
+import com.simple.loadbalancer.status.ServerLoadChecker;
+import com.simple.loadbalancer.status.ServerSnapshot;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Weighted round-robin, interleaved: over every cycle each server is picked as many times as its
+ * weight, and a server is picked at most once per round rather than in a burst. A cycle is made of
+ * as many rounds as the largest weight; round {@code r} picks, in turn, every server whose weight
+ * is at least {@code r}. With weights {@code a=3, b=2, c=1} the cycle is {@code a b c a b a}, not
+ * {@code a a a b b c}.
+ *
+ * <p>Nothing is updated per server on a pick, which would serialise selection. Instead, every
+ * {@link ServerSnapshot} gets a schedule built by {@link #prepare(ServerSnapshot)} before
+ * requests can see it: the snapshot positions ordered by decreasing weight, and for every round
+ * the picks made up to its end. Selection is one atomic increment, a binary search over the
+ * rounds and two array reads. The schedule holds one entry per server and one per round, the
+ * largest weight divided by the greatest common divisor of the weights, so its size and the cost
+ * of building it do not depend on the sum of the weights.
+ *
+ * <p>A snapshot the schedule was not built for, one a request took just before a newer one was
+ * published or one that does not come from the registry, is served in plain rotation until
+ * {@link #prepare(ServerSnapshot)} catches up; selection never builds a schedule.
+ */
+public class SmoothWeightedRoundRobinStrategy implements LoadBalancingStrategy
+{
+    private final AtomicInteger currentIndex = new AtomicInteger(0);
+    private final ServerLoadChecker serverLoadChecker;
+    /* Schedule of the most recently prepared snapshot */
+    private volatile Schedule schedule = Schedule.of(ServerSnapshot.EMPTY);
+
+    public SmoothWeightedRoundRobinStrategy (ServerLoadChecker serverLoadChecker)
+    {
+        this.serverLoadChecker = serverLoadChecker;
+    }
+
+    @Override
+    public void prepare (ServerSnapshot healthyServers)
+    {
+        schedule = Schedule.of(healthyServers);
+    }
+
+    @Override
+    public Backend selectServer (ServerSnapshot healthyServers)
+    {
+        int size = healthyServers.size();
+        if (size == 0) {
+            return null;
+        }
+        Schedule current = schedule;
+        int position;
+        if (current.snapshot == healthyServers) {
+            position = current.position(currentIndex.getAndIncrement());
+        }
+        else {
+            position = Math.floorMod(currentIndex.getAndIncrement(), size);
+        }
+
+        Backend server = healthyServers.get(position);
+        if (!serverLoadChecker.isSaturated(server.getId())) {
+            return server;
+        }
+        // Move on to the next server whose connection pool still has room
+        for (int i = 1; i < size; i++) {
+            Backend next = healthyServers.get((position + i) % size);
+            if (!serverLoadChecker.isSaturated(next.getId())) {
+                return next;
+            }
+        }
+        return server;
+    }
+
+    private static int gcd (int a, int b)
+    {
+        while (b != 0) {
+            int remainder = a % b;
+            a = b;
+            b = remainder;
+        }
+        return a;
+    }
+
+    /**
+     * @param snapshot  the snapshot the schedule was built for
+     * @param order     the snapshot positions by decreasing weight
+     * @param roundEnds the picks made up to the end of every round, the last one being the
+     *                  length of the cycle
+     */
+    record Schedule(ServerSnapshot snapshot, int[] order, int[] roundEnds)
+    {
+        static Schedule of (ServerSnapshot servers)
+        {
+            int size = servers.size();
+            int divisor = 0;
+            for (int i = 0; i < size; i++) {
+                divisor = gcd(divisor, servers.getWeight(i));
+            }
+            // Packed as (largest weight - weight) << 32 | position, so that a primitive sort orders
+            // by decreasing weight and keeps the snapshot order among equal weights
+            long[] byWeight = new long[size];
+            for (int i = 0; i < size; i++) {
+                byWeight[i] = (long) (Integer.MAX_VALUE - servers.getWeight(i)) << 32 | i;
+            }
+            Arrays.sort(byWeight);
+            int[] order = new int[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = (int) byWeight[i];
+            }
+
+            // Round r picks the servers of weight r or more, a prefix of the order
+            int rounds = size == 0 ? 0 : servers.getWeight(order[0]) / divisor;
+            int[] roundEnds = new int[rounds];
+            int picks = 0;
+            int eligible = size;
+            for (int round = 1; round <= rounds; round++) {
+                while (servers.getWeight(order[eligible - 1]) / divisor < round) {
+                    eligible--;
+                }
+                picks += eligible;
+                roundEnds[round - 1] = picks;
+            }
+            return new Schedule(servers, order, roundEnds);
+        }
+
+        /**
+         * @return the snapshot position picked at a step of the endless sequence of cycles
+         */
+        int position (int step)
+        {
+            int pick = Math.floorMod(step, roundEnds[roundEnds.length - 1]);
+            int low = 0;
+            int high = roundEnds.length - 1;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (roundEnds[middle] > pick) {
+                    high = middle;
+                }
+                else {
+                    low = middle + 1;
+                }
+            }
+            return order[pick - (low == 0 ? 0 : roundEnds[low - 1])];
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.simple.loadbalancer.service;
+
+import com.simple.loadbalancer.status.Backend;
+import com.simple.loadbalancer.status.ServerLoadChecker;
+import com.simple.loadbalancer.status.ServerSnapshot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Keeps traffic in the zone of the load balancer, e.g. its rack or availability zone, and spills
+ * part of it over to the other zones only when the local zone is short of healthy servers or of
+ * capacity. Any strategy does the actual selection: one instance picks among the local servers
+ * and another among the remote ones, so that each keeps lookup tables built for its own servers.
+ *
+ * <p>The share of requests kept local is the product of
+ * <ul>
+ *     <li>the healthy share of the local servers, those in the snapshot out of those registered in
+ *     the zone, relative to {@code minHealthy}, and</li>
+ *     <li>the free share of the local capacity relative to {@code 1 - maxUtilization}, the
+ *     capacity being the connections the local servers may have in flight,</li>
+ * </ul>
+ * each capped at 1. With {@code minHealthy = 0.7}, a zone with half its servers up keeps 71% of
+ * the requests; at full utilization it keeps none. Servers without a zone count as remote.
+ *
+ * <p>Nothing is scanned per request: the local and remote servers are split off when a snapshot
+ * is {@link #prepare(ServerSnapshot) prepared}, and the requests in flight in the local zone are
+ * one counter of the {@link ServerLoadChecker}, kept up to date as requests start and finish.
+ */
+public class ZoneAwareStrategy implements LoadBalancingStrategy
+{
+    private final String localZone;
+    private final int localZoneIndex;
+    private final LoadBalancingStrategy local;
+    private final LoadBalancingStrategy remote;
+    private final ServerLoadChecker serverLoadChecker;
+    private final double minHealthy;
+    private final double maxUtilization;
+    /* Split of the most recently seen snapshot */
+    private volatile Partition partition;
+
+    /**
+     * @param localZone         the zone of the load balancer
+     * @param local             the strategy selecting among the servers of the local zone
+     * @param remote            the strategy selecting among the servers of the other zones, a
+     *                          different instance from {@code local}
+     * @param serverLoadChecker the source of the requests in flight in the local zone
+     * @param minHealthy        healthy share of the local servers below which traffic spills over
+     * @param maxUtilization    share of the local capacity in use above which traffic spills over
+     */
+    public ZoneAwareStrategy (String localZone, LoadBalancingStrategy local,
+                              LoadBalancingStrategy remote, ServerLoadChecker serverLoadChecker,
+                              double minHealthy, double maxUtilization)
+    {
+        this.localZone = localZone;
+        this.localZoneIndex = serverLoadChecker.registerZone(localZone);
+        this.local = local;
+        this.remote = remote;
+        this.serverLoadChecker = serverLoadChecker;
+        this.minHealthy = minHealthy;
+        this.maxUtilization = maxUtilization;
+        this.partition = split(ServerSnapshot.EMPTY);
+    }
+
+    @Override
+    public void prepare (ServerSnapshot healthyServers)
+    {
+        Partition next = split(healthyServers);
+        local.prepare(next.local);
+        remote.prepare(next.remote);
+        partition = next;
+    }
+
+    @Override
+    public Backend selectServer (ServerSnapshot healthyServers)
+    {
+        return selectServer(healthyServers, AffinityKey.NONE);
+    }
+
+    @Override
+    public Backend selectServer (ServerSnapshot healthyServers, long keyHash)
+    {
+        Partition current = partition(healthyServers);
+        boolean stayLocal = stayLocal(current);
+        Backend server = stayLocal ? local.selectServer(current.local, keyHash)
+            : remote.selectServer(current.remote, keyHash);
+        if (server == null) {
+            server = stayLocal ? remote.selectServer(current.remote, keyHash)
+                : local.selectServer(current.local, keyHash);
+        }
+        return server;
+    }
+
+    @Override
+    public Backend selectServer (ServerSnapshot healthyServers, long keyHash, Backend excluded)
+    {
+        Partition current = partition(healthyServers);
+        boolean stayLocal = stayLocal(current);
+        Backend server = stayLocal ? local.selectServer(current.local, keyHash, excluded)
+            : remote.selectServer(current.remote, keyHash, excluded);
+        if (server == null || server == excluded) {
+            server = stayLocal ? remote.selectServer(current.remote, keyHash, excluded)
+                : local.selectServer(current.local, keyHash, excluded);
+        }
+        return server == excluded ? null : server;
+    }
+
+    /**
+     * @return the share of requests currently kept in the local zone, between 0 and 1
+     */
+    public double getLocalShare ()
+    {
+        return localShare(partition);
+    }
+
+    private Partition partition (ServerSnapshot healthyServers)
+    {
+        Partition current = partition;
+        if (current.snapshot != healthyServers) {
+            // Only when racing a publication or when the snapshot does not come from the registry
+            current = split(healthyServers);
+            if (healthyServers.getVersion() >= partition.snapshot.getVersion()) {
+                partition = current;
+            }
+        }
+        return current;
+    }
+
+    private boolean stayLocal (Partition current)
+    {
+        if (current.local.isEmpty() || current.remote.isEmpty()) {
+            return !current.local.isEmpty();
+        }
+        double share = localShare(current);
+        return share >= 1 || ThreadLocalRandom.current().nextDouble() < share;
+    }
+
+    private double localShare (Partition current)
+    {
+        if (current.local.isEmpty()) {
+            return 0;
+        }
+        double share = 1;
+        if (minHealthy > 0) {
+            share = Math.min(1, current.healthy / minHealthy);
+        }
+        if (maxUtilization < 1 && current.capacity > 0) {
+            double utilization =
+                serverLoadChecker.getZoneLoad(localZoneIndex) / (double) current.capacity;
+            share *= Math.max(0, Math.min(1, (1 - utilization) / (1 - maxUtilization)));
+        }
+        return share;
+    }
+
+    private Partition split (ServerSnapshot snapshot)
+    {
+        List<Integer> localPositions = new ArrayList<>();
+        List<Integer> remotePositions = new ArrayList<>();
+        for (int i = 0; i < snapshot.size(); i++) {
+            (localZone.equals(snapshot.getZone(i)) ? localPositions : remotePositions).add(i);
+        }
+        ServerSnapshot localServers = subset(snapshot, localPositions);
+        int registered = Math.max(snapshot.getZoneSize(localZone), localServers.size());
+        double healthy = registered == 0 ? 0 : localServers.size() / (double) registered;
+        long capacity = (long) localServers.size() * serverLoadChecker.getSaturationLoad();
+        return new Partition(snapshot, localServers, subset(snapshot, remotePositions), healthy,
+            capacity);
+    }
+
+    private static ServerSnapshot subset (ServerSnapshot snapshot, List<Integer> positions)
+    {
+        Backend[] servers = new Backend[positions.size()];
+        int[] weights = new int[positions.size()];
+        for (int i = 0; i < servers.length; i++) {
+            servers[i] = snapshot.get(positions.get(i));
+            weights[i] = snapshot.getWeight(positions.get(i));
+        }
+        // Same version as the whole, so that delegates can tell newer subsets from older ones
+        return ServerSnapshot.of(snapshot.getVersion(), servers, weights);
+    }
+
+    /**
+     * @param healthy  share of the servers registered in the local zone that are in the snapshot
+     * @param capacity requests the local servers may have in flight together
+     */
+    private record Partition(ServerSnapshot snapshot, ServerSnapshot local, ServerSnapshot remote,
+                             double healthy, long capacity)
+    {
+    }
+}
@@ -0,0 +1,37 @@
+package com.simple.loadbalancer.status;
+
+/**
+ * State record of one backend server, created once when the server is registered and shared by
+ * every {@link ServerSnapshot} the server appears in.
+ *
+ * <p>The {@link #getId() id} is a dense integer, identical to the server's slot in the
+ * {@link ServerLoadChecker}, which strategies use to index per-server arrays instead of hashing
+ * the URL.
+ */
+public final class Backend
+{
+    private final int id;
+    private final String url;
+
+    public Backend (int id, String url)
+    {
+        this.id = id;
+        this.url = url;
+    }
+
+    public int getId ()
+    {
+        return id;
+    }
+
+    public String getUrl ()
+    {
+        return url;
+    }
+
+    @Override
+    public String toString ()
+    {
+        return url;
+    }
+}
@@ -0,0 +1,197 @@
+package com.simple.loadbalancer.status;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Circuit breaker of every backend server, so that requests fail fast or go elsewhere instead of
+ * piling up on a server that stopped answering in time.
+ *
+ * <ul>
+ *     <li><b>Closed</b>: requests flow. After {@code failureThreshold} failed or slow requests in
+ *     a row the circuit opens.</li>
+ *     <li><b>Open</b>: the server gets no requests at all. After {@code openDuration} the next
+ *     {@link #sweep()} half-opens the circuit.</li>
+ *     <li><b>Half-open</b>: at most {@code halfOpenRequests} trial requests are in flight. As many
+ *     successes in a row close the circuit, a single failure opens it again.</li>
+ * </ul>
+ *
+ * <p>The state is enforced through the circuit limit of {@link ServerLoadChecker}: 0 while open,
+ * {@code halfOpenRequests} while half-open. Strategies therefore pass over open circuits like any
+ * saturated server, and {@link ServerLoadChecker#tryIncrementLoad(int)} refuses requests that
+ * still reach one. Unlike an ejection by the {@link OutlierDetector}, opening a circuit is not
+ * capped, as it takes no capacity away that the server still had.
+ *
+ * <p>The state of every server lives in a padded atomic slot and changes by compare-and-set, so
+ * recording an outcome takes no lock.
+ */
+public class CircuitBreaker
+{
+    private static final Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public static final int CLOSED = 0;
+    public static final int OPEN = 1;
+    public static final int HALF_OPEN = 2;
+
+    /* Longs per slot: one 64 byte cache line per server */
+    private static final int STRIDE = 8;
+    private static final int STATE = 0;
+    private static final int FAILURES = 1; // Failures in a row while closed
+    private static final int OPENED_AT = 2; // Clock time the circuit last opened
+    private static final int SUCCESSES = 3; // Successes in a row while half-open
+    private static final int OPENINGS = 4; // Times the circuit opened, for metrics
+
+    private final ServerRegistry serverRegistry;
+    private final ServerLoadChecker serverLoadChecker;
+    private final AtomicLongArray slots;
+    private final int failureThreshold;
+    private final long openNanos;
+    private final int halfOpenRequests;
+    private final long slowCallNanos; // Latency above which a response counts as a failure
+    private final LongSupplier clock; // Source of nanosecond timestamps
+
+    public CircuitBreaker (int capacity, ServerRegistry serverRegistry,
+                           ServerLoadChecker serverLoadChecker, int failureThreshold,
+                           long openNanos, int halfOpenRequests, long slowCallNanos)
+    {
+        this(capacity, serverRegistry, serverLoadChecker, failureThreshold, openNanos,
+            halfOpenRequests, slowCallNanos, System::nanoTime);
+    }
+
+    /**
+     * @param capacity          highest server id plus one
+     * @param serverRegistry    the servers to sweep
+     * @param serverLoadChecker the load accounting the circuit limits are published to
+     * @param failureThreshold  failed or slow requests in a row that open a circuit
+     * @param openNanos         time a circuit stays open before it is tried again
+     * @param halfOpenRequests  trial requests in flight, and successes in a row that close a
+     *                          half-open circuit
+     * @param slowCallNanos     latency above which a response counts as a failure
+     * @param clock             source of nanosecond timestamps
+     */
+    public CircuitBreaker (int capacity, ServerRegistry serverRegistry,
+                           ServerLoadChecker serverLoadChecker, int failureThreshold,
+                           long openNanos, int halfOpenRequests, long slowCallNanos,
+                           LongSupplier clock)
+    {
+        if (failureThreshold < 1 || halfOpenRequests < 1) {
+            throw new IllegalArgumentException(
+                "Failure threshold and half-open requests must be positive");
+        }
+        this.serverRegistry = serverRegistry;
+        this.serverLoadChecker = serverLoadChecker;
+        this.slots = new AtomicLongArray(capacity * STRIDE);
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openNanos;
+        this.halfOpenRequests = halfOpenRequests;
+        this.slowCallNanos = slowCallNanos;
+        this.clock = clock;
+    }
+
+    /**
+     * Records a response of a server.
+     *
+     * @param server       the server that answered
+     * @param latencyNanos the time the server took to answer
+     */
+    public void onResponse (Backend server, long latencyNanos)
+    {
+        if (latencyNanos > slowCallNanos) {
+            onFailure(server);
+            return;
+        }
+        int base = server.getId() * STRIDE;
+        long state = slots.get(base + STATE);
+        if (state == CLOSED) {
+            if (slots.get(base + FAILURES) != 0) {
+                slots.set(base + FAILURES, 0);
+            }
+        }
+        else if (state == HALF_OPEN && slots.incrementAndGet(base + SUCCESSES) >= halfOpenRequests
+            && slots.compareAndSet(base + STATE, HALF_OPEN, CLOSED)) {
+            slots.set(base + FAILURES, 0);
+            serverLoadChecker.setCircuitLimit(server.getId(), Integer.MAX_VALUE);
+            log.info("Circuit of server {} closed.", server);
+        }
+    }
+
+    /**
+     * Records a request the server failed or did not answer.
+     *
+     * @param server the server that failed
+     */
+    public void onFailure (Backend server)
+    {
+        int base = server.getId() * STRIDE;
+        long state = slots.get(base + STATE);
+        if (state == HALF_OPEN) {
+            open(server, HALF_OPEN);
+        }
+        else if (state == CLOSED && slots.incrementAndGet(base + FAILURES) >= failureThreshold) {
+            open(server, CLOSED);
+        }
+    }
+
+    /**
+     * Half-opens the circuits that have been open for {@code openDuration}. Meant to be called at
+     * a fixed interval.
+     */
+    public void sweep ()
+    {
+        long now = clock.getAsLong();
+        for (Backend server : serverRegistry.getAll()) {
+            int base = server.getId() * STRIDE;
+            if (slots.get(base + STATE) == OPEN && now - slots.get(base + OPENED_AT) >= openNanos) {
+                slots.set(base + SUCCESSES, 0);
+                if (slots.compareAndSet(base + STATE, OPEN, HALF_OPEN)) {
+                    serverLoadChecker.setCircuitLimit(server.getId(), halfOpenRequests);
+                    log.info("Circuit of server {} half-open.", server);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return {@link #CLOSED}, {@link #OPEN} or {@link #HALF_OPEN}
+     */
+    public int getState (Backend server)
+    {
+        return (int) slots.get(server.getId() * STRIDE + STATE);
+    }
+
+    /**
+     * @return the number of times the circuit of the server opened
+     */
+    public long getOpenCount (Backend server)
+    {
+        return slots.get(server.getId() * STRIDE + OPENINGS);
+    }
+
+    private void open (Backend server, long from)
+    {
+        int base = server.getId() * STRIDE;
+        // Set first, so that a sweep never sees the new state with an old time
+        slots.set(base + OPENED_AT, clock.getAsLong());
+        if (slots.compareAndSet(base + STATE, from, OPEN)) {
+            serverLoadChecker.setCircuitLimit(server.getId(), 0);
+            slots.incrementAndGet(base + OPENINGS);
+            log.info("Circuit of server {} opened.", server);
+        }
+    }
+
+    /**
+     * Closes the circuit of a server id and forgets its history, for a new server taking the slot
+     * of a removed one.
+     */
+    public void reset (Backend server)
+    {
+        int base = server.getId() * STRIDE;
+        for (int i = 0; i < STRIDE; i++) {
+            slots.set(base + i, 0);
+        }
+        serverLoadChecker.setCircuitLimit(server.getId(), Integer.MAX_VALUE);
+    }
+}
@@ -0,0 +1,140 @@
+package com.simple.loadbalancer.status;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Adaptive limit on the number of requests in flight on every backend server, adjusted by
+ * additive increase and multiplicative decrease (AIMD), the way TCP sizes its congestion window.
+ *
+ * <p>Every response that arrives within {@code slowCallNanos} raises the limit of its server by
+ * {@code 1 / limit}, so by about one per round of {@code limit} requests, as long as the server
+ * is actually using at least half of its limit. Every slow response, and every request the
+ * server dropped or failed to answer, multiplies the limit by {@code backoffRatio}. A server that
+ * slows down therefore quickly ends up with only a few requests in flight instead of tying up
+ * every proxy thread, and gets its share of traffic back once it is fast again.
+ *
+ * <p>The limit of a server is kept as the bits of a double in a padded atomic slot and updated by
+ * compare-and-set; its integer part is published to {@link ServerLoadChecker}, where it bounds
+ * {@link ServerLoadChecker#tryIncrementLoad(int)} and makes the server saturated for strategies.
+ */
+public class ConcurrencyLimiter
+{
+    /* Longs per slot: one 64 byte cache line per server */
+    private static final int STRIDE = 8;
+
+    private final ServerLoadChecker serverLoadChecker;
+    private final AtomicLongArray limits; // Double bits of the limit of every server
+    private final int minLimit;
+    private final int maxLimit;
+    private final long slowCallNanos; // Latency above which a response counts as congestion
+    private final double backoffRatio;
+
+    /**
+     * @param capacity          highest server id plus one
+     * @param serverLoadChecker the load accounting the limits are published to
+     * @param minLimit          lowest limit, at least 1 so that a server can show it recovered
+     * @param maxLimit          highest limit and limit of a server that was never limited
+     * @param slowCallNanos     latency above which a response lowers the limit
+     * @param backoffRatio      factor applied to the limit on a slow or failed request
+     */
+    public ConcurrencyLimiter (int capacity, ServerLoadChecker serverLoadChecker, int minLimit,
+                               int maxLimit, long slowCallNanos, double backoffRatio)
+    {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException(
+                "Invalid concurrency limits: " + minLimit + " to " + maxLimit);
+        }
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException(
+                "Backoff ratio must be between 0 and 1: " + backoffRatio);
+        }
+        this.serverLoadChecker = serverLoadChecker;
+        this.limits = new AtomicLongArray(capacity * STRIDE);
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.slowCallNanos = slowCallNanos;
+        this.backoffRatio = backoffRatio;
+        for (int i = 0; i < capacity; i++) {
+            limits.set(i * STRIDE, Double.doubleToRawLongBits(maxLimit));
+            serverLoadChecker.setConcurrencyLimit(i, maxLimit);
+        }
+    }
+
+    /**
+     * Records a response of a server; call it while the request is still counted in flight.
+     *
+     * @param id           the id of the server
+     * @param latencyNanos the time the server took to answer
+     */
+    public void onResponse (int id, long latencyNanos)
+    {
+        if (latencyNanos > slowCallNanos) {
+            onDropped(id);
+            return;
+        }
+        int slot = id * STRIDE;
+        long bits;
+        double limit;
+        do {
+            bits = limits.get(slot);
+            limit = Double.longBitsToDouble(bits);
+            // A server that does not use its limit gives no evidence that it can take more
+            if (limit >= maxLimit || serverLoadChecker.getCurrentLoad(id) < limit / 2) {
+                return;
+            }
+        }
+        while (!limits.compareAndSet(slot, bits,
+            Double.doubleToRawLongBits(Math.min(limit + 1 / limit, maxLimit))));
+        publish(id, limit);
+    }
+
+    /**
+     * Records a request the server dropped, failed or did not answer in time.
+     *
+     * @param id the id of the server
+     */
+    public void onDropped (int id)
+    {
+        int slot = id * STRIDE;
+        long bits;
+        double limit;
+        do {
+            bits = limits.get(slot);
+            limit = Double.longBitsToDouble(bits);
+            if (limit <= minLimit) {
+                return;
+            }
+        }
+        while (!limits.compareAndSet(slot, bits,
+            Double.doubleToRawLongBits(Math.max(limit * backoffRatio, minLimit))));
+        publish(id, limit);
+    }
+
+    /**
+     * @return the current limit of a server, rounded down
+     */
+    public int getLimit (int id)
+    {
+        return (int) Double.longBitsToDouble(limits.get(id * STRIDE));
+    }
+
+    private void publish (int id, double previous)
+    {
+        // Read back rather than use the value just written, so that racing updates publish the
+        // latest limit; a stale one left by a rare race is replaced by the next update
+        int limit = getLimit(id);
+        if (limit != (int) previous) {
+            serverLoadChecker.setConcurrencyLimit(id, limit);
+        }
+    }
+
+    /**
+     * Gives a server id the limit of a server that was never limited, for a new server taking the
+     * slot of a removed one.
+     */
+    public void reset (int id)
+    {
+        limits.set(id * STRIDE, Double.doubleToRawLongBits(maxLimit));
+        serverLoadChecker.setConcurrencyLimit(id, maxLimit);
+    }
+}
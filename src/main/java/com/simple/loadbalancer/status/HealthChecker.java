@@ -0,0 +1,147 @@
+package com.simple.loadbalancer.status;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Probes the {@code /health} endpoint of every backend server and decides which servers are up.
+ *
+ * <p>All probes of a sweep are sent at once with a non-blocking {@link HttpClient}, each after a
+ * random delay of up to {@code jitter} so that a large fleet is not hit in the same instant, and
+ * each bounded by {@code timeout}. A sweep therefore lasts at most {@code jitter + timeout}
+ * however many servers there are and however many of them hang.
+ *
+ * <p>A server answering with a 2xx or 3xx status passes a probe; an error status, a connection
+ * failure or a timeout fails it. A server is only marked down after {@code fall} consecutive
+ * failed probes, and only marked up again after {@code rise} consecutive passed ones, so that a
+ * single lost probe or a flapping server does not churn the published snapshot. Servers that were
+ * never probed are considered up.
+ *
+ * <p>Sweeps are not meant to overlap; {@link #sweep(List)} is synchronized to make sure of it.
+ * {@link #isUp(Backend)} does not wait for a sweep in progress.
+ */
+public class HealthChecker
+{
+    private final HttpClient httpClient;
+    private final Duration timeout;
+    private final long jitterNanos;
+    private final int rise; // Consecutive passed probes to mark a server up
+    private final int fall; // Consecutive failed probes to mark a server down
+
+    /* Probe history by server id, only written by the sweep in progress */
+    private final AtomicIntegerArray down; // 1 while a server is marked down
+    private final int[] consecutive; // Passed probes while down, failed probes while up
+
+    /**
+     * @param capacity highest server id plus one
+     * @param timeout  time a server has to connect and answer a probe
+     * @param jitter   maximum random delay before a probe is sent
+     * @param rise     consecutive passed probes after which a server that is down is up again
+     * @param fall     consecutive failed probes after which a server that is up is down
+     */
+    public HealthChecker (int capacity, Duration timeout, Duration jitter, int rise, int fall)
+    {
+        if (rise < 1 || fall < 1) {
+            throw new IllegalArgumentException("Rise and fall counts must be positive");
+        }
+        this.httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(timeout)
+            .followRedirects(HttpClient.Redirect.NEVER)
+            .build();
+        this.timeout = timeout;
+        this.jitterNanos = jitter.toNanos();
+        this.rise = rise;
+        this.fall = fall;
+        this.down = new AtomicIntegerArray(capacity);
+        this.consecutive = new int[capacity];
+    }
+
+    /**
+     * Probes the given servers concurrently and returns the ones that are up after this sweep.
+     *
+     * @param servers the servers to probe
+     * @return the servers that are up, in the order given
+     */
+    public synchronized List<Backend> sweep (List<Backend> servers)
+    {
+        List<CompletableFuture<Boolean>> probes = new ArrayList<>(servers.size());
+        for (Backend server : servers) {
+            probes.add(probe(server));
+        }
+        List<Backend> up = new ArrayList<>(servers.size());
+        for (int i = 0; i < servers.size(); i++) {
+            Backend server = servers.get(i);
+            if (update(server.getId(), probes.get(i).join())) {
+                up.add(server);
+            }
+        }
+        return up;
+    }
+
+    /**
+     * @return {@code true} unless the server is currently marked down
+     */
+    public boolean isUp (Backend server)
+    {
+        return down.get(server.getId()) == 0;
+    }
+
+    /**
+     * Forgets the probe history of a server id, for a new server taking the slot of a removed
+     * one. Waits for a sweep in progress, which may still probe the removed server.
+     */
+    public synchronized void reset (Backend server)
+    {
+        down.set(server.getId(), 0);
+        consecutive[server.getId()] = 0;
+    }
+
+    private CompletableFuture<Boolean> probe (Backend server)
+    {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(server.getUrl() + "/health"))
+            .timeout(timeout)
+            .GET()
+            .build();
+        long delay = jitterNanos > 0 ? ThreadLocalRandom.current().nextLong(jitterNanos) : 0;
+        return CompletableFuture.runAsync(() -> { },
+                CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS))
+            .thenCompose(ignored -> httpClient.sendAsync(request,
+                HttpResponse.BodyHandlers.discarding()))
+            // Also bounds a response whose headers arrived but whose body never completes
+            .orTimeout(jitterNanos + timeout.toNanos(), TimeUnit.NANOSECONDS)
+            .handle((response, failure) -> failure == null
+                && response.statusCode() >= 200 && response.statusCode() < 400);
+    }
+
+    /**
+     * Applies the outcome of a probe to the history of a server.
+     *
+     * @return whether the server is up after the probe
+     */
+    private boolean update (int id, boolean passed)
+    {
+        boolean wasDown = down.get(id) != 0;
+        if (passed == wasDown) {
+            // A probe against the current state: a step towards changing it
+            if (++consecutive[id] >= (wasDown ? rise : fall)) {
+                down.set(id, wasDown ? 0 : 1);
+                consecutive[id] = 0;
+                return wasDown;
+            }
+        }
+        else {
+            consecutive[id] = 0;
+        }
+        return !wasDown;
+    }
+}
@@ -0,0 +1,92 @@
+package com.simple.loadbalancer.status;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of response latencies, precise enough to read percentiles from.
+ *
+ * <p>Buckets are log-linear, as in HdrHistogram: every power of two from 1 microsecond to about
+ * a minute is split into {@link #SUB_BUCKETS} equal buckets, so a percentile is off by at most
+ * 1/{@value #SUB_BUCKETS} of its value. Recording is one atomic increment and allocates nothing.
+ *
+ * <p>{@link #decay()} halves every count, so that called at a fixed interval it makes the
+ * histogram describe recent traffic, older samples weighing exponentially less.
+ */
+public class LatencyHistogram
+{
+    /* Buckets per power of two */
+    static final int SUB_BUCKETS = 8;
+
+    private static final int SUB_BITS = 3; // log2(SUB_BUCKETS)
+    private static final int MIN_SHIFT = 10; // Latencies below 2^10 ns share the first buckets
+    private static final int MAX_SHIFT = 36; // Latencies above 2^36 ns, about 69 s, share the last
+
+    private final AtomicLongArray counts =
+        new AtomicLongArray((MAX_SHIFT - MIN_SHIFT + 1) * SUB_BUCKETS);
+
+    public void record (long latencyNanos)
+    {
+        counts.incrementAndGet(indexOf(latencyNanos));
+    }
+
+    /**
+     * @return the number of samples, as weighed by the decays so far
+     */
+    public long getCount ()
+    {
+        long count = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * @param percentile the percentile, between 0 and 100
+     * @return the upper bound of the bucket holding the percentile, or 0 if there are no samples
+     */
+    public long getValueAtPercentile (double percentile)
+    {
+        long count = getCount();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(counts.length() - 1);
+    }
+
+    /**
+     * Halves every count.
+     */
+    public void decay ()
+    {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.getAndUpdate(i, count -> count >> 1);
+        }
+    }
+
+    static int indexOf (long latencyNanos)
+    {
+        long value = Math.max(latencyNanos, 1L << MIN_SHIFT);
+        int shift = 63 - Long.numberOfLeadingZeros(value);
+        if (shift > MAX_SHIFT) {
+            return (MAX_SHIFT - MIN_SHIFT + 1) * SUB_BUCKETS - 1;
+        }
+        int sub = (int) (value >>> (shift - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (shift - MIN_SHIFT) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBound (int index)
+    {
+        int shift = index / SUB_BUCKETS + MIN_SHIFT;
+        int sub = index % SUB_BUCKETS;
+        return (1L << shift) + ((long) (sub + 1) << (shift - SUB_BITS)) - 1;
+    }
+}
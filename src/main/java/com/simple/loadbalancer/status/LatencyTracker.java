@@ -0,0 +1,149 @@
+package com.simple.loadbalancer.status;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps a peak-sensitive, exponentially weighted moving average of the response latency of every
+ * backend server, indexed by {@link Backend#getId()}.
+ *
+ * <p>A sample above the current average replaces it outright, so a server that slows down is
+ * noticed on its first slow response. A sample below the average is blended in with a weight
+ * that depends on the time since the previous sample, so the average forgets old samples after
+ * roughly {@code decayNanos} whatever the request rate. When a server receives no traffic its
+ * average decays towards zero on its own, which lets a server that was avoided for being slow be
+ * probed again after a while. Samples are compared with that decayed average, the one
+ * {@link #getLocalLatency(int)} reports.
+ *
+ * <p>Failed requests count too, so that a server whose requests time out is seen as slow, but
+ * only ever raise the average: a server failing fast must not look faster than one answering.
+ *
+ * <p>Updates are lock-free and reads never write, so scoring a server costs three volatile reads.
+ *
+ * <p>The latency the other load balancers of a cluster measure for a server can be set next to
+ * the local average. {@link #getLatency(int)} returns the higher of both, so a server that slows
+ * down is noticed as soon as any instance sees it, while {@link #getLocalLatency(int)} is what
+ * this instance reports to the others.
+ */
+public class LatencyTracker
+{
+    /* Longs per slot: the average as double bits, the time of the last sample and the latency
+       reported by other instances as double bits, padded to one 64 byte cache line per server */
+    private static final int STRIDE = 8;
+    private static final int STAMP = 1;
+    private static final int PEER = 2;
+
+    private final AtomicLongArray slots;
+    private final double decayNanos; // Time constant of the exponential decay
+    private final LongSupplier clock; // Source of nanosecond timestamps
+
+    public LatencyTracker (int capacity, long decayNanos)
+    {
+        this(capacity, decayNanos, System::nanoTime);
+    }
+
+    public LatencyTracker (int capacity, long decayNanos, LongSupplier clock)
+    {
+        if (decayNanos <= 0) {
+            throw new IllegalArgumentException("Decay time must be positive");
+        }
+        this.slots = new AtomicLongArray(capacity * STRIDE);
+        this.decayNanos = decayNanos;
+        this.clock = clock;
+        long now = clock.getAsLong();
+        for (int i = 0; i < capacity; i++) {
+            slots.set(i * STRIDE + STAMP, now);
+        }
+    }
+
+    /**
+     * Records the latency of a response from a server.
+     *
+     * @param index        the server id
+     * @param latencyNanos the time the server took to answer
+     */
+    public void record (int index, long latencyNanos)
+    {
+        update(index, latencyNanos, true);
+    }
+
+    /**
+     * Records the time until a request to a server failed, e.g. on a read timeout or a refused
+     * connection. Unlike a response, a failure never lowers the average.
+     *
+     * @param index        the server id
+     * @param latencyNanos the time until the request failed
+     */
+    public void recordFailure (int index, long latencyNanos)
+    {
+        update(index, latencyNanos, false);
+    }
+
+    private void update (int index, long latencyNanos, boolean blend)
+    {
+        int base = index * STRIDE;
+        long now = clock.getAsLong();
+        // Every sample accounts for the time elapsed since the one before, even when samples race
+        long elapsed = Math.max(now - slots.getAndSet(base + STAMP, now), 0);
+        double weight = Math.exp(-elapsed / decayNanos);
+        long current;
+        double average;
+        do {
+            current = slots.get(base);
+            // What the average has decayed to since the previous sample
+            double decayed = Double.longBitsToDouble(current) * weight;
+            if (latencyNanos > decayed) {
+                average = latencyNanos;
+            }
+            else {
+                average = blend ? decayed + latencyNanos * (1 - weight) : decayed;
+            }
+        }
+        while (!slots.compareAndSet(base, current, Double.doubleToRawLongBits(average)));
+    }
+
+    /**
+     * @param index the server id
+     * @return the moving average latency of the server in nanoseconds, decayed to the current
+     * time, or the latency reported by other instances if it is higher; 0 if the server has not
+     * answered yet
+     */
+    public double getLatency (int index)
+    {
+        return Math.max(getLocalLatency(index),
+            Double.longBitsToDouble(slots.get(index * STRIDE + PEER)));
+    }
+
+    /**
+     * @param index the server id
+     * @return the moving average latency of the responses to this instance in nanoseconds,
+     * decayed to the current time, or 0 if the server has not answered it yet
+     */
+    public double getLocalLatency (int index)
+    {
+        int base = index * STRIDE;
+        double average = Double.longBitsToDouble(slots.get(base));
+        long elapsed = clock.getAsLong() - slots.get(base + STAMP);
+        return elapsed > 0 ? average * Math.exp(-elapsed / decayNanos) : average;
+    }
+
+    /**
+     * @param index        the server id
+     * @param latencyNanos the highest latency reported by other instances, 0 if none
+     */
+    public void setPeerLatency (int index, double latencyNanos)
+    {
+        slots.set(index * STRIDE + PEER, Double.doubleToRawLongBits(latencyNanos));
+    }
+
+    /**
+     * Forgets the latencies of a server id, for a new server taking the slot of a removed one.
+     */
+    public void reset (int index)
+    {
+        int slot = index * STRIDE;
+        slots.set(slot, 0);
+        slots.set(slot + STAMP, clock.getAsLong());
+        slots.set(slot + PEER, 0);
+    }
+}
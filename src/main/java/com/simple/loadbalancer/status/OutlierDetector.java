@@ -0,0 +1,366 @@
+package com.simple.loadbalancer.status;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Passive outlier detection: ejects backend servers whose responses to real traffic show them
+ * misbehaving, without waiting for the next active health check.
+ *
+ * <p>A server is ejected when
+ * <ul>
+ *     <li>it fails {@code consecutiveErrors} requests in a row, a failure being a 5xx response or
+ *     no response at all,</li>
+ *     <li>at least {@code errorRate} of the requests it served in the last {@code window} failed,
+ *     once it has served {@code minRequests} of them, or</li>
+ *     <li>its moving average latency in the {@link LatencyTracker} is more than
+ *     {@code latencyFactor} times the median of the other servers.</li>
+ * </ul>
+ * The first two are checked on the failing request itself, the third by {@link #sweep()}.
+ *
+ * <p>An ejected server is removed from the published {@link ServerSnapshot}, so strategies never
+ * see it and selection costs nothing more. The failing request only marks the server ejected in
+ * its slot and queues it; the next {@link #sweep()} takes it out of the snapshot, so that the
+ * registry lock and the rebuild of the lookup tables of the strategy stay off the request path.
+ * A server the cap below refuses is not queued again before the following sweep. It is
+ * readmitted by {@link #sweep()} after
+ * {@code baseEjection}, doubled for every other time it was ejected recently, up to
+ * {@code maxEjection}; every {@code baseEjection} a readmitted server spends without failing in a
+ * row forgets one of its ejections. No more than {@code maxEjectionPercent} of the servers are
+ * ejected at once, and the last server is never ejected.
+ *
+ * <p>The state of every server is a handful of counters in padded atomic slots indexed by
+ * {@link Backend#getId()}, updated on every request without locks. The sliding window is a ring
+ * of {@link #BUCKETS} buckets, each packing its time slot, request count and error count into a
+ * single long updated by compare-and-set.
+ */
+public class OutlierDetector
+{
+    private static final Logger log = LoggerFactory.getLogger(OutlierDetector.class);
+
+    /* Buckets of the sliding error rate window */
+    static final int BUCKETS = 10;
+
+    /* Longs per slot: five counters, the buckets and two more, padded to three cache lines */
+    private static final int STRIDE = 24;
+    private static final int CONSECUTIVE = 0; // Failures in a row
+    private static final int EJECTED_UNTIL = 1; // Clock time of readmission, 0 when not ejected
+    private static final int EJECTIONS = 2; // Recent ejections, drives the back-off
+    private static final int LAST_FAILURE = 3; // Wall clock millis of the last failure
+    private static final int GOOD_SINCE = 4; // Clock time of readmission or of the last decay
+    private static final int FIRST_BUCKET = 5;
+    private static final int TOTAL_EJECTIONS = FIRST_BUCKET + BUCKETS; // Ejections ever
+    private static final int REFUSED = TOTAL_EJECTIONS + 1; // Sweep round the cap refused it in
+
+    /* Packing of a bucket: 24 bits of time slot, 20 bits of requests, 20 bits of errors */
+    private static final int COUNT_BITS = 20;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+    private static final long SLOT_MASK = (1L << 24) - 1;
+
+    private final ServerRegistry serverRegistry;
+    private final LatencyTracker latencyTracker;
+    private final Thresholds thresholds;
+    private final AtomicLongArray slots;
+    private final long bucketNanos;
+    private final LongSupplier clock; // Source of nanosecond timestamps
+    /* Ejections marked in the slots by requests, applied to the registry by the next sweep */
+    private final Queue<Ejection> pending = new ConcurrentLinkedQueue<>();
+    /* Sweeps so far, starting at 1 so that a slot refused in no round holds 0 */
+    private volatile long round = 1;
+
+    /**
+     * @param consecutiveErrors  failures in a row that eject a server, 0 to disable
+     * @param errorRate          fraction of failed requests in the window that ejects a server, 0
+     *                           to disable
+     * @param minRequests        requests in the window before the error rate is considered
+     * @param window             length of the sliding error rate window
+     * @param latencyFactor      latency relative to the median that ejects a server, 0 to disable
+     * @param baseEjection       time a server is ejected for the first time
+     * @param maxEjection        longest time a server is ejected
+     * @param maxEjectionPercent share of the eligible servers that may be ejected at once
+     */
+    public record Thresholds(int consecutiveErrors, double errorRate, int minRequests,
+                             Duration window, double latencyFactor, Duration baseEjection,
+                             Duration maxEjection, int maxEjectionPercent)
+    {
+    }
+
+    public OutlierDetector (int capacity, ServerRegistry serverRegistry,
+                            LatencyTracker latencyTracker, Thresholds thresholds)
+    {
+        this(capacity, serverRegistry, latencyTracker, thresholds, System::nanoTime);
+    }
+
+    public OutlierDetector (int capacity, ServerRegistry serverRegistry,
+                            LatencyTracker latencyTracker, Thresholds thresholds,
+                            LongSupplier clock)
+    {
+        this.serverRegistry = serverRegistry;
+        this.latencyTracker = latencyTracker;
+        this.thresholds = thresholds;
+        this.slots = new AtomicLongArray(capacity * STRIDE);
+        this.bucketNanos = Math.max(thresholds.window().toNanos() / BUCKETS, 1);
+        this.clock = clock;
+    }
+
+    /**
+     * Records a request the server answered without a server error.
+     */
+    public void recordSuccess (Backend server)
+    {
+        int base = server.getId() * STRIDE;
+        if (slots.get(base + CONSECUTIVE) != 0) {
+            slots.set(base + CONSECUTIVE, 0);
+        }
+        count(base, false);
+    }
+
+    /**
+     * Records a request the server answered with a server error or did not answer, ejecting the
+     * server if it crossed one of the thresholds.
+     */
+    public void recordFailure (Backend server)
+    {
+        int base = server.getId() * STRIDE;
+        long consecutive = slots.incrementAndGet(base + CONSECUTIVE);
+        slots.set(base + LAST_FAILURE, System.currentTimeMillis());
+        long bucket = count(base, true);
+
+        if (!isEjectable(base)) {
+            return;
+        }
+        if (thresholds.consecutiveErrors() > 0 && consecutive >= thresholds.consecutiveErrors()) {
+            eject(server, "after " + consecutive + " consecutive failures");
+        }
+        else if (thresholds.errorRate() > 0) {
+            long requests = 0;
+            long errors = 0;
+            long current = bucket >>> (2 * COUNT_BITS);
+            for (int i = 0; i < BUCKETS; i++) {
+                long value = slots.get(base + FIRST_BUCKET + i);
+                if (((current - (value >>> (2 * COUNT_BITS))) & SLOT_MASK) < BUCKETS) {
+                    requests += (value >>> COUNT_BITS) & COUNT_MASK;
+                    errors += value & COUNT_MASK;
+                }
+            }
+            if (requests >= thresholds.minRequests()
+                && errors >= thresholds.errorRate() * requests) {
+                eject(server, "with " + errors + " failures in " + requests + " requests");
+            }
+        }
+    }
+
+    /**
+     * Readmits the servers whose ejection is over, ejects the latency outliers and takes the
+     * servers requests marked ejected out of traffic. Meant to be called at a fixed interval.
+     */
+    public synchronized void sweep ()
+    {
+        round++;
+        long now = clock.getAsLong();
+        for (Backend server : serverRegistry.getAll()) {
+            int base = server.getId() * STRIDE;
+            long until = slots.get(base + EJECTED_UNTIL);
+            if (until != 0 && now - until >= 0) {
+                slots.set(base + CONSECUTIVE, 0);
+                slots.set(base + GOOD_SINCE, now);
+                slots.set(base + EJECTED_UNTIL, 0);
+                if (serverRegistry.readmit(server)) {
+                    log.info("Server {} readmitted after ejection.", server);
+                }
+            }
+            else if (until == 0 && slots.get(base + EJECTIONS) > 0) {
+                if (slots.get(base + CONSECUTIVE) != 0) {
+                    slots.set(base + GOOD_SINCE, now);
+                }
+                else if (now - slots.get(base + GOOD_SINCE) >= thresholds.baseEjection().toNanos()) {
+                    // Well behaved for a while since its last ejection: shorten the next one
+                    slots.decrementAndGet(base + EJECTIONS);
+                    slots.set(base + GOOD_SINCE, now);
+                }
+            }
+        }
+        if (thresholds.latencyFactor() > 0) {
+            ejectLatencyOutliers(serverRegistry.getSnapshot());
+        }
+        applyEjections();
+    }
+
+    /**
+     * @return the outlier state of a server
+     */
+    public ServerStatus getStatus (Backend server)
+    {
+        int base = server.getId() * STRIDE;
+        long lastFailure = slots.get(base + LAST_FAILURE);
+        return new ServerStatus(server.getUrl(), (int) slots.get(base + CONSECUTIVE),
+            slots.get(base + EJECTED_UNTIL) != 0,
+            lastFailure == 0 ? null
+                : LocalDateTime.ofInstant(Instant.ofEpochMilli(lastFailure), ZoneId.systemDefault()));
+    }
+
+    /**
+     * @return the outlier state of every registered server
+     */
+    public List<ServerStatus> getStatuses ()
+    {
+        return serverRegistry.getAll().stream().map(this::getStatus).toList();
+    }
+
+    /**
+     * @return the number of times the server was ejected
+     */
+    public long getEjectionCount (Backend server)
+    {
+        return slots.get(server.getId() * STRIDE + TOTAL_EJECTIONS);
+    }
+
+    /**
+     * @return the bucket value after counting the request
+     */
+    private long count (int base, boolean failed)
+    {
+        long timeSlot = (clock.getAsLong() / bucketNanos) & SLOT_MASK;
+        int index = base + FIRST_BUCKET + (int) (timeSlot % BUCKETS);
+        long current;
+        long next;
+        do {
+            current = slots.get(index);
+            long requests = 0;
+            long errors = 0;
+            if (current >>> (2 * COUNT_BITS) == timeSlot) {
+                requests = (current >>> COUNT_BITS) & COUNT_MASK;
+                errors = current & COUNT_MASK;
+            }
+            requests = Math.min(requests + 1, COUNT_MASK);
+            errors = failed ? Math.min(errors + 1, COUNT_MASK) : errors;
+            next = (timeSlot << (2 * COUNT_BITS)) | (requests << COUNT_BITS) | errors;
+        }
+        while (!slots.compareAndSet(index, current, next));
+        return next;
+    }
+
+    private void ejectLatencyOutliers (ServerSnapshot snapshot)
+    {
+        int size = snapshot.size();
+        if (size < 3) {
+            return; // No meaningful median
+        }
+        double[] byServer = new double[size];
+        double[] latencies = new double[size];
+        int measured = 0;
+        for (int i = 0; i < size; i++) {
+            byServer[i] = latencyTracker.getLocalLatency(snapshot.get(i).getId());
+            if (byServer[i] > 0) {
+                latencies[measured++] = byServer[i];
+            }
+        }
+        if (measured < 3) {
+            return;
+        }
+        Arrays.sort(latencies, 0, measured);
+        int middle = (measured - 1) / 2;
+        for (int i = 0; i < size; i++) {
+            double latency = byServer[i];
+            if (latency <= 0) {
+                continue;
+            }
+            // Median of the others: the middle of the sorted latencies once this one is left out
+            int position = Arrays.binarySearch(latencies, 0, measured, latency);
+            double median = latencies[position > middle ? middle : middle + 1];
+            if (latency > thresholds.latencyFactor() * median) {
+                eject(snapshot.get(i), String.format(
+                    "with %.1f ms latency against a median of %.1f ms", latency / 1e6,
+                    median / 1e6));
+            }
+        }
+    }
+
+    /**
+     * @return whether the server is neither ejected, nor queued for ejection, nor refused by the
+     * cap since the last sweep
+     */
+    private boolean isEjectable (int base)
+    {
+        return slots.get(base + EJECTED_UNTIL) == 0 && slots.get(base + REFUSED) != round;
+    }
+
+    /**
+     * Marks the server ejected and queues it for the next sweep.
+     */
+    private void eject (Backend server, String reason)
+    {
+        int base = server.getId() * STRIDE;
+        if (!isEjectable(base)) {
+            return; // Already ejected or queued, or refused by the cap since the last sweep
+        }
+        long ejections = slots.get(base + EJECTIONS) + 1;
+        long maxDuration = thresholds.maxEjection().toNanos();
+        long duration = thresholds.baseEjection().toNanos();
+        for (long i = 1; i < ejections && duration < maxDuration; i++) {
+            duration *= 2;
+        }
+        duration = Math.min(duration, maxDuration);
+        long until = clock.getAsLong() + duration;
+        if (until == 0) {
+            until = 1; // 0 means not ejected
+        }
+        if (slots.compareAndSet(base + EJECTED_UNTIL, 0, until)) {
+            pending.add(new Ejection(server, ejections, duration, reason));
+        }
+    }
+
+    /**
+     * Takes the queued servers out of traffic, within the share that may be ejected at once.
+     */
+    private void applyEjections ()
+    {
+        Ejection ejection;
+        while ((ejection = pending.poll()) != null) {
+            Backend server = ejection.server();
+            if (serverRegistry.get(server.getUrl()) != server) {
+                continue; // Removed since, its slot may be another server's by now
+            }
+            int base = server.getId() * STRIDE;
+            int maxEjected = Math.max(1,
+                serverRegistry.getEligibleCount() * thresholds.maxEjectionPercent() / 100);
+            if (serverRegistry.eject(server, maxEjected)) {
+                slots.set(base + EJECTIONS, ejection.ejections());
+                slots.incrementAndGet(base + TOTAL_EJECTIONS);
+                log.info("Server {} ejected for {} ms {}.", server,
+                    ejection.durationNanos() / 1_000_000, ejection.reason());
+            }
+            else {
+                slots.set(base + REFUSED, round);
+                slots.set(base + EJECTED_UNTIL, 0);
+            }
+        }
+    }
+
+    /**
+     * Forgets the failures and ejections of a server id, for a new server taking the slot of a
+     * removed one.
+     */
+    public void reset (Backend server)
+    {
+        int base = server.getId() * STRIDE;
+        for (int i = 0; i < STRIDE; i++) {
+            slots.set(base + i, 0);
+        }
+    }
+
+    private record Ejection(Backend server, long ejections, long durationNanos, String reason)
+    {
+    }
+}
@@ -1,25 +1,278 @@
 package com.simple.loadbalancer.status;
 
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
 
+/**
+ * Keeps track of the number of requests in flight on every backend server.
+ *
+ * <p>Every server is given a dense slot index by {@link #register(String)}. The load of a slot is
+ * a single atomic counter, so increments, decrements and reads are exact under any contention and
+ * allocate nothing. Each counter sits on its own cache line to keep servers from slowing each
+ * other down through false sharing. The slot of a server is also its {@link Backend#getId() id}.
+ * The slot of a removed server is {@link #release(String) released} and given to the next new
+ * server once no request is in flight on it any more, so that servers coming and going, e.g.
+ * behind DNS, do not use up the slots.
+ *
+ * <p>The cache line of a server also holds the limits on its load: the adaptive limit set by the
+ * {@link ConcurrencyLimiter} and the limit set by the {@link CircuitBreaker}, 0 while its circuit
+ * is open, and the limit the backend client learns from the server itself, such as the HTTP/2
+ * streams it accepts at once. A server is saturated once its load reaches the lowest of them or
+ * the connection pool size, so every strategy that passes over saturated servers respects them all.
+ *
+ * <p>A server may belong to a zone, e.g. a rack or an availability zone. The requests in flight
+ * in every zone are counted along with those of its servers, so that the load of a zone is a
+ * single read however many servers it has. The zone of a server should be set before it takes
+ * traffic: requests in flight while it changes are taken off the new zone.
+ *
+ * <p>When several load balancers share the servers, the cache line also holds the requests the
+ * other instances report in flight on the server, so that strategies can rank servers by their
+ * {@link #getClusterLoad(int) load across the cluster}. Saturation only ever counts the requests
+ * of this instance, as the connection pool and the limits are its own.
+ */
 public class ServerLoadChecker
 {
-    private final Map<String, Integer> serverLoadMap; // Keeps track of the current load per server
+    /* Longs per slot: one 64 byte cache line per server */
+    private static final int STRIDE = 8;
+    private static final int LIMIT = 1; // Adaptive concurrency limit
+    private static final int CIRCUIT_LIMIT = 2; // Limit set by the state of the circuit breaker
+    private static final int ZONE = 3; // Zone index plus one, 0 for a server without zone
+    private static final int PEER_LOAD = 4; // Requests in flight reported by other instances
+    private static final int CONNECTION_LIMIT = 5; // Requests the server accepts at once
 
-    public ServerLoadChecker(Map<String, Integer> serverLoadMap) {
-        this.serverLoadMap = serverLoadMap;
+    private final AtomicLongArray loads; // Keeps track of the current load per server slot
+    private final int capacity; // Maximum number of servers that can be registered
+    private final int saturationLoad; // Load at which every pooled connection to a server is busy
+    private final Map<String, Integer> serverIndex = new ConcurrentHashMap<>();
+    private final AtomicInteger nextIndex = new AtomicInteger();
+    private final Queue<Integer> freeSlots = new ConcurrentLinkedQueue<>(); // Of removed servers
+    private final AtomicLongArray zoneLoads; // Requests in flight per zone, one cache line each
+    private final Map<String, Integer> zoneIndex = new ConcurrentHashMap<>();
+    private final AtomicInteger nextZone = new AtomicInteger();
+
+    public ServerLoadChecker(int capacity) {
+        this(capacity, Integer.MAX_VALUE);
     }
 
-    public int getCurrentLoad(String server) {
-        return serverLoadMap.getOrDefault(server, 0); // Default to 0 if server not found
+    public ServerLoadChecker(int capacity, int saturationLoad) {
+        this.capacity = capacity;
+        this.saturationLoad = saturationLoad;
+        this.loads = new AtomicLongArray(capacity * STRIDE);
+        this.zoneLoads = new AtomicLongArray(capacity * STRIDE);
+        for (int i = 0; i < capacity; i++) {
+            loads.set(i * STRIDE + LIMIT, Integer.MAX_VALUE);
+            loads.set(i * STRIDE + CIRCUIT_LIMIT, Integer.MAX_VALUE);
+            loads.set(i * STRIDE + CONNECTION_LIMIT, Integer.MAX_VALUE);
+        }
     }
 
-    public void incrementLoad(String server) {
-        serverLoadMap.put(server, serverLoadMap.getOrDefault(server, 0) + 1);
+    /**
+     * Returns the slot of a server, assigning one the first time the server is seen: a released
+     * slot without requests in flight, its limits, zone and peer load reset, or else the next
+     * slot never used.
+     *
+     * @param server the server URL
+     * @return the slot index of the server
+     * @throws IllegalStateException if all {@code capacity} slots are taken
+     */
+    public int register(String server) {
+        Integer index = serverIndex.get(server);
+        if (index != null) {
+            return index;
+        }
+        return serverIndex.computeIfAbsent(server, key -> {
+            Integer free = takeFreeSlot();
+            if (free != null) {
+                return free;
+            }
+            int next = nextIndex.getAndIncrement();
+            if (next >= capacity) {
+                nextIndex.decrementAndGet();
+                throw new IllegalStateException("Cannot track more than " + capacity + " servers");
+            }
+            return next;
+        });
     }
 
-    public void decrementLoad(String server) {
-        serverLoadMap.put(server, serverLoadMap.getOrDefault(server, 0) - 1);
+    /**
+     * Gives up the slot of a removed server. Requests still in flight on the server keep
+     * counting on the slot, which is only given to another server once they are done.
+     */
+    public void release(String server) {
+        Integer index = serverIndex.remove(server);
+        if (index != null) {
+            freeSlots.add(index);
+        }
+    }
+
+    private Integer takeFreeSlot() {
+        for (int i = freeSlots.size(); i > 0; i--) {
+            Integer index = freeSlots.poll();
+            if (index == null) {
+                return null;
+            }
+            if (getCurrentLoad(index) == 0) {
+                int slot = index * STRIDE;
+                loads.set(slot + LIMIT, Integer.MAX_VALUE);
+                loads.set(slot + CIRCUIT_LIMIT, Integer.MAX_VALUE);
+                loads.set(slot + CONNECTION_LIMIT, Integer.MAX_VALUE);
+                loads.set(slot + ZONE, 0);
+                loads.set(slot + PEER_LOAD, 0);
+                return index;
+            }
+            freeSlots.add(index); // Not yet, requests of the removed server are in flight
+        }
+        return null;
+    }
+
+    /**
+     * @return the slot of a registered server, or -1 if the server is not registered
+     */
+    public int indexOf(String server) {
+        Integer index = serverIndex.get(server);
+        return index != null ? index : -1;
+    }
+
+    public int getCurrentLoad(int index) {
+        return (int) loads.get(index * STRIDE);
+    }
+
+    public void incrementLoad(int index) {
+        loads.getAndIncrement(index * STRIDE);
+        addZoneLoad(index, 1);
+    }
+
+    /**
+     * Counts one more request in flight on a server, unless the server is saturated.
+     *
+     * @return whether the request was counted; if not, it must not be sent to the server
+     */
+    public boolean tryIncrementLoad(int index) {
+        int slot = index * STRIDE;
+        long limit = getLimit(index);
+        long load;
+        do {
+            load = loads.get(slot);
+            if (load >= limit) {
+                return false;
+            }
+        } while (!loads.compareAndSet(slot, load, load + 1));
+        addZoneLoad(index, 1);
+        return true;
+    }
+
+    public void decrementLoad(int index) {
+        loads.getAndDecrement(index * STRIDE);
+        addZoneLoad(index, -1);
+    }
+
+    /**
+     * @return the requests in flight on a server from this instance and from the other instances
+     * of the cluster, as last reported by them
+     */
+    public int getClusterLoad(int index) {
+        return (int) Math.min(Integer.MAX_VALUE,
+            loads.get(index * STRIDE) + loads.get(index * STRIDE + PEER_LOAD));
+    }
+
+    /**
+     * @return the requests in flight on a server last reported by the other instances
+     */
+    public int getPeerLoad(int index) {
+        return (int) loads.get(index * STRIDE + PEER_LOAD);
+    }
+
+    /**
+     * @param load the sum of the requests in flight on a server reported by the other instances
+     */
+    public void setPeerLoad(int index, int load) {
+        loads.set(index * STRIDE + PEER_LOAD, load);
     }
-}
 
+    /**
+     * Returns the index of a zone, assigning the next free one the first time the zone is seen.
+     *
+     * @throws IllegalStateException if there are as many zones as server slots
+     */
+    public int registerZone(String zone) {
+        Integer index = zoneIndex.get(zone);
+        if (index != null) {
+            return index;
+        }
+        return zoneIndex.computeIfAbsent(zone, key -> {
+            int next = nextZone.getAndIncrement();
+            if (next >= capacity) {
+                nextZone.decrementAndGet();
+                throw new IllegalStateException("Cannot track more than " + capacity + " zones");
+            }
+            return next;
+        });
+    }
+
+    /**
+     * @param zone the zone of the server, or {@code null} for none
+     */
+    public void setZone(int index, String zone) {
+        loads.set(index * STRIDE + ZONE, zone == null ? 0 : registerZone(zone) + 1);
+    }
+
+    /**
+     * @return the number of requests in flight on the servers of a zone
+     */
+    public int getZoneLoad(int zone) {
+        return (int) Math.max(0, zoneLoads.get(zone * STRIDE));
+    }
+
+    private void addZoneLoad(int index, int delta) {
+        long zone = loads.get(index * STRIDE + ZONE);
+        if (zone != 0) {
+            zoneLoads.getAndAdd((int) (zone - 1) * STRIDE, delta);
+        }
+    }
+
+    /**
+     * A server is saturated when it has as many requests in flight as the backend client keeps
+     * connections to it, so one more request would have to wait for a connection, or as many as
+     * its concurrency, circuit or connection limit allows.
+     */
+    public boolean isSaturated(int index) {
+        return getCurrentLoad(index) >= getLimit(index);
+    }
+
+    /**
+     * @return the number of requests a server may have in flight right now
+     */
+    public int getLimit(int index) {
+        int slot = index * STRIDE;
+        return (int) Math.min(Math.min(saturationLoad, loads.get(slot + CONNECTION_LIMIT)),
+            Math.min(loads.get(slot + LIMIT), loads.get(slot + CIRCUIT_LIMIT)));
+    }
+
+    /**
+     * @return the number of requests that make a server saturated whatever its other limits
+     */
+    public int getSaturationLoad() {
+        return saturationLoad;
+    }
+
+    public void setConcurrencyLimit(int index, int limit) {
+        loads.set(index * STRIDE + LIMIT, limit);
+    }
+
+    public void setCircuitLimit(int index, int limit) {
+        loads.set(index * STRIDE + CIRCUIT_LIMIT, limit);
+    }
+
+    /**
+     * @param limit the requests the backend client can have in flight on the server at once, as
+     *              advertised by the server, e.g. its HTTP/2 concurrent streams over all the
+     *              connections kept to it
+     */
+    public void setConnectionLimit(int index, int limit) {
+        loads.set(index * STRIDE + CONNECTION_LIMIT, limit);
+    }
+}
@@ -0,0 +1,442 @@
+package com.simple.loadbalancer.status;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Owns the set of known backend servers and publishes the {@link ServerSnapshot} of the ones that
+ * are eligible for traffic.
+ *
+ * <p>Readers on the forwarding path only ever call {@link #getSnapshot()}, a single volatile read.
+ * Writers (health checks, configuration changes) build a complete new snapshot and swap it in, so
+ * the request path never takes a lock or sees a half-updated server list. Server weights and
+ * zones are part of the snapshot, so a weight or zone change is published the same way.
+ *
+ * <p>The snapshot holds the servers made eligible by health checks and configuration, minus the
+ * ones currently {@link #eject(Backend, int) ejected} for misbehaving under real traffic and the
+ * ones {@link #drain(Backend) draining}. A draining server gets no new requests but stays
+ * registered until its in-flight requests are done and it is {@link #remove(Backend) removed}.
+ * A removed server gives up its record and its load slot. A server that comes back, e.g. one that
+ * reappears in DNS, gets a new record, and a new server may get the id of a removed one: the
+ * {@link #addRegistrationListener(Consumer) registration listeners} clear what was kept under
+ * that id before the new server takes traffic, and {@link #addRemovalListener(Consumer) removal
+ * listeners} drop what was kept under the URL of a removed server.
+ */
+public class ServerRegistry
+{
+    /* Highest server weight, which bounds the size of weighted selection schedules */
+    public static final int MAX_WEIGHT = 1000;
+
+    private final ServerLoadChecker serverLoadChecker;
+    /* Told about every snapshot before it is published */
+    private final Consumer<ServerSnapshot> snapshotListener;
+    /* Told about every new server record, which may have the id of a removed server */
+    private final List<Consumer<Backend>> registrationListeners = new CopyOnWriteArrayList<>();
+    /* Told about every removed server record */
+    private final List<Consumer<Backend>> removalListeners = new CopyOnWriteArrayList<>();
+    /* Registered servers by URL */
+    private final Map<String, Backend> backends = new ConcurrentHashMap<>();
+    /* Registered servers in registration order */
+    private final CopyOnWriteArrayList<Backend> allBackends = new CopyOnWriteArrayList<>();
+    /* Registered servers kept out of traffic until they are removed */
+    private final Set<Backend> draining = ConcurrentHashMap.newKeySet();
+    /* Weight of every server whose weight is not the default of 1 */
+    private final Map<Backend, Integer> weights = new ConcurrentHashMap<>();
+    /* Zone of every server that has one */
+    private final Map<Backend, String> zones = new ConcurrentHashMap<>();
+    /* Servers last made eligible for traffic by health checks or configuration */
+    private List<Backend> eligible = List.of();
+    /* Eligible servers that are temporarily kept out of traffic */
+    private final Set<Backend> ejected = identitySet(List.of());
+    private volatile ServerSnapshot snapshot = ServerSnapshot.EMPTY;
+
+    public ServerRegistry (ServerLoadChecker serverLoadChecker)
+    {
+        this(serverLoadChecker, snapshot -> { });
+    }
+
+    /**
+     * @param serverLoadChecker the load accounting the ids of the servers are taken from
+     * @param snapshotListener  called with every new snapshot on the publishing thread, before
+     *                          readers can see it
+     */
+    public ServerRegistry (ServerLoadChecker serverLoadChecker,
+                           Consumer<ServerSnapshot> snapshotListener)
+    {
+        this.serverLoadChecker = serverLoadChecker;
+        this.snapshotListener = snapshotListener;
+    }
+
+    /**
+     * Adds a listener told about every server record created by {@link #register(String)}, on
+     * the registering thread and before the record is returned, so that state kept by server id
+     * and left behind by a removed server with the same id can be cleared.
+     */
+    public void addRegistrationListener (Consumer<Backend> listener)
+    {
+        registrationListeners.add(listener);
+    }
+
+    /**
+     * Adds a listener told about every server record given up by {@link #remove(Backend)}, on
+     * the removing thread once the server is out of the snapshot, so that state kept by server
+     * URL does not outlive the server.
+     */
+    public void addRemovalListener (Consumer<Backend> listener)
+    {
+        removalListeners.add(listener);
+    }
+
+    /**
+     * Returns the record of a server, creating it with the server's load slot as its id if the
+     * server is not registered. Registering does not make the server eligible for traffic.
+     *
+     * @param url the server URL
+     * @return the backend record of the server
+     * @throws IllegalStateException if all load slots are taken
+     */
+    public Backend register (String url)
+    {
+        Backend backend = backends.get(url);
+        if (backend != null) {
+            return backend;
+        }
+        synchronized (this) {
+            backend = backends.get(url);
+            if (backend != null) {
+                return backend;
+            }
+            backend = new Backend(serverLoadChecker.register(url), url);
+            backends.put(url, backend);
+            allBackends.add(backend);
+        }
+        // Outside the lock, as listeners may wait, e.g. for a health check sweep to end
+        for (Consumer<Backend> listener : registrationListeners) {
+            listener.accept(backend);
+        }
+        return backend;
+    }
+
+    /**
+     * @return the record of a registered server, or {@code null} if it is not known
+     */
+    public Backend get (String url)
+    {
+        return backends.get(url);
+    }
+
+    /**
+     * @return every registered server in registration order
+     */
+    public List<Backend> getAll ()
+    {
+        return allBackends;
+    }
+
+    /**
+     * @return the servers currently eligible for traffic
+     */
+    public ServerSnapshot getSnapshot ()
+    {
+        return snapshot;
+    }
+
+    /**
+     * Replaces the servers eligible for traffic. Ejected servers among them are left out of the
+     * snapshot until they are readmitted. Nothing is published when the resulting servers are the
+     * same, in the same order, as in the current snapshot.
+     *
+     * @param servers the servers eligible for traffic
+     * @return the snapshot in effect after the call
+     */
+    public synchronized ServerSnapshot publish (Collection<Backend> servers)
+    {
+        // A sweep that started before a server was removed must not bring it back
+        Set<Backend> members = identitySet(allBackends);
+        List<Backend> registered = new ArrayList<>(servers.size());
+        for (Backend server : servers) {
+            if (members.contains(server)) {
+                registered.add(server);
+            }
+        }
+        eligible = registered;
+        return refresh();
+    }
+
+    /**
+     * @return the weight of a server, 1 unless it was changed by {@link #setWeight(Backend, int)}
+     */
+    public int getWeight (Backend backend)
+    {
+        return weights.getOrDefault(backend, 1);
+    }
+
+    /**
+     * Changes the share of traffic a server receives from weighted strategies. The change takes
+     * effect with a new snapshot if the server is currently eligible for traffic.
+     *
+     * @param backend the server
+     * @param weight  the new weight, between 1 and {@link #MAX_WEIGHT}
+     * @return the snapshot in effect after the call
+     * @throws IllegalArgumentException if the weight is out of range
+     */
+    public synchronized ServerSnapshot setWeight (Backend backend, int weight)
+    {
+        if (weight < 1 || weight > MAX_WEIGHT) {
+            throw new IllegalArgumentException(
+                "Server weight must be between 1 and " + MAX_WEIGHT + ": " + weight);
+        }
+        if (!allBackends.contains(backend) || weights.getOrDefault(backend, 1) == weight) {
+            return snapshot;
+        }
+        weights.put(backend, weight);
+        if (snapshot.contains(backend)) {
+            return swap(next(snapshot.asList()));
+        }
+        return snapshot;
+    }
+
+    /**
+     * @return the zone of a server, or {@code null} if it has none
+     */
+    public String getZone (Backend backend)
+    {
+        return zones.get(backend);
+    }
+
+    /**
+     * Places a server in a zone, e.g. a rack or an availability zone, for zone aware routing. The
+     * change takes effect with a new snapshot.
+     *
+     * @param backend the server
+     * @param zone    the zone, or {@code null} for none
+     * @return the snapshot in effect after the call
+     */
+    public synchronized ServerSnapshot setZone (Backend backend, String zone)
+    {
+        // The slot of a removed server may already belong to another one
+        if (!allBackends.contains(backend) || Objects.equals(zones.get(backend), zone)) {
+            return snapshot;
+        }
+        if (zone == null) {
+            zones.remove(backend);
+        }
+        else {
+            zones.put(backend, zone);
+        }
+        serverLoadChecker.setZone(backend.getId(), zone);
+        // The zone sizes change even when the server is not eligible for traffic
+        return swap(next(snapshot.asList()));
+    }
+
+    /**
+     * Publishes the outcome of a health check sweep: of the {@code checked} servers only the
+     * {@code healthy} ones stay eligible, while servers added since the sweep started keep their
+     * current state.
+     *
+     * @param checked the servers the sweep looked at
+     * @param healthy the checked servers found healthy
+     * @return the snapshot in effect after the call
+     */
+    public synchronized ServerSnapshot publishChecked (Collection<Backend> checked,
+                                                       Collection<Backend> healthy)
+    {
+        Set<Backend> seen = identitySet(checked);
+        List<Backend> servers = new ArrayList<>(healthy);
+        seen.addAll(healthy);
+        for (Backend server : eligible) {
+            if (seen.add(server)) {
+                servers.add(server);
+            }
+        }
+        return publish(servers);
+    }
+
+    /**
+     * Makes one more server eligible for traffic, keeping the others. A server being drained is
+     * taken back into traffic.
+     *
+     * @param backend the server to add
+     * @return the snapshot in effect after the call
+     */
+    public synchronized ServerSnapshot add (Backend backend)
+    {
+        boolean drained = draining.remove(backend);
+        if (eligible.contains(backend)) {
+            return drained ? refresh() : snapshot;
+        }
+        List<Backend> servers = new ArrayList<>(eligible);
+        servers.add(backend);
+        return publish(servers);
+    }
+
+    /**
+     * Stops sending new requests to a server, which stays registered so that its in-flight
+     * requests can finish, until it is {@link #remove(Backend) removed}.
+     *
+     * @param backend the server to drain
+     * @return {@code false} if the server is not registered
+     */
+    public synchronized boolean drain (Backend backend)
+    {
+        if (!allBackends.contains(backend)) {
+            return false;
+        }
+        if (draining.add(backend)) {
+            refresh();
+        }
+        return true;
+    }
+
+    /**
+     * @return the servers being drained
+     */
+    public Set<Backend> getDraining ()
+    {
+        return Collections.unmodifiableSet(draining);
+    }
+
+    /**
+     * Takes a server out of traffic and forgets it, so that health checks no longer probe it, and
+     * releases its load slot. Requests already sent to it are not affected.
+     *
+     * @param backend the server to remove
+     * @return {@code false} if the server was not registered
+     */
+    public boolean remove (Backend backend)
+    {
+        synchronized (this) {
+            if (!allBackends.remove(backend)) {
+                return false;
+            }
+            backends.remove(backend.getUrl(), backend);
+            draining.remove(backend);
+            ejected.remove(backend);
+            weights.remove(backend);
+            List<Backend> servers = new ArrayList<>(eligible);
+            servers.remove(backend);
+            publish(servers);
+            if (zones.remove(backend) != null) {
+                swap(next(snapshot.asList())); // Out of the size of its zone
+            }
+            serverLoadChecker.release(backend.getUrl());
+        }
+        // Outside the lock, like the registration listeners
+        for (Consumer<Backend> listener : removalListeners) {
+            listener.accept(backend);
+        }
+        return true;
+    }
+
+    /**
+     * Takes a server out of traffic while it stays eligible, e.g. because its responses show it
+     * misbehaving, as long as at most {@code maxEjected} servers end up ejected and at least one
+     * server is left for traffic.
+     *
+     * @param backend    the server to eject
+     * @param maxEjected the largest number of servers allowed to be ejected at once
+     * @return whether the server was ejected by this call
+     */
+    public synchronized boolean eject (Backend backend, int maxEjected)
+    {
+        if (ejected.contains(backend) || ejected.size() >= maxEjected
+            || !snapshot.contains(backend) || snapshot.size() <= 1) {
+            return false;
+        }
+        ejected.add(backend);
+        refresh();
+        return true;
+    }
+
+    /**
+     * Returns an ejected server to traffic, if it is still eligible.
+     *
+     * @param backend the server to readmit
+     * @return whether the server was ejected
+     */
+    public synchronized boolean readmit (Backend backend)
+    {
+        if (!ejected.remove(backend)) {
+            return false;
+        }
+        refresh();
+        return true;
+    }
+
+    /**
+     * @return the number of servers that are eligible for traffic, ejected ones included
+     */
+    public synchronized int getEligibleCount ()
+    {
+        return eligible.size();
+    }
+
+    private ServerSnapshot refresh ()
+    {
+        List<Backend> servers = eligible;
+        if (!ejected.isEmpty() || !draining.isEmpty()) {
+            servers = new ArrayList<>(eligible.size());
+            for (Backend server : eligible) {
+                if (!ejected.contains(server) && !draining.contains(server)) {
+                    servers.add(server);
+                }
+            }
+        }
+        if (sameServers(snapshot, servers)) {
+            return snapshot;
+        }
+        return swap(next(servers));
+    }
+
+    private ServerSnapshot next (Collection<Backend> servers)
+    {
+        Map<String, Integer> zoneSizes = new HashMap<>();
+        if (!zones.isEmpty()) {
+            for (Backend server : allBackends) {
+                String zone = zones.get(server);
+                if (zone != null) {
+                    zoneSizes.merge(zone, 1, Integer::sum);
+                }
+            }
+        }
+        return snapshot.next(servers, this::getWeight, zones::get, zoneSizes);
+    }
+
+    private static Set<Backend> identitySet (Collection<Backend> servers)
+    {
+        Set<Backend> set = Collections.newSetFromMap(new IdentityHashMap<>());
+        set.addAll(servers);
+        return set;
+    }
+
+    private ServerSnapshot swap (ServerSnapshot next)
+    {
+        snapshotListener.accept(next);
+        snapshot = next;
+        return next;
+    }
+
+    private static boolean sameServers (ServerSnapshot snapshot, Collection<Backend> servers)
+    {
+        if (snapshot.size() != servers.size()) {
+            return false;
+        }
+        int position = 0;
+        for (Backend server : servers) {
+            if (snapshot.get(position++) != server) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
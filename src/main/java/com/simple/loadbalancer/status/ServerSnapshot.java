@@ -0,0 +1,189 @@
+package com.simple.loadbalancer.status;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Immutable, versioned view of the backend servers currently eligible for traffic.
+ *
+ * <p>A new snapshot is published by the {@link ServerRegistry} whenever health or membership
+ * changes; readers never see it change under them. Servers are exposed by position
+ * ({@code 0 .. size() - 1}), so a strategy selects with plain array indexing and no allocation.
+ * Every server carries the weight and zone it had when the snapshot was published; changing
+ * either publishes a new snapshot like any other change. The snapshot also knows how many servers
+ * are registered in every zone, eligible or not, so that the health of a zone can be told from
+ * the snapshot alone.
+ */
+public final class ServerSnapshot
+{
+    private static final Backend[] NO_SERVERS = new Backend[0];
+
+    /* Snapshot published before any server is known */
+    public static final ServerSnapshot EMPTY =
+        new ServerSnapshot(0, NO_SERVERS, new int[0], new String[0], Map.of());
+
+    private final long version;
+    private final Backend[] servers;
+    /* Weight of the server at the same position */
+    private final int[] weights;
+    private final int totalWeight;
+    /* Zone of the server at the same position, null for none */
+    private final String[] zones;
+    /* Registered servers of every zone, eligible or not */
+    private final Map<String, Integer> zoneSizes;
+
+    private ServerSnapshot (long version, Backend[] servers, int[] weights, String[] zones,
+                            Map<String, Integer> zoneSizes)
+    {
+        this.version = version;
+        this.servers = servers;
+        this.weights = weights;
+        this.totalWeight = Arrays.stream(weights).sum();
+        this.zones = zones;
+        this.zoneSizes = zoneSizes;
+    }
+
+    ServerSnapshot next (Collection<Backend> servers, ToIntFunction<Backend> weight,
+                         Function<Backend, String> zone, Map<String, Integer> zoneSizes)
+    {
+        Backend[] next = servers.toArray(NO_SERVERS);
+        int[] weights = new int[next.length];
+        String[] zones = new String[next.length];
+        for (int i = 0; i < next.length; i++) {
+            weights[i] = weight.applyAsInt(next[i]);
+            zones[i] = zone.apply(next[i]);
+        }
+        return new ServerSnapshot(version + 1, next, weights, zones, Map.copyOf(zoneSizes));
+    }
+
+    /**
+     * Builds a snapshot outside of any registry, e.g. to feed a strategy in tests or benchmarks.
+     * Every server has a weight of 1.
+     */
+    public static ServerSnapshot of (long version, Backend... servers)
+    {
+        int[] weights = new int[servers.length];
+        Arrays.fill(weights, 1);
+        return of(version, servers, weights);
+    }
+
+    /**
+     * Builds a weighted snapshot outside of any registry.
+     *
+     * @param weights the weight of the server at the same position
+     */
+    public static ServerSnapshot of (long version, Backend[] servers, int[] weights)
+    {
+        return of(version, servers, weights, new String[servers.length], Map.of());
+    }
+
+    /**
+     * Builds a weighted snapshot of servers in zones outside of any registry.
+     *
+     * @param weights   the weight of the server at the same position
+     * @param zones     the zone of the server at the same position, {@code null} for none
+     * @param zoneSizes the registered servers of every zone; zones left out count the servers
+     *                  of the snapshot only
+     */
+    public static ServerSnapshot of (long version, Backend[] servers, int[] weights,
+                                     String[] zones, Map<String, Integer> zoneSizes)
+    {
+        if (servers.length != weights.length || servers.length != zones.length) {
+            throw new IllegalArgumentException("Every server needs exactly one weight and zone");
+        }
+        Map<String, Integer> sizes = new HashMap<>();
+        for (String zone : zones) {
+            if (zone != null) {
+                sizes.merge(zone, 1, Integer::sum);
+            }
+        }
+        sizes.putAll(zoneSizes);
+        return new ServerSnapshot(version, servers.clone(), weights.clone(), zones.clone(),
+            Map.copyOf(sizes));
+    }
+
+    public long getVersion ()
+    {
+        return version;
+    }
+
+    public int size ()
+    {
+        return servers.length;
+    }
+
+    public boolean isEmpty ()
+    {
+        return servers.length == 0;
+    }
+
+    /**
+     * @param position a position between {@code 0} and {@code size() - 1}
+     * @return the server at that position
+     */
+    public Backend get (int position)
+    {
+        return servers[position];
+    }
+
+    /**
+     * @param position a position between {@code 0} and {@code size() - 1}
+     * @return the weight of the server at that position
+     */
+    public int getWeight (int position)
+    {
+        return weights[position];
+    }
+
+    /**
+     * @param position a position between {@code 0} and {@code size() - 1}
+     * @return the zone of the server at that position, or {@code null} if it has none
+     */
+    public String getZone (int position)
+    {
+        return zones[position];
+    }
+
+    /**
+     * @return the number of servers registered in a zone, whether eligible for traffic or not
+     */
+    public int getZoneSize (String zone)
+    {
+        return zoneSizes.getOrDefault(zone, 0);
+    }
+
+    /**
+     * @return the sum of the weights of all servers
+     */
+    public int getTotalWeight ()
+    {
+        return totalWeight;
+    }
+
+    public boolean contains (Backend backend)
+    {
+        for (Backend server : servers) {
+            if (server == backend) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public List<Backend> asList ()
+    {
+        return List.of(servers);
+    }
+
+    @Override
+    public String toString ()
+    {
+        return "v" + version + " " + new ArrayList<>(List.of(servers));
+    }
+}
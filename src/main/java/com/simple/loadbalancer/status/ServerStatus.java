@@ -2,19 +2,24 @@ package com.simple.loadbalancer.status;
 
 import java.time.LocalDateTime;
 
+/**
+ * Point in time view of the failure state of a backend server, as tracked by the
+ * {@link OutlierDetector}.
+ */
 public class ServerStatus
 {
     private final String serverUrl;
-    private int failureCount;
-    private boolean blacklisted;
-    private LocalDateTime lastFailureTime;
+    private final int failureCount;
+    private final boolean blacklisted;
+    private final LocalDateTime lastFailureTime;
 
-    public ServerStatus (String serverUrl)
+    public ServerStatus (String serverUrl, int failureCount, boolean blacklisted,
+                         LocalDateTime lastFailureTime)
     {
         this.serverUrl = serverUrl;
-        this.failureCount = 0;
-        this.blacklisted = false;
-        this.lastFailureTime = null;
+        this.failureCount = failureCount;
+        this.blacklisted = blacklisted;
+        this.lastFailureTime = lastFailureTime;
     }
 
     public String getServerUrl ()
@@ -22,37 +27,27 @@ public class ServerStatus
         return serverUrl;
     }
 
+    /**
+     * @return the number of requests the server failed in a row
+     */
     public int getFailureCount ()
     {
         return failureCount;
     }
 
-    public void incrementFailureCount ()
-    {
-        this.failureCount++;
-        this.lastFailureTime = LocalDateTime.now();
-    }
-
+    /**
+     * @return whether the server is currently ejected from traffic
+     */
     public boolean isBlacklisted ()
     {
         return blacklisted;
     }
 
-    public void setBlacklisted (boolean blacklisted)
-    {
-        this.blacklisted = blacklisted;
-    }
-
+    /**
+     * @return the time of the last failed request, or {@code null} if none failed
+     */
     public LocalDateTime getLastFailureTime ()
     {
         return lastFailureTime;
     }
-
-    public void resetFailureCount ()
-    {
-        this.failureCount = 0;
-        this.blacklisted = false;
-        this.lastFailureTime = null;
-    }
 }
-
@@ -0,0 +1,84 @@
+package com.simple.loadbalancer.admission;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdmissionFilterTest
+{
+    /* Forwards one request at a time and queues none */
+    private final AdmissionControl admissionControl = new AdmissionControl(null,
+        new AdmissionQueue(1, 0), "ip", null, null, Duration.ofSeconds(1));
+    private final AtomicBoolean forwarded = new AtomicBoolean();
+
+    @Test
+    void holdsTheSlotUntilTheResponseIsComplete () throws Exception
+    {
+        FilterChain chain = (request, response) -> {
+            assertEquals(1, admissionControl.getInFlight());
+            forwarded.set(true);
+        };
+        new AdmissionFilter(admissionControl).doFilter(request(), new MockHttpServletResponse(),
+            chain);
+
+        assertTrue(forwarded.get());
+        assertEquals(0, admissionControl.getInFlight());
+    }
+
+    @Test
+    void refusesRequestsBeforeTheirBodiesAreRead () throws Exception
+    {
+        admissionControl.admit(null, "192.0.2.1", null, null).join();
+        MockHttpServletRequest request = request();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        new AdmissionFilter(admissionControl).doFilter(request, response,
+            (ignored, unused) -> forwarded.set(true));
+
+        assertFalse(forwarded.get());
+        assertEquals(1024, request.getInputStream().available());
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE.value(), response.getStatus());
+        assertEquals("1", response.getHeader(HttpHeaders.RETRY_AFTER));
+        assertEquals("Server busy", response.getContentAsString());
+    }
+
+    @Test
+    void refusesReactiveRequestsBelowTheMountOnly ()
+    {
+        admissionControl.admit(null, "192.0.2.1", null, null).join();
+        ReactiveAdmissionFilter filter =
+            new ReactiveAdmissionFilter(admissionControl, "/forwardRequest");
+
+        MockServerWebExchange refused =
+            MockServerWebExchange.from(MockServerHttpRequest.get("/forwardRequest/api"));
+        filter.filter(refused, exchange -> Mono.fromRunnable(() -> forwarded.set(true))).block();
+        assertFalse(forwarded.get());
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, refused.getResponse().getStatusCode());
+        assertEquals("1", refused.getResponse().getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+
+        MockServerWebExchange other =
+            MockServerWebExchange.from(MockServerHttpRequest.get("/forwardRequestX"));
+        filter.filter(other, exchange -> Mono.fromRunnable(() -> forwarded.set(true))).block();
+        assertTrue(forwarded.get());
+    }
+
+    private static MockHttpServletRequest request ()
+    {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/forwardRequest/api");
+        request.setContent(new byte[1024]);
+        return request;
+    }
+}
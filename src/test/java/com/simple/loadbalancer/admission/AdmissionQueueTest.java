@@ -0,0 +1,150 @@
+package com.simple.loadbalancer.admission;
+
+import com.simple.loadbalancer.admission.AdmissionRejectedException.Reason;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdmissionQueueTest
+{
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long LATER = TimeUnit.SECONDS.toNanos(60);
+
+    private final AtomicLong now = new AtomicLong(1_000_000_000L);
+
+    @Test
+    void capsTheRequestsInFlight ()
+    {
+        AdmissionQueue queue = new AdmissionQueue(2, 0, now::get);
+        assertTrue(queue.tryAcquire());
+        assertTrue(queue.tryAcquire());
+        assertFalse(queue.tryAcquire());
+        assertEquals(Reason.QUEUE_FULL, reason(queue.acquire(5, now.get() + LATER)));
+        queue.release(MILLIS);
+        assertTrue(queue.tryAcquire());
+        assertEquals(2, queue.getInFlight());
+    }
+
+    @Test
+    void handsFreedSlotsToTheHighestPriorityFirst ()
+    {
+        AdmissionQueue queue = new AdmissionQueue(1, 10, now::get);
+        assertTrue(queue.tryAcquire());
+        CompletableFuture<Void> low = queue.acquire(1, now.get() + LATER);
+        CompletableFuture<Void> high = queue.acquire(8, now.get() + LATER);
+        CompletableFuture<Void> highLater = queue.acquire(8, now.get() + LATER);
+        assertEquals(3, queue.getQueued());
+        assertFalse(queue.tryAcquire(), "no overtaking of waiting requests");
+
+        queue.release(MILLIS);
+        assertTrue(high.isDone() && !highLater.isDone() && !low.isDone());
+        queue.release(MILLIS);
+        assertTrue(highLater.isDone() && !low.isDone());
+        queue.release(MILLIS);
+        assertTrue(low.isDone());
+        queue.release(MILLIS);
+        assertEquals(0, queue.getInFlight());
+        assertEquals(0, queue.getQueued());
+    }
+
+    @Test
+    void shedsTheLowestPriorityWhenFull ()
+    {
+        AdmissionQueue queue = new AdmissionQueue(1, 2, now::get);
+        assertTrue(queue.tryAcquire());
+        CompletableFuture<Void> low = queue.acquire(2, now.get() + LATER);
+        CompletableFuture<Void> normal = queue.acquire(5, now.get() + LATER);
+        CompletableFuture<Void> high = queue.acquire(9, now.get() + LATER);
+        assertEquals(Reason.SHED, reason(low));
+        assertEquals(Reason.QUEUE_FULL, reason(queue.acquire(5, now.get() + LATER)));
+        assertEquals(2, queue.getQueued());
+
+        queue.release(MILLIS);
+        assertTrue(high.isDone() && !normal.isDone());
+    }
+
+    @Test
+    void refusesRequestsThatWouldMissTheirDeadline ()
+    {
+        AdmissionQueue queue = new AdmissionQueue(2, 100, now::get);
+        // Requests hold their slot for 100 ms: one frees up every 50 ms
+        assertTrue(queue.tryAcquire());
+        queue.release(100 * MILLIS);
+        assertTrue(queue.tryAcquire());
+        assertTrue(queue.tryAcquire());
+
+        List<CompletableFuture<Void>> waiting = new ArrayList<>();
+        waiting.add(queue.acquire(5, now.get() + 60 * MILLIS));
+        waiting.add(queue.acquire(5, now.get() + 120 * MILLIS));
+        // Third in line, its turn comes after 150 ms
+        assertEquals(Reason.DEADLINE, reason(queue.acquire(5, now.get() + 120 * MILLIS)));
+        // Ahead of the others, its turn comes after 50 ms
+        waiting.add(queue.acquire(9, now.get() + 60 * MILLIS));
+        assertEquals(Reason.DEADLINE, reason(queue.acquire(5, now.get())));
+        assertFalse(waiting.stream().anyMatch(CompletableFuture::isDone));
+    }
+
+    @Test
+    void refusesRequestsStillWaitingAtTheirDeadline ()
+    {
+        AdmissionQueue queue = new AdmissionQueue(1, 10);
+        assertTrue(queue.tryAcquire());
+        CompletableFuture<Void> waiting = queue.acquire(5, System.nanoTime() + 20 * MILLIS);
+        assertEquals(Reason.DEADLINE, reason(waiting));
+
+        // The slot goes back to the pool rather than to the expired request
+        queue.release(MILLIS);
+        assertEquals(0, queue.getInFlight());
+        assertTrue(queue.tryAcquire());
+    }
+
+    @Test
+    void dropsTheDeadlineTimerOfAnAdmittedRequest ()
+    {
+        AdmissionQueue queue = new AdmissionQueue(1, 10);
+        assertTrue(queue.tryAcquire());
+        int timers = AdmissionQueue.getPendingDeadlines();
+        CompletableFuture<Void> waiting = queue.acquire(5, System.nanoTime() + 60_000 * MILLIS);
+        assertEquals(timers + 1, AdmissionQueue.getPendingDeadlines());
+
+        queue.release(MILLIS);
+        assertTrue(waiting.isDone());
+        assertEquals(timers, AdmissionQueue.getPendingDeadlines());
+        queue.release(MILLIS);
+    }
+
+    @Test
+    void returnsTheSlotOfAnAbandonedAdmission ()
+    {
+        AdmissionControl admission = new AdmissionControl(null, new AdmissionQueue(1, 10), "ip",
+            "X-Priority", null, Duration.ofSeconds(60));
+        admission.admit(null, "10.0.0.1", null, null).join();
+        CompletableFuture<Void> waiting = admission.admit(null, "10.0.0.1", "9", null);
+        admission.abandon(waiting);
+        assertEquals(0, admission.getQueued());
+
+        CompletableFuture<Void> granted = admission.admit(null, "10.0.0.1", "9", null);
+        admission.exit(System.nanoTime());
+        assertTrue(granted.isDone());
+        admission.abandon(granted);
+        assertEquals(0, admission.getInFlight());
+    }
+
+    private static Reason reason (CompletableFuture<Void> admission)
+    {
+        Throwable error = assertThrows(Exception.class, admission::join).getCause();
+        return assertInstanceOf(AdmissionRejectedException.class, error).getReason();
+    }
+}
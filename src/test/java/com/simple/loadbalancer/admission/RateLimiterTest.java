@@ -0,0 +1,110 @@
+package com.simple.loadbalancer.admission;
+
+import com.simple.loadbalancer.admission.AdmissionRejectedException.Reason;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimiterTest
+{
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final AtomicLong now = new AtomicLong(1_000_000_000L);
+
+    @Test
+    void admitsABurstThenTheSustainedRate ()
+    {
+        // 100 requests per second: one every 10 ms, 5 at once
+        RateLimiter limiter = new RateLimiter(100, 5, 1000, now::get);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, limiter.tryAcquire(1));
+        }
+        assertEquals(10 * MILLIS, limiter.tryAcquire(1));
+
+        now.addAndGet(4 * MILLIS);
+        assertEquals(6 * MILLIS, limiter.tryAcquire(1), "refusals do not use up the rate");
+        now.addAndGet(6 * MILLIS);
+        assertEquals(0, limiter.tryAcquire(1));
+        assertTrue(limiter.tryAcquire(1) > 0);
+
+        // Idle for the length of a burst: the whole burst is available again
+        now.addAndGet(50 * MILLIS);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, limiter.tryAcquire(1));
+        }
+        assertTrue(limiter.tryAcquire(1) > 0);
+    }
+
+    @Test
+    void limitsEveryClientOnItsOwn ()
+    {
+        RateLimiter limiter = new RateLimiter(1, 1, 1000, now::get);
+        assertEquals(0, limiter.tryAcquire(1));
+        assertTrue(limiter.tryAcquire(1) > 0);
+        assertEquals(0, limiter.tryAcquire(2));
+    }
+
+    @Test
+    void tracksABoundedNumberOfClients ()
+    {
+        RateLimiter limiter = new RateLimiter(1, 1, 1000, now::get);
+        assertEquals(1024, limiter.getCapacity());
+        for (long key = 1; key <= 10_000; key++) {
+            assertEquals(0, limiter.tryAcquire(key), "a new client starts with a full bucket");
+        }
+        assertEquals(1024, limiter.getTrackedClients());
+
+        // Idle clients have a full bucket again
+        now.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        assertEquals(0, limiter.getTrackedClients());
+    }
+
+    @Test
+    void forgetsIdleClientsBeforeActiveOnes ()
+    {
+        // One bucket of four clients
+        RateLimiter limiter = new RateLimiter(1, 1, RateLimiter.WAYS, now::get);
+        assertEquals(0, limiter.tryAcquire(1));
+        now.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        for (long key = 2; key <= 4; key++) {
+            assertEquals(0, limiter.tryAcquire(key));
+        }
+        // Takes the slot of client 1, idle with a full bucket
+        assertEquals(0, limiter.tryAcquire(5));
+        for (long key = 2; key <= 5; key++) {
+            assertTrue(limiter.tryAcquire(key) > 0, "client " + key + " is still limited");
+        }
+        assertEquals(4, limiter.getTrackedClients());
+    }
+
+    @Test
+    void refusesClientsOverTheirRateWith429 ()
+    {
+        AdmissionControl admission = new AdmissionControl(new RateLimiter(1, 2, 1000), null,
+            "header:X-Api-Key", null, null, Duration.ZERO);
+        assertSame(null, admission.admit("tenant-a", "10.0.0.1", null, null).join());
+        admission.admit("tenant-a", "10.0.0.1", null, null).join();
+        CompletableFuture<Void> refused = admission.admit("tenant-a", "10.0.0.2", null, null);
+        AdmissionRejectedException rejection = assertInstanceOf(AdmissionRejectedException.class,
+            assertThrows(Exception.class, refused::join).getCause());
+        assertEquals(429, rejection.getStatus());
+        assertEquals(1, rejection.getRetryAfterSeconds());
+        assertEquals(1, admission.getRejections(Reason.RATE_LIMITED));
+
+        // Another key, or the address of a client without key, has its own bucket
+        admission.admit("tenant-b", "10.0.0.1", null, null).join();
+        admission.admit(null, "10.0.0.1", null, null).join();
+        assertThrows(IllegalArgumentException.class,
+            () -> new AdmissionControl(null, null, "cookie:a", null, null, Duration.ZERO));
+    }
+}
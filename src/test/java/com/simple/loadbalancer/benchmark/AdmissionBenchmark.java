@@ -0,0 +1,111 @@
+package com.simple.loadbalancer.benchmark;
+
+import com.simple.loadbalancer.admission.AdmissionControl;
+import com.simple.loadbalancer.admission.AdmissionQueue;
+import com.simple.loadbalancer.admission.RateLimiter;
+
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Cost of the admission check done before every forwarded request, on 8 threads: the per-client
+ * rate limit alone, the concurrency cap alone, and both through {@link AdmissionControl} as the
+ * controllers call it. Client keys are drawn from {@code clients} distinct values, so that at a
+ * million the rate limiter state no longer fits in the CPU caches. Limits are high enough that
+ * every request is admitted: this is the cost paid by all traffic, not under overload. Run
+ * {@link #main(String[])}; {@code gc.alloc.rate.norm} shows the bytes allocated per check.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class AdmissionBenchmark
+{
+    @Param({"1", "1000", "1000000"})
+    private int clients;
+
+    private RateLimiter rateLimiter;
+    private AdmissionQueue queue;
+    private AdmissionControl admissionControl;
+    private String[] keys;
+
+    @Setup
+    public void setUp ()
+    {
+        rateLimiter = new RateLimiter(1e9, 1_000_000_000, 2_000_000);
+        queue = new AdmissionQueue(1024, 100);
+        admissionControl = new AdmissionControl(new RateLimiter(1e9, 1_000_000_000, 2_000_000),
+            new AdmissionQueue(1024, 100), "header:X-Tenant-Id", "X-Priority", null,
+            Duration.ofMillis(500));
+        keys = new String[clients];
+        for (int i = 0; i < clients; i++) {
+            keys[i] = "tenant-" + i;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Client
+    {
+        private final SplittableRandom random = new SplittableRandom();
+
+        String next (String[] keys)
+        {
+            return keys[random.nextInt(keys.length)];
+        }
+    }
+
+    @Benchmark
+    public long rateLimit (Client client)
+    {
+        return rateLimiter.tryAcquire(client.next(keys).hashCode());
+    }
+
+    @Benchmark
+    public boolean concurrencyCap ()
+    {
+        boolean admitted = queue.tryAcquire();
+        if (admitted) {
+            queue.release(1000);
+        }
+        return admitted;
+    }
+
+    @Benchmark
+    public boolean admission (Client client)
+    {
+        CompletableFuture<Void> admitted = admissionControl.admit(client.next(keys), "10.0.0.1",
+            null, null);
+        admissionControl.exit(System.nanoTime());
+        return admitted.isDone();
+    }
+
+    public static void main (String[] args) throws RunnerException
+    {
+        new Runner(new OptionsBuilder()
+            .include(AdmissionBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build()).run();
+    }
+}
@@ -0,0 +1,141 @@
+package com.simple.loadbalancer.benchmark;
+
+import com.simple.loadbalancer.service.LoadBalancerService;
+import com.simple.loadbalancer.service.LoadBalancerServiceFixture;
+import com.simple.loadbalancer.status.Backend;
+import com.simple.loadbalancer.stub.StubBackend;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * Compares the heap churn of the buffered String forwarding path with the streaming path for
+ * growing response sizes. Run {@link #main(String[])}; the {@code gc.alloc.rate.norm} column
+ * reported by the GC profiler is the number of bytes allocated per forwarded request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ForwardingHeapChurnBenchmark
+{
+    @Param({"65536", "1048576", "8388608"})
+    private int payloadSize;
+
+    private StubBackend backend;
+    private LoadBalancerServiceFixture fixture;
+    private LoadBalancerService service;
+    private String targetURL;
+
+    @Setup(Level.Trial)
+    public void setUp () throws IOException
+    {
+        backend = StubBackend.start();
+        fixture = new LoadBalancerServiceFixture(8);
+        Backend stub = fixture.serverRegistry().register(backend.url());
+        service = fixture.strategy(servers -> stub).build();
+        targetURL = "payload/" + payloadSize;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown ()
+    {
+        fixture.close();
+        backend.close();
+    }
+
+    @Benchmark
+    public Object buffered () throws IOException
+    {
+        return service.forwardRequest(HttpMethod.GET, new HttpHeaders(), null, targetURL)
+            .getBody();
+    }
+
+    @Benchmark
+    public void streaming (Blackhole blackhole) throws IOException
+    {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/forwardRequest/payload");
+        DiscardingResponse response = new DiscardingResponse(blackhole);
+        service.streamRequest(request, response, targetURL);
+        blackhole.consume(response.getStatus());
+    }
+
+    public static void main (String[] args) throws RunnerException
+    {
+        new Runner(new OptionsBuilder()
+            .include(ForwardingHeapChurnBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build()).run();
+    }
+
+    /**
+     * Response whose body is handed to the blackhole instead of being kept in memory, so that only
+     * the allocations of the forwarding path itself are measured.
+     */
+    private static class DiscardingResponse extends MockHttpServletResponse
+    {
+        private final ServletOutputStream outputStream;
+
+        DiscardingResponse (Blackhole blackhole)
+        {
+            this.outputStream = new ServletOutputStream()
+            {
+                @Override
+                public void write (int b)
+                {
+                    blackhole.consume(b);
+                }
+
+                @Override
+                public void write (byte[] b, int off, int len)
+                {
+                    blackhole.consume(b);
+                }
+
+                @Override
+                public boolean isReady ()
+                {
+                    return true;
+                }
+
+                @Override
+                public void setWriteListener (WriteListener writeListener)
+                {
+                }
+            };
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream ()
+        {
+            return outputStream;
+        }
+    }
+}
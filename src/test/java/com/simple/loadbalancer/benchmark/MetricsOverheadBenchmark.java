@@ -0,0 +1,135 @@
+package com.simple.loadbalancer.benchmark;
+
+import com.simple.loadbalancer.observability.LoadBalancerMetrics;
+import com.simple.loadbalancer.service.LoadBalancerService;
+import com.simple.loadbalancer.service.LoadBalancerServiceFixture;
+import com.simple.loadbalancer.status.Backend;
+import com.simple.loadbalancer.stub.StubBackend;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+
+/**
+ * Measures what {@link LoadBalancerMetrics} costs on the forwarding path: small requests are
+ * forwarded to two stub backends by several threads, once with metrics disabled and once
+ * recording into a Prometheus registry. {@code record} measures the instrumentation of one
+ * request on its own, without any I/O, on the same meters all threads contend on. Run
+ * {@link #main(String[])}, which prints the difference in forwarding throughput and the share of
+ * the time of a forwarded request spent recording it; the latter is far below what run to run
+ * noise of the former can resolve.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Threads(4)
+@Fork(1)
+public class MetricsOverheadBenchmark
+{
+    private static final int BACKENDS = 2;
+
+    @Param({"disabled", "prometheus"})
+    private String metrics;
+
+    private final List<StubBackend> backends = new ArrayList<>();
+    private LoadBalancerServiceFixture fixture;
+    private LoadBalancerService service;
+    private LoadBalancerMetrics loadBalancerMetrics;
+    private Backend server;
+
+    @Setup(Level.Trial)
+    public void setUp () throws IOException
+    {
+        fixture = new LoadBalancerServiceFixture(8);
+        loadBalancerMetrics = metrics.equals("disabled") ? LoadBalancerMetrics.DISABLED
+            : new LoadBalancerMetrics(new PrometheusMeterRegistry(PrometheusConfig.DEFAULT),
+                LoadBalancerServiceFixture.MAX_SERVERS, "round-robin", fixture.serverLoadChecker(),
+                fixture.outlierDetector(), fixture.circuitBreaker());
+        service = fixture.metrics(loadBalancerMetrics).build();
+        for (int i = 0; i < BACKENDS; i++) {
+            backends.add(StubBackend.start());
+        }
+        server = fixture.publish(backends.stream().map(StubBackend::url).toArray(String[]::new))
+            .get(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown () throws IOException
+    {
+        fixture.close();
+        for (StubBackend backend : backends) {
+            backend.close();
+        }
+    }
+
+    @Benchmark
+    public Object forward () throws IOException
+    {
+        return service.forwardRequest(HttpMethod.GET, new HttpHeaders(), null, "payload/1024")
+            .getBody();
+    }
+
+    @Benchmark
+    public void record ()
+    {
+        loadBalancerMetrics.recordSelection(server);
+        loadBalancerMetrics.recordSuccess(server, 1_500_000);
+    }
+
+    public static void main (String[] args) throws RunnerException
+    {
+        Collection<RunResult> results = new Runner(new OptionsBuilder()
+            .include(MetricsOverheadBenchmark.class.getSimpleName())
+            .build()).run();
+        double plain = 0;
+        double instrumented = 0;
+        double recordings = 0;
+        for (RunResult result : results) {
+            double score = result.getPrimaryResult().getScore();
+            boolean enabled = !result.getParams().getParam("metrics").equals("disabled");
+            if (result.getParams().getBenchmark().endsWith(".forward")) {
+                if (enabled) {
+                    instrumented = score;
+                }
+                else {
+                    plain = score;
+                }
+            }
+            else if (enabled) {
+                recordings = score;
+            }
+        }
+        // Both benchmarks run on the same number of threads, so the ratio of their throughputs is
+        // the share of the time of a forwarded request spent recording it
+        System.out.printf("Forwarding: %.2f ops/ms without metrics, %.2f ops/ms with metrics "
+            + "(%.2f%% apart); recording one request costs %.3f%% of forwarding it%n", plain,
+            instrumented, (plain - instrumented) / plain * 100, plain / recordings * 100);
+    }
+}
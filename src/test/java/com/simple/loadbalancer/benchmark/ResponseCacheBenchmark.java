@@ -0,0 +1,106 @@
+package com.simple.loadbalancer.benchmark;
+
+import com.simple.loadbalancer.service.LoadBalancerService;
+import com.simple.loadbalancer.service.LoadBalancerServiceFixture;
+import com.simple.loadbalancer.service.ResponseCache;
+import com.simple.loadbalancer.stub.StubBackend;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+
+/**
+ * Measures what the {@link ResponseCache} saves: client threads request a handful of resources
+ * the backend declares cacheable for one second, first with the cache disabled and then enabled.
+ * The report shows the requests per second the backends had to serve and the response time
+ * percentiles seen by the clients, the cached run's being mostly hits. Run
+ * {@link #main(String[])}; the optional arguments are the number of client threads and the
+ * duration of every run in seconds.
+ */
+public class ResponseCacheBenchmark
+{
+    private static final int BACKENDS = 2;
+    private static final int RESOURCES = 16;
+
+    public static void main (String[] args) throws Exception
+    {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        System.out.printf("%d clients, %d resources cacheable for 1 s, %d s per run%n", clients,
+            RESOURCES, seconds);
+        System.out.printf("%-10s %12s %12s %10s %10s %10s%n", "cache", "client req/s",
+            "backend req/s", "p50 us", "p99 us", "p99.9 us");
+        run("disabled", ResponseCache.DISABLED, clients, seconds);
+        ResponseCache cache =
+            new ResponseCache(64 * 1024 * 1024, 64 * 1024, Duration.ofMinutes(5));
+        run("enabled", cache, clients, seconds);
+        System.out.println(cache.getStats());
+    }
+
+    private static void run (String name, ResponseCache cache, int clients, int seconds)
+        throws Exception
+    {
+        List<StubBackend> backends = new ArrayList<>();
+        try (LoadBalancerServiceFixture fixture = new LoadBalancerServiceFixture(clients)) {
+            LoadBalancerService service = fixture.responseCache(cache).build();
+            for (int i = 0; i < BACKENDS; i++) {
+                backends.add(StubBackend.start());
+            }
+            fixture.publish(backends.stream().map(StubBackend::url).toArray(String[]::new));
+
+            Recorder recorder = new Recorder(3);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+            long warmup = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < clients; i++) {
+                int client = i;
+                threads.add(Thread.ofPlatform().start(() -> {
+                    int request = client;
+                    while (System.nanoTime() < deadline) {
+                        String target = "cached/1?resource=" + (request++ % RESOURCES);
+                        long start = System.nanoTime();
+                        try {
+                            service.forwardRequest(HttpMethod.GET, new HttpHeaders(), null, target);
+                        }
+                        catch (Exception e) {
+                            continue;
+                        }
+                        if (start > warmup) {
+                            recorder.recordValue((System.nanoTime() - start) / 1000);
+                        }
+                    }
+                }));
+            }
+            Thread.sleep(TimeUnit.SECONDS.toMillis(1));
+            long backendBefore = backendRequests(backends);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            long backendRequests = backendRequests(backends) - backendBefore;
+            Histogram histogram = recorder.getIntervalHistogram();
+            double measured = seconds - 1;
+            System.out.printf("%-10s %12.0f %12.0f %10d %10d %10d%n", name,
+                histogram.getTotalCount() / measured, backendRequests / measured,
+                histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(99),
+                histogram.getValueAtPercentile(99.9));
+        }
+        finally {
+            backends.forEach(StubBackend::close);
+        }
+    }
+
+    private static long backendRequests (List<StubBackend> backends)
+    {
+        long total = 0;
+        for (StubBackend backend : backends) {
+            total += backend.getRequestCount();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,116 @@
+package com.simple.loadbalancer.benchmark;
+
+import com.simple.loadbalancer.status.ServerLoadChecker;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Contention benchmark of the load accounting done around every forwarded request: one
+ * increment, one read and one decrement, with 64 threads spread over {@code servers} backends.
+ * {@code limitedSlot} is the path requests actually take, checking the limits of the server as it
+ * increments.
+ * {@code mapMerge} is the former URL keyed {@code ConcurrentHashMap} accounting, kept as a
+ * baseline. Run {@link #main(String[])}; {@code gc.alloc.rate.norm} shows the bytes allocated per
+ * operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(64)
+public class ServerLoadCheckerBenchmark
+{
+    @Param({"2", "16", "256", "1024"})
+    private int servers;
+
+    private ServerLoadChecker checker;
+    private Map<String, Integer> loadMap;
+    private String[] urls;
+
+    @Setup
+    public void setUp ()
+    {
+        checker = new ServerLoadChecker(servers);
+        loadMap = new ConcurrentHashMap<>();
+        urls = new String[servers];
+        for (int i = 0; i < servers; i++) {
+            urls[i] = "http://backend-" + i + ":8080";
+            checker.register(urls[i]);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadSlot
+    {
+        private static int nextThread;
+        private int thread;
+
+        @Setup
+        public void setUp ()
+        {
+            synchronized (ThreadSlot.class) {
+                thread = nextThread++;
+            }
+        }
+    }
+
+    @Benchmark
+    public int indexedSlot (ThreadSlot slot)
+    {
+        int index = slot.thread % servers;
+        checker.incrementLoad(index);
+        int load = checker.getCurrentLoad(index);
+        checker.decrementLoad(index);
+        return load;
+    }
+
+    @Benchmark
+    public boolean limitedSlot (ThreadSlot slot)
+    {
+        int index = slot.thread % servers;
+        boolean admitted = checker.tryIncrementLoad(index);
+        if (admitted) {
+            checker.decrementLoad(index);
+        }
+        return admitted;
+    }
+
+    @Benchmark
+    public int mapMerge (ThreadSlot slot)
+    {
+        String url = urls[slot.thread % servers];
+        loadMap.merge(url, 1, Integer::sum);
+        int load = loadMap.getOrDefault(url, 0);
+        loadMap.merge(url, -1, Integer::sum);
+        return load;
+    }
+
+    public static void main (String[] args) throws RunnerException
+    {
+        new Runner(new OptionsBuilder()
+            .include(ServerLoadCheckerBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build()).run();
+    }
+}
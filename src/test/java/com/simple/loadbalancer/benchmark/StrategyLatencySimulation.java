@@ -0,0 +1,180 @@
+package com.simple.loadbalancer.benchmark;
+
+import com.simple.loadbalancer.service.LoadBalancingStrategy;
+import com.simple.loadbalancer.service.NetflixChoiceOfTwoStrategy;
+import com.simple.loadbalancer.service.PeakEwmaStrategy;
+import com.simple.loadbalancer.status.Backend;
+import com.simple.loadbalancer.status.LatencyTracker;
+import com.simple.loadbalancer.status.ServerLoadChecker;
+import com.simple.loadbalancer.status.ServerSnapshot;
+
+import java.util.ArrayDeque;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * Discrete-event simulation of a fleet with heterogeneous backend latencies, comparing the
+ * response time percentiles of the latency-aware {@link PeakEwmaStrategy} with the
+ * {@link NetflixChoiceOfTwoStrategy}.
+ *
+ * <p>Requests arrive as a Poisson process and every backend serves up to {@link #WORKERS} of them
+ * at once with exponentially distributed service times, queueing the rest. Most backends take
+ * {@link #FAST_SERVICE_MS} on average while a few degraded ones take {@link #SLOW_SERVICE_MS}.
+ * The strategies run against a simulated clock, so a run of several simulated minutes takes a
+ * few seconds, and every strategy sees the same arrival times and random draws. Run
+ * {@link #main(String[])}; the optional argument is the offered load as a fraction of the fleet
+ * capacity.
+ */
+public class StrategyLatencySimulation
+{
+    private static final int SERVERS = 10;
+    private static final int SLOW_SERVERS = 2;
+    private static final int WORKERS = 4;
+    private static final double FAST_SERVICE_MS = 10;
+    private static final double SLOW_SERVICE_MS = 80;
+    private static final int REQUESTS = 1_000_000;
+    private static final long SEED = 42;
+
+    /* Simulated time in nanoseconds, read by the latency tracker */
+    private long now;
+
+    public static void main (String[] args)
+    {
+        double utilisation = args.length > 0 ? Double.parseDouble(args[0]) : 0.7;
+        double capacityPerMs = WORKERS * ((SERVERS - SLOW_SERVERS) / FAST_SERVICE_MS
+            + SLOW_SERVERS / SLOW_SERVICE_MS);
+        double arrivalsPerMs = utilisation * capacityPerMs;
+        System.out.printf("%d servers (%d degraded: %.0f ms vs %.0f ms), %d workers each, "
+                + "%.0f requests/s (%.0f%% of capacity)%n", SERVERS, SLOW_SERVERS, SLOW_SERVICE_MS,
+            FAST_SERVICE_MS, WORKERS, arrivalsPerMs * 1000, utilisation * 100);
+        System.out.printf("%-22s %10s %10s %10s %10s %14s%n", "strategy", "p50 ms", "p90 ms",
+            "p99 ms", "p99.9 ms", "to degraded");
+
+        report("choiceoftwostrategy", arrivalsPerMs,
+            (checker, tracker) -> new NetflixChoiceOfTwoStrategy(checker));
+        report("peak-ewma", arrivalsPerMs, PeakEwmaStrategy::new);
+    }
+
+    private static void report (String name, double arrivalsPerMs,
+                                BiFunction<ServerLoadChecker, LatencyTracker, LoadBalancingStrategy> factory)
+    {
+        StrategyLatencySimulation simulation = new StrategyLatencySimulation();
+        Result result = simulation.run(arrivalsPerMs, factory);
+        Histogram latencies = result.latencies;
+        System.out.printf("%-22s %10.1f %10.1f %10.1f %10.1f %13.1f%%%n", name,
+            millis(latencies.getValueAtPercentile(50)), millis(latencies.getValueAtPercentile(90)),
+            millis(latencies.getValueAtPercentile(99)), millis(latencies.getValueAtPercentile(99.9)),
+            100.0 * result.toSlowServers / REQUESTS);
+    }
+
+    private Result run (double arrivalsPerMs,
+                        BiFunction<ServerLoadChecker, LatencyTracker, LoadBalancingStrategy> factory)
+    {
+        ServerLoadChecker checker = new ServerLoadChecker(SERVERS);
+        LatencyTracker tracker = new LatencyTracker(SERVERS, TimeUnit.SECONDS.toNanos(10),
+            () -> now);
+        LoadBalancingStrategy strategy = factory.apply(checker, tracker);
+        Backend[] backends = new Backend[SERVERS];
+        for (int i = 0; i < SERVERS; i++) {
+            String url = "http://server" + i;
+            backends[i] = new Backend(checker.register(url), url);
+        }
+        ServerSnapshot snapshot = ServerSnapshot.of(1, backends);
+
+        Random random = new Random(SEED);
+        int[] busyWorkers = new int[SERVERS];
+        @SuppressWarnings("unchecked")
+        ArrayDeque<Request>[] queues = new ArrayDeque[SERVERS];
+        for (int i = 0; i < SERVERS; i++) {
+            queues[i] = new ArrayDeque<>();
+        }
+        PriorityQueue<Request> completions = new PriorityQueue<>();
+        Histogram latencies = new Histogram(TimeUnit.MINUTES.toNanos(10), 3);
+        long toSlowServers = 0;
+
+        long nextArrival = 0;
+        int arrived = 0;
+        while (arrived < REQUESTS || !completions.isEmpty()) {
+            if (arrived < REQUESTS
+                && (completions.isEmpty() || nextArrival <= completions.peek().completion)) {
+                now = nextArrival;
+                Backend backend = strategy.selectServer(snapshot);
+                int id = backend.getId();
+                if (id < SLOW_SERVERS) {
+                    toSlowServers++;
+                }
+                // Draws happen in arrival order, so only the server's mean differs between runs
+                double meanMs = id < SLOW_SERVERS ? SLOW_SERVICE_MS : FAST_SERVICE_MS;
+                Request request = new Request(id, now, exponential(random, meanMs));
+                checker.incrementLoad(id);
+                if (busyWorkers[id] < WORKERS) {
+                    busyWorkers[id]++;
+                    request.completion = now + request.serviceNanos;
+                    completions.add(request);
+                }
+                else {
+                    queues[id].add(request);
+                }
+                arrived++;
+                nextArrival = now + exponential(random, 1 / arrivalsPerMs);
+            }
+            else {
+                Request request = completions.poll();
+                now = request.completion;
+                int id = request.server;
+                long latency = now - request.arrival;
+                latencies.recordValue(latency);
+                tracker.record(id, latency);
+                checker.decrementLoad(id);
+                Request next = queues[id].poll();
+                if (next != null) {
+                    next.completion = now + next.serviceNanos;
+                    completions.add(next);
+                }
+                else {
+                    busyWorkers[id]--;
+                }
+            }
+        }
+        return new Result(latencies, toSlowServers);
+    }
+
+    private static long exponential (Random random, double meanMs)
+    {
+        return (long) (-Math.log(1 - random.nextDouble()) * meanMs * 1_000_000);
+    }
+
+    private static double millis (long nanos)
+    {
+        return nanos / 1_000_000.0;
+    }
+
+    private static final class Request implements Comparable<Request>
+    {
+        final int server;
+        final long arrival;
+        final long serviceNanos;
+        long completion;
+
+        Request (int server, long arrival, long serviceNanos)
+        {
+            this.server = server;
+            this.arrival = arrival;
+            this.serviceNanos = serviceNanos;
+        }
+
+        @Override
+        public int compareTo (Request other)
+        {
+            return Long.compare(completion, other.completion);
+        }
+    }
+
+    private record Result(Histogram latencies, long toSlowServers)
+    {
+    }
+}
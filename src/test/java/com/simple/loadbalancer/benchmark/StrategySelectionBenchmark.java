@@ -0,0 +1,139 @@
+package com.simple.loadbalancer.benchmark;
+
+import com.simple.loadbalancer.service.ConsistentHashStrategy;
+import com.simple.loadbalancer.service.LeastConnectionsStrategy;
+import com.simple.loadbalancer.service.LoadBalancingStrategy;
+import com.simple.loadbalancer.service.NetflixChoiceOfTwoStrategy;
+import com.simple.loadbalancer.service.PeakEwmaStrategy;
+import com.simple.loadbalancer.service.RandomStrategy;
+import com.simple.loadbalancer.service.RoundRobinStrategy;
+import com.simple.loadbalancer.service.SmoothWeightedRoundRobinStrategy;
+import com.simple.loadbalancer.status.Backend;
+import com.simple.loadbalancer.status.LatencyTracker;
+import com.simple.loadbalancer.status.ServerLoadChecker;
+import com.simple.loadbalancer.status.ServerRegistry;
+import com.simple.loadbalancer.status.ServerSnapshot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Throughput of {@link LoadBalancingStrategy#selectServer(ServerSnapshot, long)} for every
+ * strategy and fleet size, on 1, 8 and 64 threads sharing one strategy instance. Servers start
+ * with random loads, weights and latencies, so that the least loaded, weighted and latency aware
+ * strategies have real choices to make; the loads do not change while measuring, so only the
+ * selection itself is timed. Requests carry distinct affinity keys for the consistent hash ring.
+ * Run {@link #main(String[])}, or the {@code benchmark} Maven profile for all benchmarks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class StrategySelectionBenchmark
+{
+    @Param({"round-robin", "weighted-round-robin", "least-connections", "random",
+        "choiceoftwostrategy", "peak-ewma", "consistent-hash"})
+    private String strategy;
+
+    @Param({"2", "16", "256", "1024"})
+    private int servers;
+
+    private LoadBalancingStrategy loadBalancingStrategy;
+    private ServerSnapshot snapshot;
+
+    @Setup
+    public void setUp ()
+    {
+        ServerLoadChecker serverLoadChecker = new ServerLoadChecker(servers);
+        LatencyTracker latencyTracker = new LatencyTracker(servers, TimeUnit.SECONDS.toNanos(10));
+        loadBalancingStrategy = switch (strategy) {
+            case "round-robin" -> new RoundRobinStrategy(serverLoadChecker);
+            case "weighted-round-robin" -> new SmoothWeightedRoundRobinStrategy(serverLoadChecker);
+            case "least-connections" -> new LeastConnectionsStrategy(serverLoadChecker);
+            case "random" -> new RandomStrategy(serverLoadChecker);
+            case "choiceoftwostrategy" -> new NetflixChoiceOfTwoStrategy(serverLoadChecker);
+            case "peak-ewma" -> new PeakEwmaStrategy(serverLoadChecker, latencyTracker);
+            case "consistent-hash" -> new ConsistentHashStrategy(serverLoadChecker, 100, 1.25);
+            default -> throw new IllegalArgumentException("Unknown strategy: " + strategy);
+        };
+        ServerRegistry serverRegistry =
+            new ServerRegistry(serverLoadChecker, loadBalancingStrategy::prepare);
+        Random random = new Random(42);
+        List<Backend> fleet = new ArrayList<>();
+        for (int i = 0; i < servers; i++) {
+            Backend backend = serverRegistry.register("http://backend-" + i + ":8080");
+            serverRegistry.setWeight(backend, 1 + random.nextInt(4));
+            for (int load = random.nextInt(8); load > 0; load--) {
+                serverLoadChecker.incrementLoad(backend.getId());
+            }
+            latencyTracker.record(backend.getId(),
+                TimeUnit.MILLISECONDS.toNanos(5 + random.nextInt(50)));
+            fleet.add(backend);
+        }
+        snapshot = serverRegistry.publish(fleet);
+    }
+
+    @State(Scope.Thread)
+    public static class Key
+    {
+        private long next = System.identityHashCode(this);
+
+        long nextHash ()
+        {
+            // Never AffinityKey.NONE, which the hash ring places at random
+            next += 0x9e3779b97f4a7c15L;
+            return next | 1;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Backend select1Thread (Key key)
+    {
+        return loadBalancingStrategy.selectServer(snapshot, key.nextHash());
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Backend select8Threads (Key key)
+    {
+        return loadBalancingStrategy.selectServer(snapshot, key.nextHash());
+    }
+
+    @Benchmark
+    @Threads(64)
+    public Backend select64Threads (Key key)
+    {
+        return loadBalancingStrategy.selectServer(snapshot, key.nextHash());
+    }
+
+    public static void main (String[] args) throws RunnerException
+    {
+        new Runner(new OptionsBuilder()
+            .include(StrategySelectionBenchmark.class.getSimpleName())
+            .resultFormat(ResultFormatType.JSON)
+            .result("target/jmh-strategies.json")
+            .build()).run();
+    }
+}
@@ -0,0 +1,120 @@
+package com.simple.loadbalancer.benchmark;
+
+import com.simple.loadbalancer.client.BackendClient;
+import com.simple.loadbalancer.client.MultiplexedBackendClient;
+import com.simple.loadbalancer.client.PooledBackendClient;
+import com.simple.loadbalancer.stub.LatencyDistribution;
+import com.simple.loadbalancer.stub.LatencyStubServer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+
+/**
+ * Compares the HTTP/1.1 {@link PooledBackendClient} with the h2c {@link MultiplexedBackendClient}
+ * against a local stub speaking both protocols: the sockets each opens to the server, the
+ * throughput and the latency percentiles of the same closed-loop load. Every client gets a stub of
+ * its own, so that the sockets counted are its own, and enough connections or streams for every
+ * request in flight, so that neither queues in the client.
+ *
+ * <p>Usage: {@code UpstreamProtocolBenchmark [concurrency] [durationSeconds] [latency]
+ * [bodyBytes]}, defaults {@code 200 10 fixed:10ms 1024}. Every virtual thread sends a POST of
+ * {@code bodyBytes} to {@code /echo} and waits for the echoed body before sending the next.
+ */
+public class UpstreamProtocolBenchmark
+{
+    private static final Duration WARM_UP = Duration.ofSeconds(3);
+    /* Streams per connection, as for the default loadbalancer.client.h2c.* properties */
+    private static final int STREAMS = 100;
+
+    public static void main (String[] args) throws Exception
+    {
+        int concurrency = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        Duration duration = Duration.ofSeconds(args.length > 1 ? Long.parseLong(args[1]) : 10);
+        LatencyDistribution latency =
+            LatencyDistribution.parse(args.length > 2 ? args[2] : "fixed:10ms");
+        byte[] body = new byte[args.length > 3 ? Integer.parseInt(args[3]) : 1024];
+        int connections = (concurrency + STREAMS - 1) / STREAMS;
+
+        System.out.printf("concurrency=%d duration=%ds latency=%s body=%d bytes%n", concurrency,
+            duration.toSeconds(), args.length > 2 ? args[2] : "fixed:10ms", body.length);
+        System.out.printf("%-8s %8s %10s %9s %9s %9s %9s %8s%n", "client", "sockets", "requests/s",
+            "p50 ms", "p99 ms", "p99.9 ms", "max ms", "errors");
+
+        PooledBackendClient http1 = new PooledBackendClient(concurrency, concurrency, -1,
+            Duration.ofSeconds(2), Duration.ofSeconds(30), Duration.ofSeconds(5),
+            Duration.ofSeconds(30));
+        try (LatencyStubServer stub = LatencyStubServer.startH2c(latency, 0, STREAMS)) {
+            report("http1", http1, stub, concurrency, duration, body);
+        }
+        finally {
+            http1.destroy();
+        }
+
+        MultiplexedBackendClient h2c = new MultiplexedBackendClient(connections, STREAMS, -1,
+            Duration.ofSeconds(2), Duration.ofSeconds(30), Duration.ofSeconds(5),
+            Duration.ofSeconds(30), (server, limit) -> { });
+        try (LatencyStubServer stub = LatencyStubServer.startH2c(latency, 0, STREAMS)) {
+            report("h2c", h2c, stub, concurrency, duration, body);
+        }
+        finally {
+            h2c.destroy();
+        }
+    }
+
+    private static void report (String name, BackendClient client, LatencyStubServer stub,
+                                int concurrency, Duration duration, byte[] body) throws Exception
+    {
+        String server = stub.url();
+        Recorder recorder = new Recorder(3);
+        AtomicLong errors = new AtomicLong();
+        long warmUpEnd = System.nanoTime() + WARM_UP.toNanos();
+        long end = warmUpEnd + duration.toNanos();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < concurrency; i++) {
+                workers.add(executor.submit(() -> {
+                    long now;
+                    while ((now = System.nanoTime()) < end) {
+                        try {
+                            client.exchange(server, server + "/echo", HttpMethod.POST,
+                                new HttpEntity<>(body));
+                            // Requests sent during the warm-up are not counted
+                            if (now >= warmUpEnd) {
+                                recorder.recordValue(System.nanoTime() - now);
+                            }
+                        }
+                        catch (RuntimeException e) {
+                            errors.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        }
+
+        Histogram latencies = recorder.getIntervalHistogram();
+        System.out.printf("%-8s %8d %10.0f %9.2f %9.2f %9.2f %9.2f %8d%n", name,
+            stub.getConnectionCount(), latencies.getTotalCount() / (double) duration.toSeconds(),
+            millis(latencies.getValueAtPercentile(50)), millis(latencies.getValueAtPercentile(99)),
+            millis(latencies.getValueAtPercentile(99.9)), millis(latencies.getMaxValue()),
+            errors.get());
+    }
+
+    private static double millis (long nanos)
+    {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,135 @@
+package com.simple.loadbalancer.client;
+
+import com.simple.loadbalancer.stub.LatencyDistribution;
+import com.simple.loadbalancer.stub.LatencyStubServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.StreamingHttpOutputMessage;
+import org.springframework.web.client.HttpServerErrorException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MultiplexedBackendClientTest
+{
+    private final Map<String, Integer> streamLimits = new ConcurrentHashMap<>();
+    private final MultiplexedBackendClient client = new MultiplexedBackendClient(2, 100, 100,
+        Duration.ofSeconds(2), Duration.ofSeconds(10), Duration.ofSeconds(5),
+        Duration.ofSeconds(30), streamLimits::put);
+    private LatencyStubServer stub;
+
+    @AfterEach
+    void close ()
+    {
+        client.destroy();
+        if (stub != null) {
+            stub.close();
+        }
+    }
+
+    @Test
+    void multiplexesConcurrentRequestsOverFewConnections () throws Exception
+    {
+        stub = LatencyStubServer.startH2c(LatencyDistribution.fixed(Duration.ofMillis(50)), 0, 8);
+        String server = stub.url();
+        List<Future<String>> responses = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 16; i++) {
+                responses.add(executor.submit(() -> client.exchange(server, server + "/work",
+                    HttpMethod.GET, HttpEntity.EMPTY).getBody()));
+            }
+            for (Future<String> response : responses) {
+                assertEquals("ok", response.get());
+            }
+        }
+
+        // 16 requests at once fill both connections of 8 streams each
+        assertTrue(stub.getConnectionCount() <= 2, stub.getConnectionCount() + " connections");
+        // The server allows fewer streams than the client would open
+        assertEquals(Map.of(server, 16), streamLimits);
+        assertEquals(0, client.getPoolStats(server).getLeased());
+    }
+
+    @Test
+    void streamsLargeBodiesBothWays ()
+    {
+        stub = LatencyStubServer.startH2c(LatencyDistribution.fixed(Duration.ZERO), 0, 100);
+        String server = stub.url();
+        byte[] body = new byte[3 * 1024 * 1024 + 17];
+        new Random(42).nextBytes(body);
+
+        byte[] echoed = client.execute(server, server + "/echo", HttpMethod.POST,
+            request -> ((StreamingHttpOutputMessage) request).setBody(out -> {
+                // Odd sized writes, so that chunks are not aligned with them
+                for (int offset = 0; offset < body.length; offset += 1000) {
+                    out.write(body, offset, Math.min(1000, body.length - offset));
+                }
+            }),
+            response -> {
+                ByteArrayOutputStream copy = new ByteArrayOutputStream();
+                try (InputStream in = response.getBody()) {
+                    in.transferTo(copy);
+                }
+                return copy.toByteArray();
+            });
+
+        assertArrayEquals(body, echoed);
+        assertEquals("hello", client.exchange(server, server + "/echo", HttpMethod.POST,
+            new HttpEntity<>("hello")).getBody());
+        assertEquals(1, stub.getConnectionCount());
+    }
+
+    @Test
+    void returnsResponsesSentBeforeTheWholeBody ()
+    {
+        stub = LatencyStubServer.startH2c(LatencyDistribution.fixed(Duration.ZERO), 0, 100);
+        String server = stub.url();
+
+        // The stub answers /work without reading the body, which outgrows the flow control window
+        String response = client.execute(server, server + "/work", HttpMethod.POST,
+            request -> ((StreamingHttpOutputMessage) request).setBody(out -> {
+                for (int i = 0; i < 1024; i++) {
+                    out.write(new byte[4096]);
+                }
+            }),
+            clientResponse -> new String(clientResponse.getBody().readAllBytes()));
+
+        assertEquals("ok", response);
+        assertEquals(0, client.getPoolStats(server).getLeased());
+    }
+
+    @Test
+    void reportsErrorStatusesLikeTheHttp11Client ()
+    {
+        stub = LatencyStubServer.startH2c(LatencyDistribution.fixed(Duration.ZERO), 1, 100);
+        String server = stub.url();
+
+        assertThrows(HttpServerErrorException.class, () -> client.exchange(server,
+            server + "/fail", HttpMethod.GET, HttpEntity.EMPTY));
+        // Streaming relays the status, and a body left unread does not hold the stream
+        for (int i = 0; i < 300; i++) {
+            assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, client.execute(server,
+                server + "/fail", HttpMethod.GET, null, response -> response.getStatusCode()));
+        }
+        assertEquals(0, client.getPoolStats(server).getLeased());
+        assertEquals(1, stub.getConnectionCount());
+    }
+}
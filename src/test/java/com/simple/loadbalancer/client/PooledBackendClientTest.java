@@ -0,0 +1,134 @@
+package com.simple.loadbalancer.client;
+
+import com.simple.loadbalancer.stub.StubBackend;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.StreamingHttpOutputMessage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PooledBackendClientTest
+{
+    private final StubBackend stub = StubBackend.start();
+    private PooledBackendClient client;
+
+    PooledBackendClientTest () throws Exception
+    {
+    }
+
+    @AfterEach
+    void close () throws Exception
+    {
+        if (client != null) {
+            client.destroy();
+        }
+        stub.close();
+    }
+
+    @Test
+    void streamsRequestBodiesAndReusesConnections ()
+    {
+        client = client(2, -1, Duration.ofSeconds(1));
+        String server = stub.url();
+        long size = 8L * 1024 * 1024 + 17;
+
+        // Written while the request is sent, as the streaming forwarding path does
+        String count = client.execute(server, server + "/count", HttpMethod.POST,
+            request -> ((StreamingHttpOutputMessage) request).setBody(out -> {
+                byte[] chunk = new byte[64 * 1024];
+                for (long remaining = size; remaining > 0; remaining -= chunk.length) {
+                    out.write(chunk, 0, (int) Math.min(chunk.length, remaining));
+                }
+            }),
+            response -> new String(response.getBody().readAllBytes()));
+
+        assertEquals(String.valueOf(size), count);
+        assertEquals("hello", client.exchange(server, server + "/echo", HttpMethod.POST,
+            new HttpEntity<>("hello")).getBody());
+        BackendPoolStats stats = client.getPoolStats(server);
+        assertEquals(0, stats.getLeased());
+        assertEquals(1, stats.getAvailable());
+    }
+
+    @Test
+    void refusesRequestsOnceTooManyWaitForAConnection () throws Exception
+    {
+        client = client(1, 0, Duration.ofSeconds(5));
+        String server = stub.url();
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<?> inFlight = holdConnection(server, release);
+
+        long start = System.nanoTime();
+        assertThrows(BackendSaturatedException.class, () -> client.exchange(server,
+            server + "/work", HttpMethod.GET, HttpEntity.EMPTY));
+        // Refused at once, without waiting for the connection to be released
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(250));
+        release.countDown();
+        inFlight.get();
+        assertEquals(0, client.getPoolStats(server).getLeased());
+    }
+
+    @Test
+    void timesOutWaitingForAConnection () throws Exception
+    {
+        client = client(1, -1, Duration.ofMillis(100));
+        String server = stub.url();
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<?> inFlight = holdConnection(server, release);
+
+        assertThrows(BackendSaturatedException.class, () -> client.exchange(server,
+            server + "/work", HttpMethod.GET, HttpEntity.EMPTY));
+        release.countDown();
+        inFlight.get();
+        // The permit of the timed out request was never taken, so the pool is whole again
+        assertEquals("ok", client.exchange(server, server + "/work", HttpMethod.GET,
+            HttpEntity.EMPTY).getBody());
+    }
+
+    private static PooledBackendClient client (int connections, int maxPendingAcquires,
+                                               Duration acquireTimeout)
+    {
+        return new PooledBackendClient(connections, connections, maxPendingAcquires,
+            Duration.ofSeconds(2), Duration.ofSeconds(10), acquireTimeout, Duration.ofSeconds(30));
+    }
+
+    /**
+     * Sends a request that holds the only connection to the server until released, while its
+     * body is written.
+     */
+    private CompletableFuture<?> holdConnection (String server, CountDownLatch release)
+        throws InterruptedException
+    {
+        CompletableFuture<?> inFlight = CompletableFuture.runAsync(() -> client.execute(server,
+            server + "/count", HttpMethod.POST,
+            request -> ((StreamingHttpOutputMessage) request).setBody(out -> {
+                try {
+                    release.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                out.write('x');
+            }),
+            response -> response.getBody().readAllBytes()));
+        awaitLeased(server, 1);
+        return inFlight;
+    }
+
+    private void awaitLeased (String server, int leased) throws InterruptedException
+    {
+        while (client.getPoolStats(server).getLeased() < leased) {
+            Thread.sleep(10);
+        }
+    }
+}
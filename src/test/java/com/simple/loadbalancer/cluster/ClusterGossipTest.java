@@ -0,0 +1,271 @@
+package com.simple.loadbalancer.cluster;
+
+import com.simple.loadbalancer.service.LeastConnectionsStrategy;
+import com.simple.loadbalancer.status.Backend;
+import com.simple.loadbalancer.status.HealthChecker;
+import com.simple.loadbalancer.status.LatencyTracker;
+import com.simple.loadbalancer.status.ServerLoadChecker;
+import com.simple.loadbalancer.status.ServerRegistry;
+import com.simple.loadbalancer.stub.StubBackend;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Several load balancers gossiping on localhost, each with its own registry, load accounting and
+ * health checks over the same servers.
+ */
+class ClusterGossipTest
+{
+    private static final Duration EXPIRY = Duration.ofSeconds(3);
+
+    private final List<AutoCloseable> resources = new ArrayList<>();
+    private final AtomicLong now = new AtomicLong(System.nanoTime());
+
+    @AfterEach
+    void close () throws Exception
+    {
+        for (AutoCloseable resource : resources) {
+            resource.close();
+        }
+    }
+
+    @Test
+    void strategiesSeeTheLoadOfTheOtherInstances () throws Exception
+    {
+        List<Instance> cluster = cluster(3, List.of("http://a:1", "http://b:1"), 2);
+        // Every instance numbers the servers in its own order
+        Instance third = cluster.get(2);
+        Backend a = third.registry.get("http://a:1");
+        Backend b = third.registry.get("http://b:1");
+
+        load(cluster.get(0), "http://a:1", 10);
+        load(cluster.get(1), "http://a:1", 5);
+        load(third, "http://b:1", 3);
+        cluster.get(0).latencyTracker.record(cluster.get(0).registry.get("http://b:1").getId(),
+            TimeUnit.MILLISECONDS.toNanos(50));
+        await(cluster, () -> third.serverLoadChecker.getPeerLoad(a.getId()) == 15);
+
+        assertEquals(15, third.serverLoadChecker.getClusterLoad(a.getId()));
+        assertEquals(3, third.serverLoadChecker.getClusterLoad(b.getId()));
+        assertEquals(3, cluster.get(0).serverLoadChecker.getPeerLoad(
+            cluster.get(0).registry.get("http://b:1").getId()));
+        assertEquals(0, third.latencyTracker.getLocalLatency(b.getId()));
+        assertTrue(third.latencyTracker.getLatency(b.getId()) >= TimeUnit.MILLISECONDS.toNanos(49));
+        // Locally b is the busier server, but not across the cluster
+        LeastConnectionsStrategy strategy = new LeastConnectionsStrategy(third.serverLoadChecker);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(b, strategy.selectServer(third.registry.getSnapshot()));
+        }
+        assertEquals(2, third.clusterState.getPeerCount());
+
+        // A stopped instance is forgotten after the expiry
+        cluster.get(0).gossip.close();
+        now.addAndGet(EXPIRY.toNanos() + 1);
+        await(cluster.subList(1, 3), () -> third.serverLoadChecker.getPeerLoad(a.getId()) == 5);
+        assertEquals(1, third.clusterState.getPeerCount());
+    }
+
+    @Test
+    void leavesOutServersMostInstancesFindDown () throws Exception
+    {
+        StubBackend stub = StubBackend.start();
+        resources.add(stub);
+        List<Instance> cluster = cluster(3, List.of(stub.url()), 1);
+        Backend server = cluster.get(2).registry.get(stub.url());
+
+        stub.setHealthy(false);
+        sweep(cluster.get(0));
+        await(cluster, () -> cluster.get(2).clusterState.getPeerCount() == 2);
+        // One instance out of three is not enough
+        assertFalse(cluster.get(2).clusterState.isDownInCluster(server));
+
+        sweep(cluster.get(1));
+        await(cluster, () -> cluster.get(2).clusterState.isDownInCluster(server));
+        assertTrue(cluster.get(2).healthChecker.isUp(server));
+
+        stub.setHealthy(true);
+        sweep(cluster.get(1));
+        await(cluster, () -> !cluster.get(2).clusterState.isDownInCluster(server));
+    }
+
+    @Test
+    void takesDigestsFromThePeersOnly () throws Exception
+    {
+        DatagramChannel peer = open();
+        DatagramChannel stranger = open();
+        Instance instance = new Instance(open(),
+            List.of("127.0.0.1:" + ((InetSocketAddress) peer.getLocalAddress()).getPort()), 1);
+        instance.add("http://a:1");
+        Backend server = instance.registry.get("http://a:1");
+        InetSocketAddress target = new InetSocketAddress("127.0.0.1", instance.gossip.getPort());
+
+        // Posing as a majority of instances that find the server down
+        for (long sender = 1; sender <= ClusterState.MAX_PEERS + 1; sender++) {
+            send(stranger, new LoadDigest(sender, List.of(new LoadDigest.Entry(
+                ClusterState.hash(server), 1000, 0, true))), target);
+        }
+        send(peer, new LoadDigest(0, List.of(new LoadDigest.Entry(ClusterState.hash(server), 7, 0,
+            false))), target);
+        await(List.of(instance), () -> instance.serverLoadChecker.getPeerLoad(server.getId()) == 7);
+
+        assertEquals(1, instance.clusterState.getPeerCount());
+        assertFalse(instance.clusterState.isDownInCluster(server));
+    }
+
+    @Test
+    void boundsTheTrafficPerRoundWhateverTheServerCount () throws Exception
+    {
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            urls.add("http://backend-" + i + ":8080");
+        }
+        DatagramSocket peer = new DatagramSocket(new InetSocketAddress("127.0.0.1", 0));
+        peer.setSoTimeout(200);
+        resources.add(peer);
+        Instance instance = new Instance(open(), List.of("127.0.0.1:" + peer.getLocalPort()), 2);
+        urls.forEach(instance::add);
+
+        Set<Long> reported = new HashSet<>();
+        int rounds = (int) Math.ceil(1000.0 / (2 * LoadDigest.MAX_ENTRIES));
+        for (int round = 0; round < rounds; round++) {
+            instance.gossip.gossip();
+            List<LoadDigest> digests = receive(peer);
+            assertEquals(2, digests.size());
+            digests.forEach(digest -> digest.entries().forEach(e -> reported.add(e.server())));
+        }
+        assertEquals(1000, reported.size());
+    }
+
+    private List<Instance> cluster (int size, List<String> urls, int maxPackets) throws IOException
+    {
+        List<DatagramChannel> channels = new ArrayList<>();
+        List<String> peers = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            DatagramChannel channel = open();
+            channels.add(channel);
+            peers.add("127.0.0.1:" + ((InetSocketAddress) channel.getLocalAddress()).getPort());
+        }
+        List<Instance> instances = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            // Every instance is also its own peer, which it must ignore
+            Instance instance = new Instance(channels.get(i), peers, maxPackets);
+            for (int j = 0; j < urls.size(); j++) {
+                instance.add(urls.get((i + j) % urls.size()));
+            }
+            instances.add(instance);
+        }
+        return instances;
+    }
+
+    private DatagramChannel open () throws IOException
+    {
+        DatagramChannel channel = DatagramChannel.open()
+            .bind(new InetSocketAddress("127.0.0.1", 0));
+        resources.add(channel);
+        return channel;
+    }
+
+    private static void sweep (Instance instance)
+    {
+        instance.healthChecker.sweep(instance.registry.getAll());
+    }
+
+    private static void load (Instance instance, String url, int requests)
+    {
+        for (int i = 0; i < requests; i++) {
+            instance.serverLoadChecker.incrementLoad(instance.registry.get(url).getId());
+        }
+    }
+
+    /**
+     * Runs gossip rounds until a condition holds.
+     */
+    private static void await (List<Instance> cluster, BooleanSupplier condition)
+        throws InterruptedException
+    {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (true) {
+            for (Instance instance : cluster) {
+                instance.gossip.gossip();
+            }
+            Thread.sleep(20);
+            for (Instance instance : cluster) {
+                instance.clusterState.merge();
+            }
+            if (condition.getAsBoolean()) {
+                return;
+            }
+            assertTrue(System.nanoTime() < deadline, "Cluster state not merged in time");
+        }
+    }
+
+    private static void send (DatagramChannel channel, LoadDigest digest, InetSocketAddress target)
+        throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(LoadDigest.MAX_SIZE);
+        digest.encode(buffer);
+        channel.send(buffer.flip(), target);
+    }
+
+    private static List<LoadDigest> receive (DatagramSocket socket) throws IOException
+    {
+        List<LoadDigest> digests = new ArrayList<>();
+        while (true) {
+            DatagramPacket packet = new DatagramPacket(new byte[65536], 65536);
+            try {
+                socket.receive(packet);
+            }
+            catch (SocketTimeoutException e) {
+                return digests;
+            }
+            assertTrue(packet.getLength() <= LoadDigest.MAX_SIZE);
+            digests.add(LoadDigest.decode(
+                ByteBuffer.wrap(packet.getData(), 0, packet.getLength())));
+        }
+    }
+
+    private class Instance
+    {
+        final ServerLoadChecker serverLoadChecker = new ServerLoadChecker(1024);
+        final LatencyTracker latencyTracker = new LatencyTracker(1024, Duration.ofSeconds(10)
+            .toNanos());
+        final ServerRegistry registry = new ServerRegistry(serverLoadChecker);
+        final HealthChecker healthChecker = new HealthChecker(1024, Duration.ofSeconds(2),
+            Duration.ZERO, 1, 1);
+        final ClusterState clusterState = new ClusterState(registry, serverLoadChecker,
+            latencyTracker, healthChecker, 1024, EXPIRY, now::get);
+        final ClusterGossip gossip;
+
+        Instance (DatagramChannel channel, List<String> peers, int maxPackets)
+        {
+            gossip = new ClusterGossip(clusterState, channel, peers, maxPackets);
+            resources.add(gossip);
+        }
+
+        void add (String url)
+        {
+            registry.add(registry.register(url));
+        }
+    }
+}
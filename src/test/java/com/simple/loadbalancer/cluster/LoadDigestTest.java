@@ -0,0 +1,57 @@
+package com.simple.loadbalancer.cluster;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoadDigestTest
+{
+    @Test
+    void roundTripsAFullDatagram ()
+    {
+        List<LoadDigest.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < LoadDigest.MAX_ENTRIES; i++) {
+            entries.add(new LoadDigest.Entry(-i * 0x9e3779b97f4a7c15L, i, i * 1000L, i % 3 == 0));
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(LoadDigest.MAX_SIZE);
+        new LoadDigest(42, entries).encode(buffer);
+        assertTrue(buffer.position() <= LoadDigest.MAX_SIZE);
+
+        assertEquals(new LoadDigest(42, entries), LoadDigest.decode(buffer.flip()));
+        List<LoadDigest.Entry> tooMany = new ArrayList<>(entries);
+        tooMany.add(entries.get(0));
+        assertThrows(IllegalArgumentException.class,
+            () -> new LoadDigest(42, tooMany).encode(buffer.clear()));
+    }
+
+    @Test
+    void saturatesLargeValues ()
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(LoadDigest.MAX_SIZE);
+        new LoadDigest(-1, List.of(new LoadDigest.Entry(7, 100_000, Long.MAX_VALUE, false)))
+            .encode(buffer);
+        LoadDigest.Entry entry = LoadDigest.decode(buffer.flip()).entries().get(0);
+        assertEquals(0xffff, entry.load());
+        assertEquals(0xffffffffL, entry.latencyMicros());
+    }
+
+    @Test
+    void rejectsOtherDatagrams ()
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(LoadDigest.MAX_SIZE);
+        new LoadDigest(1, List.of(new LoadDigest.Entry(7, 1, 1, true))).encode(buffer);
+        buffer.flip();
+        assertThrows(IllegalArgumentException.class,
+            () -> LoadDigest.decode(buffer.slice(0, buffer.limit() - 1)));
+        assertThrows(IllegalArgumentException.class,
+            () -> LoadDigest.decode(ByteBuffer.wrap("GET / HTTP/1.1".getBytes())));
+        assertThrows(IllegalArgumentException.class, () -> LoadDigest.decode(ByteBuffer.wrap(
+            new byte[] {0x4c})));
+    }
+}
@@ -0,0 +1,84 @@
+package com.simple.loadbalancer.config;
+
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.embedded.tomcat.TomcatWebServer;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Starts the load balancer with and without {@code loadbalancer.virtual-threads.enabled} and
+ * checks on which threads Tomcat serves the requests and the health checks are scheduled.
+ */
+class VirtualThreadsTest
+{
+    /**
+     * The application, as the test class of the same name hides its main class.
+     */
+    @SpringBootConfiguration
+    @EnableAutoConfiguration
+    @EnableScheduling
+    @ComponentScan(basePackages = "com.simple.loadbalancer", excludeFilters = @ComponentScan.Filter(
+        type = FilterType.REGEX, pattern = "com\\.simple\\.loadbalancer\\.LoadBalancerMain"))
+    static class Application
+    {
+    }
+
+    @Test
+    void servesRequestsAndHealthChecksOnVirtualThreads () throws Exception
+    {
+        try (ServletWebServerApplicationContext context = start(true)) {
+            assertTrue(runsOnVirtualThread(tomcatExecutor(context)));
+            assertTrue(runsOnVirtualThread(scheduler(context)));
+        }
+    }
+
+    @Test
+    void keepsPlatformThreadsByDefault () throws Exception
+    {
+        try (ServletWebServerApplicationContext context = start(false)) {
+            assertFalse(runsOnVirtualThread(tomcatExecutor(context)));
+            assertFalse(runsOnVirtualThread(scheduler(context)));
+        }
+    }
+
+    private static ServletWebServerApplicationContext start (boolean virtualThreads)
+    {
+        return (ServletWebServerApplicationContext) new SpringApplicationBuilder(Application.class)
+            .run("--server.port=0", "--management.server.port=0",
+                "--loadbalancer.metrics.enabled=false",
+                "--loadbalancer.virtual-threads.enabled=" + virtualThreads);
+    }
+
+    private static Executor tomcatExecutor (ServletWebServerApplicationContext context)
+    {
+        return ((TomcatWebServer) context.getWebServer()).getTomcat().getConnector()
+            .getProtocolHandler().getExecutor();
+    }
+
+    private static Executor scheduler (ServletWebServerApplicationContext context)
+    {
+        TaskScheduler scheduler = context.getBean(TaskScheduler.class);
+        return task -> scheduler.schedule(task, Instant.now());
+    }
+
+    private static boolean runsOnVirtualThread (Executor executor) throws Exception
+    {
+        CompletableFuture<Boolean> virtual = new CompletableFuture<>();
+        executor.execute(() -> virtual.complete(Thread.currentThread().isVirtual()));
+        return virtual.get(5, TimeUnit.SECONDS);
+    }
+}
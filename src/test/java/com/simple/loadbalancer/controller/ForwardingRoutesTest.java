@@ -0,0 +1,117 @@
+package com.simple.loadbalancer.controller;
+
+import com.simple.loadbalancer.service.LoadBalancerService;
+import com.simple.loadbalancer.status.Backend;
+import com.simple.loadbalancer.status.ServerRegistry;
+import com.simple.loadbalancer.stub.StubBackend;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Forwards a request with several path segments and a query string through every data plane of
+ * the load balancer, and checks what the backend receives.
+ */
+class ForwardingRoutesTest
+{
+    /**
+     * The application, as the test class of the same name hides its main class.
+     */
+    @SpringBootConfiguration
+    @EnableAutoConfiguration
+    @EnableScheduling
+    @ComponentScan(basePackages = "com.simple.loadbalancer", excludeFilters = @ComponentScan.Filter(
+        type = FilterType.REGEX, pattern = "com\\.simple\\.loadbalancer\\.LoadBalancerMain"))
+    static class Application
+    {
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"--loadbalancer.proxy.mode=buffered",
+        "--loadbalancer.proxy.mode=streaming", "--loadbalancer.data-plane=reactive"})
+    void forwardsTheRewrittenPathQueryAndHeaders (String mode) throws Exception
+    {
+        try (StubBackend backend = StubBackend.start();
+             ConfigurableApplicationContext context = start(backend, mode)) {
+            HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:"
+                    + context.getEnvironment().getProperty("local.server.port")
+                    + "/forwardRequest/api/v1/users/42?q=a%20b&page=2"))
+                .header("X-Forwarded-For", "203.0.113.1")
+                .header("Proxy-Authorization", "Basic c2VjcmV0")
+                .header("Accept", "text/plain")
+                .build();
+            HttpResponse<String> response = HttpClient.newHttpClient().send(request,
+                HttpResponse.BodyHandlers.ofString());
+
+            assertEquals(200, response.statusCode(), response.body());
+            List<String> lines = response.body().toLowerCase().lines().toList();
+            assertEquals("get /inspect/users/42?q=a%20b&page=2", lines.get(0));
+            assertTrue(lines.contains("host: " + URI.create(backend.url()).getAuthority()),
+                response.body());
+            assertTrue(lines.contains("accept: text/plain"), response.body());
+            assertTrue(lines.contains("x-env: test"), response.body());
+            assertTrue(lines.stream().anyMatch(
+                line -> line.startsWith("x-forwarded-for: 203.0.113.1, ")), response.body());
+            assertTrue(lines.contains("x-forwarded-proto: http"), response.body());
+            assertFalse(lines.stream().anyMatch(line -> line.startsWith("proxy-authorization")),
+                response.body());
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"--loadbalancer.proxy.mode=buffered",
+        "--loadbalancer.proxy.mode=streaming", "--loadbalancer.data-plane=reactive"})
+    void pointsTheFormerAddServerRouteToTheManagementPort (String mode) throws Exception
+    {
+        try (StubBackend backend = StubBackend.start();
+             ConfigurableApplicationContext context = start(backend, mode)) {
+            HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:"
+                    + context.getEnvironment().getProperty("local.server.port")
+                    + "/forwardRequest/addServer?serverUrl=http://localhost:1"))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+            HttpResponse<String> response = HttpClient.newHttpClient().send(request,
+                HttpResponse.BodyHandlers.ofString());
+
+            assertEquals(410, response.statusCode(), response.body());
+            assertTrue(response.body().contains("/actuator/servers/addServer"), response.body());
+            assertEquals(1, context.getBean(ServerRegistry.class).getSnapshot().size());
+        }
+    }
+
+    private static ConfigurableApplicationContext start (StubBackend backend, String mode)
+        throws InterruptedException
+    {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(Application.class)
+            .run("--server.port=0", "--management.server.port=0", mode,
+                "--loadbalancer.healthcheck.interval=100", "--loadbalancer.healthcheck.jitter=0s",
+                "--loadbalancer.healthcheck.fall=1",
+                "--loadbalancer.metrics.enabled=false",
+                "--loadbalancer.rewrite.rules=prefix:/api/v1=/inspect,set-header:X-Env=test");
+        context.getBean(LoadBalancerService.class).addServer(backend.url());
+        // Wait for the health checks to leave only the stub of the configured servers
+        ServerRegistry serverRegistry = context.getBean(ServerRegistry.class);
+        while (!serverRegistry.getSnapshot().asList().stream().map(Backend::getUrl).toList()
+            .equals(List.of(backend.url()))) {
+            Thread.sleep(100);
+        }
+        return context;
+    }
+}
@@ -0,0 +1,88 @@
+package com.simple.loadbalancer.controller;
+
+import com.simple.loadbalancer.status.Backend;
+import com.simple.loadbalancer.status.ServerRegistry;
+import com.simple.loadbalancer.stub.StubBackend;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Changes the servers through the admin API of the management port, and checks that the same
+ * paths on the forwarding port reach the backends instead.
+ */
+class ServersEndpointTest
+{
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @Test
+    void servesTheAdminApiOnTheManagementPortOnly () throws Exception
+    {
+        try (StubBackend backend = StubBackend.start();
+             ConfigurableApplicationContext context = new SpringApplicationBuilder(
+                 ForwardingRoutesTest.Application.class)
+                 .run("--server.port=0", "--management.server.port=0",
+                     "--loadbalancer.healthcheck.interval=100",
+                     "--loadbalancer.healthcheck.jitter=0s", "--loadbalancer.healthcheck.fall=1",
+                     "--loadbalancer.metrics.enabled=false")) {
+            String admin = "http://localhost:"
+                + context.getEnvironment().getProperty("local.management.port") + "/actuator";
+            String forwarding = "http://localhost:"
+                + context.getEnvironment().getProperty("local.server.port")
+                + LoadBalancerController.MOUNT;
+            String server = "?serverUrl=" + backend.url();
+
+            assertEquals(200, post(admin + "/servers/addServer" + server + "&weight=3&zone=b")
+                .statusCode());
+            ServerRegistry serverRegistry = context.getBean(ServerRegistry.class);
+            // Wait for the health checks to leave only the stub of the configured servers
+            while (!serverRegistry.getSnapshot().asList().stream().map(Backend::getUrl).toList()
+                .equals(List.of(backend.url()))) {
+                Thread.sleep(100);
+            }
+            HttpResponse<String> servers = client.send(
+                HttpRequest.newBuilder(URI.create(admin + "/servers")).build(),
+                HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, servers.statusCode());
+            assertTrue(servers.body().contains(backend.url()), servers.body());
+
+            assertEquals(400, post(admin + "/servers/setWeight" + server).statusCode());
+            assertEquals(400, post(admin + "/servers/setWeight" + server + "&weight=0")
+                .statusCode());
+            assertEquals(404, post(admin + "/servers/drainServer?serverUrl=http://unknown:1")
+                .statusCode());
+
+            // Forwarded like any other path, and the server stays
+            assertEquals(200, post(forwarding + "/removeServer" + server).statusCode());
+            assertEquals(200, client.send(
+                HttpRequest.newBuilder(URI.create(forwarding + "/servers")).build(),
+                HttpResponse.BodyHandlers.ofString()).statusCode());
+            assertEquals(2, backend.getRequestCount());
+            assertEquals(List.of(backend.url()),
+                serverRegistry.getSnapshot().asList().stream().map(Backend::getUrl).toList());
+
+            assertEquals(200, post(admin + "/servers/removeServer" + server).statusCode());
+            assertTrue(serverRegistry.getSnapshot().asList().isEmpty());
+        }
+    }
+
+    private HttpResponse<String> post (String url) throws IOException, InterruptedException
+    {
+        // The actuator takes the parameters of write operations as JSON, or from the query
+        return client.send(HttpRequest.newBuilder(URI.create(url))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.noBody()).build(),
+            HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,234 @@
+package com.simple.loadbalancer.discovery;
+
+import com.simple.loadbalancer.status.Backend;
+import com.simple.loadbalancer.status.ServerLoadChecker;
+import com.simple.loadbalancer.status.ServerRegistry;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ServiceDiscoveryTest
+{
+    private static final Duration DRAIN_TIMEOUT = Duration.ofSeconds(30);
+
+    private final AtomicLong now = new AtomicLong(1_000_000_000L);
+    private final ServerLoadChecker serverLoadChecker = new ServerLoadChecker(16);
+    private final ServerRegistry registry = new ServerRegistry(serverLoadChecker);
+    private final FakeSource source = new FakeSource();
+    private final ServiceDiscovery discovery = new ServiceDiscovery(List.of(source), registry,
+        serverLoadChecker, DRAIN_TIMEOUT, now::get);
+
+    @Test
+    void addsReweightsAndDrainsDiscoveredServers ()
+    {
+        source.servers.put("http://a", new ServerSpec(1, null));
+        source.servers.put("http://b", new ServerSpec(3, null));
+        discovery.refresh();
+        assertEquals(List.of("http://a", "http://b"), urls());
+        assertEquals(3, registry.getWeight(registry.get("http://b")));
+
+        source.servers.put("http://b", new ServerSpec(5, null));
+        source.servers.remove("http://a");
+        discovery.refresh();
+        assertEquals(List.of("http://b"), urls());
+        assertEquals(5, registry.getWeight(registry.get("http://b")));
+        assertTrue(registry.getDraining().contains(registry.get("http://a")));
+    }
+
+    @Test
+    void movesDiscoveredServersBetweenZones ()
+    {
+        source.servers.put("http://a", new ServerSpec(1, "z1"));
+        discovery.refresh();
+        Backend a = registry.get("http://a");
+        assertEquals("z1", registry.getZone(a));
+        assertEquals(1, registry.getSnapshot().getZoneSize("z1"));
+
+        source.servers.put("http://a", new ServerSpec(1, "z2"));
+        discovery.refresh();
+        assertEquals("z2", registry.getZone(a));
+        assertEquals(0, registry.getSnapshot().getZoneSize("z1"));
+        assertEquals("z2", registry.getSnapshot().getZone(0));
+    }
+
+    @Test
+    void removesADrainedServerOnceItsRequestsAreDone ()
+    {
+        source.servers.put("http://a", new ServerSpec(1, null));
+        source.servers.put("http://b", new ServerSpec(1, null));
+        discovery.refresh();
+        Backend a = registry.get("http://a");
+        serverLoadChecker.incrementLoad(a.getId());
+        source.servers.remove("http://a");
+        discovery.refresh();
+
+        discovery.completeDrains();
+        now.addAndGet(ServiceDiscovery.DRAIN_GRACE.toNanos());
+        discovery.completeDrains();
+        assertTrue(registry.getAll().contains(a), "a request is still in flight");
+
+        serverLoadChecker.decrementLoad(a.getId());
+        discovery.completeDrains();
+        assertFalse(registry.getAll().contains(a));
+        assertTrue(registry.getDraining().isEmpty());
+
+        // Coming back makes a new record, in the slot given up by the old one
+        source.servers.put("http://a", new ServerSpec(1, null));
+        discovery.refresh();
+        assertNotSame(a, registry.get("http://a"));
+        assertEquals(a.getId(), registry.get("http://a").getId());
+        assertEquals(List.of("http://b", "http://a"), urls());
+    }
+
+    @Test
+    void changingAddressesDoNotUseUpTheSlots ()
+    {
+        ServerLoadChecker twoSlots = new ServerLoadChecker(2);
+        ServerRegistry small = new ServerRegistry(twoSlots);
+        ServiceDiscovery dns = new ServiceDiscovery(List.of(source), small, twoSlots,
+            DRAIN_TIMEOUT, now::get);
+        for (int address = 0; address < 10; address++) {
+            source.servers.clear();
+            source.servers.put("http://10.0.0." + address, new ServerSpec(1, "z1"));
+            dns.refresh();
+            dns.completeDrains();
+            now.addAndGet(ServiceDiscovery.DRAIN_GRACE.toNanos());
+            dns.completeDrains();
+            assertEquals(List.of("http://10.0.0." + address), small.getSnapshot().asList()
+                .stream().map(Backend::getUrl).toList());
+            assertEquals(1, small.getSnapshot().getZoneSize("z1"));
+        }
+    }
+
+    @Test
+    void removesADrainedServerAfterTheTimeout ()
+    {
+        source.servers.put("http://a", new ServerSpec(1, null));
+        discovery.refresh();
+        Backend a = registry.get("http://a");
+        serverLoadChecker.incrementLoad(a.getId());
+        registry.drain(a);
+
+        discovery.completeDrains();
+        now.addAndGet(DRAIN_TIMEOUT.toNanos() - 1);
+        discovery.completeDrains();
+        assertTrue(registry.getAll().contains(a));
+        now.addAndGet(1);
+        discovery.completeDrains();
+        assertFalse(registry.getAll().contains(a));
+    }
+
+    @Test
+    void keepsTheLastServersOfAFailingSource ()
+    {
+        source.servers.put("http://a", new ServerSpec(1, null));
+        discovery.refresh();
+        source.failure = new IOException("no answer");
+        discovery.refresh();
+        assertEquals(List.of("http://a"), urls());
+        assertTrue(registry.getDraining().isEmpty());
+    }
+
+    @Test
+    void leavesServersItDidNotAddAlone ()
+    {
+        Backend configured = registry.register("http://configured");
+        registry.add(configured);
+        source.servers.put("http://a", new ServerSpec(1, null));
+        discovery.refresh();
+        source.servers.clear();
+        discovery.refresh();
+        assertEquals(List.of("http://configured"), urls());
+    }
+
+    @Test
+    void healthSweepDoesNotBringBackARemovedServer ()
+    {
+        Backend a = registry.register("http://a");
+        Backend b = registry.register("http://b");
+        registry.publish(List.of(a, b));
+        List<Backend> checked = List.copyOf(registry.getAll());
+        registry.remove(a);
+        registry.publishChecked(checked, checked);
+        assertEquals(List.of("http://b"), urls());
+    }
+
+    @Test
+    void readsTheFileAgainOnlyWhenItChanged (@TempDir Path directory) throws IOException
+    {
+        Path file = directory.resolve("servers.properties");
+        Files.writeString(file, "servers=http://a;weight=2;zone=z1, http://b\n");
+        FileDiscoverySource fileSource = new FileDiscoverySource(file);
+        Map<String, ServerSpec> first = Map.of("http://a", new ServerSpec(2, "z1"), "http://b",
+            ServerSpec.DEFAULT);
+        assertEquals(first, fileSource.discover());
+
+        FileTime modified = Files.getLastModifiedTime(file);
+        Files.writeString(file, "servers=http://c\n");
+        Files.setLastModifiedTime(file, modified);
+        assertEquals(first, fileSource.discover());
+        Files.setLastModifiedTime(file, FileTime.fromMillis(0));
+        assertEquals(Map.of("http://c", ServerSpec.DEFAULT), fileSource.discover());
+
+        Files.writeString(file, "servers=http://a;weight=x\n");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(1000));
+        assertThrows(IOException.class, fileSource::discover);
+    }
+
+    @Test
+    void resolvesAddressRecords () throws IOException
+    {
+        Map<String, ServerSpec> servers =
+            new DnsDiscoverySource("localhost:8080", "z1").discover();
+        assertFalse(servers.isEmpty());
+        servers.forEach((url, spec) -> {
+            assertTrue(url.startsWith("http://") && url.endsWith(":8080"), url);
+            assertEquals(new ServerSpec(1, "z1"), spec);
+        });
+        assertNull(servers.get("http://localhost:8080"), "addresses, not the name");
+    }
+
+    private List<String> urls ()
+    {
+        return registry.getSnapshot().asList().stream().map(Backend::getUrl).toList();
+    }
+
+    private static class FakeSource implements DiscoverySource
+    {
+        final Map<String, ServerSpec> servers = new LinkedHashMap<>();
+        IOException failure;
+
+        @Override
+        public String getName ()
+        {
+            return "fake";
+        }
+
+        @Override
+        public Map<String, ServerSpec> discover () throws IOException
+        {
+            if (failure != null) {
+                throw failure;
+            }
+            return new LinkedHashMap<>(servers);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.simple.loadbalancer.loadtest;
+
+import com.simple.loadbalancer.stub.LatencyStubServer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Load test comparing the servlet and the reactive data planes against backends that answer after
+ * an artificial latency. For each mode the load balancer is started in-process, a closed-loop
+ * client keeps {@code concurrency} requests in flight for {@code duration}, and the throughput and
+ * latency percentiles are printed.
+ *
+ * <p>Usage: {@code DataPlaneLoadRun [backends] [latencyMillis] [concurrency] [durationSeconds]},
+ * defaults {@code 4 200 5000 20}.
+ */
+public class DataPlaneLoadRun
+{
+    public static void main (String[] args) throws InterruptedException
+    {
+        int backends = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        Duration latency = Duration.ofMillis(args.length > 1 ? Long.parseLong(args[1]) : 200);
+        int concurrency = args.length > 2 ? Integer.parseInt(args[2]) : 5000;
+        Duration duration = Duration.ofSeconds(args.length > 3 ? Long.parseLong(args[3]) : 20);
+
+        List<LatencyStubServer> stubs = new ArrayList<>();
+        for (int i = 0; i < backends; i++) {
+            stubs.add(LatencyStubServer.start(latency));
+        }
+        List<String> urls = stubs.stream().map(LatencyStubServer::url).toList();
+        try {
+            List<String> results = new ArrayList<>();
+            for (String mode : new String[]{"servlet", "reactive"}) {
+                ConfigurableApplicationContext context = LoadTestSupport.start(urls, concurrency,
+                    "--loadbalancer.data-plane=" + mode);
+                try {
+                    results.add(LoadTestSupport.measure(mode,
+                        LoadTestSupport.forwardingUrl(context), concurrency, duration));
+                }
+                finally {
+                    context.close();
+                }
+            }
+            System.out.printf("%nbackends=%d latency=%dms concurrency=%d duration=%ds%n", backends,
+                latency.toMillis(), concurrency, duration.toSeconds());
+            System.out.println(LoadTestSupport.HEADER);
+            results.forEach(System.out::println);
+        }
+        finally {
+            stubs.forEach(LatencyStubServer::close);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.simple.loadbalancer.loadtest;
+
+import com.simple.loadbalancer.LoadBalancerMain;
+import com.simple.loadbalancer.service.LoadBalancerService;
+import com.simple.loadbalancer.status.Backend;
+import com.simple.loadbalancer.status.ServerRegistry;
+import com.simple.loadbalancer.stub.StubBackend;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Uploads a 2 GB multipart file through the load balancer running with a 128 MB heap, which only
+ * succeeds if the upload is streamed to the backend rather than held in memory. The load balancer
+ * runs in a child JVM started by the test, as the heap of the test JVM cannot be changed; its
+ * {@link #main(String[])} can also be run by hand with the upload size in bytes as argument.
+ */
+class LargeUploadTest
+{
+    private static final long UPLOAD_SIZE = 2L * 1024 * 1024 * 1024;
+    private static final String MAX_HEAP = "-Xmx128m";
+
+    @Test
+    void streamsAnUploadLargerThanTheHeap () throws Exception
+    {
+        // Main classes first, as a test class of the same name hides the application class
+        String classPath = Path.of(LoadBalancerService.class.getProtectionDomain().getCodeSource()
+            .getLocation().toURI()) + File.pathSeparator + System.getProperty("java.class.path");
+        Process process = new ProcessBuilder(
+            ProcessHandle.current().info().command().orElse("java"), MAX_HEAP, "--enable-preview",
+            "-cp", classPath, LargeUploadTest.class.getName(), Long.toString(UPLOAD_SIZE))
+            .redirectErrorStream(true)
+            .start();
+        String output;
+        try (InputStream in = process.getInputStream()) {
+            output = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        assertTrue(process.waitFor(5, TimeUnit.MINUTES));
+        String summary = output.lines().filter(line -> line.startsWith("Uploaded")).findFirst()
+            .orElse(output.substring(Math.max(0, output.length() - 4000)));
+        System.out.println(summary);
+        assertEquals(0, process.exitValue(), summary);
+    }
+
+    public static void main (String[] args) throws Exception
+    {
+        long size = args.length > 0 ? Long.parseLong(args[0]) : UPLOAD_SIZE;
+        StubBackend backend = StubBackend.start();
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(LoadBalancerMain.class)
+            .run("--server.port=0", "--management.server.port=0",
+                "--loadbalancer.healthcheck.interval=100", "--loadbalancer.healthcheck.jitter=0s",
+                "--loadbalancer.healthcheck.fall=1");
+        int exitCode = 1;
+        try {
+            // Wait for the health checks to leave only the stub of the configured servers
+            context.getBean(LoadBalancerService.class).addServer(backend.url());
+            ServerRegistry serverRegistry = context.getBean(ServerRegistry.class);
+            while (!serverRegistry.getSnapshot().asList().stream().map(Backend::getUrl).toList()
+                .equals(List.of(backend.url()))) {
+                Thread.sleep(100);
+            }
+
+            String boundary = "large-upload-boundary";
+            byte[] head = ("--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"large.bin\"\r\n"
+                + "Content-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.UTF_8);
+            byte[] tail = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8);
+            long length = head.length + size + tail.length;
+            HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:"
+                    + context.getEnvironment().getProperty("local.server.port")
+                    + "/forwardRequest/count"))
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(HttpRequest.BodyPublishers.fromPublisher(
+                    HttpRequest.BodyPublishers.ofInputStream(() -> new SequenceInputStream(
+                        new ByteArrayInputStream(head), new SequenceInputStream(
+                            new FileContent(size), new ByteArrayInputStream(tail)))), length))
+                .build();
+
+            long start = System.nanoTime();
+            HttpResponse<String> response = HttpClient.newHttpClient()
+                .send(request, HttpResponse.BodyHandlers.ofString());
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            System.out.printf("Uploaded %d MB in %d ms (%d MB/s), backend received %s bytes of %d, "
+                    + "status %d, peak heap %d MB of %d MB%n", length >> 20, millis,
+                millis > 0 ? (length >> 20) * 1000 / millis : 0, response.body(), length,
+                response.statusCode(), peakHeapBytes() >> 20,
+                Runtime.getRuntime().maxMemory() >> 20);
+            if (response.statusCode() == 200 && response.body().equals(Long.toString(length))) {
+                exitCode = 0;
+            }
+        }
+        finally {
+            context.close();
+            backend.close();
+        }
+        System.exit(exitCode);
+    }
+
+    private static long peakHeapBytes ()
+    {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    /**
+     * Generated file content, so that the test needs neither the memory nor the disk space for
+     * it.
+     */
+    private static final class FileContent extends InputStream
+    {
+        private long remaining;
+
+        FileContent (long size)
+        {
+            this.remaining = size;
+        }
+
+        @Override
+        public int read ()
+        {
+            if (remaining == 0) {
+                return -1;
+            }
+            remaining--;
+            return 'x';
+        }
+
+        @Override
+        public int read (byte[] buffer, int offset, int length) throws IOException
+        {
+            if (remaining == 0) {
+                return -1;
+            }
+            int count = (int) Math.min(length, remaining);
+            Arrays.fill(buffer, offset, offset + count, (byte) 'x');
+            remaining -= count;
+            return count;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.simple.loadbalancer.loadtest;
+
+import com.simple.loadbalancer.LoadBalancerMain;
+import com.simple.loadbalancer.service.LoadBalancerService;
+import com.simple.loadbalancer.status.Backend;
+import com.simple.loadbalancer.status.ServerRegistry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.resources.LoopResources;
+
+/**
+ * Shared plumbing of the load tests: starts the load balancer in-process in front of stub
+ * backends and drives it with a closed-loop, non-blocking client.
+ */
+final class LoadTestSupport
+{
+    static final String HEADER = String.format("%-24s %12s %10s %10s %10s %8s", "run",
+        "requests/s", "p50 ms", "p99 ms", "max ms", "errors");
+
+    private LoadTestSupport ()
+    {
+    }
+
+    /**
+     * Starts the load balancer on a random port with connection limits high enough not to be the
+     * bottleneck, and returns once the given servers are the only ones it forwards to.
+     */
+    static ConfigurableApplicationContext start (List<String> serverUrls, int concurrency,
+                                                 String... extraArgs) throws InterruptedException
+    {
+        List<String> args = new ArrayList<>(List.of(
+            "--server.port=0", "--management.server.port=0",
+            "--loadbalancer.proxy.mode=streaming",
+            "--loadbalancer.healthcheck.interval=200",
+            "--loadbalancer.healthcheck.jitter=0s",
+            "--loadbalancer.healthcheck.fall=1",
+            "--loadbalancer.client.max-connections-per-server=" + concurrency,
+            "--loadbalancer.client.max-connections-total=" + concurrency,
+            "--loadbalancer.client.max-pending-acquires=-1",
+            "--loadbalancer.client.acquire-timeout=60s"));
+        args.addAll(Arrays.asList(extraArgs));
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(LoadBalancerMain.class)
+            .run(args.toArray(new String[0]));
+        LoadBalancerService service = context.getBean(LoadBalancerService.class);
+        serverUrls.forEach(service::addServer);
+        // Wait for the health checks to drop the servers of the default configuration
+        ServerRegistry serverRegistry = context.getBean(ServerRegistry.class);
+        List<String> expected = serverUrls.stream().sorted().toList();
+        while (!serverRegistry.getSnapshot().asList().stream().map(Backend::getUrl).sorted()
+            .toList().equals(expected)) {
+            Thread.sleep(100);
+        }
+        return context;
+    }
+
+    static String forwardingUrl (ConfigurableApplicationContext context)
+    {
+        return "http://localhost:" + context.getEnvironment().getProperty("local.server.port")
+            + "/forwardRequest/work";
+    }
+
+    /**
+     * Keeps {@code concurrency} requests in flight against {@code url} for {@code duration} after a
+     * short warm-up, and formats throughput and latency percentiles as one report line.
+     */
+    static String measure (String name, String url, int concurrency, Duration duration)
+    {
+        ConnectionProvider provider = ConnectionProvider.builder("loadtest")
+            .maxConnections(concurrency)
+            .pendingAcquireMaxCount(-1)
+            .build();
+        LoopResources loops = LoopResources.create("loadtest", 1, true);
+        HttpClient client = HttpClient.create(provider)
+            .runOn(loops)
+            .responseTimeout(Duration.ofSeconds(60));
+        try {
+            drive(client, url, Math.min(concurrency, 200), Duration.ofSeconds(3), null, null);
+            Histogram histogram = new ConcurrentHistogram(TimeUnit.MINUTES.toNanos(1), 3);
+            AtomicLong errors = new AtomicLong();
+            long start = System.nanoTime();
+            drive(client, url, concurrency, duration, histogram, errors);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            return String.format("%-24s %12.0f %10.1f %10.1f %10.1f %8d", name,
+                histogram.getTotalCount() / seconds,
+                histogram.getValueAtPercentile(50) / 1e6,
+                histogram.getValueAtPercentile(99) / 1e6,
+                histogram.getMaxValue() / 1e6,
+                errors.get());
+        }
+        finally {
+            provider.disposeLater().block();
+            loops.disposeLater().block();
+        }
+    }
+
+    private static void drive (HttpClient client, String url, int concurrency, Duration duration,
+                               Histogram histogram, AtomicLong errors)
+    {
+        long deadline = System.nanoTime() + duration.toNanos();
+        Flux.range(0, concurrency)
+            .flatMap(worker -> Mono.defer(() -> {
+                    long begin = System.nanoTime();
+                    return client.get().uri(url)
+                        .responseSingle((response, body) -> body.then(Mono.just(response.status().code())))
+                        .doOnNext(status -> {
+                            if (histogram == null) {
+                                return;
+                            }
+                            if (status == 200) {
+                                histogram.recordValue(System.nanoTime() - begin);
+                            }
+                            else {
+                                errors.incrementAndGet();
+                            }
+                        })
+                        .onErrorResume(e -> {
+                            if (errors != null) {
+                                errors.incrementAndGet();
+                            }
+                            return Mono.empty();
+                        });
+                })
+                .repeat(() -> System.nanoTime() < deadline), concurrency)
+            .blockLast();
+    }
+}
@@ -0,0 +1,147 @@
+package com.simple.loadbalancer.loadtest;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.resources.LoopResources;
+
+/**
+ * Open-loop load generator: sends requests at a fixed rate whether or not earlier ones have been
+ * answered, the way independent users arrive, instead of waiting for a response before sending the
+ * next request like the closed loop of {@link LoadTestSupport#measure}.
+ *
+ * <p>Every request has an intended start time on a fixed schedule. Its latency is measured from
+ * that time rather than from when it was actually sent, so that a stall of the generator itself,
+ * a GC pause or a descheduled sender thread, counts against the latency of every request it
+ * delayed instead of silently thinning out the load; this corrects for coordinated omission. The
+ * latency from the actual send is recorded as well, to show how much the correction matters.
+ * Requests waiting for a pooled connection are never dropped and count as latency too.
+ *
+ * <p>Requests carry one of 1000 {@code X-Tenant-Id} values in turn, so that the consistent-hash
+ * strategy has keys to route on.
+ */
+final class OpenLoopLoadGenerator implements AutoCloseable
+{
+    private static final long HIGHEST_LATENCY = TimeUnit.MINUTES.toNanos(1);
+    private static final int TENANTS = 1000;
+
+    private final ConnectionProvider provider;
+    private final LoopResources loops;
+    private final HttpClient client;
+
+    /**
+     * @param corrected   latency of the successful requests from their intended start
+     * @param uncorrected latency of the successful requests from their actual send
+     * @param errors      requests answered with anything but 200, or not answered
+     * @param seconds     length of the measurement
+     */
+    record Result(double targetRate, Histogram corrected, Histogram uncorrected, long errors,
+                  double seconds)
+    {
+        double achievedRate ()
+        {
+            return corrected.getTotalCount() / seconds;
+        }
+    }
+
+    /**
+     * @param maxConnections connections opened to the load balancer at most; further requests wait
+     *                       for one
+     */
+    OpenLoopLoadGenerator (int maxConnections)
+    {
+        provider = ConnectionProvider.builder("open-loop")
+            .maxConnections(maxConnections)
+            .pendingAcquireMaxCount(-1)
+            .pendingAcquireTimeout(Duration.ofMinutes(1))
+            .build();
+        loops = LoopResources.create("open-loop", 2, true);
+        client = HttpClient.create(provider)
+            .runOn(loops)
+            .responseTimeout(Duration.ofSeconds(30));
+    }
+
+    /**
+     * Sends requests to {@code url} at a rate growing linearly to {@code rate} per second over
+     * {@code warmUp}, so that a cold JIT and connection pool do not start the measurement with a
+     * backlog, then at {@code rate} for {@code duration}. Returns once every request sent has been
+     * answered or has timed out; only the requests intended to start after the warm-up are
+     * measured.
+     */
+    Result run (String url, double rate, Duration warmUp, Duration duration)
+        throws InterruptedException
+    {
+        Histogram corrected = new ConcurrentHistogram(HIGHEST_LATENCY, 3);
+        Histogram uncorrected = new ConcurrentHistogram(HIGHEST_LATENCY, 3);
+        AtomicLong errors = new AtomicLong();
+        AtomicLong pending = new AtomicLong();
+
+        double interval = 1e9 / rate;
+        long warmUpNanos = warmUp.toNanos();
+        // Requests sent while the rate ramps up linearly from 0 over the warm-up
+        long rampRequests = (long) (warmUpNanos / interval / 2);
+        long start = System.nanoTime();
+        long measureFrom = start + warmUpNanos;
+        long end = measureFrom + duration.toNanos();
+        for (long i = 0; ; i++) {
+            long intended = i < rampRequests
+                ? start + (long) Math.sqrt(2 * warmUpNanos * interval * i)
+                : measureFrom + (long) ((i - rampRequests) * interval);
+            if (intended - end >= 0) {
+                break;
+            }
+            long now;
+            while ((now = System.nanoTime()) - intended < 0) {
+                LockSupport.parkNanos(intended - now);
+            }
+            // A late sender catches up in a burst; the latency still counts from the schedule
+            boolean measured = intended - measureFrom >= 0;
+            long sent = now;
+            String tenant = "tenant-" + (i % TENANTS);
+            pending.incrementAndGet();
+            client.headers(headers -> headers.set("X-Tenant-Id", tenant))
+                .get()
+                .uri(url)
+                .responseSingle((response, body) -> body.then(Mono.just(response.status().code())))
+                .subscribe(
+                    status -> {
+                        long done = System.nanoTime();
+                        if (!measured) {
+                            return;
+                        }
+                        if (status == 200) {
+                            corrected.recordValue(Math.min(done - intended, HIGHEST_LATENCY));
+                            uncorrected.recordValue(Math.min(done - sent, HIGHEST_LATENCY));
+                        }
+                        else {
+                            errors.incrementAndGet();
+                        }
+                    },
+                    error -> {
+                        if (measured) {
+                            errors.incrementAndGet();
+                        }
+                        pending.decrementAndGet();
+                    },
+                    pending::decrementAndGet);
+        }
+        while (pending.get() > 0) {
+            Thread.sleep(10);
+        }
+        return new Result(rate, corrected, uncorrected, errors.get(), duration.toNanos() / 1e9);
+    }
+
+    @Override
+    public void close ()
+    {
+        provider.disposeLater().block();
+        loops.disposeLater().block();
+    }
+}
@@ -0,0 +1,41 @@
+package com.simple.loadbalancer.loadtest;
+
+import com.simple.loadbalancer.stub.LatencyStubServer;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OpenLoopLoadGeneratorTest
+{
+    @Test
+    void sendsAtTheTargetRateWhateverTheLatency () throws InterruptedException
+    {
+        try (LatencyStubServer stub = LatencyStubServer.start(Duration.ofMillis(50));
+             OpenLoopLoadGenerator generator = new OpenLoopLoadGenerator(100)) {
+            OpenLoopLoadGenerator.Result result = generator.run(stub.url() + "/work", 200,
+                Duration.ofMillis(200), Duration.ofSeconds(1));
+
+            assertEquals(0, result.errors());
+            assertEquals(200, result.corrected().getTotalCount(), 2);
+            assertTrue(result.corrected().getValueAtPercentile(50) >= 50_000_000);
+        }
+    }
+
+    @Test
+    void countsTheWaitOfQueuedRequestsAsLatency () throws InterruptedException
+    {
+        // One connection serves 20 requests per second; at 100 per second the backlog grows
+        try (LatencyStubServer stub = LatencyStubServer.start(Duration.ofMillis(50));
+             OpenLoopLoadGenerator generator = new OpenLoopLoadGenerator(1)) {
+            OpenLoopLoadGenerator.Result result = generator.run(stub.url() + "/work", 100,
+                Duration.ZERO, Duration.ofSeconds(1));
+
+            assertEquals(100, result.corrected().getTotalCount(), 2);
+            assertTrue(result.corrected().getValueAtPercentile(99) > 2_000_000_000L);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.simple.loadbalancer.loadtest;
+
+import com.simple.loadbalancer.config.LoadBalancerConfig;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import org.HdrHistogram.Histogram;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * End-to-end latency report of every strategy in {@link LoadBalancerConfig#STRATEGIES}: a fleet
+ * of stub backends with the given latency distributions and failure rate is started once, then for
+ * each strategy the load balancer is started in-process in front of it and driven through
+ * {@code /forwardRequest/{path}} by the {@link OpenLoopLoadGenerator} at a fixed rate. The table
+ * printed, also written to {@code target/strategy-load-report.csv}, has the achieved throughput and
+ * the p50, p99, p99.9 and maximum latency corrected for coordinated omission, next to the
+ * uncorrected p99. Everything runs on the local machine, without network access.
+ *
+ * <p>Usage: {@code StrategyLoadReport [rate] [durationSeconds] [latencies] [failureRate]
+ * [in-process|processes]}, where {@code latencies} has one
+ * {@link com.simple.loadbalancer.stub.LatencyDistribution} spec per backend, separated by commas;
+ * defaults {@code 2000 20 lognormal:5ms:0.5,lognormal:5ms:0.5,lognormal:5ms:0.5,lognormal:25ms:0.5
+ * 0.01 in-process}. Run it with {@code target/classes} before {@code target/test-classes} on the
+ * class path, as a test class of the same name hides the application class.
+ *
+ * <p>Latency based ejection is turned off, so that the slow backend stays in and the report shows
+ * how each strategy copes with it rather than how outlier detection does.
+ */
+public class StrategyLoadReport
+{
+    private static final Duration WARM_UP = Duration.ofSeconds(10);
+    private static final Path CSV = Path.of("target", "strategy-load-report.csv");
+
+    public static void main (String[] args) throws IOException, InterruptedException
+    {
+        double rate = args.length > 0 ? Double.parseDouble(args[0]) : 2000;
+        Duration duration = Duration.ofSeconds(args.length > 1 ? Long.parseLong(args[1]) : 20);
+        List<String> latencies = Arrays.asList((args.length > 2 ? args[2]
+            : "lognormal:5ms:0.5,lognormal:5ms:0.5,lognormal:5ms:0.5,lognormal:25ms:0.5")
+            .split(","));
+        double failureRate = args.length > 3 ? Double.parseDouble(args[3]) : 0.01;
+        boolean processes = args.length > 4 && args[4].equals("processes");
+        // Enough connections for a few seconds of backlog at the target rate
+        int connections = (int) Math.max(rate, 1000);
+
+        List<String> rows = new ArrayList<>();
+        try (StubFleet fleet = StubFleet.start(latencies, failureRate, processes);
+             OpenLoopLoadGenerator generator = new OpenLoopLoadGenerator(connections)) {
+            for (String strategy : LoadBalancerConfig.STRATEGIES) {
+                // Reactive data plane, so that no thread pool limits the requests in flight
+                ConfigurableApplicationContext context = LoadTestSupport.start(fleet.urls(),
+                    connections, "--loadbalancer.strategy=" + strategy,
+                    "--loadbalancer.outlier.latency-factor=0",
+                    "--loadbalancer.data-plane=reactive");
+                try {
+                    rows.add(row(strategy, generator.run(LoadTestSupport.forwardingUrl(context),
+                        rate, WARM_UP, duration)));
+                }
+                finally {
+                    context.close();
+                }
+            }
+        }
+
+        System.out.printf("%nbackends=%s failure-rate=%s stubs=%s duration=%ds%n", latencies,
+            failureRate, processes ? "processes" : "in-process", duration.toSeconds());
+        System.out.printf("%-22s %9s %9s %9s %9s %9s %9s %10s %8s%n", "strategy", "target/s",
+            "achieved", "p50 ms", "p99 ms", "p99.9 ms", "max ms", "raw p99 ms", "errors");
+        List<String> csv = new ArrayList<>(List.of("strategy,target_rate,achieved_rate,p50_ms,"
+            + "p99_ms,p999_ms,max_ms,uncorrected_p99_ms,errors"));
+        for (String row : rows) {
+            String[] columns = row.split(",");
+            System.out.printf("%-22s %9s %9s %9s %9s %9s %9s %10s %8s%n", (Object[]) columns);
+            csv.add(row);
+        }
+        Files.createDirectories(CSV.getParent());
+        Files.write(CSV, csv);
+        System.out.println("Written to " + CSV.toAbsolutePath());
+    }
+
+    private static String row (String strategy, OpenLoopLoadGenerator.Result result)
+    {
+        Histogram latency = result.corrected();
+        return String.format(Locale.ROOT, "%s,%.0f,%.0f,%.2f,%.2f,%.2f,%.2f,%.2f,%d", strategy,
+            result.targetRate(), result.achievedRate(),
+            latency.getValueAtPercentile(50) / 1e6,
+            latency.getValueAtPercentile(99) / 1e6,
+            latency.getValueAtPercentile(99.9) / 1e6,
+            latency.getMaxValue() / 1e6,
+            result.uncorrected().getValueAtPercentile(99) / 1e6,
+            result.errors());
+    }
+}
@@ -0,0 +1,121 @@
+package com.simple.loadbalancer.loadtest;
+
+import com.simple.loadbalancer.service.LoadBalancerService;
+import com.simple.loadbalancer.stub.LatencyDistribution;
+import com.simple.loadbalancer.stub.LatencyStubServer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A fleet of {@link LatencyStubServer} backends, each with its own latency distribution and the
+ * same failure rate, running either in this JVM or as local processes of their own. Processes keep
+ * the event loops of the stubs from competing with the load balancer and the load generator for
+ * the same JIT, heap and GC, at the cost of a few seconds of startup.
+ */
+final class StubFleet implements AutoCloseable
+{
+    private final List<LatencyStubServer> stubs = new ArrayList<>();
+    private final List<Process> processes = new ArrayList<>();
+    private final List<String> urls = new ArrayList<>();
+
+    private StubFleet ()
+    {
+    }
+
+    /**
+     * @param latencies   latency specs of the stubs, in the format of
+     *                    {@link LatencyDistribution#parse(String)}, one per stub
+     * @param failureRate share of the requests every stub answers with 500
+     * @param processes   whether every stub runs in a process of its own
+     */
+    static StubFleet start (List<String> latencies, double failureRate, boolean processes)
+        throws IOException
+    {
+        StubFleet fleet = new StubFleet();
+        try {
+            for (String latency : latencies) {
+                if (processes) {
+                    fleet.fork(latency, failureRate);
+                }
+                else {
+                    LatencyStubServer stub =
+                        LatencyStubServer.start(LatencyDistribution.parse(latency), failureRate);
+                    fleet.stubs.add(stub);
+                    fleet.urls.add(stub.url());
+                }
+            }
+            return fleet;
+        }
+        catch (IOException | RuntimeException e) {
+            fleet.close();
+            throw e;
+        }
+    }
+
+    List<String> urls ()
+    {
+        return urls;
+    }
+
+    private void fork (String latency, double failureRate) throws IOException
+    {
+        Process process = new ProcessBuilder(
+            ProcessHandle.current().info().command().orElse("java"), "-Xmx64m", "--enable-preview",
+            "-cp", classPath(), LatencyStubServer.class.getName(), latency,
+            Double.toString(failureRate))
+            .redirectError(ProcessBuilder.Redirect.INHERIT)
+            .start();
+        processes.add(process);
+        // The stub prints its URL once it is listening
+        BufferedReader out = new BufferedReader(
+            new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        String url = out.readLine();
+        if (url == null || !url.startsWith("http://")) {
+            throw new IOException("Stub process did not start, it printed: " + url);
+        }
+        urls.add(url);
+    }
+
+    private static String classPath ()
+    {
+        try {
+            // Main classes first, as a test class of the same name hides the application class
+            return Path.of(LoadBalancerService.class.getProtectionDomain().getCodeSource()
+                .getLocation().toURI()) + File.pathSeparator + System.getProperty("java.class.path");
+        }
+        catch (URISyntaxException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void close ()
+    {
+        stubs.forEach(LatencyStubServer::close);
+        for (Process process : processes) {
+            try {
+                // Closing its input stops the stub
+                process.getOutputStream().close();
+                if (!process.waitFor(5, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            }
+            catch (IOException e) {
+                process.destroyForcibly();
+            }
+            catch (InterruptedException e) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.simple.loadbalancer.loadtest;
+
+import com.simple.loadbalancer.stub.LatencyStubServer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Shows how the servlet data plane scales with concurrency when backends take 500 ms to answer,
+ * with Tomcat's platform thread pool and with {@code loadbalancer.virtual-threads.enabled=true}.
+ * With platform threads throughput levels off once every worker thread waits on a backend; with
+ * virtual threads it keeps growing with the number of requests in flight.
+ *
+ * <p>Usage: {@code VirtualThreadScalingLoadRun [backends] [durationSeconds] [concurrency...]},
+ * defaults {@code 4 15 100 400 1600 3200}.
+ */
+public class VirtualThreadScalingLoadRun
+{
+    public static void main (String[] args) throws InterruptedException
+    {
+        int backends = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        Duration duration = Duration.ofSeconds(args.length > 1 ? Long.parseLong(args[1]) : 15);
+        int[] concurrencies = args.length > 2
+            ? Arrays.stream(args, 2, args.length).mapToInt(Integer::parseInt).toArray()
+            : new int[]{100, 400, 1600, 3200};
+        int maxConcurrency = Arrays.stream(concurrencies).max().orElse(1);
+
+        List<LatencyStubServer> stubs = new ArrayList<>();
+        for (int i = 0; i < backends; i++) {
+            stubs.add(LatencyStubServer.start(Duration.ofMillis(500)));
+        }
+        List<String> urls = stubs.stream().map(LatencyStubServer::url).toList();
+        try {
+            List<String> results = new ArrayList<>();
+            for (boolean virtualThreads : new boolean[]{false, true}) {
+                ConfigurableApplicationContext context = LoadTestSupport.start(urls, maxConcurrency,
+                    "--loadbalancer.virtual-threads.enabled=" + virtualThreads,
+                    "--server.tomcat.max-connections=" + (maxConcurrency + 1000),
+                    "--server.tomcat.accept-count=" + maxConcurrency);
+                try {
+                    String url = LoadTestSupport.forwardingUrl(context);
+                    for (int concurrency : concurrencies) {
+                        String name = (virtualThreads ? "virtual" : "platform") + " c=" + concurrency;
+                        results.add(LoadTestSupport.measure(name, url, concurrency, duration));
+                    }
+                }
+                finally {
+                    context.close();
+                }
+            }
+            System.out.printf("%nbackends=%d latency=500ms duration=%ds%n", backends,
+                duration.toSeconds());
+            System.out.println(LoadTestSupport.HEADER);
+            results.forEach(System.out::println);
+        }
+        finally {
+            stubs.forEach(LatencyStubServer::close);
+        }
+    }
+}
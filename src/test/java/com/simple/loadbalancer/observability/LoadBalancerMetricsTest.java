@@ -0,0 +1,87 @@
+package com.simple.loadbalancer.observability;
+
+import com.simple.loadbalancer.status.Backend;
+import com.simple.loadbalancer.status.CircuitBreaker;
+import com.simple.loadbalancer.status.LatencyTracker;
+import com.simple.loadbalancer.status.OutlierDetector;
+import com.simple.loadbalancer.status.ServerLoadChecker;
+import com.simple.loadbalancer.status.ServerRegistry;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class LoadBalancerMetricsTest
+{
+    private final ServerLoadChecker loadChecker = new ServerLoadChecker(4, 50);
+    private final ServerRegistry registry = new ServerRegistry(loadChecker);
+    private final Backend server = registry.register("http://a");
+    private final OutlierDetector outlierDetector = new OutlierDetector(4, registry,
+        new LatencyTracker(4, TimeUnit.SECONDS.toNanos(10)),
+        new OutlierDetector.Thresholds(2, 0, 0, Duration.ofSeconds(10), 0, Duration.ofSeconds(30),
+            Duration.ofSeconds(300), 100));
+    private final CircuitBreaker circuitBreaker =
+        new CircuitBreaker(4, registry, loadChecker, 1, Long.MAX_VALUE, 1, Long.MAX_VALUE);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final LoadBalancerMetrics metrics = new LoadBalancerMetrics(meterRegistry, 4,
+        "round-robin", loadChecker, outlierDetector, circuitBreaker);
+
+    @Test
+    void recordsRequestsPerServerAndOutcome ()
+    {
+        metrics.recordSelection(server);
+        metrics.recordSelection(server);
+        metrics.recordSelection(null);
+        metrics.recordSuccess(server, TimeUnit.MILLISECONDS.toNanos(20));
+        metrics.recordFailure(server, TimeUnit.MILLISECONDS.toNanos(5));
+        metrics.recordRejected(server);
+
+        assertEquals(2, meterRegistry.get("loadbalancer.strategy.decisions")
+            .tags("strategy", "round-robin", "server", "http://a").counter().count());
+        assertEquals(1, meterRegistry.get("loadbalancer.strategy.decisions")
+            .tags("server", "none").counter().count());
+        assertEquals(20, meterRegistry.get("loadbalancer.backend.requests")
+            .tags("server", "http://a", "outcome", "success").timer()
+            .totalTime(TimeUnit.MILLISECONDS));
+        assertEquals(1, meterRegistry.get("loadbalancer.backend.requests")
+            .tags("outcome", "failure").timer().count());
+        assertEquals(1, meterRegistry.get("loadbalancer.backend.rejected").counter().count());
+    }
+
+    @Test
+    void readsGaugesAndCountersFromTheServerState ()
+    {
+        loadChecker.incrementLoad(server.getId());
+        metrics.recordHealth(server, false, true);
+        registry.publish(List.of(server, registry.register("http://b")));
+        outlierDetector.recordFailure(server);
+        outlierDetector.recordFailure(server);
+        outlierDetector.sweep();
+        circuitBreaker.onFailure(server);
+
+        assertEquals(1, meterRegistry.get("loadbalancer.backend.in.flight").gauge().value());
+        assertEquals(0, meterRegistry.get("loadbalancer.backend.up").gauge().value());
+        assertEquals(1, meterRegistry.get("loadbalancer.backend.health.changes").counter().count());
+        assertEquals(1, meterRegistry.get("loadbalancer.backend.ejections").functionCounter()
+            .count());
+        assertEquals(CircuitBreaker.OPEN,
+            meterRegistry.get("loadbalancer.backend.circuit.state").gauge().value());
+        assertEquals(1, meterRegistry.get("loadbalancer.backend.circuit.openings").functionCounter()
+            .count());
+    }
+
+    @Test
+    void disabledMetricsRecordNothing ()
+    {
+        LoadBalancerMetrics.DISABLED.recordSelection(server);
+        LoadBalancerMetrics.DISABLED.recordSuccess(server, 1);
+        LoadBalancerMetrics.DISABLED.recordHealth(server, true, true);
+        assertFalse(LoadBalancerMetrics.DISABLED.isEnabled());
+    }
+}
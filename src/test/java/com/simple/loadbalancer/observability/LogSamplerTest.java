@@ -0,0 +1,27 @@
+package com.simple.loadbalancer.observability;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LogSamplerTest
+{
+    @Test
+    void writesOneMessagePerIntervalAndCountsTheOthers ()
+    {
+        AtomicLong now = new AtomicLong(1_000_000_000L);
+        LogSampler sampler = new LogSampler(Duration.ofSeconds(1), now::get);
+        assertEquals(0, sampler.sample());
+        assertEquals(-1, sampler.sample());
+        now.addAndGet(999_999_999);
+        assertEquals(-1, sampler.sample());
+
+        now.addAndGet(1);
+        assertEquals(2, sampler.sample());
+        now.addAndGet(5_000_000_000L);
+        assertEquals(0, sampler.sample());
+    }
+}
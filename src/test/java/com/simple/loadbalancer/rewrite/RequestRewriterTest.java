@@ -0,0 +1,135 @@
+package com.simple.loadbalancer.rewrite;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RequestRewriterTest
+{
+    private static final String MOUNT = "/forwardRequest";
+
+    @Test
+    void forwardsEveryPathSegmentWithTheQueryString ()
+    {
+        RequestRewriter rewriter = RequestRewriter.DEFAULT;
+        assertEquals("users/42/orders?page=2&q=a%20b",
+            rewriter.rewriteTarget(request("/forwardRequest/users/42/orders", "page=2&q=a%20b"),
+                MOUNT));
+        assertEquals("a%2Fb/", rewriter.rewriteTarget(request("/forwardRequest/a%2Fb/", null),
+            MOUNT));
+        assertEquals("", rewriter.rewriteTarget(request("/forwardRequest", null), MOUNT));
+
+        MockHttpServletRequest inContext = request("/app/forwardRequest/work", "");
+        inContext.setContextPath("/app");
+        assertEquals("work", rewriter.rewriteTarget(inContext, MOUNT));
+    }
+
+    @Test
+    void replacesTheFirstMatchingPrefixOfWholeSegments ()
+    {
+        RequestRewriter rewriter =
+            RequestRewriter.compile("prefix:/api/v1=/v1, prefix:/api=/, prefix:/=/root/", false);
+        assertEquals("v1/users?id=1", rewriter.rewriteTarget("/api/v1/users", 1, "id=1"));
+        assertEquals("v1", rewriter.rewriteTarget("/api/v1", 1, null));
+        assertEquals("v1/", rewriter.rewriteTarget("/api/v1/", 1, null));
+        // Not a whole segment of /api/v1, so the next rule applies
+        assertEquals("v10/users", rewriter.rewriteTarget("/api/v10/users", 1, null));
+        assertEquals("", rewriter.rewriteTarget("/api", 1, null));
+        assertEquals("root/apis", rewriter.rewriteTarget("/apis", 1, null));
+        assertEquals("root", rewriter.rewriteTarget("/", 1, null));
+    }
+
+    @Test
+    void dropsHopByHopHeadersAndTheHostOfTheClient ()
+    {
+        MockHttpServletRequest request = request("/forwardRequest/work", null);
+        request.addHeader("Host", "lb.example");
+        request.addHeader("Connection", "keep-alive, X-Hop");
+        request.addHeader("Keep-Alive", "timeout=5");
+        request.addHeader("Transfer-Encoding", "chunked");
+        request.addHeader("Upgrade", "h2c");
+        request.addHeader("X-Hop", "1");
+        request.addHeader("Accept", "text/plain");
+        request.addHeader("Accept", "application/json");
+        HttpHeaders headers = new HttpHeaders();
+
+        RequestRewriter.DEFAULT.copyHeaders(request, headers);
+
+        assertEquals(List.of("text/plain", "application/json"), headers.get("Accept"));
+        assertEquals(1, headers.size(), headers.toString());
+        assertTrue(RequestRewriter.isHopByHop("transfer-encoding"));
+        assertFalse(RequestRewriter.isHopByHop("Content-Length"));
+    }
+
+    @Test
+    void addsTheForwardedHeaders ()
+    {
+        RequestRewriter rewriter = RequestRewriter.compile("", true);
+        MockHttpServletRequest request = request("/forwardRequest/work", null);
+        request.setRemoteAddr("10.0.0.7");
+        request.addHeader("Host", "lb.example:8092");
+        HttpHeaders headers = new HttpHeaders();
+        rewriter.copyHeaders(request, headers);
+        assertEquals("10.0.0.7", headers.getFirst(RequestRewriter.X_FORWARDED_FOR));
+        assertEquals("http", headers.getFirst(RequestRewriter.X_FORWARDED_PROTO));
+        assertEquals("lb.example:8092", headers.getFirst(RequestRewriter.X_FORWARDED_HOST));
+
+        // Behind another proxy, the chain is extended and what the proxy saw is kept
+        request.addHeader(RequestRewriter.X_FORWARDED_FOR, "203.0.113.1");
+        request.addHeader(RequestRewriter.X_FORWARDED_FOR, "198.51.100.2");
+        request.addHeader(RequestRewriter.X_FORWARDED_PROTO, "https");
+        headers = new HttpHeaders();
+        rewriter.copyHeaders(request, headers);
+        assertEquals(List.of("203.0.113.1, 198.51.100.2, 10.0.0.7"),
+            headers.get(RequestRewriter.X_FORWARDED_FOR));
+        assertEquals(List.of("https"), headers.get(RequestRewriter.X_FORWARDED_PROTO));
+    }
+
+    @Test
+    void appliesTheHeaderRules ()
+    {
+        RequestRewriter rewriter = RequestRewriter.compile(
+            "set-header:X-Env=prod,add-header:Via=1.1 lb,remove-header:Cookie", false);
+        MockHttpServletRequest request = request("/forwardRequest/work", null);
+        request.addHeader("x-env", "dev");
+        request.addHeader("Via", "1.1 edge");
+        request.addHeader("Cookie", "SESSION=abc");
+        HttpHeaders headers = new HttpHeaders();
+
+        rewriter.copyHeaders(request, headers);
+
+        assertEquals(List.of("prod"), headers.get("X-Env"));
+        assertEquals(List.of("1.1 edge", "1.1 lb"), headers.get("Via"));
+        assertNull(headers.get("Cookie"));
+    }
+
+    @Test
+    void rejectsInvalidRules ()
+    {
+        assertThrows(IllegalArgumentException.class,
+            () -> RequestRewriter.compile("prefix:/api", false));
+        assertThrows(IllegalArgumentException.class,
+            () -> RequestRewriter.compile("set-header:=x", false));
+        assertThrows(IllegalArgumentException.class,
+            () -> RequestRewriter.compile("remove-header:X-A=b", false));
+        assertThrows(IllegalArgumentException.class,
+            () -> RequestRewriter.compile("regex:/a=/b", false));
+        assertThrows(IllegalArgumentException.class,
+            () -> RequestRewriter.compile("/a=/b", false));
+    }
+
+    private static MockHttpServletRequest request (String uri, String query)
+    {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", uri);
+        request.setQueryString(query);
+        return request;
+    }
+}
@@ -0,0 +1,62 @@
+package com.simple.loadbalancer.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AffinityKeyTest
+{
+    @Test
+    void hashesAHeader ()
+    {
+        AffinityKey key = AffinityKey.parse("header:X-Tenant-Id");
+        assertEquals("X-Tenant-Id", key.getHeaderName());
+        assertEquals(key.hash("acme", "a"), key.hash("acme", "b"));
+        assertNotEquals(key.hash("acme", null), key.hash("globex", null));
+        assertEquals(AffinityKey.NONE, key.hash(null, "a"));
+        assertEquals(AffinityKey.NONE, key.hash("", "a"));
+    }
+
+    @Test
+    void hashesTheValueOfACookie ()
+    {
+        AffinityKey key = AffinityKey.parse("cookie:SESSION");
+        AffinityKey header = AffinityKey.parse("header:any");
+        assertEquals("Cookie", key.getHeaderName());
+        long expected = header.hash("abc", null);
+        assertEquals(expected, key.hash("SESSION=abc", null));
+        assertEquals(expected, key.hash("a=1; SESSION=abc; b=2", null));
+        assertEquals(expected, key.hash("MYSESSION=xyz; SESSION=abc", null));
+        assertEquals(AffinityKey.NONE, key.hash("SESSIONS=abc; a=1", null));
+    }
+
+    @Test
+    void hashesAPathSegment ()
+    {
+        AffinityKey key = AffinityKey.parse("path:1");
+        AffinityKey header = AffinityKey.parse("header:any");
+        assertNull(key.getHeaderName());
+        long expected = header.hash("acme", null);
+        assertEquals(expected, key.hash(null, "tenants/acme/orders"));
+        assertEquals(expected, key.hash(null, "/tenants/acme"));
+        assertEquals(expected, key.hash(null, "tenants/acme?page=2"));
+        assertEquals(AffinityKey.NONE, key.hash(null, "tenants"));
+        // Slashes in the query do not start segments
+        assertEquals(AffinityKey.NONE, key.hash(null, "tenants?next=/acme"));
+        assertEquals(AffinityKey.NONE, key.hash(null, "tenants/?next=/acme"));
+    }
+
+    @Test
+    void rejectsUnknownSources ()
+    {
+        assertEquals(AffinityKey.DISABLED, AffinityKey.parse(" "));
+        assertEquals(AffinityKey.NONE, AffinityKey.DISABLED.hash("a", "b"));
+        assertThrows(IllegalArgumentException.class, () -> AffinityKey.parse("query:id"));
+        assertThrows(IllegalArgumentException.class, () -> AffinityKey.parse("header:"));
+        assertThrows(IllegalArgumentException.class, () -> AffinityKey.parse("path:-1"));
+        assertThrows(IllegalArgumentException.class, () -> AffinityKey.parse("path:first"));
+    }
+}
@@ -0,0 +1,143 @@
+package com.simple.loadbalancer.service;
+
+import com.simple.loadbalancer.status.Backend;
+import com.simple.loadbalancer.status.ServerLoadChecker;
+import com.simple.loadbalancer.status.ServerRegistry;
+import com.simple.loadbalancer.status.ServerSnapshot;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConsistentHashStrategyTest
+{
+    private static final int SERVERS = 10;
+    private static final int KEYS = 20_000;
+
+    private final ServerLoadChecker checker = new ServerLoadChecker(16);
+    private final ConsistentHashStrategy strategy = new ConsistentHashStrategy(checker, 100, 0);
+    private final ServerRegistry registry = new ServerRegistry(checker, strategy::prepare);
+    private final AffinityKey key = AffinityKey.parse("header:X-User");
+
+    @Test
+    void routesEveryKeyToTheSameServer ()
+    {
+        ServerSnapshot servers = publish(SERVERS);
+        int[] perServer = new int[SERVERS];
+        for (int k = 0; k < KEYS; k++) {
+            Backend server = select(servers, k);
+            assertEquals(server, select(servers, k));
+            perServer[server.getId()]++;
+        }
+        // 100 virtual nodes per server keep the shares within a third of the average
+        for (int count : perServer) {
+            assertTrue(Math.abs(count - KEYS / SERVERS) < KEYS / SERVERS / 3, "share " + count);
+        }
+        assertNull(strategy.selectServer(ServerSnapshot.EMPTY, 1));
+    }
+
+    @Test
+    void movesOnlyTheKeysOfARemovedOrReturningServer ()
+    {
+        ServerSnapshot all = publish(SERVERS);
+        Backend[] before = new Backend[KEYS];
+        for (int k = 0; k < KEYS; k++) {
+            before[k] = select(all, k);
+        }
+
+        Backend removed = all.get(3);
+        List<Backend> remaining = new ArrayList<>(all.asList());
+        remaining.remove(removed);
+        ServerSnapshot withoutOne = registry.publish(remaining);
+        int moved = 0;
+        for (int k = 0; k < KEYS; k++) {
+            Backend after = select(withoutOne, k);
+            if (before[k] == removed) {
+                assertNotEquals(removed, after);
+                moved++;
+            }
+            else {
+                // Keys of the other servers stay where they were
+                assertEquals(before[k], after);
+            }
+        }
+        assertTrue(Math.abs(moved - KEYS / SERVERS) < KEYS / SERVERS / 3, "moved " + moved);
+
+        // When the server comes back its keys return to it, and only those
+        ServerSnapshot restored = registry.publish(all.asList());
+        for (int k = 0; k < KEYS; k++) {
+            assertEquals(before[k], select(restored, k));
+        }
+    }
+
+    @Test
+    void placesRequestsHoldingAnOlderSnapshotOnThePublishedRing ()
+    {
+        ServerSnapshot all = publish(SERVERS);
+        Backend removed = all.get(3);
+        List<Backend> remaining = new ArrayList<>(all.asList());
+        remaining.remove(removed);
+        ServerSnapshot withoutOne = registry.publish(remaining);
+
+        for (int k = 0; k < KEYS; k++) {
+            // Taken before the server was removed, and served as the newer snapshot is
+            Backend server = select(all, k);
+            assertNotEquals(removed, server);
+            assertEquals(select(withoutOne, k), server);
+        }
+    }
+
+    @Test
+    void boundsTheLoadOfAHotServer ()
+    {
+        ConsistentHashStrategy bounded = new ConsistentHashStrategy(checker, 100, 1.25);
+        ServerSnapshot servers = publish(4);
+        bounded.prepare(servers);
+        // Every request carries the same hot key and stays in flight
+        long hotKey = key.hash("hot-user", null);
+        Backend home = bounded.selectServer(servers, hotKey);
+        int requests = 400;
+        for (int i = 0; i < requests; i++) {
+            Backend server = bounded.selectServer(servers, hotKey);
+            checker.incrementLoad(server.getId());
+        }
+        long cap = (long) Math.ceil(1.25 * requests / servers.size());
+        for (int i = 0; i < servers.size(); i++) {
+            assertTrue(checker.getCurrentLoad(i) <= cap, "load " + checker.getCurrentLoad(i));
+        }
+        assertEquals(cap, checker.getCurrentLoad(home.getId()));
+    }
+
+    @Test
+    void placesRequestsWithoutKeyAnywhere ()
+    {
+        ServerSnapshot servers = publish(4);
+        boolean[] seen = new boolean[4];
+        for (int i = 0; i < 1_000; i++) {
+            seen[strategy.selectServer(servers).getId()] = true;
+        }
+        for (boolean server : seen) {
+            assertTrue(server);
+        }
+    }
+
+    private Backend select (ServerSnapshot servers, int k)
+    {
+        return strategy.selectServer(servers, key.hash("user-" + k, null));
+    }
+
+    private ServerSnapshot publish (int count)
+    {
+        List<Backend> servers = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            servers.add(registry.register("http://10.0.0." + i + ":8080"));
+        }
+        return registry.publish(servers);
+    }
+}
@@ -0,0 +1,179 @@
+package com.simple.loadbalancer.service;
+
+import com.simple.loadbalancer.status.Backend;
+import com.simple.loadbalancer.status.ServerLoadChecker;
+import com.simple.loadbalancer.status.ServerSnapshot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LeastConnectionsStrategyTest
+{
+    @Test
+    void selectsTheServerWithFewestRequestsInFlight ()
+    {
+        ServerLoadChecker checker = new ServerLoadChecker(8);
+        ServerSnapshot servers = servers(checker, 4);
+        load(checker, servers.get(0), 3);
+        load(checker, servers.get(1), 1);
+        load(checker, servers.get(2), 2);
+        load(checker, servers.get(3), 5);
+
+        LeastConnectionsStrategy strategy = new LeastConnectionsStrategy(checker);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(servers.get(1), strategy.selectServer(servers));
+        }
+        assertNull(strategy.selectServer(ServerSnapshot.EMPTY));
+    }
+
+    @Test
+    void breaksTiesAtRandom ()
+    {
+        ServerLoadChecker checker = new ServerLoadChecker(8);
+        ServerSnapshot servers = servers(checker, 4);
+        load(checker, servers.get(0), 1);
+
+        LeastConnectionsStrategy strategy = new LeastConnectionsStrategy(checker);
+        int[] picks = new int[servers.size()];
+        int selections = 30_000;
+        for (int i = 0; i < selections; i++) {
+            picks[strategy.selectServer(servers).getId()]++;
+        }
+        assertEquals(0, picks[0]);
+        for (int i = 1; i < picks.length; i++) {
+            // Each of the three idle servers should get a third of the picks
+            assertTrue(Math.abs(picks[i] - selections / 3) < selections / 30,
+                "server " + i + " got " + picks[i] + " picks");
+        }
+    }
+
+    @Test
+    void selectsAServerWhenAllAreSaturated ()
+    {
+        ServerLoadChecker checker = new ServerLoadChecker(8, 1);
+        ServerSnapshot servers = servers(checker, 2);
+        load(checker, servers.get(0), 2);
+        load(checker, servers.get(1), 1);
+        assertEquals(servers.get(1), new LeastConnectionsStrategy(checker).selectServer(servers));
+    }
+
+    @Test
+    void keepsRequestsEvenlySpreadUnderConcurrentLoad () throws InterruptedException
+    {
+        int threads = 64;
+        int requestsPerThread = 2_000;
+        ServerLoadChecker checker = new ServerLoadChecker(32);
+        ServerSnapshot servers = servers(checker, 16);
+        LeastConnectionsStrategy strategy = new LeastConnectionsStrategy(checker);
+        AtomicLongArray picks = new AtomicLongArray(servers.size());
+        AtomicLongArray peakLoad = new AtomicLongArray(servers.size());
+
+        runConcurrently(threads, () -> {
+            for (int i = 0; i < requestsPerThread; i++) {
+                Backend server = strategy.selectServer(servers);
+                checker.incrementLoad(server.getId());
+                picks.incrementAndGet(server.getId());
+                peakLoad.accumulateAndGet(server.getId(), checker.getCurrentLoad(server.getId()),
+                    Math::max);
+                LockSupport.parkNanos(20_000); // The request is in flight
+                checker.decrementLoad(server.getId());
+            }
+        });
+
+        long total = 0;
+        long min = Long.MAX_VALUE;
+        long max = 0;
+        for (int i = 0; i < servers.size(); i++) {
+            assertEquals(0, checker.getCurrentLoad(i));
+            total += picks.get(i);
+            min = Math.min(min, picks.get(i));
+            max = Math.max(max, picks.get(i));
+        }
+        assertEquals((long) threads * requestsPerThread, total);
+        // Equal servers should each get an equal share, give or take 20%
+        long share = total / servers.size();
+        assertTrue(min > share * 0.8 && max < share * 1.2, "picks between " + min + " and " + max);
+        // With 64 requests in flight over 16 servers the average is 4; the momentary races between
+        // selecting a server and counting the request on it must not let one server run away
+        for (int i = 0; i < servers.size(); i++) {
+            assertTrue(peakLoad.get(i) <= 16, "server " + i + " peaked at " + peakLoad.get(i));
+        }
+    }
+
+    @Test
+    void sendsFewerRequestsToASlowerServer () throws InterruptedException
+    {
+        int threads = 32;
+        int requestsPerThread = 500;
+        ServerLoadChecker checker = new ServerLoadChecker(8);
+        ServerSnapshot servers = servers(checker, 4);
+        Backend slow = servers.get(0);
+        LeastConnectionsStrategy strategy = new LeastConnectionsStrategy(checker);
+        AtomicLongArray picks = new AtomicLongArray(servers.size());
+
+        runConcurrently(threads, () -> {
+            for (int i = 0; i < requestsPerThread; i++) {
+                Backend server = strategy.selectServer(servers);
+                checker.incrementLoad(server.getId());
+                picks.incrementAndGet(server.getId());
+                LockSupport.parkNanos(server == slow ? 1_000_000 : 100_000);
+                checker.decrementLoad(server.getId());
+            }
+        });
+
+        for (int i = 1; i < servers.size(); i++) {
+            assertTrue(picks.get(slow.getId()) * 2 < picks.get(i),
+                "slow server got " + picks.get(slow.getId()) + ", server " + i + " got "
+                    + picks.get(i));
+        }
+    }
+
+    private static ServerSnapshot servers (ServerLoadChecker checker, int count)
+    {
+        Backend[] servers = new Backend[count];
+        for (int i = 0; i < count; i++) {
+            String url = "http://server" + i;
+            servers[i] = new Backend(checker.register(url), url);
+        }
+        return ServerSnapshot.of(1, servers);
+    }
+
+    private static void load (ServerLoadChecker checker, Backend server, int requests)
+    {
+        for (int i = 0; i < requests; i++) {
+            checker.incrementLoad(server.getId());
+        }
+    }
+
+    private static void runConcurrently (int threads, Runnable work) throws InterruptedException
+    {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                }
+                catch (InterruptedException e) {
+                    return;
+                }
+                work.run();
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+}
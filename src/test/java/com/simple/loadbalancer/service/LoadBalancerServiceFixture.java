@@ -0,0 +1,211 @@
+package com.simple.loadbalancer.service;
+
+import com.simple.loadbalancer.client.BackendClient;
+import com.simple.loadbalancer.client.PooledBackendClient;
+import com.simple.loadbalancer.cluster.ClusterState;
+import com.simple.loadbalancer.observability.LoadBalancerMetrics;
+import com.simple.loadbalancer.rewrite.RequestRewriter;
+import com.simple.loadbalancer.status.Backend;
+import com.simple.loadbalancer.status.CircuitBreaker;
+import com.simple.loadbalancer.status.ConcurrencyLimiter;
+import com.simple.loadbalancer.status.HealthChecker;
+import com.simple.loadbalancer.status.LatencyTracker;
+import com.simple.loadbalancer.status.OutlierDetector;
+import com.simple.loadbalancer.status.ServerLoadChecker;
+import com.simple.loadbalancer.status.ServerRegistry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wires a {@link LoadBalancerService} outside of Spring for tests and benchmarks. Unless replaced,
+ * the outlier detector never ejects, the circuit breaker never opens, the concurrency limiter
+ * stays at the per-server limit, requests are neither retried nor hedged and nothing is cached or
+ * measured, so that only what a test sets up shapes the traffic.
+ *
+ * <p>Usage example:
+ * <pre>
+ *     try (LoadBalancerServiceFixture fixture = new LoadBalancerServiceFixture(50)) {
+ *         LoadBalancerService service = fixture.retryPolicy(retryPolicy).build();
+ *         fixture.publish(first.url(), second.url());
+ *         ...
+ *     }
+ * </pre>
+ */
+public class LoadBalancerServiceFixture implements AutoCloseable
+{
+    /* Servers the load accounting and the per-server state have room for */
+    public static final int MAX_SERVERS = 16;
+
+    private final int maxRequestsPerServer;
+    private final ServerLoadChecker serverLoadChecker;
+    private final ServerRegistry serverRegistry;
+    private final LatencyTracker latencyTracker;
+    private final OutlierDetector outlierDetector;
+    private LoadBalancingStrategy strategy;
+    private BackendClient backendClient;
+    private PooledBackendClient ownBackendClient;
+    private CircuitBreaker circuitBreaker;
+    private ConcurrencyLimiter concurrencyLimiter;
+    private RetryPolicy retryPolicy = new RetryPolicy(0, 0, 0, 0, 0);
+    private ResponseCache responseCache = ResponseCache.DISABLED;
+    private LoadBalancerMetrics metrics = LoadBalancerMetrics.DISABLED;
+    private ClusterState clusterState = ClusterState.DISABLED;
+
+    /**
+     * @param maxRequestsPerServer the requests a server may have in flight, which is also the
+     *                             size of its connection pool
+     */
+    public LoadBalancerServiceFixture (int maxRequestsPerServer)
+    {
+        this.maxRequestsPerServer = maxRequestsPerServer;
+        this.serverLoadChecker = new ServerLoadChecker(MAX_SERVERS, maxRequestsPerServer);
+        // Lookup tables of the strategy are built before every snapshot is published
+        this.serverRegistry = new ServerRegistry(serverLoadChecker, snapshot -> {
+            if (strategy != null) {
+                strategy.prepare(snapshot);
+            }
+        });
+        this.latencyTracker = new LatencyTracker(MAX_SERVERS, TimeUnit.SECONDS.toNanos(10));
+        this.outlierDetector = new OutlierDetector(MAX_SERVERS, serverRegistry, latencyTracker,
+            new OutlierDetector.Thresholds(0, 0, 0, Duration.ofSeconds(10), 0,
+                Duration.ofSeconds(30), Duration.ofSeconds(300), 10));
+        this.circuitBreaker = new CircuitBreaker(MAX_SERVERS, serverRegistry, serverLoadChecker,
+            Integer.MAX_VALUE, Long.MAX_VALUE, 1, Long.MAX_VALUE);
+        this.concurrencyLimiter = new ConcurrencyLimiter(MAX_SERVERS, serverLoadChecker, 1,
+            maxRequestsPerServer, Long.MAX_VALUE, 0.9);
+    }
+
+    public ServerLoadChecker serverLoadChecker ()
+    {
+        return serverLoadChecker;
+    }
+
+    public ServerRegistry serverRegistry ()
+    {
+        return serverRegistry;
+    }
+
+    public LatencyTracker latencyTracker ()
+    {
+        return latencyTracker;
+    }
+
+    public OutlierDetector outlierDetector ()
+    {
+        return outlierDetector;
+    }
+
+    public CircuitBreaker circuitBreaker ()
+    {
+        return circuitBreaker;
+    }
+
+    public LoadBalancerServiceFixture strategy (LoadBalancingStrategy strategy)
+    {
+        this.strategy = strategy;
+        return this;
+    }
+
+    /**
+     * Sends the requests through {@code backendClient}, which the caller closes, rather than
+     * through a pooled client of {@code maxRequestsPerServer} connections per server.
+     */
+    public LoadBalancerServiceFixture backendClient (BackendClient backendClient)
+    {
+        this.backendClient = backendClient;
+        return this;
+    }
+
+    public LoadBalancerServiceFixture circuitBreaker (CircuitBreaker circuitBreaker)
+    {
+        this.circuitBreaker = circuitBreaker;
+        return this;
+    }
+
+    public LoadBalancerServiceFixture concurrencyLimiter (ConcurrencyLimiter concurrencyLimiter)
+    {
+        this.concurrencyLimiter = concurrencyLimiter;
+        return this;
+    }
+
+    public LoadBalancerServiceFixture retryPolicy (RetryPolicy retryPolicy)
+    {
+        this.retryPolicy = retryPolicy;
+        return this;
+    }
+
+    public LoadBalancerServiceFixture responseCache (ResponseCache responseCache)
+    {
+        this.responseCache = responseCache;
+        return this;
+    }
+
+    public LoadBalancerServiceFixture metrics (LoadBalancerMetrics metrics)
+    {
+        this.metrics = metrics;
+        return this;
+    }
+
+    public LoadBalancerServiceFixture clusterState (ClusterState clusterState)
+    {
+        this.clusterState = clusterState;
+        return this;
+    }
+
+    /**
+     * @return a service routing with the strategy set, round-robin by default
+     */
+    public LoadBalancerService build ()
+    {
+        if (strategy == null) {
+            strategy = new RoundRobinStrategy(serverLoadChecker);
+        }
+        if (backendClient == null) {
+            ownBackendClient = new PooledBackendClient(maxRequestsPerServer,
+                maxRequestsPerServer * MAX_SERVERS, -1, Duration.ofSeconds(2),
+                Duration.ofSeconds(30), Duration.ofSeconds(1), Duration.ofSeconds(30));
+            backendClient = ownBackendClient;
+        }
+        return new LoadBalancerService(strategy, serverLoadChecker, latencyTracker,
+            serverRegistry, backendClient,
+            new HealthChecker(MAX_SERVERS, Duration.ofSeconds(2), Duration.ZERO, 2, 3),
+            new Resilience(outlierDetector, circuitBreaker, concurrencyLimiter, retryPolicy),
+            responseCache, metrics, new BufferPool(16 * 1024, 64), AffinityKey.DISABLED,
+            clusterState, RequestRewriter.DEFAULT);
+    }
+
+    /**
+     * Makes the given servers the only ones eligible for traffic, in place of the servers of the
+     * configuration file.
+     *
+     * @return the records of the servers, in the same order
+     */
+    public List<Backend> publish (String... urls)
+    {
+        List<Backend> servers = new ArrayList<>();
+        for (String url : urls) {
+            servers.add(serverRegistry.register(url));
+        }
+        serverRegistry.publish(servers);
+        return servers;
+    }
+
+    /**
+     * Closes the backend client the fixture created, if any.
+     */
+    @Override
+    public void close ()
+    {
+        if (ownBackendClient != null) {
+            try {
+                ownBackendClient.destroy();
+            }
+            catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.simple.loadbalancer.service;
+
+import com.simple.loadbalancer.client.PooledBackendClient;
+import com.simple.loadbalancer.cluster.ClusterState;
+import com.simple.loadbalancer.status.Backend;
+import com.simple.loadbalancer.stub.StubBackend;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Forwards requests to a stub backend through the service alone, without the web layer.
+ */
+class LoadBalancerServiceTest
+{
+    private final LoadBalancerServiceFixture fixture = new LoadBalancerServiceFixture(8);
+    private final LoadBalancerService service = fixture.build();
+    private final StubBackend backend = StubBackend.start();
+
+    LoadBalancerServiceTest () throws Exception
+    {
+        fixture.publish(backend.url());
+    }
+
+    @AfterEach
+    void close ()
+    {
+        fixture.close();
+        backend.close();
+    }
+
+    @Test
+    void relaysTheErrorStatusesOfTheBackend () throws Exception
+    {
+        for (HttpStatus status : new HttpStatus[] {HttpStatus.NOT_FOUND,
+            HttpStatus.SERVICE_UNAVAILABLE}) {
+            ResponseEntity<?> response = service.forwardRequest(HttpMethod.POST,
+                new HttpHeaders(), "body", "status/" + status.value());
+
+            assertEquals(status, response.getStatusCode());
+            assertEquals("status " + status.value(), response.getBody());
+            assertEquals(String.valueOf(status.value()),
+                response.getHeaders().getFirst("X-Stub-Status"));
+            assertFalse(response.getHeaders().containsKey("Keep-Alive"));
+        }
+    }
+
+    @Test
+    void leavesTheBackendConnectionHeadersOutOfBufferedResponses () throws Exception
+    {
+        // Sent chunked, with Keep-Alive
+        ResponseEntity<?> response = service.forwardRequest(HttpMethod.POST, new HttpHeaders(),
+            "hello", "echo");
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("hello", response.getBody());
+        assertFalse(response.getHeaders().containsKey(HttpHeaders.TRANSFER_ENCODING));
+        assertFalse(response.getHeaders().containsKey("Keep-Alive"));
+        assertTrue(response.getHeaders().containsKey(HttpHeaders.DATE));
+    }
+
+    @Test
+    void streamsRequestBodiesToTheBackend () throws Exception
+    {
+        MockHttpServletRequest request =
+            new MockHttpServletRequest("POST", "/forwardRequest/count");
+        request.setContent(new byte[3 * 1024 * 1024 + 17]);
+        request.setContentType("application/octet-stream");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        service.streamRequest(request, response, "count");
+
+        assertEquals(200, response.getStatus());
+        assertEquals(String.valueOf(3 * 1024 * 1024 + 17), response.getContentAsString());
+    }
+
+    @Test
+    void recordsTheLatencyOfFailedRequests () throws Exception
+    {
+        int server = fixture.serverRegistry().get(backend.url()).getId();
+        backend.setLatency(Duration.ofMillis(200));
+
+        service.forwardRequest(HttpMethod.GET, new HttpHeaders(), null, "status/503");
+
+        // Seen as slow by the latency-aware strategies, not only as failing
+        double latency = fixture.latencyTracker().getLatency(server);
+        assertTrue(latency >= TimeUnit.MILLISECONDS.toNanos(150), latency + " ns");
+    }
+
+    @Test
+    void startsANewServerWithoutTheStateOfTheOneWhoseSlotItTakes () throws Exception
+    {
+        Backend old = fixture.serverRegistry().get(backend.url());
+        backend.setLatency(Duration.ofMillis(100));
+        service.forwardRequest(HttpMethod.GET, new HttpHeaders(), null, "status/503");
+        assertTrue(fixture.latencyTracker().getLatency(old.getId()) > 0);
+
+        fixture.serverRegistry().drain(old);
+        fixture.serverRegistry().remove(old);
+        Backend replacement = fixture.serverRegistry().register("http://replacement");
+
+        assertEquals(old.getId(), replacement.getId());
+        assertEquals(0, fixture.latencyTracker().getLatency(replacement.getId()));
+    }
+
+    @Test
+    void releasesTheClientStateOfARemovedServer () throws Exception
+    {
+        Set<String> released = ConcurrentHashMap.newKeySet();
+        PooledBackendClient client = new PooledBackendClient(8, 8, -1, Duration.ofSeconds(2),
+            Duration.ofSeconds(30), Duration.ofSeconds(1), Duration.ofSeconds(30))
+        {
+            @Override
+            public void release (String server)
+            {
+                released.add(server);
+                super.release(server);
+            }
+        };
+        try (LoadBalancerServiceFixture pooled =
+                 new LoadBalancerServiceFixture(8).backendClient(client)) {
+            LoadBalancerService pooledService = pooled.build();
+            Backend server = pooled.publish(backend.url()).get(0);
+            assertEquals(HttpStatus.OK, pooledService.forwardRequest(HttpMethod.GET,
+                new HttpHeaders(), null, "work").getStatusCode());
+
+            pooled.serverRegistry().drain(server);
+            pooled.serverRegistry().remove(server);
+
+            assertEquals(Set.of(backend.url()), released);
+        }
+        finally {
+            client.destroy();
+        }
+    }
+
+    @Test
+    void keepsTheServersThatPassTheLocalProbesWhenTheClusterFindsThemAllDown () throws Exception
+    {
+        Set<String> downInCluster = ConcurrentHashMap.newKeySet();
+        ClusterState votes = new ClusterState(null, null, null, null, 0, Duration.ZERO)
+        {
+            @Override
+            public boolean isDownInCluster (Backend server)
+            {
+                return downInCluster.contains(server.getUrl());
+            }
+        };
+        try (LoadBalancerServiceFixture clustered =
+                 new LoadBalancerServiceFixture(8).clusterState(votes);
+             StubBackend other = StubBackend.start()) {
+            LoadBalancerService clusteredService = clustered.build();
+            List<Backend> servers = clustered.publish(backend.url(), other.url());
+            // Without the servers of the configuration file, which count as up until probed
+            for (Backend configured : clustered.serverRegistry().getAll()) {
+                if (!servers.contains(configured)) {
+                    clustered.serverRegistry().drain(configured);
+                    clustered.serverRegistry().remove(configured);
+                }
+            }
+
+            downInCluster.add(backend.url());
+            clusteredService.performHealthChecks();
+            assertEquals(List.of(servers.get(1)),
+                clustered.serverRegistry().getSnapshot().asList());
+
+            // A vote against every server is not followed
+            downInCluster.add(other.url());
+            clusteredService.performHealthChecks();
+            assertEquals(servers, clustered.serverRegistry().getSnapshot().asList());
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.simple.loadbalancer.service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ResponseCacheTest
+{
+    private final AtomicLong now = new AtomicLong(1_000_000_000L);
+    private final ResponseCache cache =
+        new ResponseCache(1024 * 1024, 1024, Duration.ofMinutes(1), now::get);
+    private final AtomicInteger fetches = new AtomicInteger();
+    private final List<HttpHeaders> sentHeaders = new ArrayList<>();
+
+    @Test
+    void servesFreshResponsesFromMemory () throws Exception
+    {
+        assertEquals("body", get("a", backend("max-age=10", null, "body")).getBody());
+        now.addAndGet(TimeUnit.SECONDS.toNanos(9));
+        ResponseEntity<?> hit = get("a", backend("max-age=10", null, "other"));
+        assertEquals("body", hit.getBody());
+        assertEquals("9", hit.getHeaders().getFirst(HttpHeaders.AGE));
+        assertEquals(1, fetches.get());
+
+        // Stale without a validator: fetched again
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertEquals("other", get("a", backend("max-age=10", null, "other")).getBody());
+        assertEquals(2, fetches.get());
+        assertEquals(new ResponseCache.Stats(1, 2, 0, 0, 1, 1, 5 + 256), cache.getStats());
+    }
+
+    @Test
+    void storesOnlyWhatTheBackendAllows () throws Exception
+    {
+        for (String cacheControl : new String[] {null, "no-store, max-age=10", "private, max-age=10",
+            "max-age=0"}) {
+            get("a", backend(cacheControl, null, "body"));
+            get("a", backend(cacheControl, null, "body"));
+        }
+        assertEquals(8, fetches.get());
+
+        HttpHeaders authorized = new HttpHeaders();
+        authorized.setBearerAuth("token");
+        cache.get("b", authorized, backend("max-age=10", null, "body"));
+        cache.get("b", authorized, backend("max-age=10", null, "body"));
+        assertEquals(10, fetches.get());
+        assertEquals(0, cache.getStats().entries());
+    }
+
+    @Test
+    void revalidatesStaleResponsesWithTheirETag () throws Exception
+    {
+        get("a", backend("max-age=10", "\"v1\"", "body"));
+        now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        ResponseEntity<?> response = get("a", (HttpHeaders headers) -> {
+            fetches.incrementAndGet();
+            sentHeaders.add(headers);
+            HttpHeaders notModified = new HttpHeaders();
+            notModified.setCacheControl("max-age=20");
+            return new ResponseEntity<>(notModified, HttpStatus.NOT_MODIFIED);
+        });
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("body", response.getBody());
+        assertEquals("\"v1\"", sentHeaders.get(1).getFirst(HttpHeaders.IF_NONE_MATCH));
+        assertEquals(1, cache.getStats().revalidations());
+
+        // Fresh again for the new max-age
+        now.addAndGet(TimeUnit.SECONDS.toNanos(19));
+        get("a", backend("max-age=10", "\"v1\"", "other"));
+        assertEquals(2, fetches.get());
+    }
+
+    @Test
+    void answersAClientHoldingTheSameETagWithNotModified () throws Exception
+    {
+        get("a", backend("max-age=10", "\"v1\"", "body"));
+        HttpHeaders conditional = new HttpHeaders();
+        conditional.setIfNoneMatch("\"v1\"");
+        ResponseEntity<?> response = cache.get("a", conditional, backend("max-age=10", "\"v1\"", ""));
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertNull(response.getBody());
+        assertEquals(1, fetches.get());
+    }
+
+    @Test
+    void keepsLargeBodiesOffTheHeap () throws Exception
+    {
+        String large = "é".repeat(4096);
+        assertEquals(large, get("a", backend("max-age=10", null, large)).getBody());
+        // Every hit reads the bytes the client gets from its own view of the same buffer
+        for (int i = 0; i < 2; i++) {
+            Resource hit = (Resource) get("a", backend("max-age=10", null, "")).getBody();
+            assertEquals(2 * 4096, hit.contentLength());
+            assertArrayEquals(large.getBytes(StandardCharsets.UTF_8),
+                hit.getInputStream().readAllBytes());
+        }
+        assertEquals(1, fetches.get());
+    }
+
+    @Test
+    void keepsOffHeapBodiesInTheCharsetOfTheResponse () throws Exception
+    {
+        String large = "é".repeat(4096);
+        HttpHeaders responseHeaders = new HttpHeaders();
+        responseHeaders.setCacheControl("max-age=10");
+        responseHeaders.setContentType(MediaType.parseMediaType("text/plain;charset=ISO-8859-1"));
+        get("a", headers -> new ResponseEntity<>(large, responseHeaders, HttpStatus.OK));
+
+        Resource hit = (Resource) get("a", backend("max-age=10", null, "")).getBody();
+        assertArrayEquals(large.getBytes(StandardCharsets.ISO_8859_1),
+            hit.getInputStream().readAllBytes());
+    }
+
+    @Test
+    void coalescesConcurrentMisses () throws Exception
+    {
+        CountDownLatch release = new CountDownLatch(1);
+        ResponseCache.Fetcher slow = headers -> {
+            fetches.incrementAndGet();
+            try {
+                release.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            HttpHeaders responseHeaders = new HttpHeaders();
+            responseHeaders.setCacheControl("max-age=10");
+            return new ResponseEntity<>("body", responseHeaders, HttpStatus.OK);
+        };
+        List<Thread> threads = new ArrayList<>();
+        List<Object> bodies = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                try {
+                    Object body = get("a", slow).getBody();
+                    synchronized (bodies) {
+                        bodies.add(body);
+                    }
+                }
+                catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }));
+        }
+        while (cache.getStats().coalesced() < 7) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(1, fetches.get());
+        assertEquals(8, bodies.size());
+        assertFalse(bodies.contains(null));
+    }
+
+    private ResponseEntity<?> get (String key, ResponseCache.Fetcher fetcher) throws Exception
+    {
+        return cache.get(key, new HttpHeaders(), fetcher);
+    }
+
+    private ResponseCache.Fetcher backend (String cacheControl, String etag, String body)
+    {
+        return headers -> {
+            fetches.incrementAndGet();
+            sentHeaders.add(headers);
+            HttpHeaders responseHeaders = new HttpHeaders();
+            if (cacheControl != null) {
+                responseHeaders.setCacheControl(cacheControl);
+            }
+            if (etag != null) {
+                responseHeaders.setETag(etag);
+            }
+            return new ResponseEntity<>(body, responseHeaders, HttpStatus.OK);
+        };
+    }
+}
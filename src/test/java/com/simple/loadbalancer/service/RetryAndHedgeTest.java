@@ -0,0 +1,93 @@
+package com.simple.loadbalancer.service;
+
+import com.simple.loadbalancer.status.Backend;
+import com.simple.loadbalancer.stub.StubBackend;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Forwards requests to a first server that fails or is slow, with a strategy that always picks
+ * it first, and checks that the second server answers instead.
+ */
+class RetryAndHedgeTest
+{
+    private final LoadBalancerServiceFixture fixture = new LoadBalancerServiceFixture(50);
+    private final StubBackend first = StubBackend.start();
+    private final StubBackend second = StubBackend.start();
+
+    RetryAndHedgeTest () throws Exception
+    {
+    }
+
+    @AfterEach
+    void close () throws Exception
+    {
+        fixture.close();
+        first.close();
+        second.close();
+    }
+
+    @Test
+    void retriesARefusedConnectionOnAnotherServer () throws Exception
+    {
+        LoadBalancerService service = service(new RetryPolicy(1, 0.1, 10, 0, 0));
+        first.close(); // Nothing listens on its port any more
+
+        // Even a POST, which never reached the server
+        ResponseEntity<?> response = service.forwardRequest(HttpMethod.POST, new HttpHeaders(),
+            null, "ping");
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+    }
+
+    @Test
+    void doesNotRetryWithoutBudget () throws Exception
+    {
+        LoadBalancerService service = service(new RetryPolicy(1, 0, 0, 0, 0));
+        first.close();
+
+        ResponseEntity<?> response = service.forwardRequest(HttpMethod.GET, new HttpHeaders(),
+            null, "ping");
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, response.getStatusCode());
+    }
+
+    @Test
+    void hedgesASlowIdempotentRequest () throws Exception
+    {
+        RetryPolicy retryPolicy = new RetryPolicy(1, 0.1, 10, 90, 50);
+        LoadBalancerService service = service(retryPolicy);
+        for (int i = 0; i < 100; i++) {
+            service.forwardRequest(HttpMethod.GET, new HttpHeaders(), null, "ping");
+        }
+        service.updateHedgeDelay();
+        assertTrue(retryPolicy.getHedgeDelayNanos() > 0);
+
+        first.setLatency(Duration.ofSeconds(2));
+        long start = System.nanoTime();
+        ResponseEntity<?> response = service.forwardRequest(HttpMethod.GET, new HttpHeaders(),
+            null, "ping");
+        long elapsed = System.nanoTime() - start;
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertTrue(elapsed < TimeUnit.SECONDS.toNanos(1), "took " + elapsed + " ns");
+    }
+
+    private LoadBalancerService service (RetryPolicy retryPolicy)
+    {
+        Backend[] servers = new Backend[2];
+        // Always the first server, unless it is excluded
+        LoadBalancerService service =
+            fixture.strategy(snapshot -> servers[0]).retryPolicy(retryPolicy).build();
+        fixture.publish(first.url(), second.url()).toArray(servers);
+        return service;
+    }
+}
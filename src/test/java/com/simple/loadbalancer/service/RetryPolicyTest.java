@@ -0,0 +1,87 @@
+package com.simple.loadbalancer.service;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetryPolicyTest
+{
+    @Test
+    void extraRequestsStayWithinTheBudget ()
+    {
+        RetryPolicy policy = new RetryPolicy(1, 0.1, 2, 0, 0);
+        // Starts with a full budget for a burst
+        assertTrue(policy.tryAcquireExtraRequest());
+        assertTrue(policy.tryAcquireExtraRequest());
+        assertFalse(policy.tryAcquireExtraRequest());
+
+        // One extra request per ten requests from then on
+        for (int i = 0; i < 9; i++) {
+            policy.onRequest();
+        }
+        assertFalse(policy.tryAcquireExtraRequest());
+        policy.onRequest();
+        assertTrue(policy.tryAcquireExtraRequest());
+        assertFalse(policy.tryAcquireExtraRequest());
+
+        // Never saves up more than the largest burst
+        for (int i = 0; i < 100; i++) {
+            policy.onRequest();
+        }
+        assertTrue(policy.tryAcquireExtraRequest());
+        assertTrue(policy.tryAcquireExtraRequest());
+        assertFalse(policy.tryAcquireExtraRequest());
+    }
+
+    @Test
+    void hedgesAfterThePercentileOfRecentResponses ()
+    {
+        RetryPolicy policy = new RetryPolicy(1, 0.1, 10, 90, 100);
+        for (int i = 0; i < 99; i++) {
+            policy.recordLatency(TimeUnit.MILLISECONDS.toNanos(i % 10 + 1));
+        }
+        policy.update();
+        // Not enough samples yet
+        assertEquals(0, policy.getHedgeDelayNanos());
+
+        for (int i = 0; i < 200; i++) {
+            policy.recordLatency(TimeUnit.MILLISECONDS.toNanos(i % 10 + 1));
+        }
+        policy.update();
+        long delay = policy.getHedgeDelayNanos();
+        // Within a bucket of the 90th percentile, 9 ms
+        assertTrue(delay >= TimeUnit.MILLISECONDS.toNanos(9), "delay " + delay);
+        assertTrue(delay < TimeUnit.MILLISECONDS.toNanos(9) * 9 / 8, "delay " + delay);
+
+        // Old samples fade: after the traffic slowed down the delay follows it
+        for (int i = 0; i < 3000; i++) {
+            policy.recordLatency(TimeUnit.MILLISECONDS.toNanos(100));
+        }
+        policy.update();
+        assertTrue(policy.getHedgeDelayNanos() >= TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    @Test
+    void neverHedgesWhenDisabled ()
+    {
+        RetryPolicy policy = new RetryPolicy(1, 0.1, 10, 0, 0);
+        policy.recordLatency(TimeUnit.MILLISECONDS.toNanos(5));
+        policy.update();
+        assertEquals(0, policy.getHedgeDelayNanos());
+    }
+
+    @Test
+    void onlyRetriesMethodsThatCanBeRepeated ()
+    {
+        assertTrue(RetryPolicy.isIdempotent(HttpMethod.GET));
+        assertTrue(RetryPolicy.isIdempotent(HttpMethod.PUT));
+        assertTrue(RetryPolicy.isIdempotent(HttpMethod.DELETE));
+        assertFalse(RetryPolicy.isIdempotent(HttpMethod.POST));
+        assertFalse(RetryPolicy.isIdempotent(HttpMethod.PATCH));
+    }
+}
@@ -0,0 +1,134 @@
+package com.simple.loadbalancer.service;
+
+import com.simple.loadbalancer.status.Backend;
+import com.simple.loadbalancer.status.CircuitBreaker;
+import com.simple.loadbalancer.status.ConcurrencyLimiter;
+import com.simple.loadbalancer.status.ServerLoadChecker;
+import com.simple.loadbalancer.stub.StubBackend;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Chaos test: one of three backends suddenly answers every request a second late. Without
+ * protection, every proxy thread soon waits on that backend and throughput collapses to a few
+ * requests per second; with the circuit breaker and the concurrency limiter the slow backend is
+ * cut off after its first slow answers and the others keep serving.
+ */
+class SlowBackendChaosTest
+{
+    private static final int CLIENTS = 16;
+    private static final long SLOW_CALL_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+
+    private final List<StubBackend> stubs = new ArrayList<>();
+    private final LoadBalancerServiceFixture fixture = new LoadBalancerServiceFixture(50);
+
+    @AfterEach
+    void close () throws Exception
+    {
+        fixture.close();
+        stubs.forEach(StubBackend::close);
+    }
+
+    @Test
+    void keepsThroughputWhenABackendSlowsDown () throws Exception
+    {
+        ServerLoadChecker serverLoadChecker = fixture.serverLoadChecker();
+        CircuitBreaker circuitBreaker = new CircuitBreaker(LoadBalancerServiceFixture.MAX_SERVERS,
+            fixture.serverRegistry(), serverLoadChecker, 5, TimeUnit.SECONDS.toNanos(2), 1,
+            SLOW_CALL_NANOS);
+        LoadBalancerService service = fixture
+            .strategy(new SmoothWeightedRoundRobinStrategy(serverLoadChecker))
+            .circuitBreaker(circuitBreaker)
+            .concurrencyLimiter(new ConcurrencyLimiter(LoadBalancerServiceFixture.MAX_SERVERS,
+                serverLoadChecker, 1, 50, SLOW_CALL_NANOS, 0.5))
+            .build();
+        for (int i = 0; i < 3; i++) {
+            stubs.add(StubBackend.start());
+        }
+        List<Backend> servers = fixture.publish(stubs.stream().map(StubBackend::url)
+            .toArray(String[]::new));
+        // Cold requests are slow enough to count as slow calls
+        for (int i = 0; i < 300; i++) {
+            service.forwardRequest(HttpMethod.GET, new HttpHeaders(), null, "ping");
+        }
+        for (Backend server : servers) {
+            assertEquals(CircuitBreaker.CLOSED, circuitBreaker.getState(server));
+        }
+
+        AtomicLong completed = new AtomicLong();
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; i++) {
+            threads.add(Thread.ofPlatform().daemon().start(() -> {
+                while (running.get()) {
+                    try {
+                        ResponseEntity<?> response = service.forwardRequest(HttpMethod.GET,
+                            new HttpHeaders(), null, "ping");
+                        if (response.getStatusCode().is2xxSuccessful()) {
+                            completed.incrementAndGet();
+                        }
+                    }
+                    catch (IOException e) {
+                        // Counted as not completed
+                    }
+                }
+            }));
+        }
+        threads.add(Thread.ofPlatform().daemon().start(() -> {
+            while (running.get()) {
+                service.updateCircuitBreakers();
+                try {
+                    Thread.sleep(100);
+                }
+                catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }));
+
+        try {
+            Thread.sleep(500); // Warm up
+            long baseline = completedIn(completed, 1000);
+
+            stubs.get(0).setLatency(Duration.ofSeconds(1));
+            // The first slow answers arrive after a second and cut the slow server off
+            Thread.sleep(1500);
+            long degraded = completedIn(completed, 1000);
+
+            System.out.println("Requests per second: " + baseline + " before, " + degraded
+                + " with one backend a second late");
+            assertNotEquals(CircuitBreaker.CLOSED, circuitBreaker.getState(servers.get(0)));
+            assertTrue(degraded >= baseline / 2,
+                "throughput fell from " + baseline + " to " + degraded + " requests per second");
+        }
+        finally {
+            running.set(false);
+            for (Thread thread : threads) {
+                thread.join(5000);
+            }
+        }
+    }
+
+    private static long completedIn (AtomicLong completed, long millis) throws InterruptedException
+    {
+        long before = completed.get();
+        Thread.sleep(millis);
+        return completed.get() - before;
+    }
+}
@@ -0,0 +1,158 @@
+package com.simple.loadbalancer.service;
+
+import com.simple.loadbalancer.status.Backend;
+import com.simple.loadbalancer.status.ServerLoadChecker;
+import com.simple.loadbalancer.status.ServerRegistry;
+import com.simple.loadbalancer.status.ServerSnapshot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SmoothWeightedRoundRobinStrategyTest
+{
+    private final ServerLoadChecker checker = new ServerLoadChecker(8, 2);
+    private final ServerRegistry registry = new ServerRegistry(checker);
+
+    @Test
+    void interleavesPicksInProportionToWeights ()
+    {
+        ServerSnapshot servers = publish(1, 3, 2);
+        SmoothWeightedRoundRobinStrategy strategy = new SmoothWeightedRoundRobinStrategy(checker);
+        strategy.prepare(servers);
+        StringBuilder picks = new StringBuilder();
+        for (int i = 0; i < 12; i++) {
+            picks.append(strategy.selectServer(servers).getId());
+        }
+        assertEquals("120121120121", picks.toString());
+        assertNull(strategy.selectServer(ServerSnapshot.EMPTY));
+    }
+
+    @Test
+    void reducesWeightsByTheirCommonDivisor ()
+    {
+        SmoothWeightedRoundRobinStrategy.Schedule schedule =
+            SmoothWeightedRoundRobinStrategy.Schedule.of(publish(300, 200));
+        assertArrayEquals(new int[]{2, 4, 5}, schedule.roundEnds());
+    }
+
+    @Test
+    void keepsTheScheduleAsLargeAsTheLargestWeightWhateverTheirSum ()
+    {
+        int[] weights = new int[1000];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = 1000 - i % 7;
+        }
+        ServerLoadChecker large = new ServerLoadChecker(weights.length);
+        ServerRegistry fleet = new ServerRegistry(large);
+        List<Backend> servers = new ArrayList<>();
+        for (int i = 0; i < weights.length; i++) {
+            Backend backend = fleet.register("http://server" + i);
+            fleet.setWeight(backend, weights[i]);
+            servers.add(backend);
+        }
+        SmoothWeightedRoundRobinStrategy.Schedule schedule =
+            SmoothWeightedRoundRobinStrategy.Schedule.of(fleet.publish(servers));
+
+        assertEquals(1000, schedule.roundEnds().length);
+        assertEquals(Arrays.stream(weights).sum(), schedule.roundEnds()[999]);
+    }
+
+    @Test
+    void rotatesThroughASnapshotItWasNotPreparedFor ()
+    {
+        ServerSnapshot prepared = publish(3, 1);
+        SmoothWeightedRoundRobinStrategy strategy = new SmoothWeightedRoundRobinStrategy(checker);
+        strategy.prepare(prepared);
+        ServerSnapshot other = registry.setWeight(prepared.get(1), 2);
+
+        StringBuilder picks = new StringBuilder();
+        for (int i = 0; i < 4; i++) {
+            picks.append(strategy.selectServer(other).getId());
+        }
+        assertEquals("0101", picks.toString());
+    }
+
+    @Test
+    void appliesWeightChangesWithANewSnapshot ()
+    {
+        ServerSnapshot before = publish(1, 1);
+        Backend first = before.get(0);
+        ServerSnapshot after = registry.setWeight(first, 3);
+        assertNotSame(before, after);
+        assertEquals(3, after.getWeight(0));
+        assertEquals(4, after.getTotalWeight());
+        // Setting the same weight again publishes nothing
+        assertSame(after, registry.setWeight(first, 3));
+        assertThrows(IllegalArgumentException.class, () -> registry.setWeight(first, 0));
+
+        SmoothWeightedRoundRobinStrategy strategy = new SmoothWeightedRoundRobinStrategy(checker);
+        strategy.prepare(after);
+        int[] picks = new int[2];
+        for (int i = 0; i < 400; i++) {
+            picks[strategy.selectServer(registry.getSnapshot()).getId()]++;
+        }
+        assertArrayEquals(new int[]{300, 100}, picks);
+    }
+
+    @Test
+    void skipsSaturatedServers ()
+    {
+        ServerSnapshot servers = publish(3, 1);
+        checker.incrementLoad(0);
+        checker.incrementLoad(0);
+        SmoothWeightedRoundRobinStrategy strategy = new SmoothWeightedRoundRobinStrategy(checker);
+        for (int i = 0; i < 8; i++) {
+            assertEquals(1, strategy.selectServer(servers).getId());
+        }
+    }
+
+    @Test
+    void keepsProportionsUnderConcurrentSelection () throws InterruptedException
+    {
+        ServerSnapshot servers = publish(4, 2, 1, 1);
+        SmoothWeightedRoundRobinStrategy strategy = new SmoothWeightedRoundRobinStrategy(checker);
+        strategy.prepare(servers);
+        AtomicLongArray picks = new AtomicLongArray(servers.size());
+        int threads = 16;
+        int cycles = 1_000;
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                for (int i = 0; i < cycles * servers.getTotalWeight(); i++) {
+                    picks.incrementAndGet(strategy.selectServer(servers).getId());
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        // Whole cycles were selected, so every server got exactly its weight per cycle
+        for (int i = 0; i < servers.size(); i++) {
+            assertEquals((long) threads * cycles * servers.getWeight(i), picks.get(i));
+        }
+    }
+
+    private ServerSnapshot publish (int... weights)
+    {
+        List<Backend> servers = new ArrayList<>();
+        for (int i = 0; i < weights.length; i++) {
+            Backend backend = registry.register("http://server" + i);
+            registry.setWeight(backend, weights[i]);
+            servers.add(backend);
+        }
+        return registry.publish(servers);
+    }
+}
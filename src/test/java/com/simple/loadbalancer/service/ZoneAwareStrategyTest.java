@@ -0,0 +1,133 @@
+package com.simple.loadbalancer.service;
+
+import com.simple.loadbalancer.status.Backend;
+import com.simple.loadbalancer.status.ServerLoadChecker;
+import com.simple.loadbalancer.status.ServerRegistry;
+import com.simple.loadbalancer.status.ServerSnapshot;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ZoneAwareStrategyTest
+{
+    private static final int SATURATION = 10;
+
+    private final ServerLoadChecker checker = new ServerLoadChecker(16, SATURATION);
+    private final ZoneAwareStrategy strategy = new ZoneAwareStrategy("a",
+        new RoundRobinStrategy(checker), new RoundRobinStrategy(checker), checker, 0.5, 0.8);
+    private final ServerRegistry registry = new ServerRegistry(checker, strategy::prepare);
+
+    @Test
+    void keepsRequestsInTheLocalZoneWhileItIsHealthy ()
+    {
+        List<Backend> servers = servers("a", "a", "b", "b");
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("a", registry.getZone(strategy.selectServer(registry.getSnapshot())));
+        }
+        assertEquals(1.0, strategy.getLocalShare());
+
+        // Still healthy enough with half of the local servers down
+        registry.publish(servers.subList(1, 4));
+        assertEquals(1.0, strategy.getLocalShare());
+    }
+
+    @Test
+    void spillsOverAsLocalServersGoDown ()
+    {
+        List<Backend> servers = servers("a", "a", "a", "a", "b", "b");
+        registry.publish(servers.subList(3, 6));
+        // One of four local servers healthy, half the minimum: half of the requests stay local
+        assertEquals(0.5, strategy.getLocalShare(), 1e-9);
+        int local = 0;
+        int selections = 20_000;
+        for (int i = 0; i < selections; i++) {
+            if ("a".equals(registry.getZone(strategy.selectServer(registry.getSnapshot())))) {
+                local++;
+            }
+        }
+        assertTrue(Math.abs(local - selections / 2) < selections / 20, local + " stayed local");
+
+        registry.publish(servers.subList(4, 6));
+        assertEquals(0.0, strategy.getLocalShare());
+        assertEquals("b", registry.getZone(strategy.selectServer(registry.getSnapshot())));
+    }
+
+    @Test
+    void spillsOverAsTheLocalZoneFillsUp ()
+    {
+        List<Backend> servers = servers("a", "a", "b");
+        // 20 connections locally, traffic spills over above 16 and entirely at 20
+        for (int i = 0; i < 16; i++) {
+            checker.incrementLoad(servers.get(i % 2).getId());
+        }
+        assertEquals(1.0, strategy.getLocalShare(), 1e-9);
+        checker.incrementLoad(servers.get(0).getId());
+        checker.incrementLoad(servers.get(1).getId());
+        assertEquals(0.5, strategy.getLocalShare(), 1e-9);
+        checker.incrementLoad(servers.get(0).getId());
+        checker.incrementLoad(servers.get(1).getId());
+        assertEquals(0.0, strategy.getLocalShare(), 1e-9);
+        assertEquals(servers.get(2), strategy.selectServer(registry.getSnapshot()));
+
+        // Load on remote servers does not count against the local zone
+        checker.decrementLoad(servers.get(0).getId());
+        checker.incrementLoad(servers.get(2).getId());
+        assertEquals(0.25, strategy.getLocalShare(), 1e-9);
+    }
+
+    @Test
+    void movesTheLoadOfAServerWithItsZone ()
+    {
+        List<Backend> servers = servers("a", "b");
+        checker.incrementLoad(servers.get(1).getId());
+        assertEquals(0, checker.getZoneLoad(checker.registerZone("a")));
+        registry.setZone(servers.get(1), "a");
+        checker.incrementLoad(servers.get(1).getId());
+        assertEquals(1, checker.getZoneLoad(checker.registerZone("a")));
+        assertEquals(1, checker.getZoneLoad(checker.registerZone("b")));
+        assertEquals(2, registry.getSnapshot().getZoneSize("a"));
+    }
+
+    @Test
+    void fallsBackToTheOtherZones ()
+    {
+        List<Backend> servers = servers("a", "b");
+        assertEquals(servers.get(1),
+            strategy.selectServer(registry.getSnapshot(), AffinityKey.NONE, servers.get(0)));
+        registry.publish(servers.subList(1, 2));
+        assertEquals(servers.get(1), strategy.selectServer(registry.getSnapshot()));
+        assertNull(strategy.selectServer(registry.getSnapshot(), AffinityKey.NONE, servers.get(1)));
+        assertNull(strategy.selectServer(ServerSnapshot.EMPTY));
+    }
+
+    @Test
+    void splitsSnapshotsFromOutsideTheRegistry ()
+    {
+        List<Backend> servers = servers("a", "b");
+        ServerSnapshot unzoned = ServerSnapshot.of(registry.getSnapshot().getVersion() - 1,
+            servers.toArray(Backend[]::new));
+        // Servers without a zone are remote, and an older snapshot does not replace the split
+        assertNotEquals(null, strategy.selectServer(unzoned));
+        assertEquals(1.0, strategy.getLocalShare());
+        assertEquals("a", registry.getZone(strategy.selectServer(registry.getSnapshot())));
+    }
+
+    private List<Backend> servers (String... zones)
+    {
+        List<Backend> servers = new ArrayList<>();
+        for (int i = 0; i < zones.length; i++) {
+            Backend backend = registry.register("http://server-" + i);
+            registry.setZone(backend, zones[i]);
+            servers.add(backend);
+        }
+        registry.publish(servers);
+        return servers;
+    }
+}
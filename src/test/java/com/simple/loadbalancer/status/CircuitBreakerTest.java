@@ -0,0 +1,115 @@
+package com.simple.loadbalancer.status;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CircuitBreakerTest
+{
+    private static final long OPEN_NANOS = 10_000_000_000L;
+    private static final long SLOW_NANOS = 1_000_000_000L;
+
+    private final AtomicLong now = new AtomicLong(1_000_000_000L);
+    private final ServerLoadChecker loadChecker = new ServerLoadChecker(4, 50);
+    private final ServerRegistry registry = new ServerRegistry(loadChecker);
+    private final Backend server = registry.register("http://a");
+    private final CircuitBreaker breaker =
+        new CircuitBreaker(4, registry, loadChecker, 3, OPEN_NANOS, 2, SLOW_NANOS, now::get);
+
+    @Test
+    void opensAfterConsecutiveFailuresOrSlowCalls ()
+    {
+        breaker.onFailure(server);
+        breaker.onFailure(server);
+        breaker.onResponse(server, 1000);
+        breaker.onFailure(server);
+        breaker.onResponse(server, SLOW_NANOS + 1);
+        assertEquals(CircuitBreaker.CLOSED, breaker.getState(server));
+        assertTrue(loadChecker.tryIncrementLoad(server.getId()));
+        loadChecker.decrementLoad(server.getId());
+
+        breaker.onFailure(server);
+        assertEquals(CircuitBreaker.OPEN, breaker.getState(server));
+        assertTrue(loadChecker.isSaturated(server.getId()));
+        assertFalse(loadChecker.tryIncrementLoad(server.getId()));
+    }
+
+    @Test
+    void halfOpensAfterTheOpenDurationAndClosesOnSuccesses ()
+    {
+        for (int i = 0; i < 3; i++) {
+            breaker.onFailure(server);
+        }
+        now.addAndGet(OPEN_NANOS - 1);
+        breaker.sweep();
+        assertEquals(CircuitBreaker.OPEN, breaker.getState(server));
+
+        now.addAndGet(1);
+        breaker.sweep();
+        assertEquals(CircuitBreaker.HALF_OPEN, breaker.getState(server));
+        // Only the trial requests get through
+        assertEquals(2, loadChecker.getLimit(server.getId()));
+
+        breaker.onResponse(server, 1000);
+        assertEquals(CircuitBreaker.HALF_OPEN, breaker.getState(server));
+        breaker.onResponse(server, 1000);
+        assertEquals(CircuitBreaker.CLOSED, breaker.getState(server));
+        assertEquals(50, loadChecker.getLimit(server.getId()));
+    }
+
+    @Test
+    void reopensOnAFailedTrial ()
+    {
+        for (int i = 0; i < 3; i++) {
+            breaker.onFailure(server);
+        }
+        now.addAndGet(OPEN_NANOS);
+        breaker.sweep();
+        breaker.onResponse(server, 1000);
+        breaker.onFailure(server);
+        assertEquals(CircuitBreaker.OPEN, breaker.getState(server));
+        assertEquals(0, loadChecker.getLimit(server.getId()));
+
+        // Open again for a full open duration from the failed trial
+        now.addAndGet(OPEN_NANOS - 1);
+        breaker.sweep();
+        assertEquals(CircuitBreaker.OPEN, breaker.getState(server));
+    }
+
+    @Test
+    void limiterBacksOffOnSlowCallsAndGrowsBackWhenUsed ()
+    {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, loadChecker, 1, 10, SLOW_NANOS, 0.5);
+        int id = server.getId();
+        assertEquals(10, loadChecker.getLimit(id));
+
+        limiter.onResponse(id, SLOW_NANOS + 1);
+        assertEquals(5, limiter.getLimit(id));
+        limiter.onDropped(id);
+        limiter.onDropped(id);
+        limiter.onDropped(id);
+        assertEquals(1, limiter.getLimit(id));
+        assertEquals(1, loadChecker.getLimit(id));
+
+        // Fast responses while the limit is in use raise it by one per limit's worth of requests
+        assertTrue(loadChecker.tryIncrementLoad(id));
+        assertFalse(loadChecker.tryIncrementLoad(id));
+        limiter.onResponse(id, 1000);
+        assertEquals(2, loadChecker.getLimit(id));
+        assertTrue(loadChecker.tryIncrementLoad(id));
+        for (int i = 0; i < 3; i++) {
+            limiter.onResponse(id, 1000);
+        }
+        assertEquals(3, loadChecker.getLimit(id));
+
+        // An idle server gives no evidence that it can take more
+        loadChecker.decrementLoad(id);
+        loadChecker.decrementLoad(id);
+        limiter.onResponse(id, 1000);
+        assertEquals(3, limiter.getLimit(id));
+    }
+}
@@ -0,0 +1,113 @@
+package com.simple.loadbalancer.status;
+
+import com.simple.loadbalancer.stub.StubBackend;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HealthCheckerTest
+{
+    private final List<AutoCloseable> resources = new ArrayList<>();
+    private final ServerRegistry registry = new ServerRegistry(new ServerLoadChecker(2048));
+
+    @AfterEach
+    void close () throws Exception
+    {
+        for (AutoCloseable resource : resources) {
+            resource.close();
+        }
+    }
+
+    @Test
+    void appliesRiseAndFallCounts () throws IOException
+    {
+        StubBackend stub = stub();
+        Backend server = registry.register(stub.url());
+        HealthChecker checker = new HealthChecker(2048, Duration.ofSeconds(2), Duration.ZERO, 2, 3);
+
+        stub.setHealthy(false);
+        assertEquals(List.of(server), checker.sweep(List.of(server)));
+        assertEquals(List.of(server), checker.sweep(List.of(server)));
+        assertEquals(List.of(), checker.sweep(List.of(server)));
+
+        stub.setHealthy(true);
+        assertEquals(List.of(), checker.sweep(List.of(server)));
+        stub.setHealthy(false);
+        // An interrupted run of passed probes starts over
+        assertEquals(List.of(), checker.sweep(List.of(server)));
+        stub.setHealthy(true);
+        assertEquals(List.of(), checker.sweep(List.of(server)));
+        assertEquals(List.of(server), checker.sweep(List.of(server)));
+        assertTrue(checker.isUp(server));
+    }
+
+    @Test
+    void hungServersDoNotStallTheSweep () throws IOException
+    {
+        StubBackend stub = stub();
+        Backend healthy = registry.register(stub.url());
+        // Accepts connections but never answers
+        ServerSocket hung = new ServerSocket(0, 1024);
+        resources.add(hung);
+        List<Socket> accepted = new ArrayList<>();
+        Thread acceptor = new Thread(() -> {
+            try {
+                while (true) {
+                    accepted.add(hung.accept());
+                }
+            }
+            catch (IOException e) {
+                // Closed at the end of the test
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        List<Backend> servers = new ArrayList<>();
+        servers.add(healthy);
+        for (int i = 0; i < 1000; i++) {
+            // Distinct URLs for the same hung port, as a fleet of 1000 hung servers
+            String host = i % 2 == 0 ? "localhost" : "127.0.0.1";
+            servers.add(registry.register("http://" + host + ":" + hung.getLocalPort() + "/n" + i));
+        }
+        Duration timeout = Duration.ofMillis(3000);
+        HealthChecker checker = new HealthChecker(2048, timeout, Duration.ofMillis(500), 1, 1);
+
+        // The same sweep with a single hung server, which lasts about jitter + timeout here
+        long baselineMillis = sweepMillis(checker, servers.subList(0, 2));
+        long start = System.nanoTime();
+        List<Backend> up = checker.sweep(servers);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(List.of(healthy), up);
+        // Bounded by jitter + timeout, not by the number of hung servers: a sweep probing them one
+        // after the other would take 1000 timeouts, while this one takes less than one more than
+        // a sweep with a single hung server, however many CPUs set up the connections
+        assertTrue(elapsedMillis < baselineMillis + timeout.toMillis(),
+            "sweep took " + elapsedMillis + " ms, " + baselineMillis + " ms with one hung server");
+    }
+
+    private static long sweepMillis (HealthChecker checker, List<Backend> servers)
+    {
+        long start = System.nanoTime();
+        checker.sweep(servers);
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    private StubBackend stub () throws IOException
+    {
+        StubBackend stub = StubBackend.start();
+        resources.add(stub);
+        return stub;
+    }
+}
@@ -0,0 +1,73 @@
+package com.simple.loadbalancer.status;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyTrackerTest
+{
+    private static final long DECAY = 1_000_000_000L;
+
+    private final AtomicLong now = new AtomicLong(5_000_000_000L);
+    private final LatencyTracker tracker = new LatencyTracker(4, DECAY, now::get);
+
+    @Test
+    void startsAtZeroAndJumpsToPeaks ()
+    {
+        assertEquals(0, tracker.getLatency(0));
+        tracker.record(0, 300);
+        assertEquals(300, tracker.getLatency(0));
+        tracker.record(0, 900);
+        assertEquals(900, tracker.getLatency(0));
+        assertEquals(0, tracker.getLatency(1));
+    }
+
+    @Test
+    void blendsFasterSamplesByElapsedTime ()
+    {
+        tracker.record(0, 1000);
+        // A faster sample right away barely moves the average
+        tracker.record(0, 0);
+        assertEquals(1000, tracker.getLatency(0));
+        // One decay time later the old average weighs e^-1
+        now.addAndGet(DECAY);
+        tracker.record(0, 0);
+        assertEquals(1000 * Math.exp(-1), tracker.getLatency(0), 1e-6);
+    }
+
+    @Test
+    void comparesSamplesWithTheDecayedAverage ()
+    {
+        tracker.record(0, 1000);
+        now.addAndGet(DECAY);
+        // Above the 368 the average has decayed to, so a peak rather than a blend with 1000
+        tracker.record(0, 500);
+        assertEquals(500, tracker.getLatency(0));
+    }
+
+    @Test
+    void failuresOnlyRaiseTheAverage ()
+    {
+        tracker.record(0, 1000);
+        tracker.recordFailure(0, 10);
+        assertEquals(1000, tracker.getLatency(0));
+        tracker.recordFailure(0, 30_000);
+        assertEquals(30_000, tracker.getLatency(0));
+        now.addAndGet(DECAY);
+        assertEquals(30_000 * Math.exp(-1), tracker.getLatency(0), 1e-6);
+    }
+
+    @Test
+    void decaysWithoutTraffic ()
+    {
+        tracker.record(2, 1000);
+        now.addAndGet(2 * DECAY);
+        assertEquals(1000 * Math.exp(-2), tracker.getLatency(2), 1e-6);
+        assertTrue(tracker.getLatency(2) < 1000);
+        assertThrows(IllegalArgumentException.class, () -> new LatencyTracker(1, 0));
+    }
+}
@@ -0,0 +1,200 @@
+package com.simple.loadbalancer.status;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OutlierDetectorTest
+{
+    private static final Duration BASE_EJECTION = Duration.ofSeconds(30);
+    private static final long MILLI = 1_000_000L;
+
+    private final AtomicLong now = new AtomicLong(1_000_000_000L);
+    private final ServerRegistry registry = new ServerRegistry(new ServerLoadChecker(16));
+    private final LatencyTracker latencyTracker =
+        new LatencyTracker(16, Duration.ofSeconds(10).toNanos(), now::get);
+    private final List<Backend> servers = new ArrayList<>();
+
+    private OutlierDetector detector (int consecutiveErrors, double errorRate, double latencyFactor,
+                                      int maxEjectionPercent, int serverCount)
+    {
+        for (int i = 0; i < serverCount; i++) {
+            servers.add(registry.register("http://server" + i));
+        }
+        registry.publish(servers);
+        return new OutlierDetector(16, registry, latencyTracker,
+            new OutlierDetector.Thresholds(consecutiveErrors, errorRate, 10, Duration.ofSeconds(10),
+                latencyFactor, BASE_EJECTION, Duration.ofSeconds(300), maxEjectionPercent),
+            now::get);
+    }
+
+    @Test
+    void ejectsAfterConsecutiveFailures ()
+    {
+        OutlierDetector detector = detector(3, 0, 0, 50, 4);
+        Backend server = servers.get(1);
+        detector.recordFailure(server);
+        detector.recordFailure(server);
+        detector.recordSuccess(server);
+        detector.recordFailure(server);
+        detector.recordFailure(server);
+        assertTrue(registry.getSnapshot().contains(server));
+        assertNull(detector.getStatus(servers.get(0)).getLastFailureTime());
+
+        detector.recordFailure(server);
+        // Marked ejected by the request, taken out of traffic by the next sweep
+        assertTrue(detector.getStatus(server).isBlacklisted());
+        assertTrue(registry.getSnapshot().contains(server));
+        detector.sweep();
+        assertFalse(registry.getSnapshot().contains(server));
+        assertEquals(3, registry.getSnapshot().size());
+        ServerStatus status = detector.getStatus(server);
+        assertTrue(status.isBlacklisted());
+        assertEquals(3, status.getFailureCount());
+        assertNotNull(status.getLastFailureTime());
+    }
+
+    @Test
+    void ejectsOnErrorRateOnceEnoughRequests ()
+    {
+        OutlierDetector detector = detector(0, 0.5, 0, 50, 4);
+        Backend server = servers.get(2);
+        // Alternating failures never fail twice in a row, but half of the requests fail
+        for (int i = 0; i < 4; i++) {
+            detector.recordSuccess(server);
+            detector.recordFailure(server);
+        }
+        assertTrue(registry.getSnapshot().contains(server), "below the minimum request count");
+        detector.recordSuccess(server);
+        detector.recordFailure(server);
+        detector.sweep();
+        assertFalse(registry.getSnapshot().contains(server));
+    }
+
+    @Test
+    void forgetsFailuresOutsideTheWindow ()
+    {
+        OutlierDetector detector = detector(0, 0.5, 0, 50, 4);
+        Backend server = servers.get(0);
+        for (int i = 0; i < 9; i++) {
+            detector.recordFailure(server);
+        }
+        now.addAndGet(Duration.ofSeconds(11).toNanos());
+        for (int i = 0; i < 9; i++) {
+            detector.recordSuccess(server);
+        }
+        detector.recordFailure(server);
+        detector.sweep();
+        assertTrue(registry.getSnapshot().contains(server));
+    }
+
+    @Test
+    void readmitsWithExponentialBackOff ()
+    {
+        OutlierDetector detector = detector(1, 0, 0, 50, 4);
+        Backend server = servers.get(3);
+        detector.recordFailure(server);
+        detector.sweep();
+        assertFalse(registry.getSnapshot().contains(server));
+
+        now.addAndGet(BASE_EJECTION.toNanos() - MILLI);
+        detector.sweep();
+        assertFalse(registry.getSnapshot().contains(server));
+        now.addAndGet(MILLI);
+        detector.sweep();
+        assertTrue(registry.getSnapshot().contains(server));
+        assertFalse(detector.getStatus(server).isBlacklisted());
+
+        // Failing again right away doubles the ejection
+        detector.recordFailure(server);
+        detector.sweep();
+        now.addAndGet(2 * BASE_EJECTION.toNanos() - MILLI);
+        detector.sweep();
+        assertFalse(registry.getSnapshot().contains(server));
+        now.addAndGet(MILLI);
+        detector.sweep();
+        assertTrue(registry.getSnapshot().contains(server));
+
+        // Well behaved for two base ejections, it is back to the base ejection
+        now.addAndGet(BASE_EJECTION.toNanos());
+        detector.sweep();
+        now.addAndGet(BASE_EJECTION.toNanos());
+        detector.sweep();
+        detector.recordFailure(server);
+        detector.sweep();
+        now.addAndGet(BASE_EJECTION.toNanos());
+        detector.sweep();
+        assertTrue(registry.getSnapshot().contains(server));
+    }
+
+    @Test
+    void neverEjectsMoreThanTheMaximumShare ()
+    {
+        OutlierDetector detector = detector(1, 0, 0, 25, 8);
+        for (Backend server : servers) {
+            detector.recordFailure(server);
+        }
+        detector.sweep();
+        assertEquals(6, registry.getSnapshot().size());
+        long blacklisted = detector.getStatuses().stream().filter(ServerStatus::isBlacklisted).count();
+        assertEquals(2, blacklisted);
+
+        // The refused servers are not queued again before the next sweep
+        Backend refused = registry.getSnapshot().get(0);
+        detector.recordFailure(refused);
+        assertFalse(detector.getStatus(refused).isBlacklisted());
+        detector.sweep();
+        detector.recordFailure(refused);
+        assertTrue(detector.getStatus(refused).isBlacklisted());
+    }
+
+    @Test
+    void neverEjectsTheLastServer ()
+    {
+        OutlierDetector detector = detector(1, 0, 0, 100, 1);
+        detector.recordFailure(servers.get(0));
+        detector.sweep();
+        assertEquals(1, registry.getSnapshot().size());
+        assertFalse(detector.getStatus(servers.get(0)).isBlacklisted());
+    }
+
+    @Test
+    void ejectsLatencyOutliers ()
+    {
+        OutlierDetector detector = detector(0, 0, 3, 50, 4);
+        latencyTracker.record(servers.get(0).getId(), 10_000_000);
+        latencyTracker.record(servers.get(1).getId(), 12_000_000);
+        latencyTracker.record(servers.get(2).getId(), 11_000_000);
+        latencyTracker.record(servers.get(3).getId(), 30_000_000);
+        detector.sweep();
+        assertEquals(4, registry.getSnapshot().size(), "not above three times the median");
+
+        latencyTracker.record(servers.get(3).getId(), 40_000_000);
+        detector.sweep();
+        assertFalse(registry.getSnapshot().contains(servers.get(3)));
+        assertEquals(3, registry.getSnapshot().size());
+    }
+
+    @Test
+    void comparesTheLatencyWithTheMedianOfTheOtherServers ()
+    {
+        OutlierDetector detector = detector(0, 0, 3, 50, 4);
+        latencyTracker.record(servers.get(0).getId(), 10_000_000);
+        latencyTracker.record(servers.get(1).getId(), 11_000_000);
+        latencyTracker.record(servers.get(2).getId(), 35_000_000);
+        latencyTracker.record(servers.get(3).getId(), 36_000_000);
+        detector.sweep();
+
+        // The median of all four is 35 ms, the median of the others of either slow server 11 ms
+        assertEquals(List.of(servers.get(0), servers.get(1)), registry.getSnapshot().asList());
+    }
+}
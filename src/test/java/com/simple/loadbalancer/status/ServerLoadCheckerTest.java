@@ -0,0 +1,104 @@
+package com.simple.loadbalancer.status;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ServerLoadCheckerTest
+{
+    @Test
+    void registerAssignsDenseStableSlots ()
+    {
+        ServerLoadChecker checker = new ServerLoadChecker(2);
+        assertEquals(0, checker.register("http://a"));
+        assertEquals(1, checker.register("http://b"));
+        assertEquals(0, checker.register("http://a"));
+        assertEquals(-1, checker.indexOf("http://c"));
+        assertThrows(IllegalStateException.class, () -> checker.register("http://c"));
+    }
+
+    @Test
+    void releasedSlotsAreReusedOnceTheirRequestsAreDone ()
+    {
+        ServerLoadChecker checker = new ServerLoadChecker(3, 10);
+        int a = checker.register("http://a");
+        checker.register("http://b");
+        checker.incrementLoad(a);
+        checker.setCircuitLimit(a, 0);
+        checker.setZone(a, "z1");
+        checker.setPeerLoad(a, 7);
+        checker.release("http://a");
+        assertEquals(-1, checker.indexOf("http://a"));
+
+        // Still counting the request of the removed server
+        assertEquals(2, checker.register("http://c"));
+        assertThrows(IllegalStateException.class, () -> checker.register("http://d"));
+
+        checker.decrementLoad(a);
+        assertEquals(a, checker.register("http://d"));
+        assertEquals(10, checker.getLimit(a));
+        assertEquals(0, checker.getPeerLoad(a));
+        checker.incrementLoad(a);
+        assertEquals(0, checker.getZoneLoad(checker.registerZone("z1")));
+    }
+
+    @Test
+    void saturationFollowsLoad ()
+    {
+        ServerLoadChecker checker = new ServerLoadChecker(1, 2);
+        int slot = checker.register("http://a");
+        checker.incrementLoad(slot);
+        assertFalse(checker.isSaturated(slot));
+        checker.incrementLoad(slot);
+        assertTrue(checker.isSaturated(slot));
+    }
+
+    @Test
+    void countsStayExactUnderContention () throws InterruptedException
+    {
+        int threads = 64;
+        int iterations = 20_000;
+        ServerLoadChecker checker = new ServerLoadChecker(4);
+        int[] slots = {checker.register("http://a"), checker.register("http://b")};
+        AtomicBoolean negative = new AtomicBoolean();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int slot = slots[t % slots.length];
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                }
+                catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < iterations; i++) {
+                    checker.incrementLoad(slot);
+                    if (checker.getCurrentLoad(slot) <= 0) {
+                        negative.set(true);
+                    }
+                    checker.decrementLoad(slot);
+                }
+                // Leave one request in flight per thread
+                checker.incrementLoad(slot);
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertFalse(negative.get());
+        assertEquals(threads / 2, checker.getCurrentLoad(slots[0]));
+        assertEquals(threads / 2, checker.getCurrentLoad(slots[1]));
+    }
+}
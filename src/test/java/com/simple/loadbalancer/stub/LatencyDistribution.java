@@ -0,0 +1,71 @@
+package com.simple.loadbalancer.stub;
+
+import java.time.Duration;
+import java.util.Random;
+
+import org.springframework.boot.convert.DurationStyle;
+
+/**
+ * Response time of a stub backend, drawn anew for every request.
+ */
+@FunctionalInterface
+public interface LatencyDistribution
+{
+    /**
+     * @return the time to wait before answering the next request
+     */
+    long nextNanos (Random random);
+
+    static LatencyDistribution fixed (Duration latency)
+    {
+        long nanos = latency.toNanos();
+        return random -> nanos;
+    }
+
+    static LatencyDistribution exponential (Duration mean)
+    {
+        double nanos = mean.toNanos();
+        return random -> (long) (-Math.log(1 - random.nextDouble()) * nanos);
+    }
+
+    /**
+     * Log-normal latency, the usual shape of service response times: most requests close to the
+     * median and a long tail whose weight grows with {@code sigma}.
+     */
+    static LatencyDistribution logNormal (Duration median, double sigma)
+    {
+        double nanos = median.toNanos();
+        return random -> (long) (nanos * Math.exp(sigma * random.nextGaussian()));
+    }
+
+    /**
+     * Parses {@code fixed:<duration>}, {@code exponential:<mean>} or
+     * {@code lognormal:<median>:<sigma>}, durations as in {@code 20ms} or {@code 1s}.
+     *
+     * @throws IllegalArgumentException if the specification is malformed
+     */
+    static LatencyDistribution parse (String spec)
+    {
+        String[] parts = spec.trim().split(":");
+        LatencyDistribution distribution;
+        try {
+            distribution = switch (parts[0]) {
+                case "fixed" ->
+                    parts.length == 2 ? fixed(DurationStyle.detectAndParse(parts[1])) : null;
+                case "exponential" ->
+                    parts.length == 2 ? exponential(DurationStyle.detectAndParse(parts[1])) : null;
+                case "lognormal" -> parts.length == 3
+                    ? logNormal(DurationStyle.detectAndParse(parts[1]), Double.parseDouble(parts[2]))
+                    : null;
+                default -> null;
+            };
+        }
+        catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid latency distribution: " + spec, e);
+        }
+        if (distribution == null) {
+            throw new IllegalArgumentException("Invalid latency distribution: " + spec);
+        }
+        return distribution;
+    }
+}
@@ -0,0 +1,133 @@
+package com.simple.loadbalancer.stub;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.netty.handler.codec.http.HttpResponseStatus;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.LoopResources;
+
+/**
+ * Non-blocking backend that answers every request after an artificial latency, so that tens of
+ * thousands of slow calls can be in flight against it without needing a thread for each. The
+ * latency is drawn from a {@link LatencyDistribution} for every request, and a share
+ * {@code failureRate} of the requests is answered with 500. {@code /health} is answered
+ * immediately, and {@code POST /echo} sends the request body back after the latency.
+ *
+ * <p>{@link #main(String[])} runs a stub as a process of its own:
+ * {@code LatencyStubServer [latency] [failureRate]}, defaults {@code fixed:10ms 0}. It prints its
+ * URL on the first line of its output and stops when its standard input is closed.
+ */
+public class LatencyStubServer implements AutoCloseable
+{
+    private final LoopResources loops;
+    /* Sockets accepted so far */
+    private final AtomicInteger connections = new AtomicInteger();
+    private DisposableServer server;
+
+    private LatencyStubServer (LoopResources loops)
+    {
+        this.loops = loops;
+    }
+
+    public static LatencyStubServer start (Duration latency)
+    {
+        return start(LatencyDistribution.fixed(latency), 0);
+    }
+
+    /**
+     * @param latency     the response time of every request
+     * @param failureRate share of the requests answered with 500, after their latency
+     */
+    public static LatencyStubServer start (LatencyDistribution latency, double failureRate)
+    {
+        return start(latency, failureRate, 0);
+    }
+
+    /**
+     * Starts a stub that also speaks HTTP/2 in clear text, with prior knowledge or upgraded from
+     * HTTP/1.1.
+     *
+     * @param maxConcurrentStreams the streams a connection may carry at once, as advertised to
+     *                             the clients
+     */
+    public static LatencyStubServer startH2c (LatencyDistribution latency, double failureRate,
+                                              int maxConcurrentStreams)
+    {
+        return start(latency, failureRate, maxConcurrentStreams);
+    }
+
+    private static LatencyStubServer start (LatencyDistribution latency, double failureRate,
+                                            int maxConcurrentStreams)
+    {
+        // Own event loops, so that shutting down a Spring context using the global ones does not
+        // stop the stub
+        LoopResources loops = LoopResources.create("stub", 1, true);
+        LatencyStubServer stub = new LatencyStubServer(loops);
+        HttpServer server = HttpServer.create()
+            .runOn(loops)
+            .host("localhost")
+            .port(0)
+            .doOnChannelInit((observer, channel, address) -> stub.connections.incrementAndGet());
+        if (maxConcurrentStreams > 0) {
+            server = server.protocol(HttpProtocol.HTTP11, HttpProtocol.H2C)
+                .http2Settings(settings -> settings.maxConcurrentStreams(maxConcurrentStreams));
+        }
+        stub.server = server
+            .route(routes -> routes
+                .get("/health", (request, response) -> response.sendString(Mono.just("ok")))
+                .post("/echo", (request, response) -> response.send(request.receive().aggregate()
+                    .retain()
+                    .delayUntil(body -> Mono.delay(Duration.ofNanos(
+                        latency.nextNanos(ThreadLocalRandom.current()))))))
+                .route(request -> true, (request, response) -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    Mono<String> answer = Mono.delay(Duration.ofNanos(latency.nextNanos(random)))
+                        .thenReturn("ok");
+                    if (failureRate > 0 && random.nextDouble() < failureRate) {
+                        return response.status(HttpResponseStatus.INTERNAL_SERVER_ERROR)
+                            .sendString(answer.thenReturn("error"));
+                    }
+                    return response.sendString(answer);
+                }))
+            .bindNow();
+        return stub;
+    }
+
+    public String url ()
+    {
+        return "http://localhost:" + server.port();
+    }
+
+    /**
+     * @return the sockets accepted so far, whatever the requests each carried
+     */
+    public int getConnectionCount ()
+    {
+        return connections.get();
+    }
+
+    @Override
+    public void close ()
+    {
+        server.disposeNow();
+        loops.dispose();
+    }
+
+    public static void main (String[] args) throws Exception
+    {
+        LatencyDistribution latency =
+            LatencyDistribution.parse(args.length > 0 ? args[0] : "fixed:10ms");
+        double failureRate = args.length > 1 ? Double.parseDouble(args[1]) : 0;
+        try (LatencyStubServer stub = start(latency, failureRate)) {
+            System.out.println(stub.url());
+            System.out.flush();
+            // Runs until the parent process closes its end of the pipe
+            System.in.transferTo(java.io.OutputStream.nullOutputStream());
+        }
+    }
+}
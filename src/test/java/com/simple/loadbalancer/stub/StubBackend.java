@@ -0,0 +1,181 @@
+package com.simple.loadbalancer.stub;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process backend used by tests and benchmarks. It answers
+ * <ul>
+ *     <li>{@code /health} with 200, or 503 once {@link #setHealthy(boolean) made unhealthy},</li>
+ *     <li>{@code /payload/<bytes>} with a body of the requested size,</li>
+ *     <li>{@code /echo} with the request body,</li>
+ *     <li>{@code /count} with the number of bytes of the request body,</li>
+ *     <li>{@code /status/<code>} with that status and a body naming it,</li>
+ *     <li>{@code /inspect/...} with the request line, encoded as received, and the request headers,
+ *     one per line,</li>
+ *     <li>{@code /cached/<seconds>} with a body cacheable for that many seconds and an
+ *     {@code ETag}, or 304 when the request already holds that {@code ETag},</li>
+ *     <li>anything else with a short text body.</li>
+ * </ul>
+ * Every answer but the health check can be delayed with {@link #setLatency(Duration)}, to stand
+ * for a backend that slows down. {@link #getRequestCount()} counts every answer but the health
+ * checks.
+ */
+public class StubBackend implements AutoCloseable
+{
+    private static final byte[] CHUNK = new byte[64 * 1024];
+
+    static {
+        Arrays.fill(CHUNK, (byte) 'x');
+        // Headers and body are written separately; without this every small response waits for
+        // the delayed ACK of the client
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private volatile boolean healthy = true;
+    private volatile long latencyMillis;
+    private final AtomicLong requests = new AtomicLong();
+
+    private StubBackend (HttpServer server, ExecutorService executor)
+    {
+        this.server = server;
+        this.executor = executor;
+    }
+
+    public static StubBackend start () throws IOException
+    {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 1024);
+        ExecutorService executor = Executors.newCachedThreadPool();
+        StubBackend backend = new StubBackend(server, executor);
+        server.createContext("/", backend::handle);
+        server.setExecutor(executor);
+        server.start();
+        return backend;
+    }
+
+    public void setHealthy (boolean healthy)
+    {
+        this.healthy = healthy;
+    }
+
+    public void setLatency (Duration latency)
+    {
+        this.latencyMillis = latency.toMillis();
+    }
+
+    public long getRequestCount ()
+    {
+        return requests.get();
+    }
+
+    public String url ()
+    {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    private void handle (HttpExchange exchange) throws IOException
+    {
+        String path = exchange.getRequestURI().getPath();
+        try (exchange) {
+            if (!path.equals("/health")) {
+                requests.incrementAndGet();
+            }
+            if (latencyMillis > 0 && !path.equals("/health")) {
+                try {
+                    Thread.sleep(latencyMillis);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            if (path.equals("/health") && !healthy) {
+                exchange.sendResponseHeaders(503, -1);
+            }
+            else if (path.startsWith("/payload/")) {
+                long size = Long.parseLong(path.substring("/payload/".length()));
+                exchange.getResponseHeaders().add("Content-Type", "application/octet-stream");
+                exchange.sendResponseHeaders(200, size);
+                OutputStream out = exchange.getResponseBody();
+                for (long remaining = size; remaining > 0; remaining -= CHUNK.length) {
+                    out.write(CHUNK, 0, (int) Math.min(CHUNK.length, remaining));
+                }
+            }
+            else if (path.startsWith("/cached/")) {
+                String etag = "\"v1\"";
+                exchange.getResponseHeaders().add("Cache-Control",
+                    "max-age=" + path.substring("/cached/".length()));
+                exchange.getResponseHeaders().add("ETag", etag);
+                if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    exchange.sendResponseHeaders(304, -1);
+                }
+                else {
+                    byte[] body = "cached".getBytes();
+                    exchange.sendResponseHeaders(200, body.length);
+                    exchange.getResponseBody().write(body);
+                }
+            }
+            else if (path.startsWith("/status/")) {
+                int status = Integer.parseInt(path.substring("/status/".length()));
+                byte[] body = ("status " + status).getBytes();
+                exchange.getResponseHeaders().add("X-Stub-Status", String.valueOf(status));
+                exchange.getResponseHeaders().add("Keep-Alive", "timeout=5");
+                exchange.sendResponseHeaders(status, body.length);
+                exchange.getResponseBody().write(body);
+            }
+            else if (path.startsWith("/count")) {
+                long count;
+                try (InputStream in = exchange.getRequestBody()) {
+                    count = in.transferTo(OutputStream.nullOutputStream());
+                }
+                byte[] body = Long.toString(count).getBytes();
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+            else if (path.startsWith("/inspect/")) {
+                URI uri = exchange.getRequestURI();
+                StringBuilder request = new StringBuilder(exchange.getRequestMethod()).append(' ')
+                    .append(uri.getRawPath())
+                    .append(uri.getRawQuery() != null ? "?" + uri.getRawQuery() : "")
+                    .append('\n');
+                exchange.getRequestHeaders().forEach((name, values) -> values.forEach(
+                    value -> request.append(name).append(": ").append(value).append('\n')));
+                byte[] body = request.toString().getBytes();
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+            else if (path.startsWith("/echo")) {
+                exchange.getResponseHeaders().add("Keep-Alive", "timeout=5");
+                exchange.sendResponseHeaders(200, 0);
+                try (InputStream in = exchange.getRequestBody()) {
+                    in.transferTo(exchange.getResponseBody());
+                }
+            }
+            else {
+                byte[] body = "ok".getBytes();
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+        }
+    }
+
+    @Override
+    public void close ()
+    {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}